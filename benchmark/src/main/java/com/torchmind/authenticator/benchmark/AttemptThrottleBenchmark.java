@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.AttemptThrottle;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of throttling attempts for a single exhausted account (as is the case during
+ * a brute force attack) as well as a large population of accounts.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AttemptThrottleBenchmark {
+
+  @Param({"1000000"})
+  public int accounts;
+
+  private AttemptThrottle throttle;
+
+  @Setup
+  public void setup() {
+    this.throttle = AttemptThrottle.builder()
+        .burst(5)
+        .interval(Duration.ofSeconds(30))
+        .capacity(1 << 20)
+        .build();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean acquireExhausted() {
+    return this.throttle.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public boolean acquireExhaustedContended() {
+    return this.throttle.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public boolean acquireDistributed() {
+    return this.throttle.tryAcquire(ThreadLocalRandom.current().nextInt(this.accounts));
+  }
+}
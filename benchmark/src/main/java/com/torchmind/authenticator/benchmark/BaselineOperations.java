@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.TokenGenerator;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.codec.binary.Base32;
+
+/**
+ * Provides a verbatim copy of the original (1.1.0) TOTP implementation which serves as a baseline
+ * for comparisons.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class BaselineOperations implements TokenOperations {
+
+  private static final long PERIOD = 30;
+
+  private final TokenGenerator.Algorithm algorithm;
+  private final int digits;
+  private final int digitModulo;
+  private final String issuer = "Issuer";
+
+  BaselineOperations(TokenGenerator.Algorithm algorithm, int digits) {
+    this.algorithm = algorithm;
+    this.digits = digits;
+    this.digitModulo = (int) Math.pow(10, digits);
+  }
+
+  @Override
+  public String buildHandshakeCode(SecretKey secretKey, boolean humanReadable) {
+    String code = (new Base32()).encodeAsString(secretKey.getEncoded());
+
+    if (humanReadable) {
+      String tmp = "";
+
+      for (int i = 1; i <= code.length(); ++i) {
+        tmp += code.charAt((i - 1));
+
+        if ((i % 4) == 0) {
+          tmp += " ";
+        }
+      }
+
+      if (tmp.charAt((tmp.length() - 1)) == ' ') {
+        code = tmp.substring(0, (tmp.length() - 1)).toLowerCase();
+      } else {
+        code = tmp.toLowerCase();
+      }
+    }
+
+    return code;
+  }
+
+  @Override
+  public URI buildUri(SecretKey secretKey, String accountName) {
+    try {
+      accountName = URLEncoder.encode(accountName, "UTF-8");
+      String issuer = URLEncoder.encode(this.issuer, "UTF-8");
+      String secret = URLEncoder.encode(this.buildHandshakeCode(secretKey, false), "UTF-8");
+
+      return new URI("otpauth", "totp", "/" + issuer + ":" + accountName,
+          "secret=" + secret + "&issuer=" + issuer + "&period=" + PERIOD
+              + "&algorithm=" + this.algorithm.name() + "&digits=" + this.digits, null);
+    } catch (UnsupportedEncodingException | URISyntaxException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private String generateCode(SecretKey secretKey, byte[] challenge) {
+    try {
+      Mac mac = Mac.getInstance("Hmac" + this.algorithm.name());
+      mac.init(secretKey);
+
+      byte[] hash = mac.doFinal(challenge);
+      int offset = hash[hash.length - 1] & 0x0F;
+
+      ByteBuffer buffer = ByteBuffer.allocate(4).put(hash, offset, 4);
+      buffer.flip();
+
+      return String
+          .format("%0" + this.digits + "d", (buffer.getInt() & 0x7FFFFFFF) % this.digitModulo);
+    } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  @Override
+  public String generateCode(SecretKey secretKey, Instant timestamp) {
+    return this.generateCode(secretKey,
+        ByteBuffer.allocate(8).putLong(timestamp.getEpochSecond() / PERIOD).array());
+  }
+
+  @Override
+  public SecretKey parseCode(String code) {
+    code = code.replace(" ", "").toUpperCase();
+
+    byte[] key = (new Base32()).decode(code);
+    return new SecretKeySpec(key, "Hmac" + this.algorithm.name());
+  }
+
+  @Override
+  public boolean validateCode(String code, SecretKey secretKey, Instant timestamp, int range) {
+    if (code.equals(this.generateCode(secretKey, timestamp))) {
+      return true;
+    }
+
+    for (int i = 1; i <= range; ++i) {
+      if (code.equals(this.generateCode(secretKey,
+          timestamp.minus(PERIOD * i, ChronoUnit.SECONDS)))) {
+        return true;
+      }
+
+      if (code.equals(this.generateCode(secretKey,
+          timestamp.plus(PERIOD * i, ChronoUnit.SECONDS)))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.CounterTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the generation of codes for a long run of consecutive counter values (as is the case
+ * when code sheets are printed or hardware tokens are imported).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodeRangeBenchmark {
+
+  @Param({"100000"})
+  public int count;
+
+  @Param({"JCA", "BUILTIN"})
+  public TokenGenerator.Engine engine;
+
+  private CounterTokenGenerator generator;
+  private SecretKey secretKey;
+  private int[] codes;
+
+  @Setup
+  public void setup() {
+    this.generator = TokenGenerator.builder()
+        .engine(this.engine)
+        .createCounterGenerator("Benchmark");
+    this.secretKey = this.generator.parseCode("KLYQV62WLKEKRQQM");
+    this.codes = new int[this.count];
+  }
+
+  @Benchmark
+  public int[] loop() {
+    for (int i = 0; i < this.count; ++i) {
+      this.codes[i] = this.generator.generateCodeInt(this.secretKey, i);
+    }
+
+    return this.codes;
+  }
+
+  @Benchmark
+  public int[] range() {
+    this.generator.generateCodes(this.secretKey, 0, this.count, this.codes);
+    return this.codes;
+  }
+
+  @Benchmark
+  public long stream() {
+    return this.generator.generateCodes(this.secretKey, 0, this.count).sum();
+  }
+}
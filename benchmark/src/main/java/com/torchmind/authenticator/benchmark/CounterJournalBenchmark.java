@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.CounterJournal;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the sustained rate of durable counter advances on the local disk.
+ *
+ * Each thread advances the counter of its own account and waits for the advance to be written to
+ * the storage device. The throughput is thus bounded by the rate of flushes multiplied by the
+ * amount of records which are combined into each flush. The pipelined benchmark keeps a fixed
+ * amount of asynchronous advances in flight from a single thread instead. The journal is created
+ * within the temporary directory unless {@code -Djournal.directory} is passed.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CounterJournalBenchmark {
+
+  private static final int PIPELINE_DEPTH = 1024;
+
+  private final AtomicLong accounts = new AtomicLong();
+  private Path directory;
+  private CounterJournal journal;
+
+  @Setup
+  public void setup() throws IOException {
+    String parent = System.getProperty("journal.directory");
+    this.directory = parent == null ? Files.createTempDirectory("journal")
+        : Files.createTempDirectory(Files.createDirectories(Paths.get(parent)),
+            "journal");
+    this.journal = CounterJournal.open(this.directory);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    this.journal.close();
+
+    Files.walkFileTree(this.directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean advance(Account account) {
+    return this.journal.compareAndSet(account.id, account.counter, ++account.counter);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean advanceContended(Account account) {
+    return this.journal.compareAndSet(account.id, account.counter, ++account.counter);
+  }
+
+  /**
+   * Represents the account of a single benchmark thread.
+   */
+  @Benchmark
+  @Threads(1)
+  @OperationsPerInvocation(PIPELINE_DEPTH)
+  public boolean advancePipelined(Account account) {
+    CompletableFuture<Boolean> last = null;
+
+    for (int i = 0; i < PIPELINE_DEPTH; ++i) {
+      last = this.journal.compareAndSetAsync(account.id, account.counter, ++account.counter);
+    }
+
+    return last.join();
+  }
+
+  @State(Scope.Thread)
+  public static class Account {
+
+    private long id;
+    private long counter;
+
+    @Setup
+    public void setup(CounterJournalBenchmark benchmark) {
+      this.id = benchmark.accounts.incrementAndGet();
+    }
+  }
+}
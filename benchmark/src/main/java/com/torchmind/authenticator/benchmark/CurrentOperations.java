@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import java.net.URI;
+import java.time.Instant;
+import javax.crypto.SecretKey;
+
+/**
+ * Delegates all operations to the current library implementation.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class CurrentOperations implements TokenOperations {
+
+  private final PeriodTokenGenerator generator;
+
+  CurrentOperations(TokenGenerator.Algorithm algorithm, TokenGenerator.Engine engine,
+      int digits) {
+    this.generator = TokenGenerator.builder()
+        .algorithm(algorithm)
+        .engine(engine)
+        .digits(digits)
+        .createPeriodGenerator("Issuer");
+  }
+
+  @Override
+  public String buildHandshakeCode(SecretKey secretKey, boolean humanReadable) {
+    return this.generator.buildHandshakeCode(secretKey, humanReadable);
+  }
+
+  @Override
+  public URI buildUri(SecretKey secretKey, String accountName) {
+    return this.generator.buildUri(secretKey, accountName);
+  }
+
+  @Override
+  public String generateCode(SecretKey secretKey, Instant timestamp) {
+    return this.generator.generateCode(secretKey, timestamp);
+  }
+
+  @Override
+  public SecretKey parseCode(String code) {
+    return this.generator.parseCode(code);
+  }
+
+  @Override
+  public boolean validateCode(String code, SecretKey secretKey, Instant timestamp, int range) {
+    return this.generator.validateCode(code, secretKey, timestamp, range);
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the enrollment related operations (secret encoding and decoding as well as URI
+ * construction).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class HandshakeBenchmark {
+
+  @Benchmark
+  public String buildHandshakeCode(TokenState state) {
+    return state.operations.buildHandshakeCode(state.secretKey, false);
+  }
+
+  @Benchmark
+  public String buildHandshakeCodeHumanReadable(TokenState state) {
+    return state.operations.buildHandshakeCode(state.secretKey, true);
+  }
+
+  @Benchmark
+  public URI buildUri(TokenState state) {
+    return state.operations.buildUri(state.secretKey, "someone@example.org");
+  }
+
+  @Benchmark
+  public SecretKey parseCode(TokenState state) {
+    return state.operations.parseCode(state.handshakeCode);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.SecretTable;
+import com.torchmind.authenticator.TokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the validation of codes against secrets which are retained as individual {@link
+ * SecretKey} instances with secrets which are packed into a {@link SecretTable}.
+ *
+ * Accounts are visited in a fixed pseudo random order in order to defeat the key caches of the
+ * HMAC engines (as is the case for servers which handle many distinct accounts).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SecretTableBenchmark {
+
+  private static final Instant TIMESTAMP = Instant.ofEpochSecond(1_500_000_000L);
+
+  @Param({"1000000"})
+  public int accounts;
+
+  @Param({"JCA", "BUILTIN"})
+  public TokenGenerator.Engine engine;
+
+  private PeriodTokenGenerator generator;
+  private Map<Long, SecretKey> secretKeys;
+  private SecretTable table;
+  private int[] slots;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    this.generator = TokenGenerator.builder()
+        .engine(this.engine)
+        .createPeriodGenerator("Benchmark");
+    this.secretKeys = new HashMap<>();
+    this.table = new SecretTable();
+    this.slots = new int[this.accounts];
+
+    for (int i = 0; i < this.accounts; ++i) {
+      SecretKey secretKey = this.generator.generateSecret();
+
+      this.secretKeys.put((long) i, secretKey);
+      this.slots[i] = this.table.put(i, secretKey);
+    }
+  }
+
+  private int next() {
+    this.cursor = (this.cursor + 7919) % this.accounts;
+    return this.cursor;
+  }
+
+  @Benchmark
+  public ValidationResult secretKeyMap() {
+    SecretKey secretKey = this.secretKeys.get((long) this.next());
+    return this.generator.verifyCode(123456, secretKey, TIMESTAMP, 1, 1);
+  }
+
+  @Benchmark
+  public ValidationResult tableByAccount() {
+    return this.generator.verifyCode(123456, this.table, this.next(), TIMESTAMP, 1, 1);
+  }
+
+  @Benchmark
+  public ValidationResult tableBySlot() {
+    return this.generator.verifyCodeAt(123456, this.table, this.slots[this.next()], TIMESTAMP,
+        1, 1);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to the first validation within a freshly started Java VM (as is the case after
+ * a cold start on serverless platforms).
+ *
+ * Generators are created lazily, eagerly (provider pinning and table initialization only) or with
+ * 10,000 warm-up iterations. Each fork performs exactly one measured invocation. The {@code
+ * coldStart} benchmark includes the creation of the generator (and thus its warm-up) while {@code
+ * firstValidation} solely measures the first request which is served by a previously created
+ * generator.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+  private static final String SECRET = "KLYQV62WLKEKRQQM";
+  private static final String CODE = "565580";
+
+  @Param({"LAZY", "EAGER", "WARM"})
+  public Initialization initialization;
+
+  @Param({"JCA", "BUILTIN"})
+  public TokenGenerator.Engine engine;
+
+  @Benchmark
+  public boolean coldStart() {
+    PeriodTokenGenerator generator = this.createGenerator();
+    return generator.validateCode(CODE, generator.parseCode(SECRET), 1);
+  }
+
+  @Benchmark
+  public boolean firstValidation(Prepared prepared) {
+    return prepared.generator.validateCode(CODE, prepared.generator.parseCode(SECRET), 1);
+  }
+
+  private PeriodTokenGenerator createGenerator() {
+    TokenGenerator.Builder builder = TokenGenerator.builder()
+        .engine(this.engine);
+
+    switch (this.initialization) {
+      case EAGER:
+        builder.eager(true);
+        break;
+      case WARM:
+        builder.warmUpIterations(10_000);
+        break;
+      default:
+        break;
+    }
+
+    return builder.createPeriodGenerator("Benchmark");
+  }
+
+  /**
+   * Provides a generator which is created before the measurement begins.
+   */
+  @State(Scope.Benchmark)
+  public static class Prepared {
+
+    private PeriodTokenGenerator generator;
+
+    @Setup
+    public void setup(StartupBenchmark benchmark) {
+      this.generator = benchmark.createGenerator();
+    }
+  }
+
+  public enum Initialization {
+    LAZY,
+    EAGER,
+    WARM
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import java.net.URI;
+import java.time.Instant;
+import javax.crypto.SecretKey;
+
+/**
+ * Abstracts the token operations under test in order to permit comparisons between the current
+ * implementation and the baseline implementation within the same run.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+interface TokenOperations {
+
+  String buildHandshakeCode(SecretKey secretKey, boolean humanReadable);
+
+  URI buildUri(SecretKey secretKey, String accountName);
+
+  String generateCode(SecretKey secretKey, Instant timestamp);
+
+  SecretKey parseCode(String code);
+
+  boolean validateCode(String code, SecretKey secretKey, Instant timestamp, int range);
+}
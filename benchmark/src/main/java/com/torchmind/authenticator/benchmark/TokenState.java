@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.TokenGenerator;
+import java.time.Instant;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Provides the shared state of all token benchmarks.
+ *
+ * The state is shared between all benchmark threads in order to reproduce the contention which
+ * occurs when a single generator serves an entire application.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@State(Scope.Benchmark)
+public class TokenState {
+
+  /**
+   * Selects the implementation under test ("current" and "builtin" refer to the current
+   * implementation backed by the JCA and built-in HMAC engines respectively while "baseline" refers
+   * to the original implementation).
+   */
+  @Param({"current", "builtin", "baseline"})
+  public String implementation;
+
+  @Param({"SHA1", "SHA256", "SHA512"})
+  public TokenGenerator.Algorithm algorithm;
+
+  @Param({"6", "8"})
+  public int digits;
+
+  TokenOperations operations;
+  SecretKey secretKey;
+  String handshakeCode;
+  Instant timestamp;
+  String validCode;
+  String invalidCode;
+
+  @Setup
+  public void setup() {
+    this.operations = "baseline".equals(this.implementation)
+        ? new BaselineOperations(this.algorithm, this.digits)
+        : new CurrentOperations(this.algorithm, "builtin".equals(this.implementation)
+            ? TokenGenerator.Engine.BUILTIN : TokenGenerator.Engine.JCA, this.digits);
+
+    this.handshakeCode = "KLYQ V62W LKEK RQQM KLYQ V62W LKEK RQQM";
+    this.secretKey = this.operations.parseCode(this.handshakeCode);
+    this.timestamp = Instant.ofEpochSecond(1_500_000_000L);
+    this.validCode = this.operations.generateCode(this.secretKey, this.timestamp);
+
+    // flip the last digit in order to construct a code which is guaranteed to be rejected within
+    // the current period (and thus exercises the entire window)
+    char last = this.validCode.charAt(this.validCode.length() - 1);
+    this.invalidCode = this.validCode.substring(0, this.validCode.length() - 1)
+        + (char) ('0' + (last - '0' + 1) % 10);
+  }
+}
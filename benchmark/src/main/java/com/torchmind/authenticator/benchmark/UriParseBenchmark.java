@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import com.torchmind.authenticator.HandshakeUri;
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the handshake URI parser against parsing via {@link URI} and manual query splitting.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class UriParseBenchmark {
+
+  private PeriodTokenGenerator generator;
+  private String uri;
+
+  @Setup
+  public void setup() {
+    this.generator = TokenGenerator.builder().createPeriodGenerator("ACME Co");
+    this.uri = this.generator
+        .buildUri(this.generator.generateSecret(), "someone@example.org").toString();
+  }
+
+  @Benchmark
+  public HandshakeUri handshakeUri() {
+    return HandshakeUri.parse(this.uri);
+  }
+
+  @Benchmark
+  public void javaNetUri(Blackhole blackhole) throws Exception {
+    URI uri = new URI(this.uri);
+    String label = uri.getPath().substring(1);
+    int separator = label.indexOf(':');
+
+    blackhole.consume(URLDecoder.decode(label.substring(0, separator), "UTF-8"));
+    blackhole.consume(URLDecoder.decode(label.substring(separator + 1), "UTF-8"));
+
+    for (String parameter : uri.getRawQuery().split("&")) {
+      int index = parameter.indexOf('=');
+      String name = parameter.substring(0, index);
+      String value = URLDecoder.decode(parameter.substring(index + 1), "UTF-8");
+
+      if ("secret".equals(name)) {
+        SecretKey key = this.generator.parseCode(value);
+        blackhole.consume(key);
+      } else if ("digits".equals(name) || "period".equals(name)) {
+        blackhole.consume(Integer.parseInt(value));
+      } else {
+        blackhole.consume(value.getBytes(StandardCharsets.UTF_8).length);
+      }
+    }
+  }
+}
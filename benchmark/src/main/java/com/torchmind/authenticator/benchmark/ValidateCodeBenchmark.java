@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the validation of time based codes for accepted codes (which match within the current
+ * period) as well as rejected codes (which exercise the entire window).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidateCodeBenchmark {
+
+  @Param({"0", "1", "2", "5"})
+  public int range;
+
+  @Benchmark
+  @Threads(1)
+  public boolean validateAccepted(TokenState state) {
+    return state.operations
+        .validateCode(state.validCode, state.secretKey, state.timestamp, this.range);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean validateRejected(TokenState state) {
+    return state.operations
+        .validateCode(state.invalidCode, state.secretKey, state.timestamp, this.range);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public boolean validateRejectedContended(TokenState state) {
+    return state.operations
+        .validateCode(state.invalidCode, state.secretKey, state.timestamp, this.range);
+  }
+}
@@ -0,0 +1,658 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.flow;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Validates a stream of codes within a {@link Flow} pipeline.
+ *
+ * Incoming requests are grouped into micro-batches which are validated on the configured executor.
+ * A batch is dispatched as soon as it reaches the configured size or once the configured delay has
+ * elapsed since its first request arrived and thus the latency added by batching is bounded by
+ * this delay. Since each worker thread relies on its own cached HMAC state, a batch is validated
+ * without any further coordination between threads. The configured executor should thus reuse a
+ * bounded set of long lived threads as the cached state of short lived threads (such as virtual
+ * threads which are started per task) is discarded along with them.
+ *
+ * Requests which reference invalid secret keys or accounts outside of the capacity of their store
+ * are rejected. Any other failure during the validation of a batch aborts the stream (discarding
+ * the entire batch) and is reported to the subscriber.
+ *
+ * Backpressure is honored in both directions: At most {@link Builder#bufferSize()} requests are
+ * requested from the upstream publisher before their responses have been delivered to the
+ * subscriber and responses are only delivered as requested by the subscriber.
+ *
+ * <strong>Note:</strong> Responses of different batches may be published in a different order
+ * than their requests have been received. Each response thus references its request. Only a single
+ * subscriber is supported.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ValidationProcessor implements
+    Flow.Processor<ValidationRequest, ValidationResponse> {
+
+  private final PeriodTokenGenerator generator;
+  private final int batchSize;
+  private final int bufferSize;
+  private final int replenishThreshold;
+  private final int pastSteps;
+  private final int futureSteps;
+  private final Executor executor;
+  private final Executor flushExecutor;
+
+  private final Object batchLock = new Object();
+  private ValidationRequest[] batch;
+  private int batchLength;
+  private long batchSequence;
+
+  private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+  private final AtomicReference<Flow.Subscriber<? super ValidationResponse>> downstream =
+      new AtomicReference<>();
+  private final Queue<ValidationResponse> responses = new ConcurrentLinkedQueue<>();
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicInteger pendingBatches = new AtomicInteger();
+  private final AtomicInteger wip = new AtomicInteger();
+
+  private volatile boolean aborted;
+  private volatile boolean cancelled;
+  private volatile boolean completed;
+  private volatile Throwable failure;
+
+  // accessed exclusively within the drain loop
+  private boolean terminated;
+  private int delivered;
+
+  private ValidationProcessor(Builder builder) {
+    this.generator = builder.generator;
+    this.batchSize = builder.batchSize;
+    this.bufferSize = builder.bufferSize;
+    this.replenishThreshold = Math.max(1, builder.bufferSize / 2);
+    this.pastSteps = builder.pastSteps;
+    this.futureSteps = builder.futureSteps;
+    this.executor = builder.executor;
+    this.flushExecutor = CompletableFuture
+        .delayedExecutor(builder.batchDelay.toNanos(), TimeUnit.NANOSECONDS, builder.executor);
+  }
+
+  /**
+   * Creates a new builder which configures a processor for the specified generator.
+   *
+   * @param generator a generator.
+   * @return a builder.
+   */
+  public static Builder builder(PeriodTokenGenerator generator) {
+    return new Builder(Objects.requireNonNull(generator, "generator"));
+  }
+
+  /**
+   * Retrieves the executor which is used when no executor is configured explicitly.
+   *
+   * Batches are validated on a shared fixed pool of daemon threads (one per available processor)
+   * which retain their cached HMAC state between batches.
+   *
+   * @return an executor.
+   */
+  public static Executor defaultExecutor() {
+    return DefaultExecutor.INSTANCE;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription, "subscription");
+
+    if (!this.upstream.compareAndSet(null, subscription)) {
+      subscription.cancel();
+      return;
+    }
+
+    subscription.request(this.bufferSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onNext(ValidationRequest request) {
+    Objects.requireNonNull(request, "request");
+
+    ValidationRequest[] full = null;
+    long sequence = -1;
+
+    synchronized (this.batchLock) {
+      if (this.batch == null) {
+        this.batch = new ValidationRequest[this.batchSize];
+      }
+
+      this.batch[this.batchLength++] = request;
+
+      if (this.batchLength == this.batchSize) {
+        full = this.takeBatch();
+      } else if (this.batchLength == 1) {
+        sequence = this.batchSequence;
+      }
+    }
+
+    if (full != null) {
+      this.dispatch(full, full.length);
+    } else if (sequence != -1) {
+      long expected = sequence;
+      this.flushExecutor.execute(() -> this.flush(expected));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable, "throwable");
+
+    if (this.failure == null) {
+      this.failure = throwable;
+    }
+    this.onComplete();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onComplete() {
+    this.flush(-1);
+    this.completed = true;
+    this.drain();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super ValidationResponse> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+
+    if (!this.downstream.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("Processor supports only a single subscriber"));
+      return;
+    }
+
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        ValidationProcessor.this.request(n);
+      }
+
+      @Override
+      public void cancel() {
+        ValidationProcessor.this.cancel();
+      }
+    });
+    this.drain();
+  }
+
+  /**
+   * Removes the current batch and reserves a slot for it within the pending batches.
+   *
+   * <strong>Note:</strong> The caller is expected to hold the batch lock.
+   *
+   * @return a batch.
+   */
+  private ValidationRequest[] takeBatch() {
+    ValidationRequest[] batch = this.batch;
+
+    this.batch = null;
+    this.batchLength = 0;
+    ++this.batchSequence;
+    this.pendingBatches.incrementAndGet();
+
+    return batch;
+  }
+
+  /**
+   * Dispatches the current batch unless it has already been dispatched.
+   *
+   * @param sequence the sequence number of the expected batch or -1 to dispatch any batch.
+   */
+  private void flush(long sequence) {
+    ValidationRequest[] batch;
+    int length;
+
+    synchronized (this.batchLock) {
+      if (this.batchLength == 0 || (sequence != -1 && sequence != this.batchSequence)) {
+        return;
+      }
+
+      length = this.batchLength;
+      batch = this.takeBatch();
+    }
+
+    this.dispatch(batch, length);
+  }
+
+  /**
+   * Validates a batch on the configured executor.
+   *
+   * @param batch a batch.
+   * @param length the amount of requests within the batch.
+   */
+  private void dispatch(ValidationRequest[] batch, int length) {
+    try {
+      this.executor.execute(() -> {
+        try {
+          this.validate(batch, length);
+        } catch (Throwable ex) {
+          this.abort(ex);
+        } finally {
+          this.pendingBatches.decrementAndGet();
+          this.drain();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      this.pendingBatches.decrementAndGet();
+      this.abort(ex);
+    }
+  }
+
+  /**
+   * Validates a batch and publishes its responses once all requests have been validated.
+   *
+   * @param batch a batch.
+   * @param length the amount of requests within the batch.
+   */
+  private void validate(ValidationRequest[] batch, int length) {
+    ValidationResponse[] responses = new ValidationResponse[length];
+
+    for (int i = 0; i < length; ++i) {
+      ValidationRequest request = batch[i];
+      responses[i] = new ValidationResponse(request, this.validate(request));
+    }
+
+    for (ValidationResponse response : responses) {
+      this.responses.offer(response);
+    }
+  }
+
+  /**
+   * Validates a single request.
+   *
+   * Requests which reference invalid secret keys or accounts outside of the capacity of their
+   * store are rejected.
+   *
+   * @param request a request.
+   * @return an offset or {@link ValidationResult#NO_MATCH}.
+   */
+  private int validate(ValidationRequest request) {
+    ValidationResult result;
+
+    try {
+      if (request.getSecretKey() != null) {
+        result = this.generator.verifyCode(request.getCode(), request.getSecretKey(),
+            request.getTimestamp(), this.pastSteps, this.futureSteps);
+      } else {
+        result = this.generator.verifyCode(request.getCode(), request.getStore(),
+            request.getAccountId(), request.getTimestamp(), this.pastSteps, this.futureSteps);
+      }
+    } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+      return ValidationResult.NO_MATCH;
+    }
+
+    return result.isValid() ? result.getOffset() : ValidationResult.NO_MATCH;
+  }
+
+  private void request(long n) {
+    if (n <= 0) {
+      this.abort(new IllegalArgumentException("Demand must be positive but was " + n));
+      return;
+    }
+
+    long current;
+    long updated;
+    do {
+      current = this.demand.get();
+      updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+    } while (!this.demand.compareAndSet(current, updated));
+
+    this.drain();
+  }
+
+  /**
+   * Terminates the stream immediately and discards all outstanding responses.
+   *
+   * @param failure the failure which is to be reported to the subscriber.
+   */
+  private void abort(Throwable failure) {
+    this.failure = failure;
+    this.aborted = true;
+    this.cancel();
+    this.drain();
+  }
+
+  private void cancel() {
+    this.cancelled = true;
+
+    Flow.Subscription subscription = this.upstream.getAndSet(CancelledSubscription.INSTANCE);
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  /**
+   * Delivers the available responses to the subscriber as permitted by its demand and signals
+   * termination once all responses have been delivered.
+   *
+   * Only a single thread executes this loop at a time while concurrent invocations merely cause
+   * the active thread to perform another iteration.
+   */
+  private void drain() {
+    if (this.wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missed = 1;
+    do {
+      Flow.Subscriber<? super ValidationResponse> subscriber = this.downstream.get();
+
+      if (subscriber != null && !this.terminated && this.aborted) {
+        this.terminated = true;
+        subscriber.onError(this.failure);
+      }
+
+      if (subscriber != null && !this.terminated) {
+        long requested = this.demand.get();
+        long emitted = 0;
+
+        while (emitted != requested && !this.cancelled) {
+          ValidationResponse response = this.responses.poll();
+
+          if (response == null) {
+            break;
+          }
+
+          subscriber.onNext(response);
+          ++emitted;
+        }
+
+        if (emitted != 0) {
+          if (requested != Long.MAX_VALUE) {
+            this.demand.addAndGet(-emitted);
+          }
+
+          this.replenish(emitted);
+        }
+
+        if (!this.cancelled && this.completed && this.pendingBatches.get() == 0
+            && this.responses.isEmpty()) {
+          this.terminated = true;
+
+          Throwable failure = this.failure;
+          if (failure != null) {
+            subscriber.onError(failure);
+          } else {
+            subscriber.onComplete();
+          }
+        }
+      }
+
+      if (this.cancelled) {
+        this.responses.clear();
+      }
+
+      missed = this.wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  /**
+   * Requests further requests from the upstream publisher once a sufficient amount of responses
+   * has been delivered.
+   *
+   * @param emitted the amount of responses which have just been delivered.
+   */
+  private void replenish(long emitted) {
+    this.delivered += (int) emitted;
+
+    if (this.delivered >= this.replenishThreshold) {
+      Flow.Subscription subscription = this.upstream.get();
+
+      if (subscription != null && !this.cancelled) {
+        subscription.request(this.delivered);
+      }
+
+      this.delivered = 0;
+    }
+  }
+
+  /**
+   * Provides a factory for the creation of processor instances.
+   */
+  public static final class Builder {
+
+    private final PeriodTokenGenerator generator;
+    private Duration batchDelay = Duration.ofMillis(1);
+    private int batchSize = 64;
+    private int bufferSize = 1024;
+    private Executor executor = defaultExecutor();
+    private int pastSteps = 1;
+    private int futureSteps = 1;
+
+    private Builder(PeriodTokenGenerator generator) {
+      this.generator = generator;
+    }
+
+    /**
+     * Retrieves the maximum delay between the arrival of a request and the dispatch of its batch
+     * (defaults to one millisecond).
+     *
+     * @return a delay.
+     */
+    public Duration batchDelay() {
+      return this.batchDelay;
+    }
+
+    /**
+     * Sets the maximum delay between the arrival of a request and the dispatch of its batch.
+     *
+     * @param batchDelay a delay.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when a negative delay is supplied.
+     */
+    public Builder batchDelay(Duration batchDelay) {
+      if (batchDelay.isNegative()) {
+        throw new IllegalArgumentException("Batch delay cannot be negative");
+      }
+
+      this.batchDelay = batchDelay;
+      return this;
+    }
+
+    /**
+     * Retrieves the maximum amount of requests per batch (defaults to 64).
+     *
+     * @return an amount of requests.
+     */
+    public int batchSize() {
+      return this.batchSize;
+    }
+
+    /**
+     * Sets the maximum amount of requests per batch.
+     *
+     * @param batchSize an amount of requests.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the amount is smaller than one.
+     */
+    public Builder batchSize(int batchSize) {
+      if (batchSize < 1) {
+        throw new IllegalArgumentException("Batch size must be at least one");
+      }
+
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Retrieves the maximum amount of requests which are in flight at any given time (defaults
+     * to 1024).
+     *
+     * @return an amount of requests.
+     */
+    public int bufferSize() {
+      return this.bufferSize;
+    }
+
+    /**
+     * Sets the maximum amount of requests which are in flight at any given time.
+     *
+     * @param bufferSize an amount of requests.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the amount is smaller than one.
+     */
+    public Builder bufferSize(int bufferSize) {
+      if (bufferSize < 1) {
+        throw new IllegalArgumentException("Buffer size must be at least one");
+      }
+
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    /**
+     * Creates a new processor using the current configuration.
+     *
+     * @return a processor.
+     */
+    public ValidationProcessor build() {
+      return new ValidationProcessor(this);
+    }
+
+    /**
+     * Retrieves the executor on which batches are validated (defaults to {@link
+     * ValidationProcessor#defaultExecutor()}).
+     *
+     * @return an executor.
+     */
+    public Executor executor() {
+      return this.executor;
+    }
+
+    /**
+     * Sets the executor on which batches are validated.
+     *
+     * @param executor an executor.
+     * @return a reference to this builder.
+     */
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Retrieves the amount of future periods to accept (defaults to 1).
+     *
+     * @return an amount of periods.
+     */
+    public int futureSteps() {
+      return this.futureSteps;
+    }
+
+    /**
+     * Retrieves the amount of past periods to accept (defaults to 1).
+     *
+     * @return an amount of periods.
+     */
+    public int pastSteps() {
+      return this.pastSteps;
+    }
+
+    /**
+     * Sets the window of periods to accept.
+     *
+     * @param pastSteps an amount of past periods to accept.
+     * @param futureSteps an amount of future periods to accept.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when a negative amount of periods is supplied.
+     */
+    public Builder window(int pastSteps, int futureSteps) {
+      if (pastSteps < 0 || futureSteps < 0) {
+        throw new IllegalArgumentException("Window size cannot be negative");
+      }
+
+      this.pastSteps = pastSteps;
+      this.futureSteps = futureSteps;
+      return this;
+    }
+  }
+
+  /**
+   * Replaces the upstream subscription once the processor has been cancelled.
+   */
+  private static final class CancelledSubscription implements Flow.Subscription {
+
+    private static final CancelledSubscription INSTANCE = new CancelledSubscription();
+
+    @Override
+    public void request(long n) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+
+  /**
+   * Lazily creates the default executor.
+   */
+  private static final class DefaultExecutor {
+
+    private static final Executor INSTANCE = create();
+
+    private static Executor create() {
+      AtomicInteger index = new AtomicInteger();
+
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (task) -> {
+        Thread thread = new Thread(task, "authenticator-flow-" + index.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+}
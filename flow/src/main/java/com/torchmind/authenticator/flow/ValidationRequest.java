@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.flow;
+
+import com.torchmind.authenticator.MappedSecretStore;
+import java.time.Instant;
+import java.util.Objects;
+import javax.crypto.SecretKey;
+
+/**
+ * Represents a single code which is to be validated by a {@link ValidationProcessor}.
+ *
+ * A request references the secret of an account either directly or through its identifier within
+ * a {@link MappedSecretStore}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ValidationRequest {
+
+  private final SecretKey secretKey;
+  private final MappedSecretStore store;
+  private final long accountId;
+  private final int code;
+  private final Instant timestamp;
+
+  private ValidationRequest(SecretKey secretKey, MappedSecretStore store, long accountId,
+      int code, Instant timestamp) {
+    this.secretKey = secretKey;
+    this.store = store;
+    this.accountId = accountId;
+    this.code = code;
+    this.timestamp = Objects.requireNonNull(timestamp, "timestamp");
+  }
+
+  /**
+   * Creates a request which validates a code against a secret key.
+   *
+   * @param secretKey a secret key.
+   * @param code a numeric code.
+   * @param timestamp a timestamp.
+   * @return a request.
+   */
+  public static ValidationRequest of(SecretKey secretKey, int code, Instant timestamp) {
+    return new ValidationRequest(Objects.requireNonNull(secretKey, "secretKey"), null, 0, code,
+        timestamp);
+  }
+
+  /**
+   * Creates a request which validates a code against the secret of an account within a secret
+   * store.
+   *
+   * @param store a secret store.
+   * @param accountId an account identifier.
+   * @param code a numeric code.
+   * @param timestamp a timestamp.
+   * @return a request.
+   */
+  public static ValidationRequest of(MappedSecretStore store, long accountId, int code,
+      Instant timestamp) {
+    return new ValidationRequest(null, Objects.requireNonNull(store, "store"), accountId, code,
+        timestamp);
+  }
+
+  /**
+   * Retrieves the identifier of the referenced account.
+   *
+   * @return an account identifier or zero when the request references a secret key directly.
+   */
+  public long getAccountId() {
+    return this.accountId;
+  }
+
+  /**
+   * Retrieves the code which is to be validated.
+   *
+   * @return a numeric code.
+   */
+  public int getCode() {
+    return this.code;
+  }
+
+  /**
+   * Retrieves the referenced secret key.
+   *
+   * @return a secret key or null when the request references an account within a secret store.
+   */
+  public SecretKey getSecretKey() {
+    return this.secretKey;
+  }
+
+  /**
+   * Retrieves the secret store which contains the referenced account.
+   *
+   * @return a store or null when the request references a secret key directly.
+   */
+  public MappedSecretStore getStore() {
+    return this.store;
+  }
+
+  /**
+   * Retrieves the timestamp for which the code is to be validated.
+   *
+   * @return a timestamp.
+   */
+  public Instant getTimestamp() {
+    return this.timestamp;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.flow;
+
+import com.torchmind.authenticator.ValidationResult;
+
+/**
+ * Represents the outcome of a {@link ValidationRequest}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ValidationResponse {
+
+  private final ValidationRequest request;
+  private final int offset;
+
+  ValidationResponse(ValidationRequest request, int offset) {
+    this.request = request;
+    this.offset = offset;
+  }
+
+  /**
+   * Retrieves the offset (in periods) at which the code has been found.
+   *
+   * @return an offset or {@link ValidationResult#NO_MATCH} when the code has been rejected.
+   */
+  public int getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * Retrieves the request which this response belongs to.
+   *
+   * @return a request.
+   */
+  public ValidationRequest getRequest() {
+    return this.request;
+  }
+
+  /**
+   * Evaluates whether the code has been accepted.
+   *
+   * @return true if valid, false otherwise.
+   */
+  public boolean isValid() {
+    return this.offset != ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    if (this.offset == ValidationResult.NO_MATCH) {
+      return "ValidationResponse{valid=false}";
+    }
+
+    return "ValidationResponse{valid=true, offset=" + this.offset + "}";
+  }
+}
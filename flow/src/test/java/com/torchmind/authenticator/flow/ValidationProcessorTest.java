@@ -0,0 +1,294 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.flow;
+
+import com.torchmind.authenticator.MappedSecretStore;
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ValidationProcessorTest {
+
+    private static final int[] CODES = {565580, 707879, 981077, 771141, 729385};
+
+    @Test
+    public void validate() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        ValidationProcessor processor = ValidationProcessor.builder(generator)
+                .batchSize(16)
+                .bufferSize(64)
+                .executor(ForkJoinPool.commonPool())
+                .build();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+
+        try (SubmissionPublisher<ValidationRequest> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+
+            for (int i = 0; i < 1000; ++i) {
+                publisher.submit(ValidationRequest.of(key, i % 2 == 0 ? CODES[i % 5] : 0, Instant.ofEpochSecond(60)));
+            }
+        }
+
+        Assert.assertTrue(subscriber.completion.await(10, TimeUnit.SECONDS));
+        Assert.assertNull(subscriber.failure);
+        Assert.assertEquals(1000, subscriber.responses.size());
+
+        for (ValidationResponse response : subscriber.responses) {
+            int code = response.getRequest().getCode();
+
+            if (code == CODES[1]) {
+                Assert.assertEquals(-1, response.getOffset());
+            } else if (code == CODES[2]) {
+                Assert.assertEquals(0, response.getOffset());
+            } else if (code == CODES[3]) {
+                Assert.assertEquals(1, response.getOffset());
+            } else {
+                Assert.assertFalse(response.isValid());
+                Assert.assertEquals(ValidationResult.NO_MATCH, response.getOffset());
+            }
+        }
+    }
+
+    @Test
+    public void validateStore() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        Path path = Files.createTempFile("secrets", ".dat");
+
+        try (MappedSecretStore store = MappedSecretStore.open(path, 4)) {
+            store.put(1, generator.parseCode("KLYQV62WLKEKRQQM"));
+
+            ValidationProcessor processor = ValidationProcessor.builder(generator).build();
+            CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+            processor.subscribe(subscriber);
+
+            try (SubmissionPublisher<ValidationRequest> publisher = new SubmissionPublisher<>()) {
+                publisher.subscribe(processor);
+                publisher.submit(ValidationRequest.of(store, 1, CODES[2], Instant.ofEpochSecond(60)));
+                publisher.submit(ValidationRequest.of(store, 2, CODES[2], Instant.ofEpochSecond(60)));
+                publisher.submit(ValidationRequest.of(store, 8, CODES[2], Instant.ofEpochSecond(60)));
+            }
+
+            Assert.assertTrue(subscriber.completion.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(3, subscriber.responses.size());
+
+            for (ValidationResponse response : subscriber.responses) {
+                Assert.assertEquals(response.getRequest().getAccountId() == 1, response.isValid());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void batchDelay() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        ValidationProcessor processor = ValidationProcessor.builder(generator)
+                .batchSize(1000)
+                .batchDelay(Duration.ofMillis(5))
+                .build();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        RecordingSubscription subscription = new RecordingSubscription();
+
+        processor.subscribe(subscriber);
+        processor.onSubscribe(subscription);
+        processor.onNext(ValidationRequest.of(key, CODES[2], Instant.ofEpochSecond(60)));
+
+        Assert.assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(subscriber.responses.get(0).isValid());
+        Assert.assertEquals(1, subscriber.completion.getCount());
+    }
+
+    @Test
+    public void failure() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        Path path = Files.createTempFile("secrets", ".dat");
+        ValidationProcessor processor = ValidationProcessor.builder(generator)
+                .batchSize(2)
+                .batchDelay(Duration.ofDays(1))
+                .executor(Runnable::run)
+                .build();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+
+        try {
+            MappedSecretStore store = MappedSecretStore.open(path, 16);
+            store.close();
+
+            processor.subscribe(subscriber);
+            processor.onSubscribe(new RecordingSubscription());
+            processor.onNext(ValidationRequest.of(key, CODES[2], Instant.ofEpochSecond(60)));
+            processor.onNext(ValidationRequest.of(store, 0, CODES[2], Instant.ofEpochSecond(60)));
+
+            Assert.assertEquals(0, subscriber.completion.getCount());
+            Assert.assertTrue(subscriber.failure instanceof IllegalStateException);
+            Assert.assertTrue(subscriber.responses.isEmpty());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void backpressure() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        ValidationProcessor processor = ValidationProcessor.builder(generator)
+                .batchSize(4)
+                .bufferSize(8)
+                .batchDelay(Duration.ofDays(1))
+                .executor(Runnable::run)
+                .build();
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        RecordingSubscription subscription = new RecordingSubscription();
+
+        processor.subscribe(subscriber);
+        processor.onSubscribe(subscription);
+        Assert.assertEquals(8, subscription.requested.get());
+
+        for (int i = 0; i < 8; ++i) {
+            processor.onNext(ValidationRequest.of(key, CODES[2], Instant.ofEpochSecond(60)));
+        }
+        Assert.assertTrue(subscriber.responses.isEmpty());
+
+        subscriber.subscription.request(3);
+        Assert.assertEquals(3, subscriber.responses.size());
+        Assert.assertEquals(8, subscription.requested.get());
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals(5, subscriber.responses.size());
+        Assert.assertEquals(13, subscription.requested.get());
+
+        processor.onComplete();
+        Assert.assertEquals(1, subscriber.completion.getCount());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(8, subscriber.responses.size());
+        Assert.assertEquals(0, subscriber.completion.getCount());
+        Assert.assertNull(subscriber.failure);
+    }
+
+    @Test
+    public void invalidDemand() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        ValidationProcessor processor = ValidationProcessor.builder(generator).build();
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        RecordingSubscription subscription = new RecordingSubscription();
+
+        processor.onSubscribe(subscription);
+        processor.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        Assert.assertTrue(subscription.cancelled);
+        Assert.assertTrue(subscriber.failure instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void singleSubscriber() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        ValidationProcessor processor = ValidationProcessor.builder(generator).build();
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+
+        processor.subscribe(new CollectingSubscriber(0));
+        processor.subscribe(subscriber);
+
+        Assert.assertTrue(subscriber.failure instanceof IllegalStateException);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindow() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        ValidationProcessor.builder(generator).window(-1, 1);
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<ValidationResponse> {
+
+        private final long initialDemand;
+        private final List<ValidationResponse> responses = new CopyOnWriteArrayList<>();
+        private final CountDownLatch received = new CountDownLatch(1);
+        private final CountDownLatch completion = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable failure;
+
+        private CollectingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+
+            if (this.initialDemand != 0) {
+                subscription.request(this.initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(ValidationResponse item) {
+            this.responses.add(item);
+            this.received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.failure = throwable;
+            this.completion.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            this.completion.countDown();
+        }
+    }
+
+    private static final class RecordingSubscription implements Flow.Subscription {
+
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            this.requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.jfr;
+
+import com.torchmind.authenticator.MetricsListener;
+import com.torchmind.authenticator.TokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import jdk.jfr.EventType;
+
+/**
+ * Provides a metrics listener which emits Java Flight Recorder events for each generated and
+ * validated code.
+ *
+ * Events are only allocated and committed while a recording which enables them is in progress
+ * (the enablement of each event type is checked before any event is constructed).
+ * Since the latency of an operation is reported after it has completed, it is exposed as a
+ * separate field rather than as the duration of the event itself.
+ *
+ * <strong>Note:</strong> Instances of this type are stateless and may thus be shared between
+ * multiple generators.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class JfrMetricsListener implements MetricsListener {
+
+  private static final EventType CODE_GENERATION = EventType
+      .getEventType(CodeGenerationEvent.class);
+  private static final EventType CODE_VALIDATION = EventType
+      .getEventType(CodeValidationEvent.class);
+  private static final EventType INVALID_KEY = EventType.getEventType(InvalidKeyEvent.class);
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onCodeGenerated(TokenGenerator.Algorithm algorithm, long latency) {
+    if (!CODE_GENERATION.isEnabled()) {
+      return;
+    }
+
+    CodeGenerationEvent event = new CodeGenerationEvent();
+
+    if (event.shouldCommit()) {
+      event.algorithm = algorithm.name();
+      event.latency = latency;
+      event.commit();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onCodeValidated(TokenGenerator.Algorithm algorithm, int offset, long latency) {
+    if (!CODE_VALIDATION.isEnabled()) {
+      return;
+    }
+
+    CodeValidationEvent event = new CodeValidationEvent();
+
+    if (event.shouldCommit()) {
+      event.algorithm = algorithm.name();
+      event.latency = latency;
+      event.matched = offset != ValidationResult.NO_MATCH;
+      event.offset = event.matched ? offset : 0;
+      event.commit();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onInvalidKey(TokenGenerator.Algorithm algorithm) {
+    if (!INVALID_KEY.isEnabled()) {
+      return;
+    }
+
+    InvalidKeyEvent event = new InvalidKeyEvent();
+
+    if (event.shouldCommit()) {
+      event.algorithm = algorithm.name();
+      event.commit();
+    }
+  }
+}
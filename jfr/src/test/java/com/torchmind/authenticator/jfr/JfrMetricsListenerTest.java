@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.jfr;
+
+import com.torchmind.authenticator.TokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class JfrMetricsListenerTest {
+
+    private static final String CODE_GENERATION = "com.torchmind.authenticator.CodeGeneration";
+    private static final String CODE_VALIDATION = "com.torchmind.authenticator.CodeValidation";
+    private static final String INVALID_KEY = "com.torchmind.authenticator.InvalidKey";
+
+    @Test
+    public void events() throws Exception {
+        JfrMetricsListener listener = new JfrMetricsListener();
+        List<RecordedEvent> events;
+
+        try (Recording recording = new Recording()) {
+            recording.enable(CODE_GENERATION).withThreshold(Duration.ZERO);
+            recording.enable(CODE_VALIDATION).withThreshold(Duration.ZERO);
+            recording.enable(INVALID_KEY).withThreshold(Duration.ZERO);
+            recording.start();
+
+            listener.onCodeGenerated(TokenGenerator.Algorithm.SHA1, 1500);
+            listener.onCodeValidated(TokenGenerator.Algorithm.SHA256, -1, 2500);
+            listener.onCodeValidated(TokenGenerator.Algorithm.SHA256, ValidationResult.NO_MATCH,
+                    3500);
+            listener.onInvalidKey(TokenGenerator.Algorithm.SHA512);
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        List<RecordedEvent> generations = filter(events, CODE_GENERATION);
+        Assert.assertEquals(1, generations.size());
+        Assert.assertEquals("SHA1", generations.get(0).getString("algorithm"));
+        Assert.assertEquals(Duration.ofNanos(1500), generations.get(0).getDuration("latency"));
+
+        List<RecordedEvent> validations = filter(events, CODE_VALIDATION);
+        Assert.assertEquals(2, validations.size());
+        Assert.assertEquals("SHA256", validations.get(0).getString("algorithm"));
+        Assert.assertEquals(Duration.ofNanos(2500), validations.get(0).getDuration("latency"));
+        Assert.assertTrue(validations.get(0).getBoolean("matched"));
+        Assert.assertEquals(-1, validations.get(0).getInt("offset"));
+        Assert.assertEquals(Duration.ofNanos(3500), validations.get(1).getDuration("latency"));
+        Assert.assertFalse(validations.get(1).getBoolean("matched"));
+        Assert.assertEquals(0, validations.get(1).getInt("offset"));
+
+        List<RecordedEvent> invalidKeys = filter(events, INVALID_KEY);
+        Assert.assertEquals(1, invalidKeys.size());
+        Assert.assertEquals("SHA512", invalidKeys.get(0).getString("algorithm"));
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        JfrMetricsListener listener = new JfrMetricsListener();
+        List<RecordedEvent> events;
+
+        try (Recording recording = new Recording()) {
+            recording.enable(CODE_GENERATION).withThreshold(Duration.ZERO);
+            recording.disable(CODE_VALIDATION);
+            recording.start();
+
+            listener.onCodeGenerated(TokenGenerator.Algorithm.SHA1, 1500);
+            listener.onCodeValidated(TokenGenerator.Algorithm.SHA1, 0, 2500);
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        Assert.assertEquals(1, filter(events, CODE_GENERATION).size());
+        Assert.assertTrue(filter(events, CODE_VALIDATION).isEmpty());
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws Exception {
+        Path file = Files.createTempFile("authenticator", ".jfr");
+
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> filter(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter((e) -> name.equals(e.getEventType().getName()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.loadtest;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Records the garbage collections which take place while a measurement is in progress.
+ *
+ * Collections are observed through the notifications of the garbage collector management beans.
+ * Stop-the-world collections (as reported by the serial, parallel and G1 collectors) are recorded
+ * as pauses while the remaining notifications (such as the cycles of concurrent collectors) are
+ * merely counted. The amount of allocated memory is estimated by summing the growth of the heap
+ * between subsequent pauses and is thus accurate regardless of the type of the allocating threads
+ * (including virtual threads).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class GcMonitor implements NotificationListener {
+
+  private final Set<String> heapPools = new HashSet<>();
+  private final Histogram pauses = new Histogram();
+  private long concurrentCycles;
+  private long pauseTime;
+  private long allocated;
+  private long heapUsed;
+
+  private GcMonitor() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        this.heapPools.add(pool.getName());
+      }
+    }
+  }
+
+  /**
+   * Starts recording garbage collections.
+   *
+   * @return a monitor.
+   */
+  static GcMonitor start() {
+    GcMonitor monitor = new GcMonitor();
+    monitor.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector instanceof NotificationEmitter) {
+        ((NotificationEmitter) collector).addNotificationListener(monitor, null, null);
+      }
+    }
+
+    return monitor;
+  }
+
+  /**
+   * Stops recording garbage collections.
+   */
+  void stop() {
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector instanceof NotificationEmitter) {
+        try {
+          ((NotificationEmitter) collector).removeNotificationListener(this);
+        } catch (ListenerNotFoundException ignore) {
+        }
+      }
+    }
+
+    long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    synchronized (this) {
+      this.allocated += Math.max(0, used - this.heapUsed);
+      this.heapUsed = used;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void handleNotification(Notification notification, Object handback) {
+    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+        .equals(notification.getType())) {
+      return;
+    }
+
+    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+        .from((CompositeData) notification.getUserData());
+    String action = info.getGcAction();
+
+    if (!action.equals("end of minor GC") && !action.equals("end of major GC")) {
+      ++this.concurrentCycles;
+      return;
+    }
+
+    long duration = info.getGcInfo().getDuration();
+    this.pauses.record(duration * 1_000_000);
+    this.pauseTime += duration;
+
+    long before = this.heapUsage(info.getGcInfo().getMemoryUsageBeforeGc());
+    this.allocated += Math.max(0, before - this.heapUsed);
+    this.heapUsed = this.heapUsage(info.getGcInfo().getMemoryUsageAfterGc());
+  }
+
+  private long heapUsage(Map<String, MemoryUsage> pools) {
+    long used = 0;
+
+    for (Map.Entry<String, MemoryUsage> pool : pools.entrySet()) {
+      if (this.heapPools.contains(pool.getKey())) {
+        used += pool.getValue().getUsed();
+      }
+    }
+
+    return used;
+  }
+
+  /**
+   * Retrieves the estimated amount of memory which has been allocated.
+   *
+   * @return an amount of bytes.
+   */
+  synchronized long getAllocated() {
+    return this.allocated;
+  }
+
+  /**
+   * Retrieves the amount of collections which did not pause the application.
+   *
+   * @return an amount of collections.
+   */
+  synchronized long getConcurrentCycles() {
+    return this.concurrentCycles;
+  }
+
+  /**
+   * Retrieves the durations of all pauses.
+   *
+   * @return a histogram of durations (in nanoseconds with a resolution of one millisecond).
+   */
+  synchronized Histogram getPauses() {
+    Histogram pauses = new Histogram();
+    pauses.add(this.pauses);
+    return pauses;
+  }
+
+  /**
+   * Retrieves the total duration of all pauses.
+   *
+   * @return a duration (in milliseconds).
+   */
+  synchronized long getPauseTime() {
+    return this.pauseTime;
+  }
+}
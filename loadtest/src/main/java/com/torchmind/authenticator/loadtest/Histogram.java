@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.loadtest;
+
+/**
+ * Provides a histogram of latencies which is owned by a single thread at a time.
+ *
+ * Values are recorded into log-linear buckets (32 linear sub-buckets per power of two) and thus
+ * all reported percentiles are accurate to within 3.2%. Histograms of multiple threads are
+ * combined via {@link #add(Histogram)} once recording has ended. This type intentionally does not
+ * rely on the histogram of the library in order to permit measuring releases which predate it.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+  private long count;
+  private long max;
+  private double sum;
+
+  /**
+   * Calculates the bucket which is responsible for a certain value.
+   *
+   * @param value a non-negative value.
+   * @return a bucket index.
+   */
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Calculates the largest value which is attributed to a certain bucket.
+   *
+   * @param bucket a bucket index.
+   * @return a value.
+   */
+  static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+    return lower + (1L << shift) - 1;
+  }
+
+  /**
+   * Adds all values of another histogram to this histogram.
+   *
+   * @param other a histogram.
+   */
+  void add(Histogram other) {
+    for (int i = 0; i < this.counts.length; ++i) {
+      this.counts[i] += other.counts[i];
+    }
+
+    this.count += other.count;
+    this.max = Math.max(this.max, other.max);
+    this.sum += other.sum;
+  }
+
+  /**
+   * Retrieves the total amount of recorded values.
+   *
+   * @return an amount of values.
+   */
+  long getCount() {
+    return this.count;
+  }
+
+  /**
+   * Retrieves the largest recorded value.
+   *
+   * @return a value.
+   */
+  long getMax() {
+    return this.max;
+  }
+
+  /**
+   * Calculates the arithmetic mean of all recorded values.
+   *
+   * @return a value or zero when no values have been recorded.
+   */
+  double getMean() {
+    return this.count == 0 ? 0 : this.sum / this.count;
+  }
+
+  /**
+   * Estimates the value at a certain percentile.
+   *
+   * @param percentile a percentile (between 0 and 100).
+   * @return a value or zero when no values have been recorded.
+   * @throws IllegalArgumentException when the percentile is out of range.
+   */
+  long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100");
+    }
+    if (this.count == 0) {
+      return 0;
+    }
+
+    long threshold = Math.max(1, (long) Math.ceil(this.count * percentile / 100));
+    long seen = 0;
+
+    for (int i = 0; i < this.counts.length; ++i) {
+      seen += this.counts[i];
+
+      if (seen >= threshold) {
+        return Math.min(this.max, upperBound(i));
+      }
+    }
+
+    return this.max;
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value a value; negative values are recorded as zero.
+   */
+  void record(long value) {
+    value = Math.max(0, value);
+
+    ++this.counts[bucket(value)];
+    ++this.count;
+    this.max = Math.max(this.max, value);
+    this.sum += value;
+  }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.loadtest;
+
+import com.torchmind.authenticator.TokenGenerator;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates login storms against {@code PeriodTokenGenerator#validateCode} at a fixed open-loop
+ * rate.
+ *
+ * Requests are scheduled ahead of time according to the selected profile and are submitted
+ * regardless of whether previous requests have completed. Latencies are measured from the time at
+ * which a request was scheduled (rather than the time at which it was actually submitted) and
+ * thus include the time a request spent waiting behind slower requests. This corrects for
+ * coordinated omission which would otherwise hide stalls (such as garbage collection pauses) from
+ * the reported percentiles. The service time (excluding the wait) is reported separately.
+ *
+ * Requests are either submitted by a fixed set of platform threads (each of which is responsible
+ * for an equal share of the schedule) or by a dispatcher which starts a virtual thread per request
+ * (requires Java 21 or newer). Options are passed in the form {@code --name=value}:
+ *
+ * <ul>
+ * <li>{@code profile} - one of {@code steady}, {@code morning-peak} or {@code
+ * credential-stuffing} (defaults to {@code steady})</li>
+ * <li>{@code rate} - the peak rate in validations per second (defaults to the rate of the
+ * profile)</li>
+ * <li>{@code accounts} - the amount of distinct secrets (defaults to 1,000,000)</li>
+ * <li>{@code range} - the amount of periods to accept in both directions (defaults to 1)</li>
+ * <li>{@code threads} - the amount of platform threads (defaults to the amount of available
+ * processors)</li>
+ * <li>{@code virtual} - whether to submit requests from virtual threads (defaults to false)</li>
+ * <li>{@code engine} - the HMAC engine of the generator (defaults to the library default)</li>
+ * <li>{@code warmup} - the warmup duration in seconds (defaults to 10)</li>
+ * <li>{@code duration} - the measurement duration in seconds (defaults to 30)</li>
+ * <li>{@code csv} - a file to which a summary line is appended (e.g. in order to compare
+ * releases)</li>
+ * </ul>
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class LoadTest {
+
+  private static final int SHARDS = 64;
+  private static final long START_DELAY = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final Workload workload;
+  private final Profile profile;
+  private final int rate;
+  private final long start;
+  private final long measurementStart;
+  private final long end;
+  private final long epochMillis;
+  private final Recorder[] recorders = new Recorder[SHARDS];
+
+  LoadTest(Workload workload, Profile profile, int rate, int warmup, int duration) {
+    this.workload = workload;
+    this.profile = profile;
+    this.rate = rate;
+
+    this.epochMillis = System.currentTimeMillis();
+    this.start = System.nanoTime() + START_DELAY;
+    this.measurementStart = this.start + TimeUnit.SECONDS.toNanos(warmup);
+    this.end = this.measurementStart + TimeUnit.SECONDS.toNanos(duration);
+
+    for (int i = 0; i < SHARDS; ++i) {
+      this.recorders[i] = new Recorder();
+    }
+  }
+
+  /**
+   * Executes the load test.
+   *
+   * @param args a set of options.
+   * @throws Exception when the test cannot be executed.
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || arg.indexOf('=') == -1) {
+        System.err.println("Invalid option: " + arg + " (expected --name=value)");
+        System.exit(1);
+        return;
+      }
+
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+
+    Profile profile;
+    try {
+      profile = Profile.forName(options.getOrDefault("profile", "steady"));
+    } catch (IllegalArgumentException ex) {
+      System.err.println("Unknown profile: " + options.get("profile"));
+      System.exit(1);
+      return;
+    }
+
+    int rate = integer(options, "rate", profile.getRate());
+    int accounts = integer(options, "accounts", 1_000_000);
+    int range = integer(options, "range", 1);
+    int threads = integer(options, "threads", Runtime.getRuntime().availableProcessors());
+    boolean virtual = Boolean.parseBoolean(options.getOrDefault("virtual", "false"));
+    String engine = options.get("engine");
+    int warmup = integer(options, "warmup", 10);
+    int duration = integer(options, "duration", 30);
+
+    System.out.printf("Library: %s%n",
+        TokenGenerator.class.getProtectionDomain().getCodeSource().getLocation());
+    System.out.printf("Profile: %s (rate=%d/s, accounts=%d, range=%d, %s, engine=%s)%n", profile,
+        rate, accounts, range, virtual ? "virtual threads" : threads + " platform threads",
+        engine == null ? "default" : engine);
+
+    ExecutorService executor = null;
+    if (virtual && (executor = createVirtualExecutor()) == null) {
+      System.err.println("Virtual threads require Java 21 or newer");
+      System.exit(1);
+      return;
+    }
+
+    Workload workload = new Workload(profile, engine, accounts, range);
+    LoadTest test = new LoadTest(workload, profile, rate, warmup, duration);
+    Report report = virtual ? test.runVirtual(executor) : test.run(threads);
+
+    report.print(System.out);
+    if (options.containsKey("csv")) {
+      report.append(Paths.get(options.get("csv")), profile, virtual ? "virtual" : "platform");
+    }
+  }
+
+  private static int integer(Map<String, String> options, String name, int defaultValue) {
+    String value = options.get(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /**
+   * Creates an executor which starts a new virtual thread per task.
+   *
+   * @return an executor or null if the Java VM does not support virtual threads.
+   */
+  private static ExecutorService createVirtualExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Waits until the specified point in time.
+   *
+   * Since parking may overshoot by tens of microseconds, the final stretch is spent yielding.
+   *
+   * @param deadline a point in time (as returned by {@link System#nanoTime()}).
+   */
+  private static void awaitDeadline(long deadline) {
+    long remaining;
+
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      if (remaining > 200_000) {
+        LockSupport.parkNanos(remaining - 100_000);
+      } else {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Drives the schedule from a fixed set of platform threads.
+   *
+   * @param threads an amount of threads.
+   * @return a report.
+   * @throws InterruptedException when interrupted while awaiting the threads.
+   */
+  Report run(int threads) throws InterruptedException {
+    Thread[] workers = new Thread[threads];
+
+    for (int i = 0; i < threads; ++i) {
+      Schedule schedule = new Schedule(this.profile, this.rate, this.start, this.measurementStart,
+          this.end, i, threads);
+      Recorder recorder = this.recorders[i % SHARDS];
+
+      workers[i] = new Thread(() -> this.drive(schedule, recorder), "load-test-" + i);
+      workers[i].start();
+    }
+
+    GcMonitor monitor = this.awaitMeasurement();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    monitor.stop();
+
+    return this.report(monitor);
+  }
+
+  /**
+   * Drives the schedule from a dispatcher which submits each request as a separate task (e.g. to
+   * an executor which starts a virtual thread per task).
+   *
+   * @param executor an executor which is shut down once all requests have been submitted.
+   * @return a report.
+   * @throws InterruptedException when interrupted while awaiting the requests.
+   */
+  Report runVirtual(ExecutorService executor) throws InterruptedException {
+    Schedule schedule = new Schedule(this.profile, this.rate, this.start, this.measurementStart,
+        this.end, 0, 1);
+    Thread dispatcher = new Thread(() -> {
+      SplittableRandom random = new SplittableRandom();
+      long intended;
+
+      while ((intended = schedule.next()) < this.end) {
+        Workload.Request request = new Workload.Request();
+        this.workload.prepare(random, this.toEpochMillis(intended), request);
+        awaitDeadline(intended);
+
+        long scheduled = intended;
+        executor.execute(() -> {
+          long started = System.nanoTime();
+          boolean accepted = this.workload.validate(request);
+          long completed = System.nanoTime();
+
+          if (scheduled >= this.measurementStart) {
+            this.recorders[(int) (Thread.currentThread().getId() % SHARDS)]
+                .record(scheduled, started, completed, accepted);
+          }
+        });
+      }
+    }, "load-test-dispatcher");
+    dispatcher.start();
+
+    GcMonitor monitor = this.awaitMeasurement();
+    dispatcher.join();
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    monitor.stop();
+
+    return this.report(monitor);
+  }
+
+  /**
+   * Submits the requests of a schedule from the calling thread.
+   *
+   * The next request is prepared (which includes the generation of valid codes) before waiting
+   * for its scheduled time in order to exclude the cost of the client from the measurement.
+   */
+  private void drive(Schedule schedule, Recorder recorder) {
+    SplittableRandom random = new SplittableRandom();
+    Workload.Request request = new Workload.Request();
+    long intended;
+
+    while ((intended = schedule.next()) < this.end) {
+      this.workload.prepare(random, this.toEpochMillis(intended), request);
+      awaitDeadline(intended);
+
+      long started = System.nanoTime();
+      boolean accepted = this.workload.validate(request);
+      long completed = System.nanoTime();
+
+      if (intended >= this.measurementStart) {
+        recorder.record(intended, started, completed, accepted);
+      }
+    }
+  }
+
+  private GcMonitor awaitMeasurement() {
+    awaitDeadline(this.measurementStart);
+    return GcMonitor.start();
+  }
+
+  private long toEpochMillis(long nanos) {
+    return this.epochMillis + TimeUnit.NANOSECONDS.toMillis(nanos - this.start + START_DELAY);
+  }
+
+  private Report report(GcMonitor monitor) {
+    Recorder total = new Recorder();
+
+    for (Recorder recorder : this.recorders) {
+      synchronized (recorder) {
+        total.latency.add(recorder.latency);
+        total.service.add(recorder.service);
+        total.accepted += recorder.accepted;
+        total.rejected += recorder.rejected;
+      }
+    }
+
+    return new Report(this.rate, this.end - this.measurementStart, total, monitor);
+  }
+
+  /**
+   * Computes the points in time at which the requests of a single submitter are due.
+   *
+   * When multiple submitters share a schedule, each of them is responsible for every n-th request
+   * and thus the submitters are offset by a single interval each.
+   */
+  static final class Schedule {
+
+    private final Profile profile;
+    private final double rate;
+    private final long measurementStart;
+    private final double duration;
+    private final int submitters;
+    private double next;
+
+    Schedule(Profile profile, double rate, long start, long measurementStart, long end, int index,
+        int submitters) {
+      this.profile = profile;
+      this.rate = rate;
+      this.measurementStart = measurementStart;
+      this.duration = (end - measurementStart) / 1e9;
+      this.submitters = submitters;
+      this.next = start + index * 1e9 / this.rateAt(start);
+    }
+
+    private double rateAt(double time) {
+      return Math.max(1, this.rate * this.profile
+          .load((time - this.measurementStart) / 1e9, this.duration));
+    }
+
+    /**
+     * Retrieves the point in time at which the next request is due.
+     *
+     * @return a point in time (as returned by {@link System#nanoTime()}).
+     */
+    long next() {
+      long intended = (long) this.next;
+      this.next += this.submitters * 1e9 / this.rateAt(this.next);
+      return intended;
+    }
+  }
+
+  /**
+   * Aggregates the outcome of the requests which have been recorded by a set of threads.
+   */
+  private static final class Recorder {
+
+    private final Histogram latency = new Histogram();
+    private final Histogram service = new Histogram();
+    private long accepted;
+    private long rejected;
+
+    private synchronized void record(long intended, long started, long completed,
+        boolean accepted) {
+      this.latency.record(completed - intended);
+      this.service.record(completed - started);
+
+      if (accepted) {
+        ++this.accepted;
+      } else {
+        ++this.rejected;
+      }
+    }
+  }
+
+  /**
+   * Summarizes the outcome of a load test.
+   */
+  static final class Report {
+
+    private final int rate;
+    private final long elapsed;
+    private final Recorder recorder;
+    private final GcMonitor monitor;
+
+    private Report(int rate, long elapsed, Recorder recorder, GcMonitor monitor) {
+      this.rate = rate;
+      this.elapsed = elapsed;
+      this.recorder = recorder;
+      this.monitor = monitor;
+    }
+
+    private double seconds() {
+      return this.elapsed / 1e9;
+    }
+
+    private long requests() {
+      return this.recorder.accepted + this.recorder.rejected;
+    }
+
+    /**
+     * Retrieves the amount of requests which have been accepted during the measurement.
+     *
+     * @return an amount of requests.
+     */
+    long getAccepted() {
+      return this.recorder.accepted;
+    }
+
+    /**
+     * Retrieves the latencies of all requests which have been scheduled during the measurement.
+     *
+     * @return a histogram (in nanoseconds).
+     */
+    Histogram getLatency() {
+      return this.recorder.latency;
+    }
+
+    void print(PrintStream out) {
+      Histogram pauses = this.monitor.getPauses();
+      long requests = this.requests();
+
+      out.printf("Requests: %d in %.1f s (%.0f/s, peak target %d/s), accepted=%.2f%%%n", requests,
+          this.seconds(), requests / this.seconds(), this.rate,
+          requests == 0 ? 0 : this.recorder.accepted * 100.0 / requests);
+      printLatency(out, "Latency (us)", this.recorder.latency);
+      printLatency(out, "Service time (us)", this.recorder.service);
+      out.printf("GC: pauses=%d total=%d ms max=%d ms p99=%d ms, concurrent cycles=%d%n",
+          pauses.getCount(), this.monitor.getPauseTime(), pauses.getMax() / 1_000_000,
+          pauses.getPercentile(99) / 1_000_000, this.monitor.getConcurrentCycles());
+      out.printf("Allocation: %.1f MB/s (%.0f bytes per request, including the client)%n",
+          this.monitor.getAllocated() / this.seconds() / 1e6,
+          requests == 0 ? 0 : (double) this.monitor.getAllocated() / requests);
+    }
+
+    private static void printLatency(PrintStream out, String label, Histogram histogram) {
+      out.printf("%s: mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n", label,
+          histogram.getMean() / 1e3, histogram.getPercentile(50) / 1e3,
+          histogram.getPercentile(90) / 1e3, histogram.getPercentile(99) / 1e3,
+          histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    void append(Path path, Profile profile, String threads) throws IOException {
+      StringBuilder line = new StringBuilder();
+
+      if (!Files.exists(path)) {
+        line.append("library,profile,threads,rate,throughput,accepted,p50_us,p99_us,p999_us,")
+            .append("max_us,gc_pauses,gc_pause_ms,alloc_mb_s\n");
+      }
+
+      Histogram latency = this.recorder.latency;
+      line.append(TokenGenerator.class.getProtectionDomain().getCodeSource().getLocation())
+          .append(',').append(profile).append(',').append(threads).append(',').append(this.rate)
+          .append(String.format(Locale.ROOT, ",%.0f,%d,%.1f,%.1f,%.1f,%.1f,%d,%d,%.1f%n",
+              this.requests() / this.seconds(), this.recorder.accepted,
+              latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3,
+              latency.getPercentile(99.9) / 1e3, latency.getMax() / 1e3,
+              this.monitor.getPauses().getCount(), this.monitor.getPauseTime(),
+              this.monitor.getAllocated() / this.seconds() / 1e6));
+
+      Files.write(path, line.toString().getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+  }
+}
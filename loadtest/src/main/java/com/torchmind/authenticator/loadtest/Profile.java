@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.loadtest;
+
+import java.util.Locale;
+
+/**
+ * Provides a list of built in traffic profiles.
+ *
+ * Each profile defines the peak rate of validations, the shape of the load over time as well as
+ * the mix of codes which are submitted by clients. Valid codes are generated for the clock of the
+ * client which deviates from the clock of the server by a normally distributed skew.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+enum Profile {
+
+  /**
+   * Simulates a constant amount of logins throughout the day.
+   */
+  STEADY(5_000, 1.0, 0, 0.97, 0.01, 2),
+
+  /**
+   * Simulates employees logging in at the start of their work day.
+   *
+   * The load starts at 10% of the peak rate and ramps up linearly over the first quarter of the
+   * measurement. Users occasionally mistype their codes, submit a code after it has expired or
+   * rely on devices with poorly synchronized clocks.
+   */
+  MORNING_PEAK(50_000, 0.1, 0.25, 0.93, 0.02, 8),
+
+  /**
+   * Simulates an attacker who submits leaked passwords alongside guessed codes across the entire
+   * account base (nearly all codes are rejected and thus the entire window is computed).
+   */
+  CREDENTIAL_STUFFING(50_000, 1.0, 0, 0.001, 0, 0);
+
+  private final int rate;
+  private final double initialLoad;
+  private final double rampUp;
+  private final double validRatio;
+  private final double expiredRatio;
+  private final double skewSeconds;
+
+  Profile(int rate, double initialLoad, double rampUp, double validRatio, double expiredRatio,
+      double skewSeconds) {
+    this.rate = rate;
+    this.initialLoad = initialLoad;
+    this.rampUp = rampUp;
+    this.validRatio = validRatio;
+    this.expiredRatio = expiredRatio;
+    this.skewSeconds = skewSeconds;
+  }
+
+  /**
+   * Resolves a profile based on its command line name (e.g. {@code morning-peak}).
+   *
+   * @param name a name.
+   * @return a profile.
+   * @throws IllegalArgumentException when no such profile exists.
+   */
+  static Profile forName(String name) {
+    return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+  }
+
+  /**
+   * Retrieves the ratio of codes which have expired before their submission.
+   *
+   * @return a ratio (between 0 and 1).
+   */
+  double getExpiredRatio() {
+    return this.expiredRatio;
+  }
+
+  /**
+   * Retrieves the peak rate of this profile.
+   *
+   * @return an amount of validations per second.
+   */
+  int getRate() {
+    return this.rate;
+  }
+
+  /**
+   * Retrieves the standard deviation of the clock skew between clients and the server.
+   *
+   * @return a skew (in seconds).
+   */
+  double getSkewSeconds() {
+    return this.skewSeconds;
+  }
+
+  /**
+   * Retrieves the ratio of codes which are valid for the clock of the client (the remaining codes
+   * which have not expired are mistyped).
+   *
+   * @return a ratio (between 0 and 1).
+   */
+  double getValidRatio() {
+    return this.validRatio;
+  }
+
+  /**
+   * Calculates the fraction of the peak rate at a certain point in time.
+   *
+   * @param elapsed the time which has passed since the start of the measurement (negative values
+   * refer to the warmup).
+   * @param duration the total duration of the measurement.
+   * @return a fraction (between 0 and 1).
+   */
+  double load(double elapsed, double duration) {
+    double rampUp = this.rampUp * duration;
+
+    if (elapsed <= 0) {
+      return this.initialLoad;
+    }
+    if (elapsed >= rampUp) {
+      return 1.0;
+    }
+
+    return this.initialLoad + (1.0 - this.initialLoad) * elapsed / rampUp;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return this.name().toLowerCase(Locale.ROOT).replace('_', '-');
+  }
+}
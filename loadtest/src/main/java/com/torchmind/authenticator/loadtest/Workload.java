@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.loadtest;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import javax.crypto.SecretKey;
+
+/**
+ * Represents the account base and code mix which is submitted to a generator.
+ *
+ * The library is exclusively accessed through methods which are shared by all of its releases.
+ * Since the parameter type of {@code validateCode} has been widened from {@link String} to {@link
+ * CharSequence} over time, the method is bound at runtime and the harness may thus be executed
+ * against any release by replacing the library on the class path.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Workload {
+
+  private static final long PERIOD = 30;
+
+  private final Profile profile;
+  private final PeriodTokenGenerator generator;
+  private final MethodHandle validateCode;
+  private final SecretKey[] secretKeys;
+  private final int range;
+
+  Workload(Profile profile, String engine, int accounts, int range) {
+    this.profile = profile;
+    this.generator = createGenerator(engine);
+    this.validateCode = bindValidateCode();
+    this.secretKeys = new SecretKey[accounts];
+    this.range = range;
+
+    for (int i = 0; i < accounts; ++i) {
+      this.secretKeys[i] = this.generator.generateSecret();
+    }
+  }
+
+  /**
+   * Creates a generator which uses the specified HMAC engine.
+   *
+   * @param engine an engine name or null to use the default engine.
+   * @return a generator.
+   * @throws IllegalArgumentException when the library does not support the engine.
+   */
+  private static PeriodTokenGenerator createGenerator(String engine) {
+    TokenGenerator.Builder builder = TokenGenerator.builder();
+
+    if (engine != null) {
+      try {
+        Class<?> type = Class.forName("com.torchmind.authenticator.TokenGenerator$Engine");
+        Method method = TokenGenerator.Builder.class.getMethod("engine", type);
+        method.invoke(builder, enumConstant(type, engine.toUpperCase(Locale.ROOT)));
+      } catch (ReflectiveOperationException ex) {
+        throw new IllegalArgumentException(
+            "Engine " + engine + " is not supported by this release of the library", ex);
+      }
+    }
+
+    return builder.createPeriodGenerator("LoadTest");
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object enumConstant(Class<?> type, String name) {
+    return Enum.valueOf((Class<? extends Enum>) type, name);
+  }
+
+  private static MethodHandle bindValidateCode() {
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+    for (Class<?> codeType : new Class<?>[]{CharSequence.class, String.class}) {
+      try {
+        return lookup.findVirtual(PeriodTokenGenerator.class, "validateCode",
+            MethodType.methodType(boolean.class, codeType, SecretKey.class, int.class))
+            .asType(MethodType.methodType(boolean.class, PeriodTokenGenerator.class, String.class,
+                SecretKey.class, int.class));
+      } catch (NoSuchMethodException | IllegalAccessException ignore) {
+      }
+    }
+
+    throw new IllegalStateException("Unsupported release: validateCode is not available");
+  }
+
+  /**
+   * Retrieves the amount of accounts.
+   *
+   * @return an amount of accounts.
+   */
+  int getAccounts() {
+    return this.secretKeys.length;
+  }
+
+  /**
+   * Prepares the next request of a client.
+   *
+   * @param random a random source.
+   * @param epochMillis the time at which the request is submitted (according to the server).
+   * @param request a request to populate.
+   */
+  void prepare(SplittableRandom random, long epochMillis, Request request) {
+    int account = random.nextInt(this.secretKeys.length);
+    double kind = random.nextDouble();
+    String code;
+
+    if (kind < this.profile.getValidRatio()) {
+      long skew = (long) (nextGaussian(random) * this.profile.getSkewSeconds() * 1000);
+      code = this.generator
+          .generateCode(this.secretKeys[account], Instant.ofEpochMilli(epochMillis + skew));
+    } else if (kind < this.profile.getValidRatio() + this.profile.getExpiredRatio()) {
+      long age = (this.range + 1 + random.nextInt(3)) * PERIOD * 1000;
+      code = this.generator
+          .generateCode(this.secretKeys[account], Instant.ofEpochMilli(epochMillis - age));
+    } else {
+      code = formatCode(random.nextInt(1_000_000));
+    }
+
+    request.account = account;
+    request.code = code;
+  }
+
+  /**
+   * Validates a request against the current time of the server.
+   *
+   * @param request a request.
+   * @return true if the code has been accepted, false otherwise.
+   */
+  boolean validate(Request request) {
+    try {
+      return (boolean) this.validateCode
+          .invokeExact(this.generator, request.code, this.secretKeys[request.account], this.range);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException("Validation failed", ex);
+    }
+  }
+
+  private static String formatCode(int code) {
+    char[] digits = new char[6];
+
+    for (int i = digits.length - 1; i >= 0; --i) {
+      digits[i] = (char) ('0' + code % 10);
+      code /= 10;
+    }
+
+    return new String(digits);
+  }
+
+  /**
+   * Generates a normally distributed value (using the Box-Muller transform as {@link
+   * SplittableRandom} does not provide one).
+   */
+  private static double nextGaussian(SplittableRandom random) {
+    double u = 1.0 - random.nextDouble();
+    double v = random.nextDouble();
+
+    return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+  }
+
+  /**
+   * Represents a single request of a client.
+   */
+  static final class Request {
+
+    int account;
+    String code;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.loadtest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class LoadTestTest {
+
+    @Test
+    public void histogram() throws Exception {
+        Histogram histogram = new Histogram();
+
+        for (long i = 1; i <= 100_000; ++i) {
+            histogram.record(i * 1000);
+        }
+
+        Assert.assertEquals(100_000, histogram.getCount());
+        Assert.assertEquals(100_000_000, histogram.getMax());
+        Assert.assertEquals(50_000_000, histogram.getPercentile(50), 50_000_000 * 0.032);
+        Assert.assertEquals(99_900_000, histogram.getPercentile(99.9), 99_900_000 * 0.032);
+
+        for (long value = 0; value < 1L << 40; value = value * 3 + 1) {
+            Assert.assertTrue(Histogram.upperBound(Histogram.bucket(value)) >= value);
+            Assert.assertTrue(Histogram.bucket(value) == 0 || Histogram.upperBound(Histogram.bucket(value) - 1) < value);
+        }
+    }
+
+    @Test
+    public void schedule() throws Exception {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        int[] counts = new int[2];
+
+        // a ramp from 10% to 100% over the first quarter averages to 88.75% of the peak rate
+        for (int i = 0; i < 2; ++i) {
+            LoadTest.Schedule schedule = new LoadTest.Schedule(Profile.MORNING_PEAK, 10_000, 0, second, 5 * second, i, 2);
+            long intended;
+
+            while ((intended = schedule.next()) < 5 * second) {
+                counts[intended < second ? 0 : 1]++;
+            }
+        }
+
+        Assert.assertEquals(1_000, counts[0], 10);
+        Assert.assertEquals(35_500, counts[1], 100);
+    }
+
+    @Test
+    public void profiles() throws Exception {
+        Assert.assertEquals(Profile.MORNING_PEAK, Profile.forName("morning-peak"));
+        Assert.assertEquals("credential-stuffing", Profile.CREDENTIAL_STUFFING.toString());
+        Assert.assertEquals(1.0, Profile.STEADY.load(-1, 10), 0);
+        Assert.assertEquals(0.55, Profile.MORNING_PEAK.load(1.25, 10), 1e-9);
+    }
+
+    @Test
+    public void run() throws Exception {
+        Workload workload = new Workload(Profile.STEADY, "builtin", 100, 1);
+        LoadTest.Report report = new LoadTest(workload, Profile.STEADY, 2_000, 0, 1).run(2);
+
+        Assert.assertEquals(2_000, report.getLatency().getCount(), 2);
+        Assert.assertEquals(0.97, report.getAccepted() / 2_000.0, 0.02);
+    }
+
+    @Test
+    public void runTasks() throws Exception {
+        Workload workload = new Workload(Profile.CREDENTIAL_STUFFING, null, 100, 1);
+        LoadTest.Report report = new LoadTest(workload, Profile.CREDENTIAL_STUFFING, 2_000, 0, 1)
+                .runVirtual(Executors.newCachedThreadPool());
+
+        Assert.assertEquals(2_000, report.getLatency().getCount(), 2);
+        Assert.assertTrue(report.getAccepted() < 20);
+    }
+}
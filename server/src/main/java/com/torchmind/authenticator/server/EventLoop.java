@@ -0,0 +1,258 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serves a set of connections on a single thread using a selector.
+ *
+ * Since every connection is served by the same thread for its entire lifetime, the HMAC state
+ * which is cached per thread by the generator is reused across all requests of a connection.
+ * Requests are processed in the order of their arrival and all responses which result from a
+ * single read are written at once. Once the amount of unwritten responses exceeds {@link
+ * #WATERMARK}, a connection is no longer read from until its client has caught up.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class EventLoop implements Runnable {
+
+  /**
+   * Defines the initial size of the buffers of each connection.
+   */
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Defines the amount of unwritten response data at which requests are no longer processed.
+   */
+  private static final int WATERMARK = 64 * 1024;
+
+  private final PeriodTokenGenerator generator;
+  private final int maximumFrameLength;
+  private final int maximumWindow;
+  private final int maximumBatchSize;
+  private final Selector selector;
+  private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean running = true;
+
+  EventLoop(PeriodTokenGenerator generator, int maximumFrameLength, int maximumWindow,
+      int maximumBatchSize) throws IOException {
+    this.generator = generator;
+    this.maximumFrameLength = maximumFrameLength;
+    this.maximumWindow = maximumWindow;
+    this.maximumBatchSize = maximumBatchSize;
+    this.selector = Selector.open();
+  }
+
+  /**
+   * Hands a newly accepted connection to this loop.
+   *
+   * @param channel a channel.
+   */
+  void register(SocketChannel channel) {
+    this.pending.offer(channel);
+    this.selector.wakeup();
+  }
+
+  /**
+   * Stops this loop and closes all of its connections.
+   */
+  void shutdown() {
+    this.running = false;
+    this.selector.wakeup();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void run() {
+    try {
+      while (this.running) {
+        this.selector.select();
+        this.registerPending();
+
+        Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              connection.read();
+            } else if (key.isWritable()) {
+              connection.pump();
+            }
+          } catch (IOException | RuntimeException ex) {
+            // unexpected failures (such as engine errors) only terminate the affected connection
+            connection.close();
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException ex) {
+      // the loop cannot continue without its selector and thus terminates
+    } finally {
+      this.closeAll();
+    }
+  }
+
+  private void registerPending() {
+    SocketChannel channel;
+
+    while ((channel = this.pending.poll()) != null) {
+      try {
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+      } catch (IOException ex) {
+        closeQuietly(channel);
+      }
+    }
+  }
+
+  private void closeAll() {
+    SocketChannel channel;
+    while ((channel = this.pending.poll()) != null) {
+      closeQuietly(channel);
+    }
+
+    try {
+      for (SelectionKey key : this.selector.keys()) {
+        ((Connection) key.attachment()).close();
+      }
+
+      this.selector.close();
+    } catch (IOException | ClosedSelectorException ex) {
+      // nothing left to release
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException ignore) {
+      // the connection is discarded regardless
+    }
+  }
+
+  /**
+   * Represents the state of a single client connection.
+   */
+  private final class Connection {
+
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private void close() {
+      this.key.cancel();
+      closeQuietly(this.channel);
+    }
+
+    private void read() throws IOException {
+      if (this.channel.read(this.in) < 0) {
+        this.close();
+        return;
+      }
+
+      this.pump();
+    }
+
+    /**
+     * Processes all buffered requests and writes their responses until either no complete request
+     * remains or the client stops accepting responses.
+     *
+     * @throws IOException when the connection fails or a client sends an invalid frame.
+     */
+    private void pump() throws IOException {
+      boolean progress;
+
+      do {
+        progress = this.process();
+
+        this.out.flip();
+        this.channel.write(this.out);
+        this.out.compact();
+      } while (progress && this.out.position() == 0);
+
+      this.key.interestOps(this.out.position() == 0 ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Processes buffered requests until no complete request remains or the watermark is exceeded.
+     *
+     * @return true if at least one request has been processed and further requests may remain.
+     * @throws IOException when an invalid frame length is encountered.
+     */
+    private boolean process() throws IOException {
+      ByteBuffer in = this.in;
+      int required = 0;
+      boolean processed = false;
+
+      in.flip();
+      while (this.out.position() < WATERMARK && in.remaining() >= Protocol.PREFIX_LENGTH) {
+        int length = in.getInt(in.position());
+
+        if (length < Protocol.HEADER_LENGTH || length > EventLoop.this.maximumFrameLength) {
+          throw new IOException("Invalid frame length: " + length);
+        }
+        if (in.remaining() < Protocol.PREFIX_LENGTH + length) {
+          required = Protocol.PREFIX_LENGTH + length;
+          break;
+        }
+
+        int limit = in.limit();
+        int end = in.position() + Protocol.PREFIX_LENGTH + length;
+
+        in.position(in.position() + Protocol.PREFIX_LENGTH).limit(end);
+        this.out = Protocol.ensureRemaining(this.out, Protocol.responseLength(in));
+        Protocol.handle(EventLoop.this.generator, EventLoop.this.maximumWindow,
+            EventLoop.this.maximumBatchSize, in, this.out);
+        in.limit(limit).position(end);
+
+        processed = true;
+      }
+
+      boolean remaining = in.remaining() >= Protocol.PREFIX_LENGTH && required == 0;
+      in.compact();
+
+      if (required > in.capacity()) {
+        ByteBuffer replacement = ByteBuffer.allocate(required);
+        in.flip();
+        replacement.put(in);
+        this.in = replacement;
+      }
+
+      return processed && remaining;
+    }
+  }
+}
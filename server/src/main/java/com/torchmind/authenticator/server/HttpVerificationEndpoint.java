@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.crypto.SecretKey;
+
+/**
+ * Exposes the generation and validation of codes via HTTP using the server which is built into
+ * the JDK.
+ *
+ * Two resources are provided which accept their parameters either within the query string or as
+ * a form encoded request body and respond with JSON documents:
+ *
+ * <pre>
+ * /generate?secret=BASE32[&amp;timestamp=EPOCH_SECONDS]
+ *   -&gt; {"code":"123456"}
+ * /validate?secret=BASE32&amp;code=123456[&amp;timestamp=EPOCH_SECONDS][&amp;past=1][&amp;future=1]
+ *   -&gt; {"valid":true,"offset":0}
+ * </pre>
+ *
+ * When no timestamp is passed, the clock of the generator is consulted. Requests are handled on
+ * virtual threads when supported by the Java VM or a fixed pool of threads (one per available
+ * processor) otherwise. Malformed requests as well as windows which are negative or exceed the
+ * configured maximum (four steps by default) are answered with status 400.
+ *
+ * <strong>Note:</strong> The endpoint neither authenticates clients nor encrypts secrets and
+ * should thus only be bound to the loopback interface or otherwise trusted networks.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class HttpVerificationEndpoint implements AutoCloseable {
+
+  /**
+   * Defines the largest accepted request body.
+   */
+  private static final int MAXIMUM_BODY_LENGTH = 8 * 1024;
+
+  /**
+   * Defines the largest amount of past or future steps which clients may request by default.
+   */
+  public static final int DEFAULT_MAXIMUM_WINDOW = 4;
+
+  private final PeriodTokenGenerator generator;
+  private final int maximumWindow;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private HttpVerificationEndpoint(PeriodTokenGenerator generator, HttpServer server,
+      int maximumWindow) {
+    this.generator = generator;
+    this.maximumWindow = maximumWindow;
+    this.server = server;
+    this.executor = createExecutor();
+
+    server.createContext("/generate", (exchange) -> this.handle(exchange, true));
+    server.createContext("/validate", (exchange) -> this.handle(exchange, false));
+    server.setExecutor(this.executor);
+    server.start();
+  }
+
+  /**
+   * Binds a new endpoint to the specified address and starts serving requests.
+   *
+   * @param generator a generator.
+   * @param address an address.
+   * @return an endpoint.
+   * @throws IOException when binding to the address fails.
+   */
+  public static HttpVerificationEndpoint start(PeriodTokenGenerator generator,
+      InetSocketAddress address) throws IOException {
+    return start(generator, address, DEFAULT_MAXIMUM_WINDOW);
+  }
+
+  /**
+   * Binds a new endpoint to the specified address and starts serving requests.
+   *
+   * @param generator a generator.
+   * @param address an address.
+   * @param maximumWindow the largest amount of past or future steps which clients may request.
+   * @return an endpoint.
+   * @throws IOException when binding to the address fails.
+   * @throws IllegalArgumentException when the maximum window is negative.
+   */
+  public static HttpVerificationEndpoint start(PeriodTokenGenerator generator,
+      InetSocketAddress address, int maximumWindow) throws IOException {
+    Objects.requireNonNull(generator, "generator");
+    if (maximumWindow < 0) {
+      throw new IllegalArgumentException("Maximum window cannot be negative");
+    }
+
+    return new HttpVerificationEndpoint(generator, HttpServer.create(address, 0), maximumWindow);
+  }
+
+  /**
+   * Creates an executor which starts a virtual thread per request when supported by the Java VM.
+   *
+   * @return an executor.
+   */
+  private static ExecutorService createExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+  }
+
+  /**
+   * Stops serving requests.
+   */
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.executor.shutdown();
+  }
+
+  /**
+   * Retrieves the address to which this endpoint has been bound.
+   *
+   * @return an address.
+   */
+  public InetSocketAddress getLocalAddress() {
+    return this.server.getAddress();
+  }
+
+  private void handle(HttpExchange exchange, boolean generate) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+
+      if (!"GET".equals(method) && !"POST".equals(method)) {
+        exchange.getResponseHeaders().set("Allow", "GET, POST");
+        respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+        return;
+      }
+
+      String response;
+      try {
+        Map<String, String> parameters = parameters(exchange);
+        response = generate ? this.generate(parameters) : this.validate(parameters);
+      } catch (IllegalArgumentException ex) {
+        respond(exchange, 400, "{\"error\":\"" + escape(ex.getMessage()) + "\"}");
+        return;
+      }
+
+      respond(exchange, 200, response);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private String generate(Map<String, String> parameters) {
+    SecretKey secretKey = this.generator.parseCode(require(parameters, "secret"));
+    Instant timestamp = timestamp(parameters);
+    String code = timestamp == null ? this.generator.generateCode(secretKey)
+        : this.generator.generateCode(secretKey, timestamp);
+
+    return "{\"code\":\"" + code + "\"}";
+  }
+
+  private String validate(Map<String, String> parameters) {
+    SecretKey secretKey = this.generator.parseCode(require(parameters, "secret"));
+    String code = require(parameters, "code");
+    Instant timestamp = timestamp(parameters);
+    int past = this.window(parameters, "past");
+    int future = this.window(parameters, "future");
+
+    ValidationResult result = timestamp == null
+        ? this.generator.verifyCode(code, secretKey, past, future)
+        : this.generator.verifyCode(code, secretKey, timestamp, past, future);
+    if (!result.isValid()) {
+      return "{\"valid\":false}";
+    }
+
+    return "{\"valid\":true,\"offset\":" + result.getOffset() + "}";
+  }
+
+  private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+    Map<String, String> parameters = new HashMap<>();
+
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query != null) {
+      decode(query, parameters);
+    }
+
+    if ("POST".equals(exchange.getRequestMethod())) {
+      decode(new String(readBody(exchange), StandardCharsets.UTF_8), parameters);
+    }
+
+    return parameters;
+  }
+
+  private static byte[] readBody(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+
+    try (InputStream in = exchange.getRequestBody()) {
+      int length;
+      while ((length = in.read(buffer)) != -1) {
+        if (body.size() + length > MAXIMUM_BODY_LENGTH) {
+          throw new IllegalArgumentException("Request body too large");
+        }
+
+        body.write(buffer, 0, length);
+      }
+    }
+
+    return body.toByteArray();
+  }
+
+  private static void decode(String encoded, Map<String, String> parameters) {
+    for (String pair : encoded.split("&")) {
+      if (pair.isEmpty()) {
+        continue;
+      }
+
+      int separator = pair.indexOf('=');
+      String name = separator == -1 ? pair : pair.substring(0, separator);
+      String value = separator == -1 ? "" : pair.substring(separator + 1);
+
+      parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+  }
+
+  private static String require(Map<String, String> parameters, String name) {
+    String value = parameters.get(name);
+
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Missing parameter: " + name);
+    }
+
+    return value;
+  }
+
+  private static int integer(Map<String, String> parameters, String name, int defaultValue) {
+    String value = parameters.get(name);
+
+    if (value == null) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid parameter: " + name);
+    }
+  }
+
+  /**
+   * Parses an optional window parameter (defaults to one step).
+   *
+   * @param parameters a set of parameters.
+   * @param name the name of the parameter.
+   * @return an amount of steps.
+   * @throws IllegalArgumentException when the amount is negative or exceeds the maximum window.
+   */
+  private int window(Map<String, String> parameters, String name) {
+    int steps = integer(parameters, name, Math.min(1, this.maximumWindow));
+
+    if (steps < 0 || steps > this.maximumWindow) {
+      throw new IllegalArgumentException(
+          "Parameter " + name + " must be between 0 and " + this.maximumWindow);
+    }
+
+    return steps;
+  }
+
+  /**
+   * Parses the optional timestamp parameter.
+   *
+   * @param parameters a set of parameters.
+   * @return a timestamp or null when the current time of the generator is to be used.
+   */
+  private static Instant timestamp(Map<String, String> parameters) {
+    String value = parameters.get("timestamp");
+
+    if (value == null) {
+      return null;
+    }
+
+    try {
+      return Instant.ofEpochSecond(Long.parseLong(value));
+    } catch (NumberFormatException | DateTimeException ex) {
+      throw new IllegalArgumentException("Invalid parameter: timestamp");
+    }
+  }
+
+  private static String escape(String value) {
+    StringBuilder builder = new StringBuilder(value.length());
+
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+
+    return builder.toString();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] encoded = body.getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, encoded.length);
+
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(encoded);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.torchmind.authenticator.LatencyHistogram;
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput and latency of a {@link VerificationServer} on the loopback interface.
+ *
+ * Each connection keeps a fixed amount of requests in flight (pipelining) and validates random
+ * (and thus rejected) codes which forces the server to compute the entire window. Unless a host
+ * is passed, an embedded server is started within the same process. Options are passed in the
+ * form {@code --name=value}:
+ *
+ * <ul>
+ * <li>{@code connections} - the amount of concurrent connections (defaults to 4)</li>
+ * <li>{@code depth} - the amount of requests in flight per connection (defaults to 64)</li>
+ * <li>{@code batch} - the amount of codes per batch request or 0 to send individual requests
+ * (defaults to 0)</li>
+ * <li>{@code warmup} - the warmup duration in seconds (defaults to 3)</li>
+ * <li>{@code duration} - the measurement duration in seconds (defaults to 10)</li>
+ * <li>{@code workers} - the amount of event loops of the embedded server (defaults to the amount
+ * of available processors)</li>
+ * <li>{@code host} and {@code port} - the address of an external server</li>
+ * </ul>
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class LoadTest {
+
+  private static final int KEYS = 1024;
+
+  private final InetSocketAddress address;
+  private final int depth;
+  private final int batch;
+  private final byte[][] keys = new byte[KEYS][];
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder completed = new LongAdder();
+  private volatile boolean recording;
+  private volatile boolean running = true;
+
+  private LoadTest(InetSocketAddress address, int depth, int batch) {
+    this.address = address;
+    this.depth = depth;
+    this.batch = batch;
+
+    PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("LoadTest");
+    for (int i = 0; i < KEYS; ++i) {
+      this.keys[i] = generator.generateSecret().getEncoded();
+    }
+  }
+
+  /**
+   * Executes the load test.
+   *
+   * @param args a set of options.
+   * @throws Exception when the embedded server cannot be started.
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || arg.indexOf('=') == -1) {
+        System.err.println("Invalid option: " + arg + " (expected --name=value)");
+        System.exit(1);
+        return;
+      }
+
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+
+    int connections = integer(options, "connections", 4);
+    int depth = integer(options, "depth", 64);
+    int batch = integer(options, "batch", 0);
+    int warmup = integer(options, "warmup", 3);
+    int duration = integer(options, "duration", 10);
+    int workers = integer(options, "workers", Runtime.getRuntime().availableProcessors());
+
+    VerificationServer server = null;
+    InetSocketAddress address;
+    if (options.containsKey("host")) {
+      address = new InetSocketAddress(options.get("host"), integer(options, "port", 0));
+    } else {
+      server = VerificationServer
+          .builder(TokenGenerator.builder().createPeriodGenerator("LoadTest"))
+          .workers(workers)
+          .start();
+      address = server.getLocalAddress();
+    }
+
+    try {
+      System.out.printf("Target: %s (connections=%d, depth=%d, batch=%d)%n", address, connections,
+          depth, batch);
+      new LoadTest(address, depth, batch).run(connections, warmup, duration);
+    } finally {
+      if (server != null) {
+        server.close();
+      }
+    }
+  }
+
+  private static int integer(Map<String, String> options, String name, int defaultValue) {
+    String value = options.get(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  private void run(int connections, int warmup, int duration) throws InterruptedException {
+    Thread[] threads = new Thread[connections];
+    for (int i = 0; i < connections; ++i) {
+      threads[i] = new Thread(this::drive, "load-test-" + i);
+      threads[i].start();
+    }
+
+    TimeUnit.SECONDS.sleep(warmup);
+    this.recording = true;
+    long started = System.nanoTime();
+
+    TimeUnit.SECONDS.sleep(duration);
+    this.recording = false;
+    long elapsed = System.nanoTime() - started;
+
+    this.running = false;
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long codes = this.completed.sum();
+    System.out.printf("Validated %d codes in %.1f s (%.0f codes/s)%n", codes, elapsed / 1e9,
+        codes / (elapsed / 1e9));
+    System.out.printf("Latency (us): mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+        this.latency.getMean() / 1e3, this.latency.getPercentile(50) / 1e3,
+        this.latency.getPercentile(90) / 1e3, this.latency.getPercentile(99) / 1e3,
+        this.latency.getPercentile(99.9) / 1e3, this.latency.getMax() / 1e3);
+  }
+
+  /**
+   * Submits requests on a single connection until the test ends.
+   *
+   * Once half of the outstanding responses have been received, the same amount of requests is
+   * submitted within a single write in order to keep the pipeline filled.
+   */
+  private void drive() {
+    int mask = Integer.highestOneBit(Math.max(1, this.depth - 1) << 1) - 1;
+    long[] sent = new long[mask + 1];
+    int half = Math.max(1, this.depth / 2);
+
+    try (VerificationClient client = VerificationClient.connect(this.address)) {
+      for (int i = 0; i < this.depth; ++i) {
+        sent[this.send(client) & mask] = System.nanoTime();
+      }
+      client.flush();
+
+      while (this.running) {
+        for (int i = 0; i < half; ++i) {
+          this.receive(client, sent, mask);
+        }
+
+        for (int i = 0; i < half; ++i) {
+          sent[this.send(client) & mask] = System.nanoTime();
+        }
+        client.flush();
+      }
+
+      for (int i = 0; i < this.depth; ++i) {
+        this.receive(client, sent, mask);
+      }
+    } catch (IOException ex) {
+      System.err.println("Connection failed: " + ex.getMessage());
+    }
+  }
+
+  private int send(VerificationClient client) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long timestamp = System.currentTimeMillis() / 1000;
+
+    if (this.batch == 0) {
+      return client.sendVerify(this.keys[random.nextInt(KEYS)], random.nextInt(1_000_000),
+          timestamp, 1, 1);
+    }
+
+    byte[][] keys = new byte[this.batch][];
+    int[] codes = new int[this.batch];
+    for (int i = 0; i < this.batch; ++i) {
+      keys[i] = this.keys[random.nextInt(KEYS)];
+      codes[i] = random.nextInt(1_000_000);
+    }
+
+    return client.sendVerifyBatch(keys, codes, timestamp, 1, 1);
+  }
+
+  private void receive(VerificationClient client, long[] sent, int mask) throws IOException {
+    VerificationClient.Response response = client.receive();
+    long latency = System.nanoTime() - sent[response.getId() & mask];
+
+    if (this.recording) {
+      this.latency.record(latency);
+      this.completed.add(Math.max(1, response.getCount()));
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implements the binary protocol which is spoken by {@link VerificationServer} and {@link
+ * VerificationClient}.
+ *
+ * Each frame is prefixed with its length (excluding the prefix itself) as a four byte integer.
+ * All values are encoded in network byte order. Requests consist of an operation code and an
+ * identifier which is echoed within the response:
+ *
+ * <pre>
+ * request  := length:int32 opcode:int8 id:int32 payload
+ * response := length:int32 status:int8 id:int32 payload
+ *
+ * GENERATE       := timestamp:int64 keyLength:uint8 key
+ *                -&gt; code:int32
+ * VALIDATE       := timestamp:int64 past:uint8 future:uint8 code:int32 keyLength:uint8 key
+ *                -&gt; offset:int32
+ * VALIDATE_BATCH := timestamp:int64 past:uint8 future:uint8 count:uint16
+ *                   (code:int32 keyLength:uint8 key){count}
+ *                -&gt; count:uint16 offset:int32{count}
+ * </pre>
+ *
+ * Timestamps are expressed in seconds since the unix epoch while rejected codes are reported with
+ * an offset of {@link ValidationResult#NO_MATCH}. Malformed requests, requests which reference
+ * invalid keys as well as requests which exceed the window or batch limits of the server are
+ * answered with {@link #STATUS_ERROR} and an empty payload.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Protocol {
+
+  static final byte GENERATE = 1;
+  static final byte VALIDATE = 2;
+  static final byte VALIDATE_BATCH = 3;
+
+  static final byte STATUS_OK = 0;
+  static final byte STATUS_ERROR = 1;
+
+  /**
+   * Defines the length of the length prefix of each frame.
+   */
+  static final int PREFIX_LENGTH = 4;
+
+  /**
+   * Defines the length of the operation code (or status) and identifier of each frame.
+   */
+  static final int HEADER_LENGTH = 5;
+
+  /**
+   * Defines the largest amount of entries within a batch.
+   */
+  static final int MAXIMUM_BATCH_SIZE = 0xFFFF;
+
+  /**
+   * Defines the largest supported key length.
+   */
+  static final int MAXIMUM_KEY_LENGTH = 0xFF;
+
+  private static final int BATCH_COUNT_OFFSET = HEADER_LENGTH + 8 + 2;
+
+  private Protocol() {
+  }
+
+  /**
+   * Calculates the largest possible length of the response to a request.
+   *
+   * @param frame a buffer which contains the payload of a request frame between its position and
+   * limit.
+   * @return a length (including the length prefix).
+   */
+  static int responseLength(ByteBuffer frame) {
+    int position = frame.position();
+
+    if (frame.remaining() >= BATCH_COUNT_OFFSET + 2 && frame.get(position) == VALIDATE_BATCH) {
+      int count = frame.getShort(position + BATCH_COUNT_OFFSET) & 0xFFFF;
+      return PREFIX_LENGTH + HEADER_LENGTH + 2 + count * 4;
+    }
+
+    return PREFIX_LENGTH + HEADER_LENGTH + 4;
+  }
+
+  /**
+   * Processes a single request frame and writes its response.
+   *
+   * @param generator a generator.
+   * @param maximumWindow the largest accepted amount of past or future steps.
+   * @param maximumBatchSize the largest accepted amount of entries within a batch.
+   * @param frame a heap buffer which contains the payload of the request between its position and
+   * limit (the position is advanced to the limit).
+   * @param out a buffer to which the response is written (must provide at least {@link
+   * #responseLength(ByteBuffer)} bytes).
+   */
+  static void handle(PeriodTokenGenerator generator, int maximumWindow, int maximumBatchSize,
+      ByteBuffer frame, ByteBuffer out) {
+    int start = out.position();
+    int id = frame.remaining() >= HEADER_LENGTH ? frame.getInt(frame.position() + 1) : 0;
+
+    out.putInt(0);
+    out.put(STATUS_OK);
+    out.putInt(id);
+
+    try {
+      byte opcode = frame.get();
+      frame.getInt();
+
+      switch (opcode) {
+        case GENERATE:
+          generate(generator, frame, out);
+          break;
+        case VALIDATE:
+          validate(generator, maximumWindow, frame, out);
+          break;
+        case VALIDATE_BATCH:
+          validateBatch(generator, maximumWindow, maximumBatchSize, frame, out);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown operation " + opcode);
+      }
+
+      if (frame.hasRemaining()) {
+        throw new IllegalArgumentException("Trailing data");
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException ex) {
+      out.position(start + PREFIX_LENGTH);
+      out.put(STATUS_ERROR);
+      out.putInt(id);
+    }
+
+    frame.position(frame.limit());
+    out.putInt(start, out.position() - start - PREFIX_LENGTH);
+  }
+
+  private static void generate(PeriodTokenGenerator generator, ByteBuffer frame,
+      ByteBuffer out) {
+    long timestamp = frame.getLong();
+    int keyLength = frame.get() & 0xFF;
+    int keyOffset = skip(frame, keyLength);
+
+    out.putInt(generator.generateCodeInt(frame.array(), keyOffset, keyLength, timestamp));
+  }
+
+  private static void validate(PeriodTokenGenerator generator, int maximumWindow,
+      ByteBuffer frame, ByteBuffer out) {
+    long timestamp = frame.getLong();
+    int past = window(frame.get() & 0xFF, maximumWindow);
+    int future = window(frame.get() & 0xFF, maximumWindow);
+    int code = frame.getInt();
+    int keyLength = frame.get() & 0xFF;
+    int keyOffset = skip(frame, keyLength);
+
+    out.putInt(offsetOf(generator
+        .verifyCode(code, frame.array(), keyOffset, keyLength, timestamp, past, future)));
+  }
+
+  private static void validateBatch(PeriodTokenGenerator generator, int maximumWindow,
+      int maximumBatchSize, ByteBuffer frame, ByteBuffer out) {
+    long timestamp = frame.getLong();
+    int past = window(frame.get() & 0xFF, maximumWindow);
+    int future = window(frame.get() & 0xFF, maximumWindow);
+    int count = frame.getShort() & 0xFFFF;
+
+    if (count > maximumBatchSize) {
+      throw new IllegalArgumentException("Batch exceeds " + maximumBatchSize + " entries");
+    }
+
+    out.putShort((short) count);
+    for (int i = 0; i < count; ++i) {
+      int code = frame.getInt();
+      int keyLength = frame.get() & 0xFF;
+      int keyOffset = skip(frame, keyLength);
+
+      int offset;
+      try {
+        offset = offsetOf(generator
+            .verifyCode(code, frame.array(), keyOffset, keyLength, timestamp, past, future));
+      } catch (IllegalArgumentException ex) {
+        offset = ValidationResult.NO_MATCH;
+      }
+
+      out.putInt(offset);
+    }
+  }
+
+  /**
+   * Ensures that a requested amount of steps does not exceed the window limit of the server.
+   *
+   * @param steps an amount of steps.
+   * @param maximumWindow the largest accepted amount of steps.
+   * @return the amount of steps.
+   * @throws IllegalArgumentException when the amount exceeds the limit.
+   */
+  private static int window(int steps, int maximumWindow) {
+    if (steps < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+    if (steps > maximumWindow) {
+      throw new IllegalArgumentException("Window size cannot exceed " + maximumWindow);
+    }
+
+    return steps;
+  }
+
+  /**
+   * Skips a key within a frame.
+   *
+   * @param frame a frame.
+   * @param length the length of the key.
+   * @return the offset of the key within the backing array of the frame.
+   * @throws BufferUnderflowException when the frame ends prematurely.
+   */
+  private static int skip(ByteBuffer frame, int length) {
+    if (frame.remaining() < length) {
+      throw new BufferUnderflowException();
+    }
+
+    int offset = frame.arrayOffset() + frame.position();
+    frame.position(frame.position() + length);
+    return offset;
+  }
+
+  private static int offsetOf(ValidationResult result) {
+    return result.isValid() ? result.getOffset() : ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Ensures that a buffer provides a certain amount of space and replaces it with a larger buffer
+   * if necessary.
+   *
+   * @param buffer a buffer in write mode.
+   * @param length a required amount of bytes.
+   * @return a buffer which provides at least the requested amount of space.
+   */
+  static ByteBuffer ensureRemaining(ByteBuffer buffer, int length) {
+    if (buffer.remaining() >= length) {
+      return buffer;
+    }
+
+    ByteBuffer replacement = ByteBuffer
+        .allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+    buffer.flip();
+    replacement.put(buffer);
+    return replacement;
+  }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Provides a blocking client for the binary protocol of {@link VerificationServer}.
+ *
+ * Besides the synchronous operations, requests may be pipelined by submitting them via the
+ * {@code send} methods, transmitting them at once via {@link #flush()} and retrieving their
+ * responses (which arrive in the same order) via {@link #receive()}.
+ *
+ * <strong>Note:</strong> Instances of this type are not thread safe. Synchronous operations may
+ * not be invoked while pipelined requests are outstanding.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class VerificationClient implements AutoCloseable {
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final SocketChannel channel;
+  private final Response response = new Response();
+  private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+  private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+  private int nextId;
+
+  private VerificationClient(SocketChannel channel) {
+    this.channel = channel;
+    this.in.flip();
+  }
+
+  /**
+   * Establishes a connection to a server.
+   *
+   * @param address a server address.
+   * @return a client.
+   * @throws IOException when the connection cannot be established.
+   */
+  public static VerificationClient connect(InetSocketAddress address) throws IOException {
+    SocketChannel channel = SocketChannel.open(address);
+
+    try {
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+
+    return new VerificationClient(channel);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+  /**
+   * Writes all buffered requests to the server.
+   *
+   * @throws IOException when the connection fails.
+   */
+  public void flush() throws IOException {
+    this.out.flip();
+    while (this.out.hasRemaining()) {
+      this.channel.write(this.out);
+    }
+    this.out.clear();
+  }
+
+  /**
+   * Generates a code for a specific timestamp.
+   *
+   * @param key a secret key.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return a numeric code.
+   * @throws IllegalArgumentException when the server rejects the key.
+   * @throws IOException when the connection fails.
+   */
+  public int generateCode(byte[] key, long epochSecond) throws IOException {
+    this.sendGenerate(key, epochSecond);
+    this.flush();
+    return this.receiveValue();
+  }
+
+  /**
+   * Retrieves the next response from the server.
+   *
+   * <strong>Note:</strong> The returned instance is reused by subsequent invocations of this
+   * method.
+   *
+   * @return a response.
+   * @throws IOException when the connection fails or is closed by the server.
+   */
+  public Response receive() throws IOException {
+    this.fill(Protocol.PREFIX_LENGTH);
+    int length = this.in.getInt();
+
+    if (length < Protocol.HEADER_LENGTH) {
+      throw new IOException("Invalid frame length: " + length);
+    }
+
+    this.fill(length);
+    int end = this.in.position() + length;
+
+    Response response = this.response;
+    response.status = this.in.get();
+    response.id = this.in.getInt();
+    response.count = 0;
+
+    int remaining = end - this.in.position();
+    if (remaining == 4) {
+      response.values[0] = this.in.getInt();
+      response.count = 1;
+    } else if (remaining >= 2) {
+      int count = this.in.getShort() & 0xFFFF;
+
+      if (response.values.length < count) {
+        response.values = new int[count];
+      }
+      for (int i = 0; i < count; ++i) {
+        response.values[i] = this.in.getInt();
+      }
+      response.count = count;
+    }
+
+    this.in.position(end);
+    return response;
+  }
+
+  /**
+   * Buffers a request which generates a code for a specific timestamp.
+   *
+   * @param key a secret key.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return the identifier of the request.
+   * @throws IllegalArgumentException when the key exceeds 255 bytes.
+   */
+  public int sendGenerate(byte[] key, long epochSecond) {
+    checkKey(key);
+
+    int id = this.nextId++;
+    this.ensureRemaining(Protocol.PREFIX_LENGTH + Protocol.HEADER_LENGTH + 9 + key.length);
+    this.out.putInt(Protocol.HEADER_LENGTH + 9 + key.length);
+    this.out.put(Protocol.GENERATE);
+    this.out.putInt(id);
+    this.out.putLong(epochSecond);
+    this.out.put((byte) key.length);
+    this.out.put(key);
+    return id;
+  }
+
+  /**
+   * Buffers a request which validates a code for a specific timestamp.
+   *
+   * @param key a secret key.
+   * @param code a numeric code.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return the identifier of the request.
+   * @throws IllegalArgumentException when the key exceeds 255 bytes or the window sizes are not
+   * within [0, 255].
+   */
+  public int sendVerify(byte[] key, int code, long epochSecond, int pastSteps, int futureSteps) {
+    checkKey(key);
+    checkWindow(pastSteps, futureSteps);
+
+    int id = this.nextId++;
+    this.ensureRemaining(Protocol.PREFIX_LENGTH + Protocol.HEADER_LENGTH + 15 + key.length);
+    this.out.putInt(Protocol.HEADER_LENGTH + 15 + key.length);
+    this.out.put(Protocol.VALIDATE);
+    this.out.putInt(id);
+    this.out.putLong(epochSecond);
+    this.out.put((byte) pastSteps);
+    this.out.put((byte) futureSteps);
+    this.out.putInt(code);
+    this.out.put((byte) key.length);
+    this.out.put(key);
+    return id;
+  }
+
+  /**
+   * Buffers a request which validates a batch of codes for a specific timestamp.
+   *
+   * @param keys an array of secret keys.
+   * @param codes an array of numeric codes.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return the identifier of the request.
+   * @throws IllegalArgumentException when the arrays differ in length, the batch exceeds 65535
+   * entries, a key exceeds 255 bytes or the window sizes are not within [0, 255].
+   */
+  public int sendVerifyBatch(byte[][] keys, int[] codes, long epochSecond, int pastSteps,
+      int futureSteps) {
+    if (keys.length != codes.length) {
+      throw new IllegalArgumentException("Batch arrays must be of equal length");
+    }
+    if (keys.length > Protocol.MAXIMUM_BATCH_SIZE) {
+      throw new IllegalArgumentException(
+          "Batch cannot exceed " + Protocol.MAXIMUM_BATCH_SIZE + " entries");
+    }
+    checkWindow(pastSteps, futureSteps);
+
+    int length = Protocol.HEADER_LENGTH + 12;
+    for (byte[] key : keys) {
+      checkKey(key);
+      length += 5 + key.length;
+    }
+
+    int id = this.nextId++;
+    this.ensureRemaining(Protocol.PREFIX_LENGTH + length);
+    this.out.putInt(length);
+    this.out.put(Protocol.VALIDATE_BATCH);
+    this.out.putInt(id);
+    this.out.putLong(epochSecond);
+    this.out.put((byte) pastSteps);
+    this.out.put((byte) futureSteps);
+    this.out.putShort((short) keys.length);
+
+    for (int i = 0; i < keys.length; ++i) {
+      this.out.putInt(codes[i]);
+      this.out.put((byte) keys[i].length);
+      this.out.put(keys[i]);
+    }
+
+    return id;
+  }
+
+  /**
+   * Validates a code for a specific timestamp.
+   *
+   * @param key a secret key.
+   * @param code a numeric code.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return the offset at which the code has been found or {@link
+   * com.torchmind.authenticator.ValidationResult#NO_MATCH}.
+   * @throws IllegalArgumentException when the server rejects the key.
+   * @throws IOException when the connection fails.
+   */
+  public int verifyCode(byte[] key, int code, long epochSecond, int pastSteps, int futureSteps)
+      throws IOException {
+    this.sendVerify(key, code, epochSecond, pastSteps, futureSteps);
+    this.flush();
+    return this.receiveValue();
+  }
+
+  /**
+   * Validates a batch of codes for a specific timestamp using a single request.
+   *
+   * @param keys an array of secret keys.
+   * @param codes an array of numeric codes.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @param offsets an array to which the matching offsets (or {@link
+   * com.torchmind.authenticator.ValidationResult#NO_MATCH}) are written.
+   * @throws IllegalArgumentException when the arrays differ in length or the server rejects the
+   * request.
+   * @throws IOException when the connection fails.
+   */
+  public void verifyCodes(byte[][] keys, int[] codes, long epochSecond, int pastSteps,
+      int futureSteps, int[] offsets) throws IOException {
+    if (offsets.length != keys.length) {
+      throw new IllegalArgumentException("Batch arrays must be of equal length");
+    }
+
+    this.sendVerifyBatch(keys, codes, epochSecond, pastSteps, futureSteps);
+    this.flush();
+
+    Response response = this.receive();
+    if (!response.isSuccess()) {
+      throw new IllegalArgumentException("Request has been rejected by the server");
+    }
+
+    System.arraycopy(response.values, 0, offsets, 0, response.count);
+  }
+
+  private static void checkKey(byte[] key) {
+    if (key.length > Protocol.MAXIMUM_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          "Key cannot exceed " + Protocol.MAXIMUM_KEY_LENGTH + " bytes");
+    }
+  }
+
+  private static void checkWindow(int pastSteps, int futureSteps) {
+    if (pastSteps < 0 || futureSteps < 0 || pastSteps > 0xFF || futureSteps > 0xFF) {
+      throw new IllegalArgumentException("Window size must be within [0, 255]");
+    }
+  }
+
+  private void ensureRemaining(int length) {
+    this.out = Protocol.ensureRemaining(this.out, length);
+  }
+
+  /**
+   * Reads from the connection until the specified amount of bytes is available.
+   *
+   * @param length an amount of bytes.
+   * @throws IOException when the connection fails or is closed by the server.
+   */
+  private void fill(int length) throws IOException {
+    if (this.in.remaining() >= length) {
+      return;
+    }
+
+    this.in.compact();
+    if (this.in.capacity() < length) {
+      ByteBuffer replacement = ByteBuffer.allocate(length);
+      this.in.flip();
+      replacement.put(this.in);
+      this.in = replacement;
+    }
+
+    while (this.in.position() < length) {
+      if (this.channel.read(this.in) < 0) {
+        throw new EOFException("Connection has been closed by the server");
+      }
+    }
+
+    this.in.flip();
+  }
+
+  private int receiveValue() throws IOException {
+    Response response = this.receive();
+
+    if (!response.isSuccess()) {
+      throw new IllegalArgumentException("Request has been rejected by the server");
+    }
+
+    return response.getValue();
+  }
+
+  /**
+   * Represents a response which has been received from the server.
+   */
+  public static final class Response {
+
+    private byte status;
+    private int id;
+    private int count;
+    private int[] values = new int[1];
+
+    private Response() {
+    }
+
+    /**
+     * Retrieves the amount of values within this response.
+     *
+     * @return one for single requests, the size of the batch for batch requests or zero when the
+     * request has been rejected.
+     */
+    public int getCount() {
+      return this.count;
+    }
+
+    /**
+     * Retrieves the identifier of the request which this response belongs to.
+     *
+     * @return an identifier.
+     */
+    public int getId() {
+      return this.id;
+    }
+
+    /**
+     * Retrieves the generated code or matching offset of a single request.
+     *
+     * @return a code, an offset or {@link com.torchmind.authenticator.ValidationResult#NO_MATCH}.
+     * @throws IllegalStateException when the request has been rejected.
+     */
+    public int getValue() {
+      return this.getValue(0);
+    }
+
+    /**
+     * Retrieves the matching offset of an entry within a batch.
+     *
+     * @param index an index.
+     * @return an offset or {@link com.torchmind.authenticator.ValidationResult#NO_MATCH}.
+     * @throws IllegalStateException when the request has been rejected.
+     * @throws IndexOutOfBoundsException when the index exceeds the size of the batch.
+     */
+    public int getValue(int index) {
+      if (this.status != Protocol.STATUS_OK) {
+        throw new IllegalStateException("Request has been rejected");
+      }
+      if (index < 0 || index >= this.count) {
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.count);
+      }
+
+      return this.values[index];
+    }
+
+    /**
+     * Evaluates whether the request has been processed successfully.
+     *
+     * @return true if successful, false if the server rejected the request.
+     */
+    public boolean isSuccess() {
+      return this.status == Protocol.STATUS_OK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Response{id=" + this.id + ", success=" + this.isSuccess() + ", values="
+          + Arrays.toString(Arrays.copyOf(this.values, this.count)) + "}";
+    }
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * Exposes the generation and validation of codes to other processes using the binary protocol
+ * which is described in {@link Protocol}.
+ *
+ * Connections are accepted on a dedicated thread and distributed among a fixed set of event loops
+ * (one per available processor by default), each of which serves its connections using a single
+ * selector. Clients may pipeline an arbitrary amount of requests on a connection and their
+ * responses are returned in the same order. Since each validation computes one code per step of
+ * its window, the window and batch sizes which clients may request are limited (to four steps and
+ * 1024 entries by default).
+ *
+ * <strong>Note:</strong> The protocol neither authenticates clients nor encrypts secrets and the
+ * server should thus only be bound to the loopback interface or otherwise trusted networks.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class VerificationServer implements AutoCloseable {
+
+  private final ServerSocketChannel channel;
+  private final EventLoop[] loops;
+  private final Thread[] threads;
+  private final Thread acceptor;
+
+  private VerificationServer(Builder builder) throws IOException {
+    this.channel = ServerSocketChannel.open();
+
+    try {
+      this.channel.bind(builder.address, builder.backlog);
+
+      this.loops = new EventLoop[builder.workers];
+      this.threads = new Thread[builder.workers];
+      for (int i = 0; i < builder.workers; ++i) {
+        this.loops[i] = new EventLoop(builder.generator, builder.maximumFrameLength,
+            builder.maximumWindow, builder.maximumBatchSize);
+        this.threads[i] = new Thread(this.loops[i], "authenticator-server-" + i);
+      }
+    } catch (IOException ex) {
+      this.channel.close();
+      throw ex;
+    }
+
+    this.acceptor = new Thread(this::accept, "authenticator-server-acceptor");
+
+    for (Thread thread : this.threads) {
+      thread.start();
+    }
+    this.acceptor.start();
+  }
+
+  /**
+   * Creates a new builder which configures a server for the specified generator.
+   *
+   * @param generator a generator.
+   * @return a builder.
+   */
+  public static Builder builder(PeriodTokenGenerator generator) {
+    return new Builder(Objects.requireNonNull(generator, "generator"));
+  }
+
+  private void accept() {
+    int next = 0;
+
+    try {
+      while (true) {
+        SocketChannel connection = this.channel.accept();
+
+        try {
+          connection.configureBlocking(false);
+          connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException ex) {
+          connection.close();
+          continue;
+        }
+
+        this.loops[next].register(connection);
+        next = (next + 1) % this.loops.length;
+      }
+    } catch (ClosedChannelException ex) {
+      // the server has been closed
+    } catch (IOException ex) {
+      this.close();
+    }
+  }
+
+  /**
+   * Stops accepting connections and closes all established connections.
+   *
+   * This method blocks until all threads of the server have terminated.
+   */
+  @Override
+  public void close() {
+    try {
+      this.channel.close();
+    } catch (IOException ignore) {
+      // the server is shut down regardless
+    }
+
+    for (EventLoop loop : this.loops) {
+      loop.shutdown();
+    }
+
+    if (Thread.currentThread() == this.acceptor) {
+      return;
+    }
+
+    try {
+      this.acceptor.join();
+      for (Thread thread : this.threads) {
+        thread.join();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Retrieves the address to which this server has been bound.
+   *
+   * @return an address.
+   * @throws IllegalStateException when the server has been closed.
+   */
+  public InetSocketAddress getLocalAddress() {
+    try {
+      return (InetSocketAddress) this.channel.getLocalAddress();
+    } catch (IOException ex) {
+      throw new IllegalStateException("Server has been closed", ex);
+    }
+  }
+
+  /**
+   * Provides a factory for the creation of server instances.
+   */
+  public static final class Builder {
+
+    private final PeriodTokenGenerator generator;
+    private InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    private int backlog = 128;
+    private int maximumBatchSize = 1024;
+    private int maximumFrameLength = 1024 * 1024;
+    private int maximumWindow = 4;
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    private Builder(PeriodTokenGenerator generator) {
+      this.generator = generator;
+    }
+
+    /**
+     * Retrieves the address to bind to (defaults to an ephemeral port on the loopback interface).
+     *
+     * @return an address.
+     */
+    public InetSocketAddress address() {
+      return this.address;
+    }
+
+    /**
+     * Sets the address to bind to.
+     *
+     * @param address an address.
+     * @return a reference to this builder.
+     */
+    public Builder address(InetSocketAddress address) {
+      this.address = Objects.requireNonNull(address, "address");
+      return this;
+    }
+
+    /**
+     * Retrieves the maximum amount of pending connections (defaults to 128).
+     *
+     * @return an amount of connections.
+     */
+    public int backlog() {
+      return this.backlog;
+    }
+
+    /**
+     * Sets the maximum amount of pending connections.
+     *
+     * @param backlog an amount of connections.
+     * @return a reference to this builder.
+     */
+    public Builder backlog(int backlog) {
+      this.backlog = backlog;
+      return this;
+    }
+
+    /**
+     * Retrieves the largest amount of entries within a batch request (defaults to 1024).
+     *
+     * @return an amount of entries.
+     */
+    public int maximumBatchSize() {
+      return this.maximumBatchSize;
+    }
+
+    /**
+     * Sets the largest amount of entries within a batch request.
+     *
+     * Larger batches are answered with an error.
+     *
+     * @param maximumBatchSize an amount of entries.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the amount is negative or exceeds the limit of the
+     * protocol.
+     */
+    public Builder maximumBatchSize(int maximumBatchSize) {
+      if (maximumBatchSize < 0) {
+        throw new IllegalArgumentException("Maximum batch size cannot be negative");
+      }
+      if (maximumBatchSize > Protocol.MAXIMUM_BATCH_SIZE) {
+        throw new IllegalArgumentException(
+            "Maximum batch size cannot exceed " + Protocol.MAXIMUM_BATCH_SIZE);
+      }
+
+      this.maximumBatchSize = maximumBatchSize;
+      return this;
+    }
+
+    /**
+     * Retrieves the maximum length of a request frame (defaults to 1 MiB).
+     *
+     * @return a length in bytes.
+     */
+    public int maximumFrameLength() {
+      return this.maximumFrameLength;
+    }
+
+    /**
+     * Sets the maximum length of a request frame.
+     *
+     * Connections which announce larger frames are closed.
+     *
+     * @param maximumFrameLength a length in bytes.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the length is too small to hold any request.
+     */
+    public Builder maximumFrameLength(int maximumFrameLength) {
+      if (maximumFrameLength < Protocol.HEADER_LENGTH) {
+        throw new IllegalArgumentException(
+            "Maximum frame length must be at least " + Protocol.HEADER_LENGTH);
+      }
+
+      this.maximumFrameLength = maximumFrameLength;
+      return this;
+    }
+
+    /**
+     * Retrieves the largest amount of past or future steps which clients may request (defaults
+     * to 4).
+     *
+     * @return an amount of steps.
+     */
+    public int maximumWindow() {
+      return this.maximumWindow;
+    }
+
+    /**
+     * Sets the largest amount of past or future steps which clients may request.
+     *
+     * Requests for larger windows are answered with an error.
+     *
+     * @param maximumWindow an amount of steps.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the amount is negative.
+     */
+    public Builder maximumWindow(int maximumWindow) {
+      if (maximumWindow < 0) {
+        throw new IllegalArgumentException("Maximum window cannot be negative");
+      }
+
+      this.maximumWindow = maximumWindow;
+      return this;
+    }
+
+    /**
+     * Binds a new server using the current configuration and starts serving connections.
+     *
+     * @return a server.
+     * @throws IOException when binding to the configured address fails.
+     */
+    public VerificationServer start() throws IOException {
+      return new VerificationServer(this);
+    }
+
+    /**
+     * Retrieves the amount of event loops (defaults to the amount of available processors).
+     *
+     * @return an amount of loops.
+     */
+    public int workers() {
+      return this.workers;
+    }
+
+    /**
+     * Sets the amount of event loops.
+     *
+     * @param workers an amount of loops.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the amount is smaller than one.
+     */
+    public Builder workers(int workers) {
+      if (workers < 1) {
+        throw new IllegalArgumentException("Amount of workers must be at least one");
+      }
+
+      this.workers = workers;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class HttpVerificationEndpointTest {
+
+    private HttpVerificationEndpoint endpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        this.endpoint = HttpVerificationEndpoint.start(generator, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.endpoint.close();
+    }
+
+    @Test
+    public void generate() throws Exception {
+        Assert.assertEquals("{\"code\":\"771141\"}", this.request("GET", "/generate?secret=KLYQ+V62W+LKEK+RQQM&timestamp=90", null, 200));
+    }
+
+    @Test
+    public void validate() throws Exception {
+        Assert.assertEquals("{\"valid\":true,\"offset\":-1}", this.request("GET", "/validate?secret=KLYQV62WLKEKRQQM&code=707879&timestamp=60", null, 200));
+        Assert.assertEquals("{\"valid\":false}", this.request("POST", "/validate", "secret=KLYQV62WLKEKRQQM&code=565580&timestamp=60", 200));
+        Assert.assertEquals("{\"valid\":true,\"offset\":-2}", this.request("POST", "/validate?past=2", "secret=KLYQV62WLKEKRQQM&code=565580&timestamp=60", 200));
+    }
+
+    @Test
+    public void malformed() throws Exception {
+        Assert.assertEquals("{\"error\":\"Missing parameter: code\"}", this.request("GET", "/validate?secret=KLYQV62WLKEKRQQM", null, 400));
+        Assert.assertEquals("{\"error\":\"Invalid parameter: timestamp\"}", this.request("GET", "/generate?secret=KLYQV62WLKEKRQQM&timestamp=now", null, 400));
+        Assert.assertEquals("{\"error\":\"Invalid parameter: timestamp\"}", this.request("GET", "/generate?secret=KLYQV62WLKEKRQQM&timestamp=99999999999999999", null, 400));
+        this.request("GET", "/generate?secret=!!!", null, 400);
+        this.request("DELETE", "/generate", null, 405);
+    }
+
+    @Test
+    public void window() throws Exception {
+        Assert.assertEquals("{\"valid\":true,\"offset\":-2}", this.request("GET", "/validate?secret=KLYQV62WLKEKRQQM&code=565580&timestamp=60&past=4", null, 200));
+        Assert.assertEquals("{\"error\":\"Parameter past must be between 0 and 4\"}", this.request("GET", "/validate?secret=KLYQV62WLKEKRQQM&code=565580&timestamp=60&past=2147483647", null, 400));
+        Assert.assertEquals("{\"error\":\"Parameter future must be between 0 and 4\"}", this.request("GET", "/validate?secret=KLYQV62WLKEKRQQM&code=565580&timestamp=60&future=-1", null, 400));
+    }
+
+    private String request(String method, String path, String body, int expectedStatus) throws Exception {
+        InetSocketAddress address = this.endpoint.getLocalAddress();
+        URL url = new URL("http", address.getHostString(), address.getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        Assert.assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
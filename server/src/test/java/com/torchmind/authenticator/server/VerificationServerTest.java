@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator.server;
+
+import com.torchmind.authenticator.MetricsListener;
+import com.torchmind.authenticator.PeriodTokenGenerator;
+import com.torchmind.authenticator.TokenGenerator;
+import com.torchmind.authenticator.ValidationResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class VerificationServerTest {
+
+    private PeriodTokenGenerator generator;
+    private byte[] key;
+    private VerificationServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        this.generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        this.key = this.generator.parseCode("KLYQV62WLKEKRQQM").getEncoded();
+        this.server = VerificationServer.builder(this.generator)
+                .workers(2)
+                .maximumFrameLength(4096)
+                .start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.close();
+    }
+
+    @Test
+    public void generate() throws Exception {
+        try (VerificationClient client = VerificationClient.connect(this.server.getLocalAddress())) {
+            Assert.assertEquals(565580, client.generateCode(this.key, 0));
+            Assert.assertEquals(771141, client.generateCode(this.key, 90));
+        }
+    }
+
+    @Test
+    public void verify() throws Exception {
+        try (VerificationClient client = VerificationClient.connect(this.server.getLocalAddress())) {
+            Assert.assertEquals(0, client.verifyCode(this.key, 981077, 60, 1, 1));
+            Assert.assertEquals(-2, client.verifyCode(this.key, 565580, 60, 2, 0));
+            Assert.assertEquals(ValidationResult.NO_MATCH, client.verifyCode(this.key, 565580, 60, 1, 1));
+        }
+    }
+
+    @Test
+    public void verifyBatch() throws Exception {
+        byte[] other = this.generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ").getEncoded();
+        byte[][] keys = {this.key, other, this.key, this.key};
+        int[] codes = {707879, 287082, 729385, 0};
+        int[] offsets = new int[keys.length];
+
+        try (VerificationClient client = VerificationClient.connect(this.server.getLocalAddress())) {
+            client.verifyCodes(keys, codes, 60, 1, 1, offsets);
+        }
+
+        Assert.assertArrayEquals(new int[]{-1, -1, ValidationResult.NO_MATCH, ValidationResult.NO_MATCH}, offsets);
+    }
+
+    @Test
+    public void limits() throws Exception {
+        try (VerificationServer server = VerificationServer.builder(this.generator).workers(1).maximumBatchSize(2).start();
+             VerificationClient client = VerificationClient.connect(server.getLocalAddress())) {
+            Assert.assertEquals(-2, client.verifyCode(this.key, 565580, 60, 4, 4));
+
+            client.sendVerify(this.key, 565580, 60, 255, 0);
+            client.sendVerify(this.key, 565580, 60, 0, 5);
+            client.sendVerifyBatch(new byte[][]{this.key}, new int[]{565580}, 60, 5, 0);
+            client.sendVerifyBatch(new byte[][]{this.key, this.key, this.key}, new int[3], 60, 1, 1);
+            client.flush();
+
+            for (int i = 0; i < 4; ++i) {
+                Assert.assertFalse(client.receive().isSuccess());
+            }
+
+            int[] offsets = new int[2];
+            client.verifyCodes(new byte[][]{this.key, this.key}, new int[]{707879, 0}, 60, 1, 1, offsets);
+            Assert.assertArrayEquals(new int[]{-1, ValidationResult.NO_MATCH}, offsets);
+        }
+    }
+
+    @Test
+    public void pipeline() throws Exception {
+        int[] expected = {565580, 707879, 981077, 771141, 729385};
+
+        try (VerificationClient client = VerificationClient.connect(this.server.getLocalAddress())) {
+            for (int i = 0; i < 10_000; ++i) {
+                Assert.assertEquals(i, client.sendVerify(this.key, expected[i % expected.length], 60, 2, 2));
+            }
+            client.flush();
+
+            for (int i = 0; i < 10_000; ++i) {
+                VerificationClient.Response response = client.receive();
+
+                Assert.assertEquals(i, response.getId());
+                Assert.assertTrue(response.isSuccess());
+                Assert.assertEquals(i % expected.length - 2, response.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void malformed() throws Exception {
+        try (VerificationClient client = VerificationClient.connect(this.server.getLocalAddress())) {
+            client.sendGenerate(new byte[0], 0);
+            client.flush();
+
+            VerificationClient.Response response = client.receive();
+            Assert.assertFalse(response.isSuccess());
+            Assert.assertEquals(0, response.getCount());
+
+            // the connection remains usable
+            Assert.assertEquals(565580, client.generateCode(this.key, 0));
+        }
+
+        try (Socket socket = new Socket(this.server.getLocalAddress().getAddress(), this.server.getLocalAddress().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            ByteBuffer frame = ByteBuffer.allocate(14);
+            frame.putInt(10).put((byte) 42).putInt(7).put(new byte[5]);
+            out.write(frame.array());
+            out.flush();
+
+            ByteBuffer response = ByteBuffer.wrap(in.readNBytes(9));
+            Assert.assertEquals(5, response.getInt());
+            Assert.assertEquals(1, response.get());
+            Assert.assertEquals(7, response.getInt());
+        }
+    }
+
+    @Test
+    public void oversizedFrame() throws Exception {
+        try (Socket socket = new Socket(this.server.getLocalAddress().getAddress(), this.server.getLocalAddress().getPort())) {
+            socket.getOutputStream().write(ByteBuffer.allocate(4).putInt(8192).array());
+            socket.getOutputStream().flush();
+
+            Assert.assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failure() throws Exception {
+        AtomicBoolean failed = new AtomicBoolean();
+        PeriodTokenGenerator generator = TokenGenerator.builder()
+                .listener(new MetricsListener() {
+                    @Override
+                    public void onCodeGenerated(TokenGenerator.Algorithm algorithm, long latency) {
+                        if (failed.compareAndSet(false, true)) {
+                            throw new IllegalStateException("Engine failure");
+                        }
+                    }
+                })
+                .createPeriodGenerator("Issuer");
+
+        try (VerificationServer server = VerificationServer.builder(generator).workers(1).start()) {
+            try (VerificationClient client = VerificationClient.connect(server.getLocalAddress())) {
+                client.generateCode(this.key, 0);
+                Assert.fail("Expected failing connection to be closed");
+            } catch (IOException ignore) {
+            }
+
+            try (VerificationClient client = VerificationClient.connect(server.getLocalAddress())) {
+                Assert.assertEquals(565580, client.generateCode(this.key, 0));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void closed() throws Exception {
+        VerificationClient client = VerificationClient.connect(this.server.getLocalAddress());
+        this.server.close();
+
+        client.generateCode(this.key, 0);
+    }
+}
@@ -17,14 +17,16 @@
 package com.torchmind.authenticator;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import java.nio.ByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import javax.crypto.KeyGenerator;
-import javax.crypto.Mac;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
-import org.apache.commons.codec.binary.Base32;
 
 /**
  * Provides an abstract token generator implementation which provides the most basic elements of the
@@ -34,17 +36,58 @@ import org.apache.commons.codec.binary.Base32;
  */
 abstract class AbstractTokenGenerator implements TokenGenerator {
 
+  /**
+   * Defines the length of generated secrets in bytes (80 bits as recommended by RFC 4226 section
+   * 4).
+   */
+  static final int SECRET_LENGTH = 10;
+
+  private static final int STREAM_CHUNK_SIZE = 1024;
+
+  private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal
+      .withInitial(AbstractTokenGenerator::createRandom);
+
   private final Algorithm algorithm;
+  private final Engine engine;
   private final int digitModulo;
   private final int digits;
   private final String issuer;
+  private final HmacEngine hmacEngine;
+  private final MetricsListener listener;
+  private final boolean instrumented;
 
-  AbstractTokenGenerator(@NonNull Algorithm algorithm, int digits, @NonNull String issuer) {
+  AbstractTokenGenerator(@NonNull Algorithm algorithm, @NonNull Engine engine, int digits,
+      @NonNull String issuer, @NonNull MetricsListener listener) {
     this.algorithm = algorithm;
+    this.engine = engine;
+    this.listener = listener;
+    this.instrumented = listener != MetricsListener.noop();
     this.digits = digits;
     this.issuer = issuer;
 
     this.digitModulo = (int) Math.pow(10, digits);
+    this.hmacEngine = HmacEngine.create(engine, algorithm);
+  }
+
+  /**
+   * Creates a new random source for the generation of secrets.
+   *
+   * Instances are created per thread and thus deterministic random bit generators which do not
+   * share state between instances are preferred over the platform default (which may synchronize
+   * on a global lock). Each instance is seeded from the platform entropy source.
+   *
+   * @return a random source.
+   */
+  @NonNull
+  static SecureRandom createRandom() {
+    for (String algorithm : new String[]{"DRBG", "SHA1PRNG"}) {
+      try {
+        return SecureRandom.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException ignore) {
+      }
+    }
+
+    return new SecureRandom();
   }
 
   /**
@@ -53,74 +96,583 @@ abstract class AbstractTokenGenerator implements TokenGenerator {
   @NonNull
   @Override
   public String buildHandshakeCode(@NonNull SecretKey secretKey, boolean humanReadable) {
-    String code = (new Base32()).encodeAsString(secretKey.getEncoded());
+    return Base32Codec.encode(secretKey.getEncoded(), humanReadable);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public String formatCode(int code) {
+    char[] buffer = new char[this.digits];
+    this.formatCode(code, buffer, 0);
+    return new String(buffer);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void formatCode(int code, @NonNull char[] destination, int offset) {
+    this.verifyCodeValue(code);
 
-    if (humanReadable) {
-      String tmp = "";
+    for (int i = offset + this.digits - 1; i >= offset; --i) {
+      destination[i] = (char) ('0' + code % 10);
+      code /= 10;
+    }
+  }
 
-      for (int i = 1; i <= code.length(); ++i) {
-        tmp += code.charAt((i - 1));
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void formatCode(int code, @NonNull CharBuffer destination) {
+    this.verifyCodeValue(code);
 
-        if ((i % 4) == 0) {
-          tmp += " ";
-        }
+    if (destination.remaining() < this.digits) {
+      throw new BufferOverflowException();
+    }
+
+    int divisor = this.digitModulo / 10;
+    for (int i = 0; i < this.digits; ++i) {
+      destination.put((char) ('0' + (code / divisor) % 10));
+      divisor /= 10;
+    }
+  }
+
+  /**
+   * Searches a window of counter values for the specified numeric code.
+   *
+   * Candidates are visited in order of increasing distance from the expected counter value
+   * (alternating between past and future values) and the search stops at the first match. Each
+   * candidate is compared in constant time.
+   *
+   * @param secretKey a secret key.
+   * @param code a numeric code.
+   * @param counter an expected counter value.
+   * @param past an amount of counter values to check prior to the expected value.
+   * @param future an amount of counter values to check following the expected value.
+   * @return the offset of the matching counter value or {@link ValidationResult#NO_MATCH}.
+   * @throws IllegalArgumentException when a negative window size is supplied.
+   */
+  int findCodeOffset(@NonNull SecretKey secretKey, int code, long counter, int past, int future) {
+    if (!this.instrumented) {
+      return this.searchCodeOffset(secretKey, code, counter, past, future);
+    }
+
+    long started = System.nanoTime();
+    int offset = this.searchCodeOffset(secretKey, code, counter, past, future);
+    this.listener.onCodeValidated(this.algorithm, offset, System.nanoTime() - started);
+
+    return offset;
+  }
+
+  /**
+   * Searches a window of counter values for the specified numeric code without notifying the
+   * registered listener.
+   *
+   * @see #findCodeOffset(SecretKey, int, long, int, int)
+   */
+  private int searchCodeOffset(@NonNull SecretKey secretKey, int code, long counter, int past,
+      int future) {
+    if (past < 0 || future < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    if (isEqual(code, this.generateCodeValue(secretKey, counter))) {
+      return 0;
+    }
+
+    int distance = Math.max(past, future);
+    for (int i = 1; i <= distance; ++i) {
+      if (i <= past && isEqual(code, this.generateCodeValue(secretKey, counter - i))) {
+        return -i;
       }
 
-      if (tmp.charAt((tmp.length() - 1)) == ' ') {
-        code = tmp.substring(0, (tmp.length() - 1)).toLowerCase();
-      } else {
-        code = tmp.toLowerCase();
+      if (i <= future && isEqual(code, this.generateCodeValue(secretKey, counter + i))) {
+        return i;
       }
     }
 
+    return ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Searches a window of counter values for a pair of consecutive numeric codes.
+   *
+   * Each counter value within the window is hashed exactly once and each candidate pair is
+   * compared in constant time. The search stops at the first match.
+   *
+   * @param secretKey a secret key.
+   * @param first a numeric code.
+   * @param second the numeric code which directly follows the first code.
+   * @param counter an expected counter value.
+   * @param future an amount of counter values to check following the expected value.
+   * @return the offset of the counter value matching the first code or {@link
+   * ValidationResult#NO_MATCH}.
+   * @throws IllegalArgumentException when a negative window size is supplied.
+   */
+  int findCodePairOffset(@NonNull SecretKey secretKey, int first, int second, long counter,
+      int future) {
+    if (!this.instrumented) {
+      return this.searchCodePairOffset(secretKey, first, second, counter, future);
+    }
+
+    long started = System.nanoTime();
+    int offset = this.searchCodePairOffset(secretKey, first, second, counter, future);
+    this.listener.onCodeValidated(this.algorithm, offset, System.nanoTime() - started);
+
+    return offset;
+  }
+
+  /**
+   * Searches a window of counter values for a pair of consecutive numeric codes without notifying
+   * the registered listener.
+   *
+   * @see #findCodePairOffset(SecretKey, int, int, long, int)
+   */
+  private int searchCodePairOffset(@NonNull SecretKey secretKey, int first, int second,
+      long counter, int future) {
+    if (future < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    int current = this.generateCodeValue(secretKey, counter);
+    for (int i = 0; i < future; ++i) {
+      int next = this.generateCodeValue(secretKey, counter + i + 1);
+
+      if (isEqual(first, current) & isEqual(second, next)) {
+        return i;
+      }
+
+      current = next;
+    }
+
+    return ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Searches a window of counter values for the specified numeric code using a raw key.
+   *
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @param code a numeric code.
+   * @param counter an expected counter value.
+   * @param past an amount of counter values to check prior to the expected value.
+   * @param future an amount of counter values to check following the expected value.
+   * @return the offset of the matching counter value or {@link ValidationResult#NO_MATCH}.
+   * @throws IllegalArgumentException when a negative window size is supplied.
+   * @see #findCodeOffset(SecretKey, int, long, int, int)
+   */
+  int findCodeOffset(@NonNull byte[] key, int offset, int length, int code, long counter,
+      int past, int future) {
+    if (!this.instrumented) {
+      return this.searchCodeOffset(key, offset, length, code, counter, past, future);
+    }
+
+    long started = System.nanoTime();
+    int result = this.searchCodeOffset(key, offset, length, code, counter, past, future);
+    this.listener.onCodeValidated(this.algorithm, result, System.nanoTime() - started);
+
+    return result;
+  }
+
+  /**
+   * Searches a window of counter values for the specified numeric code using a raw key without
+   * notifying the registered listener.
+   *
+   * @see #findCodeOffset(byte[], int, int, int, long, int, int)
+   */
+  private int searchCodeOffset(@NonNull byte[] key, int offset, int length, int code,
+      long counter, int past, int future) {
+    if (past < 0 || future < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    if (isEqual(code, this.generateCodeValue(key, offset, length, counter))) {
+      return 0;
+    }
+
+    int distance = Math.max(past, future);
+    for (int i = 1; i <= distance; ++i) {
+      if (i <= past && isEqual(code, this.generateCodeValue(key, offset, length, counter - i))) {
+        return -i;
+      }
+
+      if (i <= future && isEqual(code, this.generateCodeValue(key, offset, length, counter + i))) {
+        return i;
+      }
+    }
+
+    return ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Generates the numeric representation of a code on behalf of a caller and reports its latency
+   * to the registered listener.
+   *
+   * @param secretKey a secret key.
+   * @param challenge a challenge.
+   * @return a code.
+   */
+  int generateTrackedCodeValue(@NonNull SecretKey secretKey, long challenge) {
+    if (!this.instrumented) {
+      return this.generateCodeValue(secretKey, challenge);
+    }
+
+    long started = System.nanoTime();
+    int code = this.generateCodeValue(secretKey, challenge);
+    this.listener.onCodeGenerated(this.algorithm, System.nanoTime() - started);
+
+    return code;
+  }
+
+  /**
+   * Generates the numeric representation of a code based on a raw key on behalf of a caller and
+   * reports its latency to the registered listener.
+   *
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @param challenge a challenge.
+   * @return a code.
+   */
+  int generateTrackedCodeValue(@NonNull byte[] key, int offset, int length, long challenge) {
+    if (!this.instrumented) {
+      return this.generateCodeValue(key, offset, length, challenge);
+    }
+
+    long started = System.nanoTime();
+    int code = this.generateCodeValue(key, offset, length, challenge);
+    this.listener.onCodeGenerated(this.algorithm, System.nanoTime() - started);
+
     return code;
   }
 
   /**
-   * Generates a code based on a secret key and challenge.
+   * Generates the numeric representation of a code based on the secret within a table slot on
+   * behalf of a caller.
+   *
+   * @param table a secret table.
+   * @param slot a slot.
+   * @param challenge a challenge.
+   * @return a code.
+   * @throws IllegalArgumentException when the slot is not in use.
+   */
+  int generateTrackedCodeValue(@NonNull SecretTable table, int slot, long challenge) {
+    byte[] slab = table.slab(slot);
+    int position = SecretTable.position(slot);
+    int length = slab[position] & 0xFF;
+
+    if (length == 0) {
+      throw new IllegalArgumentException("Slot " + slot + " is not in use");
+    }
+
+    return this.generateTrackedCodeValue(slab, position + 1, length, challenge);
+  }
+
+  /**
+   * Generates the numeric representation of a code based on the secret of an account within a
+   * table on behalf of a caller.
+   *
+   * The slot of the account is resolved again once the code has been computed in order to detect
+   * whether the secret has been replaced (and its slot reused) concurrently.
+   *
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param challenge a challenge.
+   * @return a code.
+   * @throws IllegalArgumentException when no secret has been stored for the account.
+   */
+  int generateTrackedCodeValue(@NonNull SecretTable table, long accountId, long challenge) {
+    while (true) {
+      int slot = table.slot(accountId);
+
+      if (slot == SecretTable.NO_SLOT) {
+        throw new IllegalArgumentException("No secret stored for account " + accountId);
+      }
+
+      byte[] slab = table.slab(slot);
+      int position = SecretTable.position(slot);
+      int length = slab[position] & 0xFF;
+
+      if (length != 0) {
+        int code = this.generateTrackedCodeValue(slab, position + 1, length, challenge);
+
+        if (table.slot(accountId) == slot) {
+          return code;
+        }
+      }
+    }
+  }
+
+  /**
+   * Locates the offset at which a numeric code matches the secret within a table slot.
+   *
+   * @param table a secret table.
+   * @param slot a slot.
+   * @param code a numeric code.
+   * @param counter an expected counter value.
+   * @param past an amount of counter values to check prior to the expected value.
+   * @param future an amount of counter values to check following the expected value.
+   * @return an offset or {@link ValidationResult#NO_MATCH} if the code does not match or the slot
+   * is not in use.
+   */
+  int findCodeOffset(@NonNull SecretTable table, int slot, int code, long counter, int past,
+      int future) {
+    byte[] slab = table.slab(slot);
+    int position = SecretTable.position(slot);
+    int length = slab[position] & 0xFF;
+
+    if (length == 0) {
+      return ValidationResult.NO_MATCH;
+    }
+
+    return this.findCodeOffset(slab, position + 1, length, code, counter, past, future);
+  }
+
+  /**
+   * Locates the offset at which a numeric code matches the secret of an account within a table.
+   *
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param code a numeric code.
+   * @param counter an expected counter value.
+   * @param past an amount of counter values to check prior to the expected value.
+   * @param future an amount of counter values to check following the expected value.
+   * @return an offset or {@link ValidationResult#NO_MATCH} if the code does not match or no
+   * secret has been stored for the account.
+   * @see #generateTrackedCodeValue(SecretTable, long, long)
+   */
+  int findCodeOffset(@NonNull SecretTable table, long accountId, int code, long counter,
+      int past, int future) {
+    while (true) {
+      int slot = table.slot(accountId);
+
+      if (slot == SecretTable.NO_SLOT) {
+        return ValidationResult.NO_MATCH;
+      }
+
+      int offset = this.findCodeOffset(table, slot, code, counter, past, future);
+
+      if (table.slot(accountId) == slot) {
+        return offset;
+      }
+    }
+  }
+
+  /**
+   * Ensures that a region of an array is within its bounds.
+   *
+   * @param key an array.
+   * @param offset the offset of the region.
+   * @param length the length of the region.
+   * @throws IndexOutOfBoundsException when the region exceeds the bounds of the array.
+   */
+  static void checkKeyBounds(@NonNull byte[] key, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > key.length - length) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length "
+              + key.length);
+    }
+  }
+
+  /**
+   * Generates the numeric representation of a code based on a secret key and challenge.
+   *
+   * Keyed HMAC state is retained per thread and re-used for as long as the same secret key
+   * instance is passed to this method. Callers which repeatedly validate codes for the
+   * same account should thus retain their {@link SecretKey} instance rather than re-parsing it.
    *
    * @param secretKey a secret key.
    * @param challenge a challenge.
    * @return a code.
    */
-  @NonNull
-  protected String generateCode(@NonNull SecretKey secretKey, @NonNull byte[] challenge) {
+  protected int generateCodeValue(@NonNull SecretKey secretKey, long challenge) {
     try {
-      Mac mac = Mac.getInstance("Hmac" + this.algorithm.name());
-      mac.init(secretKey);
+      return this.hmacEngine.truncate(secretKey, challenge) % this.digitModulo;
+    } catch (NoSuchAlgorithmException ex) {
+      throw new UnsupportedOperationException(
+          "The specified algorithm is not supported by this Java VM implementation: " + ex
+              .getMessage(), ex);
+    } catch (InvalidKeyException ex) {
+      this.listener.onInvalidKey(this.algorithm);
+      throw new IllegalArgumentException("Invalid shared secret: " + ex.getMessage(), ex);
+    }
+  }
 
-      byte[] hash = mac.doFinal(challenge);
-      int offset = hash[hash.length - 1] & 0x0F;
+  /**
+   * Generates the numeric representations of the codes for a run of consecutive challenges and
+   * notifies the registered listener once per code.
+   *
+   * The keyed HMAC state is prepared once for the entire run. When a listener is registered, each
+   * code is reported with the average latency of the run.
+   *
+   * @param secretKey a secret key.
+   * @param challenge the first challenge.
+   * @param destination an array which receives the codes.
+   * @param offset the index of the first code within the array.
+   * @param count an amount of codes.
+   * @throws IllegalArgumentException when a negative count is supplied or the key is rejected.
+   * @throws IndexOutOfBoundsException when the codes exceed the bounds of the array.
+   */
+  void generateTrackedCodeValues(@NonNull SecretKey secretKey, long challenge,
+      @NonNull int[] destination, int offset, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count cannot be negative");
+    }
+    if (offset < 0 || offset > destination.length - count) {
+      throw new IndexOutOfBoundsException(
+          "Range " + offset + "+" + count + " exceeds array of length " + destination.length);
+    }
 
-      ByteBuffer buffer = ByteBuffer.allocate(4).put(hash, offset, 4);
-      buffer.flip();
+    long started = this.instrumented ? System.nanoTime() : 0;
 
-      return String
-          .format("%0" + this.digits + "d", (buffer.getInt() & 0x7FFFFFFF) % this.digitModulo);
+    try {
+      this.hmacEngine.truncate(secretKey, challenge, destination, offset, count);
     } catch (NoSuchAlgorithmException ex) {
       throw new UnsupportedOperationException(
           "The specified algorithm is not supported by this Java VM implementation: " + ex
               .getMessage(), ex);
     } catch (InvalidKeyException ex) {
+      this.listener.onInvalidKey(this.algorithm);
       throw new IllegalArgumentException("Invalid shared secret: " + ex.getMessage(), ex);
     }
+
+    for (int i = offset; i < offset + count; ++i) {
+      destination[i] %= this.digitModulo;
+    }
+
+    if (this.instrumented && count != 0) {
+      long latency = (System.nanoTime() - started) / count;
+
+      for (int i = 0; i < count; ++i) {
+        this.listener.onCodeGenerated(this.algorithm, latency);
+      }
+    }
   }
 
   /**
-   * {@inheritDoc}
+   * Creates a stream of the numeric representations of the codes for a run of consecutive
+   * challenges.
+   *
+   * Codes are generated lazily in chunks and thus arbitrarily long runs may be streamed without
+   * retaining all of their codes. Parallel streams compute their chunks on the respective worker
+   * threads.
+   *
+   * @param secretKey a secret key.
+   * @param challenge the first challenge.
+   * @param count an amount of codes.
+   * @return a stream of codes.
+   * @throws IllegalArgumentException when a negative count is supplied.
    */
   @NonNull
-  @Override
-  public SecretKey generateSecret() {
+  IntStream streamTrackedCodeValues(@NonNull SecretKey secretKey, long challenge, long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count cannot be negative");
+    }
+
+    return LongStream.range(0, (count + STREAM_CHUNK_SIZE - 1) / STREAM_CHUNK_SIZE)
+        .mapToObj((chunk) -> {
+          long first = chunk * STREAM_CHUNK_SIZE;
+          int[] codes = new int[(int) Math.min(STREAM_CHUNK_SIZE, count - first)];
+
+          this.generateTrackedCodeValues(secretKey, challenge + first, codes, 0, codes.length);
+          return codes;
+        })
+        .flatMapToInt(IntStream::of);
+  }
+
+  /**
+   * Generates the numeric representation of a code based on a raw key and challenge.
+   *
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @param challenge a challenge.
+   * @return a code.
+   */
+  int generateCodeValue(@NonNull byte[] key, int offset, int length, long challenge) {
     try {
-      KeyGenerator generator = KeyGenerator.getInstance("Hmac" + this.algorithm.name());
-      generator.init(80);
-      return generator.generateKey();
+      return this.hmacEngine.truncate(key, offset, length, challenge) % this.digitModulo;
     } catch (NoSuchAlgorithmException ex) {
       throw new UnsupportedOperationException(
           "The specified algorithm is not supported by this Java VM implementation: " + ex
               .getMessage(), ex);
+    } catch (InvalidKeyException ex) {
+      this.listener.onInvalidKey(this.algorithm);
+      throw new IllegalArgumentException("Invalid shared secret: " + ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Eagerly initializes this generator and drives its hot paths through the specified amount of
+   * iterations in order to move the cost of class loading, provider discovery and just in time
+   * compilation out of the first request.
+   *
+   * Listeners are not notified about any of the codes which are computed during warm-up. Since the
+   * keyed HMAC state is retained per thread, only the calling thread is fully prepared while other
+   * threads merely benefit from the pinned provider and compiled code.
+   *
+   * @param iterations an amount of iterations (each of which computes up to four codes).
+   * @throws IllegalArgumentException when a negative amount of iterations is supplied.
+   * @throws UnsupportedOperationException when the algorithm is not supported by the Java VM.
+   */
+  void warmUp(int iterations) {
+    if (iterations < 0) {
+      throw new IllegalArgumentException("Iterations cannot be negative");
+    }
+
+    try {
+      this.hmacEngine.prepare();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new UnsupportedOperationException(
+          "The specified algorithm is not supported by this Java VM implementation: " + ex
+              .getMessage(), ex);
+    }
+
+    // round trip a secret through the codec in order to initialize the random source and tables
+    SecretKey secretKey = this.parseCode(this.buildHandshakeCode(this.generateSecret(), true));
+    byte[] key = secretKey.getEncoded();
+    char[] buffer = new char[this.digits];
+
+    for (int i = 0; i < iterations; ++i) {
+      int code = this.generateCodeValue(secretKey, i);
+      this.formatCode(code, buffer, 0);
+
+      int offset = this.searchCodeOffset(secretKey, code, i + 1, 1, 0);
+      int rawOffset = this.searchCodeOffset(key, 0, key.length, code, i, 1, 1);
+
+      if (this.parseCodeValue(CharBuffer.wrap(buffer)) != code
+          || offset == ValidationResult.NO_MATCH || rawOffset == ValidationResult.NO_MATCH) {
+        throw new IllegalStateException("Warm-up produced inconsistent codes");
+      }
     }
+
+    Arrays.fill(key, (byte) 0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public SecretProvisioner createProvisioner() {
+    return new SecretProvisioner(this.createUriWriter());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public SecretKey generateSecret() {
+    byte[] key = new byte[SECRET_LENGTH];
+    RANDOM.get().nextBytes(key);
+
+    return new SecretKeySpec(key, "Hmac" + this.algorithm.name());
   }
 
   /**
@@ -132,6 +684,15 @@ abstract class AbstractTokenGenerator implements TokenGenerator {
     return this.algorithm;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Engine getEngine() {
+    return this.engine;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -155,9 +716,58 @@ abstract class AbstractTokenGenerator implements TokenGenerator {
   @NonNull
   @Override
   public SecretKey parseCode(@NonNull String code) {
-    code = code.replace(" ", "").toUpperCase();
-
-    byte[] key = (new Base32()).decode(code);
+    byte[] key = Base32Codec.decode(code);
     return new SecretKeySpec(key, "Hmac" + this.algorithm.name());
   }
+
+  /**
+   * Converts a user supplied code into its numeric representation.
+   *
+   * @param code a code.
+   * @return a numeric code or -1 when the code is malformed.
+   */
+  int parseCodeValue(@NonNull CharSequence code) {
+    if (code.length() != this.digits) {
+      return -1;
+    }
+
+    int value = 0;
+    for (int i = 0; i < this.digits; ++i) {
+      char c = code.charAt(i);
+
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+
+      value = value * 10 + (c - '0');
+    }
+
+    return value;
+  }
+
+  /**
+   * Ensures that a numeric code lies within the range permitted by the configured amount of
+   * digits.
+   *
+   * @param code a code.
+   * @throws IllegalArgumentException when the code is negative or exceeds the amount of digits.
+   */
+  private void verifyCodeValue(int code) {
+    if (code < 0 || code >= this.digitModulo) {
+      throw new IllegalArgumentException(
+          "Code must be within range [0, " + this.digitModulo + "): " + code);
+    }
+  }
+
+  /**
+   * Compares two numeric codes without branching on their contents.
+   *
+   * @param a a code.
+   * @param b another code.
+   * @return true if both codes are equal, false otherwise.
+   */
+  private static boolean isEqual(int a, int b) {
+    int difference = a ^ b;
+    return ((difference | -difference) >>> 31) == 0;
+  }
 }
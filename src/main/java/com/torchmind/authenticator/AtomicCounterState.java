@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides an in-memory counter state which is backed by an atomic variable.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class AtomicCounterState extends AtomicLong implements CounterState {
+
+  private static final long serialVersionUID = 1L;
+
+  AtomicCounterState(long initialValue) {
+    super(initialValue);
+  }
+}
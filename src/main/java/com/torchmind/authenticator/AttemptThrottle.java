@@ -0,0 +1,426 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate at which codes may be submitted for each account before any HMAC is computed.
+ *
+ * Attempts are metered using the generic cell rate algorithm: Each account may submit up to
+ * {@link Builder#burst()} attempts at once after which one further attempt is permitted per
+ * {@link Builder#interval()}. Every failed attempt additionally delays the next permitted attempt
+ * by {@link Builder#penalty()} while a successful attempt clears the state of the account.
+ *
+ * The state of an account consists of a single timestamp which is packed alongside a fingerprint
+ * of the account identifier into a fixed size table of atomic slots and updated using a single
+ * compare and swap operation. Slots whose timestamp has passed carry no information and are thus
+ * reused freely. When all candidate slots of an account are in use, the slot which expires first
+ * is evicted and thus memory consumption remains constant regardless of the amount of accounts.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe. Since accounts are identified by
+ * a fingerprint, two accounts may rarely share their state. Evicted accounts lose their state and
+ * the table should thus be sized to exceed the amount of accounts which are expected to be
+ * throttled at the same time.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class AttemptThrottle {
+
+  /**
+   * Defines the amount of slots which are considered for each account.
+   */
+  private static final int PROBES = 8;
+
+  private static final int TIME_BITS = 44;
+  private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+  private final Clock clock;
+  private final long origin;
+  private final long interval;
+  private final long penalty;
+  private final long tolerance;
+  private final long seed;
+
+  private final AtomicLongArray slots;
+  private final int mask;
+
+  private final LongAdder permittedAttempts = new LongAdder();
+  private final LongAdder rejectedAttempts = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private AttemptThrottle(@NonNull Builder builder) {
+    int capacity = Math.max(PROBES, Integer.highestOneBit(builder.capacity - 1) << 1);
+
+    this.clock = builder.clock;
+    this.origin = this.clock.millis() - 1;
+    this.interval = builder.interval.toMillis();
+    this.penalty = builder.penalty.toMillis();
+    this.tolerance = this.interval * (builder.burst - 1);
+    this.seed = new SecureRandom().nextLong();
+
+    this.slots = new AtomicLongArray(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Creates a new builder which configures a throttle.
+   *
+   * @return a builder.
+   */
+  @NonNull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Mixes the bits of an account identifier with the seed of this throttle in order to prevent
+   * the deliberate selection of colliding identifiers.
+   *
+   * @param accountId an account identifier.
+   * @return a hash.
+   */
+  private long hash(long accountId) {
+    long hash = accountId ^ this.seed;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Extracts a non-zero fingerprint from the upper bits of a hash.
+   *
+   * @param hash a hash.
+   * @return a fingerprint.
+   */
+  private static long fingerprint(long hash) {
+    long fingerprint = hash >>> TIME_BITS;
+    return fingerprint == 0 ? 1 : fingerprint;
+  }
+
+  private static long pack(long fingerprint, long time) {
+    return (fingerprint << TIME_BITS) | (time & TIME_MASK);
+  }
+
+  private static long unpackTime(long value) {
+    return value & TIME_MASK;
+  }
+
+  /**
+   * Retrieves the current time relative to the creation of this throttle.
+   *
+   * @return a timestamp (in milliseconds).
+   */
+  private long now() {
+    return Math.max(0, this.clock.millis() - this.origin);
+  }
+
+  /**
+   * Retrieves the amount of slots which have been reused before the state they contained expired.
+   *
+   * @return an amount of evictions.
+   */
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  /**
+   * Retrieves the amount of attempts which have been permitted.
+   *
+   * @return an amount of attempts.
+   */
+  public long getPermittedAttempts() {
+    return this.permittedAttempts.sum();
+  }
+
+  /**
+   * Retrieves the amount of attempts which have been rejected.
+   *
+   * @return an amount of attempts.
+   */
+  public long getRejectedAttempts() {
+    return this.rejectedAttempts.sum();
+  }
+
+  /**
+   * Records a failed attempt and delays the next permitted attempt of an account by the
+   * configured penalty.
+   *
+   * @param accountId an account identifier.
+   */
+  public void recordFailure(long accountId) {
+    if (this.penalty != 0) {
+      this.update(accountId, this.penalty, false);
+    }
+  }
+
+  /**
+   * Discards the state of an account (for instance after it has successfully authenticated).
+   *
+   * @param accountId an account identifier.
+   */
+  public void reset(long accountId) {
+    long hash = this.hash(accountId);
+    long fingerprint = fingerprint(hash);
+
+    for (int i = 0; i < PROBES; ++i) {
+      int slot = ((int) hash + i) & this.mask;
+      long value = this.slots.get(slot);
+
+      if (value >>> TIME_BITS == fingerprint) {
+        this.slots.compareAndSet(slot, value, 0);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Evaluates whether an account may submit another attempt and consumes the attempt if so.
+   *
+   * @param accountId an account identifier.
+   * @return true if permitted, false if the attempt is to be rejected.
+   */
+  public boolean tryAcquire(long accountId) {
+    if (this.update(accountId, this.interval, true)) {
+      this.permittedAttempts.increment();
+      return true;
+    }
+
+    this.rejectedAttempts.increment();
+    return false;
+  }
+
+  /**
+   * Advances the theoretical arrival time of an account.
+   *
+   * @param accountId an account identifier.
+   * @param increment an amount of milliseconds to add.
+   * @param limit true if the update is to be rejected when the account has exceeded its limit.
+   * @return true if updated, false otherwise.
+   */
+  private boolean update(long accountId, long increment, boolean limit) {
+    long hash = this.hash(accountId);
+    long fingerprint = fingerprint(hash);
+
+    while (true) {
+      long now = this.now();
+      int candidate = -1;
+      long candidateValue = 0;
+      long candidateTime = Long.MAX_VALUE;
+      boolean found = false;
+
+      for (int i = 0; i < PROBES; ++i) {
+        int slot = ((int) hash + i) & this.mask;
+        long value = this.slots.get(slot);
+
+        if (value != 0 && value >>> TIME_BITS == fingerprint) {
+          candidate = slot;
+          candidateValue = value;
+          found = true;
+          break;
+        }
+
+        long time = value == 0 ? 0 : unpackTime(value);
+        if (time < candidateTime) {
+          candidate = slot;
+          candidateValue = value;
+          candidateTime = time;
+        }
+      }
+
+      long arrival = found ? Math.max(unpackTime(candidateValue), now) : now;
+      if (limit && arrival - now > this.tolerance) {
+        return false;
+      }
+
+      if (this.slots.compareAndSet(candidate, candidateValue,
+          pack(fingerprint, arrival + increment))) {
+        if (!found && candidateTime > now) {
+          this.evictions.increment();
+        }
+
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Provides a factory for the creation of throttle instances.
+   */
+  public static final class Builder {
+
+    private int burst = 5;
+    private int capacity = 1 << 16;
+    private Clock clock = Clock.systemUTC();
+    private Duration interval = Duration.ofSeconds(30);
+    private Duration penalty = Duration.ZERO;
+
+    private Builder() {
+    }
+
+    /**
+     * Creates a new throttle using the current configuration.
+     *
+     * @return a throttle.
+     */
+    @NonNull
+    public AttemptThrottle build() {
+      return new AttemptThrottle(this);
+    }
+
+    /**
+     * Retrieves the amount of attempts an account may submit at once (defaults to 5).
+     *
+     * @return an amount of attempts.
+     */
+    public int burst() {
+      return this.burst;
+    }
+
+    /**
+     * Sets the amount of attempts an account may submit at once.
+     *
+     * @param burst an amount of attempts.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the amount is smaller than one.
+     */
+    @NonNull
+    public Builder burst(int burst) {
+      if (burst < 1) {
+        throw new IllegalArgumentException("Burst must be at least one");
+      }
+
+      this.burst = burst;
+      return this;
+    }
+
+    /**
+     * Retrieves the amount of slots within the table (defaults to 65536).
+     *
+     * @return an amount of slots.
+     */
+    public int capacity() {
+      return this.capacity;
+    }
+
+    /**
+     * Sets the amount of slots within the table (rounded up to the next power of two).
+     *
+     * Each slot occupies eight bytes.
+     *
+     * @param capacity an amount of slots.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the capacity is smaller than one or exceeds 2^30.
+     */
+    @NonNull
+    public Builder capacity(int capacity) {
+      if (capacity < 1 || capacity > 1 << 30) {
+        throw new IllegalArgumentException("Capacity must be within [1, 2^30]");
+      }
+
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Retrieves the clock which provides the current time (defaults to {@link
+     * Clock#systemUTC()}).
+     *
+     * @return a clock.
+     */
+    @NonNull
+    public Clock clock() {
+      return this.clock;
+    }
+
+    /**
+     * Sets the clock which provides the current time.
+     *
+     * @param clock a clock.
+     * @return a reference to this builder.
+     */
+    @NonNull
+    public Builder clock(@NonNull Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Retrieves the interval at which further attempts are permitted once the burst has been
+     * exhausted (defaults to 30 seconds).
+     *
+     * @return an interval.
+     */
+    @NonNull
+    public Duration interval() {
+      return this.interval;
+    }
+
+    /**
+     * Sets the interval at which further attempts are permitted once the burst has been
+     * exhausted.
+     *
+     * @param interval an interval.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the interval is shorter than one millisecond.
+     */
+    @NonNull
+    public Builder interval(@NonNull Duration interval) {
+      if (interval.toMillis() < 1) {
+        throw new IllegalArgumentException("Interval must be at least one millisecond");
+      }
+
+      this.interval = interval;
+      return this;
+    }
+
+    /**
+     * Retrieves the delay which is added for each failed attempt (defaults to zero).
+     *
+     * @return a delay.
+     */
+    @NonNull
+    public Duration penalty() {
+      return this.penalty;
+    }
+
+    /**
+     * Sets the delay which is added for each failed attempt.
+     *
+     * @param penalty a delay.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when a negative delay is supplied.
+     */
+    @NonNull
+    public Builder penalty(@NonNull Duration penalty) {
+      if (penalty.isNegative()) {
+        throw new IllegalArgumentException("Penalty cannot be negative");
+      }
+
+      this.penalty = penalty;
+      return this;
+    }
+  }
+}
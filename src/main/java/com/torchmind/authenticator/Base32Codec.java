@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Provides a table driven implementation of the Base32 encoding as specified in RFC 4648 section
+ * 6.
+ *
+ * In addition to the canonical representation, the codec supports the human readable
+ * representation which is used for handshake codes (lower case characters which are separated into
+ * groups of four by spaces). Both representations are produced and consumed in a single pass
+ * without intermediary strings.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Base32Codec {
+
+  private static final char[] UPPER_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+  private static final char[] LOWER_ALPHABET = "abcdefghijklmnopqrstuvwxyz234567".toCharArray();
+  private static final char PADDING = '=';
+  private static final char SEPARATOR = ' ';
+  private static final int GROUP_SIZE = 4;
+
+  /**
+   * Maps characters to their respective 5 bit values. Separators are mapped to {@link #SKIP}
+   * while all other characters outside of the alphabet are mapped to {@link #INVALID}.
+   */
+  private static final byte[] DECODE_TABLE = new byte[128];
+  private static final byte INVALID = -1;
+  private static final byte SKIP = -2;
+
+  static {
+    Arrays.fill(DECODE_TABLE, INVALID);
+
+    for (int i = 0; i < UPPER_ALPHABET.length; ++i) {
+      DECODE_TABLE[UPPER_ALPHABET[i]] = (byte) i;
+      DECODE_TABLE[LOWER_ALPHABET[i]] = (byte) i;
+    }
+
+    DECODE_TABLE[SEPARATOR] = SKIP;
+  }
+
+  private Base32Codec() {
+  }
+
+  /**
+   * Calculates the amount of bytes which is required in order to store the decoded form of an
+   * encoded string of the specified length.
+   *
+   * The returned value is exact for canonical representations without padding and an upper bound
+   * for all other representations.
+   *
+   * @param length an encoded length.
+   * @return a maximum amount of bytes.
+   */
+  static int decodedLength(int length) {
+    return (int) (length * 5L / 8);
+  }
+
+  /**
+   * Decodes the specified Base32 representation.
+   *
+   * @param code an encoded representation.
+   * @return a decoded array.
+   * @throws IllegalArgumentException when the code contains characters outside of the alphabet.
+   */
+  @NonNull
+  static byte[] decode(@NonNull CharSequence code) {
+    byte[] buffer = new byte[decodedLength(code.length())];
+    int length = decode(code, buffer, 0);
+
+    return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+  }
+
+  /**
+   * Decodes the specified region of a Base32 representation into a byte array.
+   *
+   * @param code an array containing the encoded representation.
+   * @param offset the offset of the representation within the array.
+   * @param length the length of the representation.
+   * @param destination a destination array.
+   * @param destinationOffset an offset within the destination array.
+   * @return the amount of decoded bytes.
+   * @throws IllegalArgumentException when the code contains characters outside of the alphabet.
+   * @throws IndexOutOfBoundsException when the destination array is too small.
+   */
+  static int decode(@NonNull char[] code, int offset, int length, @NonNull byte[] destination,
+      int destinationOffset) {
+    return decode(CharBuffer.wrap(code, offset, length), destination, destinationOffset);
+  }
+
+  /**
+   * Decodes the specified Base32 representation into a byte array.
+   *
+   * Upper and lower case characters are accepted interchangeably while spaces are skipped. Decoding
+   * stops at the first padding character. Trailing bits which do not form a complete byte are
+   * discarded.
+   *
+   * @param code an encoded representation.
+   * @param destination a destination array.
+   * @param destinationOffset an offset within the destination array.
+   * @return the amount of decoded bytes.
+   * @throws IllegalArgumentException when the code contains characters outside of the alphabet.
+   * @throws IndexOutOfBoundsException when the destination array is too small.
+   */
+  static int decode(@NonNull CharSequence code, @NonNull byte[] destination,
+      int destinationOffset) {
+    return decode(code, 0, code.length(), destination, destinationOffset);
+  }
+
+  /**
+   * Decodes the specified region of a Base32 representation into a byte array.
+   *
+   * @param code a sequence containing the encoded representation.
+   * @param start the index of the first character of the representation.
+   * @param end the index following the last character of the representation.
+   * @param destination a destination array.
+   * @param destinationOffset an offset within the destination array.
+   * @return the amount of decoded bytes.
+   * @throws IllegalArgumentException when the code contains characters outside of the alphabet.
+   * @throws IndexOutOfBoundsException when the destination array is too small.
+   * @see #decode(CharSequence, byte[], int)
+   */
+  static int decode(@NonNull CharSequence code, int start, int end, @NonNull byte[] destination,
+      int destinationOffset) {
+    int position = destinationOffset;
+    int buffer = 0;
+    int bits = 0;
+
+    for (int i = start; i < end; ++i) {
+      char c = code.charAt(i);
+
+      if (c == PADDING) {
+        break;
+      }
+
+      int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : INVALID;
+
+      if (value == SKIP) {
+        continue;
+      }
+      if (value == INVALID) {
+        throw new IllegalArgumentException("Illegal character at index " + i + ": " + c);
+      }
+
+      buffer = (buffer << 5) | value;
+      bits += 5;
+
+      if (bits >= 8) {
+        bits -= 8;
+        destination[position++] = (byte) (buffer >>> bits);
+      }
+    }
+
+    return position - destinationOffset;
+  }
+
+  /**
+   * Calculates the amount of characters which is required in order to encode the specified amount
+   * of bytes.
+   *
+   * @param length an amount of bytes.
+   * @param humanReadable true if the human readable representation is to be produced.
+   * @return an amount of characters.
+   */
+  static int encodedLength(int length, boolean humanReadable) {
+    int characters = (length + 4) / 5 * 8;
+
+    if (humanReadable && characters != 0) {
+      characters += (characters - 1) / GROUP_SIZE;
+    }
+
+    return characters;
+  }
+
+  /**
+   * Encodes the specified bytes into their canonical or human readable Base32 representation.
+   *
+   * @param data an array of bytes.
+   * @param humanReadable true if the human readable representation is to be produced.
+   * @return an encoded representation.
+   */
+  @NonNull
+  static String encode(@NonNull byte[] data, boolean humanReadable) {
+    char[] buffer = new char[encodedLength(data.length, humanReadable)];
+    encode(data, 0, data.length, buffer, 0, humanReadable);
+
+    return new String(buffer);
+  }
+
+  /**
+   * Encodes the specified region of a byte array into a character array.
+   *
+   * The canonical representation consists of upper case characters and is padded to a multiple of
+   * eight characters. The human readable representation additionally consists of lower case
+   * characters and separates groups of four characters with a single space.
+   *
+   * @param data an array of bytes.
+   * @param offset the offset of the region within the array.
+   * @param length the length of the region.
+   * @param destination a destination array.
+   * @param destinationOffset an offset within the destination array.
+   * @param humanReadable true if the human readable representation is to be produced.
+   * @return the amount of characters written.
+   * @throws IndexOutOfBoundsException when the destination array is too small.
+   */
+  static int encode(@NonNull byte[] data, int offset, int length, @NonNull char[] destination,
+      int destinationOffset, boolean humanReadable) {
+    char[] alphabet = humanReadable ? LOWER_ALPHABET : UPPER_ALPHABET;
+    int position = destinationOffset;
+    int written = 0;
+    int end = offset + length;
+
+    for (int i = offset; i < end; i += 5) {
+      int remaining = Math.min(5, end - i);
+      long block = 0;
+
+      for (int j = 0; j < 5; ++j) {
+        block = (block << 8) | (j < remaining ? data[i + j] & 0xFF : 0);
+      }
+
+      // each complete byte contributes eight bits and thus a partial block of n bytes results in
+      // ceil(n * 8 / 5) significant characters followed by padding
+      int significant = (remaining * 8 + 4) / 5;
+
+      for (int j = 0; j < 8; ++j) {
+        if (humanReadable && written != 0 && written % GROUP_SIZE == 0) {
+          destination[position++] = SEPARATOR;
+        }
+
+        destination[position++] =
+            j < significant ? alphabet[(int) (block >>> (35 - j * 5)) & 0x1F] : PADDING;
+        ++written;
+      }
+    }
+
+    return position - destinationOffset;
+  }
+}
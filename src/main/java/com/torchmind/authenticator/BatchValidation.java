@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.SecretKey;
+
+/**
+ * Validates a batch of time based codes by recursively splitting it into chunks which are
+ * processed in parallel.
+ *
+ * Each worker thread relies on its own cached HMAC state and buffers and thus no state is shared
+ * between chunks aside from the (disjoint) regions of the result arrays.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class BatchValidation extends RecursiveAction {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Defines the amount of entries below which a chunk is processed directly.
+   */
+  private static final int THRESHOLD = 256;
+
+  private final transient PeriodTokenGenerator generator;
+  private final transient SecretKey[] secretKeys;
+  private final int[] codes;
+  private final long[] timestamps;
+  private final int pastSteps;
+  private final int futureSteps;
+  private final int[] offsets;
+  private final boolean[] results;
+  private final int from;
+  private final int to;
+
+  BatchValidation(@NonNull PeriodTokenGenerator generator, @NonNull SecretKey[] secretKeys,
+      @NonNull int[] codes, @NonNull long[] timestamps, int pastSteps, int futureSteps,
+      @Nullable int[] offsets, @Nullable boolean[] results) {
+    this(generator, secretKeys, codes, timestamps, pastSteps, futureSteps, offsets, results, 0,
+        secretKeys.length);
+
+    if (pastSteps < 0 || futureSteps < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    int length = secretKeys.length;
+    if (codes.length != length || timestamps.length != length
+        || (offsets != null && offsets.length != length)
+        || (results != null && results.length != length)) {
+      throw new IllegalArgumentException("Batch arrays must be of equal length");
+    }
+  }
+
+  private BatchValidation(@NonNull PeriodTokenGenerator generator, @NonNull SecretKey[] secretKeys,
+      @NonNull int[] codes, @NonNull long[] timestamps, int pastSteps, int futureSteps,
+      @Nullable int[] offsets, @Nullable boolean[] results, int from, int to) {
+    this.generator = generator;
+    this.secretKeys = secretKeys;
+    this.codes = codes;
+    this.timestamps = timestamps;
+    this.pastSteps = pastSteps;
+    this.futureSteps = futureSteps;
+    this.offsets = offsets;
+    this.results = results;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void compute() {
+    if (this.to - this.from <= THRESHOLD) {
+      this.validate(this.from, this.to);
+      return;
+    }
+
+    int middle = (this.from + this.to) >>> 1;
+    invokeAll(this.slice(this.from, middle), this.slice(middle, this.to));
+  }
+
+  /**
+   * Executes this validation using the specified executor and blocks until all entries have been
+   * processed.
+   *
+   * When a {@link ForkJoinPool} is passed, the batch is split recursively. Otherwise the batch is
+   * split into one chunk per available processor.
+   *
+   * @param executor an executor.
+   * @throws IllegalStateException when the calling thread is interrupted.
+   */
+  void execute(@NonNull Executor executor) {
+    if (executor instanceof ForkJoinPool) {
+      ((ForkJoinPool) executor).invoke(this);
+      return;
+    }
+
+    int length = this.to - this.from;
+    int chunks = Math.max(1,
+        Math.min(Runtime.getRuntime().availableProcessors(), (length + THRESHOLD - 1) / THRESHOLD));
+    int chunkSize = (length + chunks - 1) / chunks;
+
+    CountDownLatch latch = new CountDownLatch(chunks);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    for (int i = 0; i < chunks; ++i) {
+      int start = this.from + i * chunkSize;
+      int end = Math.min(this.to, start + chunkSize);
+
+      executor.execute(() -> {
+        try {
+          this.validate(start, end);
+        } catch (RuntimeException ex) {
+          failure.compareAndSet(null, ex);
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while awaiting batch validation", ex);
+    }
+
+    RuntimeException ex = failure.get();
+    if (ex != null) {
+      throw ex;
+    }
+  }
+
+  @NonNull
+  private BatchValidation slice(int from, int to) {
+    return new BatchValidation(this.generator, this.secretKeys, this.codes, this.timestamps,
+        this.pastSteps, this.futureSteps, this.offsets, this.results, from, to);
+  }
+
+  private void validate(int from, int to) {
+    for (int i = from; i < to; ++i) {
+      int offset = this.generator.findCodeOffset(this.secretKeys[i], this.codes[i],
+          this.generator.getTimeStep(this.timestamps[i]), this.pastSteps, this.futureSteps);
+
+      if (this.offsets != null) {
+        this.offsets[i] = offset;
+      }
+      if (this.results != null) {
+        this.results[i] = offset != ValidationResult.NO_MATCH;
+      }
+    }
+  }
+}
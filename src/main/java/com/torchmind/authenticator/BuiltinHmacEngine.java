@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a base for pure Java HMAC engines which are specialized for 8 byte messages.
+ *
+ * Since every challenge fits into a single block, the HMAC of a challenge can be computed using
+ * exactly two invocations of the compression function when the states which result from absorbing
+ * the inner and outer padded keys (the so called midstates) are known in advance. These midstates
+ * are computed once per key and retained per thread along with all working buffers. As a result,
+ * repeated computations for the same key instance do not allocate at all.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+abstract class BuiltinHmacEngine extends HmacEngine {
+
+  private static final byte INNER_PAD = 0x36;
+  private static final byte OUTER_PAD = 0x5C;
+
+  private final int blockSize;
+  private final String digestAlgorithm;
+  private final ThreadLocal<State> states = new ThreadLocal<>();
+
+  BuiltinHmacEngine(int blockSize, @NonNull String digestAlgorithm) {
+    this.blockSize = blockSize;
+    this.digestAlgorithm = digestAlgorithm;
+  }
+
+  /**
+   * Creates a new set of per-thread working state.
+   *
+   * @return a state.
+   */
+  @NonNull
+  abstract State createState();
+
+  /**
+   * Retrieves the state of the calling thread.
+   *
+   * @return a state.
+   */
+  @NonNull
+  final State state() {
+    State state = this.states.get();
+
+    if (state == null) {
+      state = this.createState();
+      this.states.set(state);
+    }
+
+    return state;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  final void prepare() throws NoSuchAlgorithmException {
+    // the digest is only consulted for oversized keys but its absence should surface right away
+    MessageDigest.getInstance(this.digestAlgorithm);
+    this.state();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  final int truncate(@NonNull SecretKey secretKey, long challenge) throws InvalidKeyException {
+    return this.keyedState(secretKey).truncate(challenge);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  final void truncate(@NonNull SecretKey secretKey, long challenge, @NonNull int[] destination,
+      int offset, int count) throws InvalidKeyException {
+    State state = this.keyedState(secretKey);
+
+    for (int i = 0; i < count; ++i) {
+      destination[offset + i] = state.truncate(challenge + i);
+    }
+  }
+
+  /**
+   * Retrieves the state of the calling thread and prepares it for use with the specified key.
+   *
+   * @param secretKey a secret key.
+   * @return a state.
+   * @throws InvalidKeyException when the key does not provide an encoded form.
+   */
+  @NonNull
+  private State keyedState(@NonNull SecretKey secretKey) throws InvalidKeyException {
+    State state = this.state();
+
+    if (state.key != secretKey) {
+      byte[] encoded = secretKey.getEncoded();
+
+      if (encoded == null) {
+        throw new InvalidKeyException("Key does not provide an encoded form");
+      }
+
+      state.key = null;
+      state.rawLength = -1;
+      this.initialize(state, encoded, 0, encoded.length);
+      state.key = secretKey;
+
+      Arrays.fill(encoded, (byte) 0);
+    }
+
+    return state;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  final int truncate(@NonNull byte[] key, int offset, int length, long challenge) {
+    State state = this.state();
+
+    if (state.key != null || !isCached(state.raw, state.rawLength, key, offset, length)) {
+      state.key = null;
+      state.rawLength = -1;
+      this.initialize(state, key, offset, length);
+
+      if (length <= state.raw.length) {
+        System.arraycopy(key, offset, state.raw, 0, length);
+        state.rawLength = length;
+      }
+    }
+
+    return state.truncate(challenge);
+  }
+
+  /**
+   * Computes the inner and outer midstates for a given key.
+   *
+   * Keys which exceed the block size of the underlying hash function are hashed first as
+   * specified in RFC 2104 section 2.
+   *
+   * @param state a state.
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   */
+  final void initialize(@NonNull State state, @NonNull byte[] key, int offset, int length) {
+    if (length > this.blockSize) {
+      try {
+        MessageDigest digest = MessageDigest.getInstance(this.digestAlgorithm);
+        digest.update(key, offset, length);
+
+        key = digest.digest();
+        offset = 0;
+        length = key.length;
+      } catch (NoSuchAlgorithmException ex) {
+        throw new IllegalStateException(
+            "Mandatory digest algorithm is not supported: " + this.digestAlgorithm, ex);
+      }
+    }
+
+    byte[] block = state.block;
+    Arrays.fill(block, INNER_PAD);
+    for (int i = 0; i < length; ++i) {
+      block[i] ^= key[offset + i];
+    }
+    state.absorbInner(block);
+
+    Arrays.fill(block, OUTER_PAD);
+    for (int i = 0; i < length; ++i) {
+      block[i] ^= key[offset + i];
+    }
+    state.absorbOuter(block);
+
+    Arrays.fill(block, (byte) 0);
+  }
+
+  /**
+   * Represents the working state of a single thread.
+   */
+  abstract static class State {
+
+    final byte[] block;
+    final byte[] raw;
+    SecretKey key;
+    int rawLength = -1;
+
+    State(int blockSize) {
+      this.block = new byte[blockSize];
+      this.raw = new byte[blockSize];
+    }
+
+    /**
+     * Computes the inner midstate from the inner padded key block.
+     *
+     * @param block a block.
+     */
+    abstract void absorbInner(@NonNull byte[] block);
+
+    /**
+     * Computes the outer midstate from the outer padded key block.
+     *
+     * @param block a block.
+     */
+    abstract void absorbOuter(@NonNull byte[] block);
+
+    /**
+     * Computes the HMAC of a challenge using the current midstates and applies the dynamic
+     * truncation.
+     *
+     * @param challenge a challenge.
+     * @return a 31 bit truncated hash value.
+     */
+    abstract int truncate(long challenge);
+  }
+}
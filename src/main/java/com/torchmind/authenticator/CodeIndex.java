@@ -0,0 +1,776 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a reverse index which maps time based codes back to the accounts they belong to.
+ *
+ * The index precomputes the codes of all registered accounts for every time step within the
+ * validation window and stores them within primitive open addressing tables. As a result, look-ups
+ * are performed in constant time and do not require any HMAC computations on the calling thread.
+ *
+ * When started, the index computes the table for the upcoming time step shortly before each period
+ * boundary in the background. Since tables of past steps are retained for as long as they remain
+ * within the window, only a single table is computed per period. Look-ups never compute tables
+ * themselves: Time steps which are not covered by the current tables (for instance because the
+ * background maintenance has fallen behind) are treated as if no account matched and the
+ * background task is asked to catch up instead. Indices which have not been started are only
+ * updated when {@link #refresh()} is invoked.
+ *
+ * Accounts which are registered, replaced or unregistered are applied to the existing tables
+ * immediately by computing the codes of the affected account only. Codes of newly registered
+ * accounts are collected within small supplementary tables which are merged into the main tables
+ * once they grow beyond the square root of their size.
+ *
+ * <strong>Note:</strong> Since codes consist of very few digits, multiple accounts are bound to
+ * share the same code within larger populations. Callers are thus expected to handle
+ * {@link #AMBIGUOUS} results (for instance by prompting for the account name).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class CodeIndex implements AutoCloseable {
+
+  /**
+   * Indicates that no account matches a code.
+   */
+  public static final long NOT_FOUND = Long.MIN_VALUE;
+
+  /**
+   * Indicates that more than one account matches a code.
+   */
+  public static final long AMBIGUOUS = Long.MIN_VALUE + 1;
+
+  private final PeriodTokenGenerator generator;
+  private final int pastSteps;
+  private final int futureSteps;
+
+  /**
+   * Defines the smallest amount of entries at which supplementary tables are merged.
+   */
+  private static final int MINIMUM_MERGE_THRESHOLD = 64;
+
+  private final Object rebuildLock = new Object();
+  private long[] accountIds = new long[16];
+  private SecretKey[] secretKeys = new SecretKey[16];
+  private int accountCount;
+
+  private volatile Snapshot snapshot;
+  private volatile ScheduledExecutorService scheduler;
+  private ScheduledFuture<?> task;
+  private final AtomicBoolean catchingUp = new AtomicBoolean();
+
+  CodeIndex(@NonNull PeriodTokenGenerator generator, int pastSteps, int futureSteps) {
+    if (pastSteps < 0 || futureSteps < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    this.generator = generator;
+    this.pastSteps = pastSteps;
+    this.futureSteps = futureSteps;
+  }
+
+  /**
+   * Stops the background maintenance of this index.
+   */
+  @Override
+  public synchronized void close() {
+    if (this.task != null) {
+      this.task.cancel(false);
+    }
+
+    this.scheduler = null;
+    this.task = null;
+  }
+
+  /**
+   * Looks up the account which a code belongs to at the current time.
+   *
+   * @param code a code.
+   * @return an account identifier, {@link #NOT_FOUND} or {@link #AMBIGUOUS}.
+   */
+  public long lookup(@NonNull CharSequence code) {
+    int value = this.generator.parseCodeValue(code);
+    return value == -1 ? NOT_FOUND : this.lookup(value);
+  }
+
+  /**
+   * Looks up the account which a numeric code belongs to at the current time.
+   *
+   * @param code a numeric code.
+   * @return an account identifier, {@link #NOT_FOUND} or {@link #AMBIGUOUS}.
+   */
+  public long lookup(int code) {
+    return this.lookup(code, this.generator.getCurrentTimeStep());
+  }
+
+  /**
+   * Looks up the account which a numeric code belongs to at a specific time.
+   *
+   * @param code a numeric code.
+   * @param timestamp a timestamp.
+   * @return an account identifier, {@link #NOT_FOUND} or {@link #AMBIGUOUS}.
+   */
+  public long lookup(int code, @NonNull Instant timestamp) {
+    return this.lookup(code, this.generator.getTimeStep(timestamp));
+  }
+
+  private long lookup(int code, long step) {
+    Snapshot snapshot = this.snapshot(step);
+    long result = NOT_FOUND;
+
+    if (snapshot == null) {
+      return result;
+    }
+
+    for (long i = step - this.pastSteps; i <= step + this.futureSteps; ++i) {
+      result = merge(result, snapshot.lookup(i, code));
+
+      if (result == AMBIGUOUS) {
+        return AMBIGUOUS;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Combines two look-up results.
+   *
+   * @param first an account identifier, {@link #NOT_FOUND} or {@link #AMBIGUOUS}.
+   * @param second an account identifier, {@link #NOT_FOUND} or {@link #AMBIGUOUS}.
+   * @return an account identifier, {@link #NOT_FOUND} or {@link #AMBIGUOUS}.
+   */
+  private static long merge(long first, long second) {
+    if (first == NOT_FOUND) {
+      return second;
+    }
+    if (second == NOT_FOUND || first == second) {
+      return first;
+    }
+
+    return AMBIGUOUS;
+  }
+
+  /**
+   * Looks up all accounts which a numeric code belongs to at a specific time.
+   *
+   * @param code a numeric code.
+   * @param timestamp a timestamp.
+   * @param destination an array to which the matching account identifiers are written.
+   * @return the total amount of matching accounts (which may exceed the length of the destination
+   * array).
+   */
+  public int lookupAll(int code, @NonNull Instant timestamp, @NonNull long[] destination) {
+    long step = this.generator.getTimeStep(timestamp);
+    Snapshot snapshot = this.snapshot(step);
+    int count = 0;
+
+    if (snapshot == null) {
+      return count;
+    }
+
+    for (long i = step - this.pastSteps; i <= step + this.futureSteps; ++i) {
+      count = snapshot.lookupAll(i, code, destination, count);
+    }
+
+    return count;
+  }
+
+  /**
+   * Recomputes all tables for the current time step.
+   */
+  public void refresh() {
+    this.rebuild(this.generator.getCurrentTimeStep(), true);
+  }
+
+  /**
+   * Recomputes all tables for the time step of a specific timestamp.
+   *
+   * @param timestamp a timestamp.
+   */
+  public void refresh(@NonNull Instant timestamp) {
+    this.rebuild(this.generator.getTimeStep(timestamp), true);
+  }
+
+  /**
+   * Registers an account with this index.
+   *
+   * The codes of the account are computed for all time steps which are covered by the current
+   * tables and become visible once this method returns.
+   *
+   * @param accountId an account identifier.
+   * @param secretKey a secret key.
+   * @throws IllegalArgumentException when a reserved account identifier is passed.
+   */
+  public void register(long accountId, @NonNull SecretKey secretKey) {
+    checkAccountId(accountId);
+
+    synchronized (this.rebuildLock) {
+      if (this.accountCount == this.accountIds.length) {
+        this.accountIds = Arrays.copyOf(this.accountIds, this.accountCount * 2);
+        this.secretKeys = Arrays.copyOf(this.secretKeys, this.accountCount * 2);
+      }
+
+      this.accountIds[this.accountCount] = accountId;
+      this.secretKeys[this.accountCount] = secretKey;
+      ++this.accountCount;
+
+      Snapshot snapshot = this.snapshot;
+      if (snapshot != null) {
+        this.snapshot = this.insert(snapshot, accountId, secretKey);
+      }
+    }
+  }
+
+  /**
+   * Replaces the secret of an account (or registers the account if it is not yet known to this
+   * index).
+   *
+   * @param accountId an account identifier.
+   * @param secretKey a secret key.
+   * @throws IllegalArgumentException when a reserved account identifier is passed.
+   */
+  public void replace(long accountId, @NonNull SecretKey secretKey) {
+    checkAccountId(accountId);
+
+    synchronized (this.rebuildLock) {
+      this.unregister(accountId);
+      this.register(accountId, secretKey);
+    }
+  }
+
+  /**
+   * Removes an account from this index.
+   *
+   * The codes of the account are removed from all current tables before this method returns.
+   *
+   * @param accountId an account identifier.
+   * @return true if the account was registered, false otherwise.
+   */
+  public boolean unregister(long accountId) {
+    boolean removed = false;
+
+    synchronized (this.rebuildLock) {
+      for (int i = this.accountCount - 1; i >= 0; --i) {
+        if (this.accountIds[i] != accountId) {
+          continue;
+        }
+
+        SecretKey secretKey = this.secretKeys[i];
+        int last = --this.accountCount;
+        this.accountIds[i] = this.accountIds[last];
+        this.secretKeys[i] = this.secretKeys[last];
+        this.secretKeys[last] = null;
+
+        Snapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+          this.snapshot = this.remove(snapshot, accountId, secretKey);
+        }
+
+        removed = true;
+      }
+    }
+
+    return removed;
+  }
+
+  private static void checkAccountId(long accountId) {
+    if (accountId == NOT_FOUND || accountId == AMBIGUOUS) {
+      throw new IllegalArgumentException("Account identifier " + accountId + " is reserved");
+    }
+  }
+
+  /**
+   * Adds the codes of an account to a snapshot.
+   *
+   * @param snapshot a snapshot.
+   * @param accountId an account identifier.
+   * @param secretKey a secret key.
+   * @return an updated snapshot.
+   */
+  @NonNull
+  private Snapshot insert(@NonNull Snapshot snapshot, long accountId,
+      @NonNull SecretKey secretKey) {
+    CodeTable[] tables = snapshot.tables.clone();
+    CodeTable[] additions = snapshot.additions.clone();
+
+    for (int i = 0; i < tables.length; ++i) {
+      CodeTable addition = CodeTable.copyOf(additions[i], 1);
+      addition.insert(this.generator.generateCodeValue(secretKey, snapshot.firstStep + i),
+          accountId);
+
+      // supplementary tables are copied on every registration while merging copies the entire
+      // main table and thus balancing both results in a cost of roughly 2 * sqrt(n) per account
+      if (addition.size > Math.max(MINIMUM_MERGE_THRESHOLD, (int) Math.sqrt(tables[i].size))) {
+        tables[i] = CodeTable.merge(tables[i], addition);
+        addition = null;
+      }
+
+      additions[i] = addition;
+    }
+
+    return new Snapshot(snapshot.step, snapshot.firstStep, tables, additions);
+  }
+
+  /**
+   * Removes the codes of an account from a snapshot.
+   *
+   * @param snapshot a snapshot.
+   * @param accountId an account identifier.
+   * @param secretKey the secret key the account was registered with.
+   * @return an updated snapshot.
+   */
+  @NonNull
+  private Snapshot remove(@NonNull Snapshot snapshot, long accountId,
+      @NonNull SecretKey secretKey) {
+    CodeTable[] tables = snapshot.tables.clone();
+    CodeTable[] additions = snapshot.additions.clone();
+
+    for (int i = 0; i < tables.length; ++i) {
+      int code = this.generator.generateCodeValue(secretKey, snapshot.firstStep + i);
+
+      tables[i] = tables[i].without(code, accountId);
+      if (additions[i] != null) {
+        additions[i] = additions[i].without(code, accountId);
+      }
+    }
+
+    return new Snapshot(snapshot.step, snapshot.firstStep, tables, additions);
+  }
+
+  /**
+   * Starts maintaining this index in the background.
+   *
+   * The tables for the upcoming time step are computed shortly (a quarter of the period but at
+   * most five seconds) before each period boundary.
+   *
+   * @param scheduler a scheduler.
+   * @throws IllegalStateException when the index has already been started.
+   */
+  public synchronized void start(@NonNull ScheduledExecutorService scheduler) {
+    if (this.scheduler != null) {
+      throw new IllegalStateException("Index has already been started");
+    }
+
+    this.refresh();
+    this.scheduler = scheduler;
+    this.schedule();
+  }
+
+  /**
+   * Schedules the computation of the tables for the upcoming time step.
+   */
+  private synchronized void schedule() {
+    if (this.scheduler == null) {
+      return;
+    }
+
+    long periodMillis = this.generator.getPeriod().toMillis();
+    long leadMillis = Math.min(periodMillis / 4, 5000);
+    long now = this.generator.currentTimeMillis();
+    long nextStep = now / periodMillis + 1;
+    long delay = Math.max(0, nextStep * periodMillis - leadMillis - now);
+
+    this.task = this.scheduler.schedule(() -> {
+      try {
+        this.rebuild(nextStep, false);
+      } finally {
+        this.schedule();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Retrieves the current snapshot for a look-up at the specified time step.
+   *
+   * When the snapshot does not cover the entire window surrounding the step (for instance because
+   * the background maintenance has fallen behind), the background task is asked to catch up while
+   * the look-up is served from the tables which are available.
+   *
+   * @param step a time step.
+   * @return a snapshot or null if no tables have been computed yet.
+   */
+  @Nullable
+  private Snapshot snapshot(long step) {
+    Snapshot snapshot = this.snapshot;
+
+    if (snapshot == null || !snapshot.covers(step - this.pastSteps, step + this.futureSteps)) {
+      this.catchUp();
+    }
+
+    return snapshot;
+  }
+
+  /**
+   * Requests the computation of the tables for the current time step in the background unless
+   * such a computation is already pending or the index has not been started.
+   */
+  private void catchUp() {
+    ScheduledExecutorService scheduler = this.scheduler;
+
+    if (scheduler == null || !this.catchingUp.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      scheduler.execute(() -> {
+        try {
+          this.rebuild(this.generator.getCurrentTimeStep(), false);
+        } finally {
+          this.catchingUp.set(false);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      this.catchingUp.set(false);
+    }
+  }
+
+  /**
+   * Computes the tables for the window surrounding the specified time step while retaining the
+   * tables of all steps which remain within the window of the current snapshot.
+   *
+   * @param step a time step.
+   * @param force true if all tables are to be recomputed.
+   * @return an updated snapshot.
+   */
+  @NonNull
+  private Snapshot rebuild(long step, boolean force) {
+    synchronized (this.rebuildLock) {
+      Snapshot previous = this.snapshot;
+      boolean reuse = previous != null && !force;
+
+      // when moving on to an adjacent time step, the window of the previous step is retained as
+      // well so that look-ups which occur before the period boundary are still served
+      long firstStep = step - this.pastSteps;
+      long lastStep = step + this.futureSteps;
+      if (previous != null && Math.abs(previous.step - step) <= 1) {
+        firstStep = Math.min(step, previous.step) - this.pastSteps;
+        lastStep = Math.max(step, previous.step) + this.futureSteps;
+      }
+
+      if (reuse && previous.firstStep == firstStep
+          && previous.firstStep + previous.tables.length - 1 == lastStep) {
+        return previous;
+      }
+
+      long[] accountIds = Arrays.copyOf(this.accountIds, this.accountCount);
+      SecretKey[] secretKeys = Arrays.copyOf(this.secretKeys, this.accountCount);
+      CodeTable[] tables = new CodeTable[(int) (lastStep - firstStep + 1)];
+
+      for (int i = 0; i < tables.length; ++i) {
+        CodeTable table = reuse ? previous.mergedTable(firstStep + i) : null;
+
+        if (table == null) {
+          table = this.computeTable(accountIds, secretKeys, firstStep + i);
+        }
+
+        tables[i] = table;
+      }
+
+      return this.snapshot = new Snapshot(step, firstStep, tables, new CodeTable[tables.length]);
+    }
+  }
+
+  /**
+   * Computes the codes of all accounts for a given time step in parallel.
+   *
+   * @param accountIds an array of account identifiers.
+   * @param secretKeys an array of secret keys.
+   * @param step a time step.
+   * @return a table.
+   */
+  @NonNull
+  private CodeTable computeTable(@NonNull long[] accountIds, @NonNull SecretKey[] secretKeys,
+      long step) {
+    int[] codes = new int[accountIds.length];
+    IntStream.range(0, accountIds.length).parallel()
+        .forEach((i) -> codes[i] = this.generator.generateCodeValue(secretKeys[i], step));
+
+    CodeTable table = new CodeTable(accountIds.length);
+    for (int i = 0; i < codes.length; ++i) {
+      table.insert(codes[i], accountIds[i]);
+    }
+
+    return table;
+  }
+
+  /**
+   * Represents an immutable set of tables which cover a continuous range of time steps.
+   *
+   * Each step is covered by a main table and an optional supplementary table which holds the
+   * codes of accounts which have been registered since the main table was computed.
+   */
+  private static final class Snapshot {
+
+    private final long step;
+    private final long firstStep;
+    private final CodeTable[] tables;
+    private final CodeTable[] additions;
+
+    private Snapshot(long step, long firstStep, @NonNull CodeTable[] tables,
+        @NonNull CodeTable[] additions) {
+      this.step = step;
+      this.firstStep = firstStep;
+      this.tables = tables;
+      this.additions = additions;
+    }
+
+    private boolean covers(long firstStep, long lastStep) {
+      return this.firstStep <= firstStep && this.firstStep + this.tables.length - 1 >= lastStep;
+    }
+
+    private int index(long step) {
+      long index = step - this.firstStep;
+      return index < 0 || index >= this.tables.length ? -1 : (int) index;
+    }
+
+    private long lookup(long step, int code) {
+      int index = this.index(step);
+
+      if (index == -1) {
+        return NOT_FOUND;
+      }
+
+      long result = this.tables[index].lookup(code);
+      CodeTable addition = this.additions[index];
+      return addition == null ? result : merge(result, addition.lookup(code));
+    }
+
+    private int lookupAll(long step, int code, @NonNull long[] destination, int count) {
+      int index = this.index(step);
+
+      if (index == -1) {
+        return count;
+      }
+
+      count = this.tables[index].lookupAll(code, destination, count);
+      CodeTable addition = this.additions[index];
+      return addition == null ? count : addition.lookupAll(code, destination, count);
+    }
+
+    /**
+     * Retrieves a single table which holds all codes of a time step.
+     *
+     * @param step a time step.
+     * @return a table or null if the step is not covered by this snapshot.
+     */
+    @Nullable
+    private CodeTable mergedTable(long step) {
+      int index = this.index(step);
+
+      if (index == -1) {
+        return null;
+      }
+
+      CodeTable addition = this.additions[index];
+      return addition == null ? this.tables[index] : CodeTable.merge(this.tables[index], addition);
+    }
+  }
+
+  /**
+   * Provides an open addressing (linear probing) table of numeric codes to account identifiers.
+   *
+   * Codes which are shared by multiple accounts are stored in separate slots along the same probe
+   * sequence and are thus all discovered by a single look-up.
+   */
+  private static final class CodeTable {
+
+    private final int[] codes;
+    private final long[] accountIds;
+    private final int mask;
+    private int size;
+
+    private CodeTable(int entries) {
+      int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1);
+
+      this.codes = new int[capacity];
+      this.accountIds = new long[capacity];
+      this.mask = capacity - 1;
+
+      Arrays.fill(this.codes, -1);
+    }
+
+    private CodeTable(@NonNull CodeTable source) {
+      this.codes = source.codes.clone();
+      this.accountIds = source.accountIds.clone();
+      this.mask = source.mask;
+      this.size = source.size;
+    }
+
+    /**
+     * Creates a copy of a table which provides room for additional entries.
+     *
+     * @param source a table or null to create an empty table.
+     * @param additional an amount of additional entries.
+     * @return a table.
+     */
+    @NonNull
+    private static CodeTable copyOf(@Nullable CodeTable source, int additional) {
+      if (source == null) {
+        return new CodeTable(additional);
+      }
+
+      CodeTable table = new CodeTable(source.size + additional);
+      table.insertAll(source);
+      return table;
+    }
+
+    /**
+     * Creates a table which holds the entries of two tables.
+     *
+     * @param first a table.
+     * @param second a table.
+     * @return a table.
+     */
+    @NonNull
+    private static CodeTable merge(@NonNull CodeTable first, @NonNull CodeTable second) {
+      CodeTable table = copyOf(first, second.size);
+      table.insertAll(second);
+      return table;
+    }
+
+    private static int hash(int code) {
+      int hash = code * 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+
+    private void insert(int code, long accountId) {
+      int slot = hash(code) & this.mask;
+
+      while (this.codes[slot] != -1) {
+        slot = (slot + 1) & this.mask;
+      }
+
+      this.codes[slot] = code;
+      this.accountIds[slot] = accountId;
+      ++this.size;
+    }
+
+    private void insertAll(@NonNull CodeTable source) {
+      for (int slot = 0; slot < source.codes.length; ++slot) {
+        if (source.codes[slot] != -1) {
+          this.insert(source.codes[slot], source.accountIds[slot]);
+        }
+      }
+    }
+
+    /**
+     * Creates a copy of this table which lacks all entries of an account for a given code.
+     *
+     * @param code a numeric code.
+     * @param accountId an account identifier.
+     * @return a table or this table if the account does not occur within it.
+     */
+    @NonNull
+    private CodeTable without(int code, long accountId) {
+      CodeTable table = this;
+
+      for (int slot = hash(code) & this.mask; table.codes[slot] != -1; ) {
+        if (table.codes[slot] != code || table.accountIds[slot] != accountId) {
+          slot = (slot + 1) & this.mask;
+          continue;
+        }
+
+        if (table == this) {
+          table = new CodeTable(this);
+        }
+
+        // the deletion shifts a later entry into this slot and thus it is examined again
+        table.delete(slot);
+      }
+
+      return table;
+    }
+
+    /**
+     * Removes an entry by shifting subsequent entries of the same probe sequence backwards.
+     *
+     * @param slot a slot.
+     */
+    private void delete(int slot) {
+      int hole = slot;
+
+      for (int next = (hole + 1) & this.mask; this.codes[next] != -1;
+          next = (next + 1) & this.mask) {
+        int home = hash(this.codes[next]) & this.mask;
+
+        if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+          this.codes[hole] = this.codes[next];
+          this.accountIds[hole] = this.accountIds[next];
+          hole = next;
+        }
+      }
+
+      this.codes[hole] = -1;
+      --this.size;
+    }
+
+    private long lookup(int code) {
+      long result = NOT_FOUND;
+
+      for (int slot = hash(code) & this.mask; this.codes[slot] != -1;
+          slot = (slot + 1) & this.mask) {
+        if (this.codes[slot] == code) {
+          if (result != NOT_FOUND && result != this.accountIds[slot]) {
+            return AMBIGUOUS;
+          }
+
+          result = this.accountIds[slot];
+        }
+      }
+
+      return result;
+    }
+
+    private int lookupAll(int code, @NonNull long[] destination, int count) {
+      for (int slot = hash(code) & this.mask; this.codes[slot] != -1;
+          slot = (slot + 1) & this.mask) {
+        if (this.codes[slot] != code) {
+          continue;
+        }
+
+        long accountId = this.accountIds[slot];
+        boolean duplicate = false;
+        for (int i = 0; i < Math.min(count, destination.length); ++i) {
+          duplicate |= destination[i] == accountId;
+        }
+
+        if (!duplicate) {
+          if (count < destination.length) {
+            destination[count] = accountId;
+          }
+
+          ++count;
+        }
+      }
+
+      return count;
+    }
+  }
+}
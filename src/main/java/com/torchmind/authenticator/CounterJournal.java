@@ -0,0 +1,996 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Provides a crash safe persistent store of HOTP counters which is backed by a memory mapped,
+ * append only journal.
+ *
+ * Every counter advance is appended to the journal as a fixed size record which consists of the
+ * account identifier, the new counter value and a checksum. Appends are ordered by a short lock
+ * while a dedicated thread writes the journal to the storage device on behalf of all waiting
+ * threads (group commit). Hence, a single {@link MappedByteBuffer#force()} call typically covers
+ * the records of many concurrent advances. Methods which modify a counter do not return before its
+ * record has been written to the storage device and thus an acknowledged counter value is never
+ * handed out again after a crash. Their asynchronous counterparts return immediately and complete
+ * their result once the record is durable which permits a single thread to keep many advances in
+ * flight.
+ *
+ * Counters may only move forward. Since replaying any subset of the records thus yields the
+ * maximum of all persisted values for each account, the journal is replayed into an in-memory
+ * index on startup regardless of the order of its records. Torn writes are detected by their
+ * checksum and end the replay of the respective segment. Segments are rolled over once full and
+ * are periodically compacted in the background by writing a snapshot of the index which replaces
+ * all preceding segments. The directory is forced whenever a segment is created or a snapshot is
+ * put in place so that neither is lost along with its directory entry.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe. Account identifiers may be any
+ * value except for {@link Long#MIN_VALUE} and the counter of accounts which have never been
+ * advanced is zero. A directory may only be opened by a single journal at a time.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ * @see CounterTokenGenerator#validateCode(CharSequence, javax.crypto.SecretKey, CounterState, int)
+ */
+public final class CounterJournal implements AutoCloseable {
+
+  static final int RECORD_SIZE = 24;
+
+  private static final long MAGIC = 0x484F545043545231L;
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String SNAPSHOT_SUFFIX = ".snapshot";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  private static final int SNAPSHOT_BUFFER_SIZE = RECORD_SIZE * 4096;
+  private static final CompletableFuture<Boolean> REJECTED = CompletableFuture
+      .completedFuture(false);
+
+  private final Path directory;
+  private final int segmentCapacity;
+  private final long commitDelay;
+  private final int compactionThreshold;
+  private final StripedLongMap counters = new StripedLongMap();
+
+  // guarded by this
+  private final ArrayDeque<Segment> unforced = new ArrayDeque<>();
+  private final ArrayDeque<Commit> commits = new ArrayDeque<>();
+  private final List<Segment> retained = new ArrayList<>();
+  private Segment active;
+  private long appended;
+  private long forced;
+  private boolean syncWaiting;
+  private boolean closed;
+  private boolean failed;
+
+  // guarded by commitLock
+  private final Object commitLock = new Object();
+  private long durable;
+  private Throwable failure;
+
+  private final Object compactionLock = new Object();
+  private final AtomicBoolean compacting = new AtomicBoolean();
+  private final Thread syncThread;
+
+  private CounterJournal(@NonNull Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.segmentCapacity = builder.segmentCapacity;
+    this.commitDelay = builder.commitDelay.toNanos();
+    this.compactionThreshold = builder.compactionThreshold;
+
+    long generation = this.recover();
+    this.active = Segment.create(this.directory, generation, this.segmentCapacity);
+
+    this.syncThread = new Thread(this::sync, "counter-journal-sync");
+    this.syncThread.setDaemon(true);
+    this.syncThread.start();
+  }
+
+  /**
+   * Creates a new builder for a journal within the specified directory.
+   *
+   * @param directory a directory (which is created if necessary).
+   * @return a builder.
+   */
+  @NonNull
+  public static Builder builder(@NonNull Path directory) {
+    return new Builder(directory);
+  }
+
+  /**
+   * Opens or creates a journal within the specified directory using the default configuration.
+   *
+   * @param directory a directory (which is created if necessary).
+   * @return a journal.
+   * @throws IOException when recovering or creating the journal fails.
+   */
+  @NonNull
+  public static CounterJournal open(@NonNull Path directory) throws IOException {
+    return builder(directory).open();
+  }
+
+  /**
+   * Computes the checksum of a record.
+   *
+   * @param accountId an account identifier.
+   * @param counter a counter value.
+   * @return a checksum.
+   */
+  static long checksum(long accountId, long counter) {
+    return mix(accountId ^ mix(counter ^ MAGIC));
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  /**
+   * Extracts the generation from the name of a journal file.
+   *
+   * @param path a path.
+   * @param suffix an expected suffix.
+   * @return a generation or -1 if the file does not belong to the journal.
+   */
+  private static long generation(@NonNull Path path, @NonNull String suffix) {
+    String name = path.getFileName().toString();
+
+    if (!name.endsWith(suffix)) {
+      return -1;
+    }
+
+    try {
+      return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  @NonNull
+  private static Path resolve(@NonNull Path directory, long generation, @NonNull String suffix) {
+    return directory.resolve(String.format("%020d%s", generation, suffix));
+  }
+
+  /**
+   * Atomically advances the counter of an account if it matches an expected value and waits for
+   * the new value to be written to the storage device.
+   *
+   * @param accountId an account identifier.
+   * @param expectedValue an expected counter value.
+   * @param newValue a new counter value.
+   * @return true if the counter has been advanced, false otherwise.
+   * @throws IllegalArgumentException when the new value precedes the expected value.
+   * @throws IllegalStateException when the journal has been closed.
+   * @throws UncheckedIOException when writing the journal fails.
+   */
+  public boolean compareAndSet(long accountId, long expectedValue, long newValue) {
+    if (newValue < expectedValue) {
+      throw new IllegalArgumentException("Counters cannot move backwards");
+    }
+
+    this.ensureOpen();
+    if (!this.counters.compareAndSet(accountId, expectedValue, newValue, 0)) {
+      return false;
+    }
+
+    this.await(this.append(accountId, newValue));
+    return true;
+  }
+
+  /**
+   * Atomically advances the counter of an account if it matches an expected value without waiting
+   * for the new value to be written to the storage device.
+   *
+   * The new value is visible to all threads immediately. Callers are, however, required to wait
+   * for the returned future before the respective code is acknowledged in order to retain the
+   * guarantees of this journal. Futures are completed by the commit thread and thus dependent
+   * actions should either be cheap or be executed asynchronously.
+   *
+   * @param accountId an account identifier.
+   * @param expectedValue an expected counter value.
+   * @param newValue a new counter value.
+   * @return a future which completes with true once the advance is durable or with false if the
+   * counter did not match the expected value.
+   * @throws IllegalArgumentException when the new value precedes the expected value.
+   * @throws IllegalStateException when the journal has been closed.
+   */
+  @NonNull
+  public CompletableFuture<Boolean> compareAndSetAsync(long accountId, long expectedValue,
+      long newValue) {
+    if (newValue < expectedValue) {
+      throw new IllegalArgumentException("Counters cannot move backwards");
+    }
+
+    this.ensureOpen();
+    if (!this.counters.compareAndSet(accountId, expectedValue, newValue, 0)) {
+      return REJECTED;
+    }
+
+    return this.appendAsync(accountId, newValue);
+  }
+
+  /**
+   * Advances the counter of an account to the specified value unless it already exceeds the value
+   * without waiting for the new value to be written to the storage device.
+   *
+   * @param accountId an account identifier.
+   * @param counter a counter value.
+   * @return a future which completes with true once the advance is durable or with false if the
+   * counter already exceeded the value.
+   * @throws IllegalStateException when the journal has been closed.
+   * @see #compareAndSetAsync(long, long, long) for the guarantees of asynchronous advances.
+   */
+  @NonNull
+  public CompletableFuture<Boolean> advanceAsync(long accountId, long counter) {
+    this.ensureOpen();
+    if (counter <= this.counters.get(accountId, 0) || !this.counters.advance(accountId, counter)) {
+      return REJECTED;
+    }
+
+    return this.appendAsync(accountId, counter);
+  }
+
+  /**
+   * Advances the counter of an account to the specified value unless it already exceeds the value
+   * and waits for the new value to be written to the storage device.
+   *
+   * @param accountId an account identifier.
+   * @param counter a counter value.
+   * @return true if the counter has been advanced, false otherwise.
+   * @throws IllegalStateException when the journal has been closed.
+   * @throws UncheckedIOException when writing the journal fails.
+   */
+  public boolean advance(long accountId, long counter) {
+    this.ensureOpen();
+    if (counter <= this.counters.get(accountId, 0) || !this.counters.advance(accountId, counter)) {
+      return false;
+    }
+
+    this.await(this.append(accountId, counter));
+    return true;
+  }
+
+  /**
+   * Retrieves the counter of an account.
+   *
+   * @param accountId an account identifier.
+   * @return a counter value (or zero if the account has never been advanced).
+   */
+  public long get(long accountId) {
+    return this.counters.get(accountId, 0);
+  }
+
+  /**
+   * Retrieves the amount of accounts which are known to this journal.
+   *
+   * @return an amount of accounts.
+   */
+  public int size() {
+    return this.counters.size();
+  }
+
+  /**
+   * Retrieves a view of the counter of an account which may be passed to a counter based
+   * generator.
+   *
+   * @param accountId an account identifier.
+   * @return a counter state.
+   */
+  @NonNull
+  public CounterState state(long accountId) {
+    return new JournalCounterState(this, accountId);
+  }
+
+  /**
+   * Replaces all sealed segments with a snapshot of the current counters.
+   *
+   * Compaction is performed automatically in the background once the configured amount of sealed
+   * segments has been reached and thus this method is typically only invoked in order to shrink
+   * the journal before it is archived.
+   *
+   * @throws IOException when writing the snapshot fails (the previous segments are retained).
+   * @throws IllegalStateException when the journal has been closed.
+   */
+  public void compact() throws IOException {
+    synchronized (this.compactionLock) {
+      List<Segment> segments;
+      long boundary;
+
+      synchronized (this) {
+        this.ensureOpen();
+
+        if (this.active.position != 0) {
+          this.roll();
+        }
+
+        segments = new ArrayList<>(this.retained);
+        boundary = this.active.generation;
+        this.retained.clear();
+      }
+
+      // every value which has been appended to the replaced segments has been applied to the index
+      // before the segments were sealed and is thus part of the snapshot
+      try {
+        this.writeSnapshot(boundary);
+      } catch (IOException | RuntimeException ex) {
+        synchronized (this) {
+          this.retained.addAll(0, segments);
+        }
+
+        throw ex;
+      }
+
+      for (Segment segment : segments) {
+        Files.deleteIfExists(segment.path);
+      }
+
+      try (DirectoryStream<Path> stream = Files
+          .newDirectoryStream(this.directory, "*" + SNAPSHOT_SUFFIX)) {
+        for (Path path : stream) {
+          if (generation(path, SNAPSHOT_SUFFIX) < boundary) {
+            Files.deleteIfExists(path);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+
+      this.closed = true;
+      this.notifyAll();
+    }
+
+    boolean interrupted = false;
+    while (this.syncThread.isAlive()) {
+      try {
+        this.syncThread.join();
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+
+    synchronized (this.compactionLock) {
+      this.active.close();
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (this.commitLock) {
+      if (this.failure != null) {
+        throw new IOException("Journal could not be written", this.failure);
+      }
+    }
+  }
+
+  /**
+   * Appends a record to the active segment and registers a future which is completed once the
+   * record is durable.
+   *
+   * @param accountId an account identifier.
+   * @param counter a counter value.
+   * @return a future.
+   */
+  @NonNull
+  private synchronized CompletableFuture<Boolean> appendAsync(long accountId, long counter) {
+    Commit commit = new Commit(this.append(accountId, counter));
+    this.commits.add(commit);
+    return commit;
+  }
+
+  /**
+   * Appends a record to the active segment.
+   *
+   * @param accountId an account identifier.
+   * @param counter a counter value.
+   * @return the sequence number of the record.
+   */
+  private synchronized long append(long accountId, long counter) {
+    this.ensureOpen();
+
+    if (this.failed) {
+      throw this.failure();
+    }
+
+    if (this.active.position == this.segmentCapacity) {
+      try {
+        this.roll();
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Cannot create journal segment", ex);
+      }
+    }
+
+    this.active.append(accountId, counter);
+    long sequence = ++this.appended;
+
+    if (this.syncWaiting) {
+      this.syncWaiting = false;
+      this.notifyAll();
+    }
+
+    return sequence;
+  }
+
+  /**
+   * Waits for a record to be written to the storage device.
+   *
+   * Interruptions are deferred until the record is durable since the associated counter value
+   * has already been published to other threads.
+   *
+   * @param sequence a sequence number.
+   */
+  private void await(long sequence) {
+    boolean interrupted = false;
+
+    synchronized (this.commitLock) {
+      while (this.durable < sequence) {
+        if (this.failure != null) {
+          throw this.failure();
+        }
+
+        try {
+          this.commitLock.wait();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Creates an exception which reports the failure of the commit thread.
+   *
+   * @return an exception.
+   */
+  @NonNull
+  private UncheckedIOException failure() {
+    synchronized (this.commitLock) {
+      return new UncheckedIOException("Journal could not be written",
+          this.failure instanceof IOException ? (IOException) this.failure
+              : new IOException(this.failure));
+    }
+  }
+
+  /**
+   * Ensures that this journal has not been closed.
+   *
+   * @throws IllegalStateException when the journal has been closed.
+   */
+  private void ensureOpen() {
+    if (this.closed) {
+      throw new IllegalStateException("Journal has been closed");
+    }
+  }
+
+  /**
+   * Seals the active segment and starts a new segment.
+   *
+   * @throws IOException when creating the segment fails.
+   */
+  private void roll() throws IOException {
+    Segment next = Segment.create(this.directory, this.active.generation + 1, this.segmentCapacity);
+
+    this.unforced.add(this.active);
+    this.retained.add(this.active);
+    this.active = next;
+
+    if (this.retained.size() >= this.compactionThreshold && this.compacting.compareAndSet(false,
+        true)) {
+      Thread thread = new Thread(() -> {
+        try {
+          this.compact();
+        } catch (IOException | IllegalStateException ignore) {
+          // the segments are retained and compaction is attempted again upon the next roll
+        } finally {
+          this.compacting.set(false);
+        }
+      }, "counter-journal-compaction");
+
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Writes all appended records to the storage device on behalf of the waiting threads.
+   */
+  private void sync() {
+    try {
+      while (true) {
+        List<Segment> segments = new ArrayList<>();
+        long target;
+
+        synchronized (this) {
+          while (this.appended == this.forced && !this.closed) {
+            this.syncWaiting = true;
+            this.wait();
+          }
+
+          if (this.appended == this.forced) {
+            return;
+          }
+        }
+
+        if (this.commitDelay != 0) {
+          // permit further threads to join the commit
+          LockSupport.parkNanos(this.commitDelay);
+        }
+
+        synchronized (this) {
+          target = this.appended;
+          segments.addAll(this.unforced);
+          segments.add(this.active);
+          this.unforced.clear();
+        }
+
+        for (Segment segment : segments) {
+          segment.force();
+        }
+
+        synchronized (this) {
+          this.forced = target;
+        }
+        synchronized (this.commitLock) {
+          this.durable = target;
+          this.commitLock.notifyAll();
+        }
+
+        while (true) {
+          Commit commit;
+
+          synchronized (this) {
+            commit = this.commits.peek();
+
+            if (commit == null || commit.sequence > target) {
+              break;
+            }
+
+            this.commits.poll();
+          }
+
+          commit.complete(true);
+        }
+
+        for (int i = 0; i < segments.size() - 1; ++i) {
+          segments.get(i).close();
+        }
+      }
+    } catch (Throwable ex) {
+      synchronized (this.commitLock) {
+        this.failure = ex;
+        this.commitLock.notifyAll();
+      }
+
+      List<Commit> commits;
+      synchronized (this) {
+        this.failed = true;
+        commits = new ArrayList<>(this.commits);
+        this.commits.clear();
+      }
+
+      for (Commit commit : commits) {
+        commit.completeExceptionally(ex);
+      }
+    }
+  }
+
+  /**
+   * Restores the index from the most recent snapshot and all subsequent segments.
+   *
+   * @return the generation of the next segment.
+   * @throws IOException when reading the journal fails.
+   */
+  private long recover() throws IOException {
+    Files.createDirectories(this.directory);
+
+    List<Path> snapshots = new ArrayList<>();
+    List<Path> segments = new ArrayList<>();
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+      for (Path path : stream) {
+        if (path.getFileName().toString().endsWith(TEMPORARY_SUFFIX)) {
+          Files.delete(path);
+        } else if (generation(path, SNAPSHOT_SUFFIX) != -1) {
+          snapshots.add(path);
+        } else if (generation(path, SEGMENT_SUFFIX) != -1) {
+          segments.add(path);
+        }
+      }
+    }
+
+    Collections.sort(snapshots);
+    Collections.sort(segments);
+
+    long boundary = 0;
+    if (!snapshots.isEmpty()) {
+      Path snapshot = snapshots.get(snapshots.size() - 1);
+      boundary = generation(snapshot, SNAPSHOT_SUFFIX);
+
+      if (this.replay(snapshot) * RECORD_SIZE != Files.size(snapshot)) {
+        throw new IOException("Corrupted snapshot: " + snapshot);
+      }
+
+      for (Path path : snapshots.subList(0, snapshots.size() - 1)) {
+        Files.delete(path);
+      }
+    }
+
+    long generation = boundary;
+    for (Path path : segments) {
+      long segmentGeneration = generation(path, SEGMENT_SUFFIX);
+
+      if (segmentGeneration < boundary) {
+        Files.delete(path);
+        continue;
+      }
+
+      this.replay(path);
+      this.retained.add(new Segment(path, segmentGeneration));
+      generation = segmentGeneration + 1;
+    }
+
+    return generation;
+  }
+
+  /**
+   * Applies all intact records of a journal file to the index.
+   *
+   * @param path a file path.
+   * @return the amount of intact records.
+   * @throws IOException when reading the file fails.
+   */
+  private long replay(@NonNull Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      long records = 0;
+
+      while (buffer.remaining() >= RECORD_SIZE) {
+        long accountId = buffer.getLong();
+        long counter = buffer.getLong();
+
+        if (buffer.getLong() != checksum(accountId, counter) || accountId == StripedLongMap.EMPTY) {
+          break;
+        }
+
+        this.counters.advance(accountId, counter);
+        ++records;
+      }
+
+      return records;
+    }
+  }
+
+  /**
+   * Writes a snapshot of the index which replaces all segments preceding the specified
+   * generation.
+   *
+   * @param generation a generation.
+   * @throws IOException when writing the snapshot fails.
+   */
+  private void writeSnapshot(long generation) throws IOException {
+    Path temporary = resolve(this.directory, generation, SNAPSHOT_SUFFIX + TEMPORARY_SUFFIX);
+
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_BUFFER_SIZE);
+
+      try {
+        this.counters.forEach((accountId, counter) -> {
+          if (!buffer.hasRemaining()) {
+            flush(channel, buffer);
+          }
+
+          buffer.putLong(accountId).putLong(counter).putLong(checksum(accountId, counter));
+        });
+      } catch (UncheckedIOException ex) {
+        throw ex.getCause();
+      }
+
+      flush(channel, buffer);
+      channel.force(true);
+    }
+
+    Files.move(temporary, resolve(this.directory, generation, SNAPSHOT_SUFFIX),
+        StandardCopyOption.ATOMIC_MOVE);
+
+    // the preceding segments are deleted once this method returns and thus the rename needs to
+    // be durable beforehand
+    syncDirectory(this.directory);
+  }
+
+  /**
+   * Writes the entries of a directory to the storage device so that files which have been
+   * created or renamed within it persist across crashes.
+   *
+   * @param directory a directory.
+   * @throws IOException when writing the directory fails.
+   */
+  private static void syncDirectory(@NonNull Path directory) throws IOException {
+    FileChannel channel;
+
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (AccessDeniedException ex) {
+      // some platforms (such as Windows) do not permit opening directories and persist their
+      // entries along with the files instead
+      return;
+    }
+
+    try (FileChannel directoryChannel = channel) {
+      directoryChannel.force(true);
+    }
+  }
+
+  private static void flush(@NonNull FileChannel channel, @NonNull ByteBuffer buffer) {
+    buffer.flip();
+
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+
+    buffer.clear();
+  }
+
+  /**
+   * Represents a single file of the journal.
+   */
+  private static final class Segment {
+
+    private final Path path;
+    private final long generation;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    private Segment(@NonNull Path path, long generation) {
+      this.path = path;
+      this.generation = generation;
+    }
+
+    @NonNull
+    private static Segment create(@NonNull Path directory, long generation, int capacity)
+        throws IOException {
+      Segment segment = new Segment(resolve(directory, generation, SEGMENT_SUFFIX), generation);
+      segment.channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+      try {
+        segment.buffer = segment.channel
+            .map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+
+        // records within the segment are acknowledged once the mapping has been forced which
+        // does not cover the directory entry of a newly created file
+        syncDirectory(directory);
+      } catch (IOException | RuntimeException ex) {
+        segment.channel.close();
+        throw ex;
+      }
+
+      return segment;
+    }
+
+    private void append(long accountId, long counter) {
+      int offset = this.position * RECORD_SIZE;
+
+      this.buffer.putLong(offset, accountId);
+      this.buffer.putLong(offset + 8, counter);
+      this.buffer.putLong(offset + 16, checksum(accountId, counter));
+      ++this.position;
+    }
+
+    private void force() {
+      this.buffer.force();
+    }
+
+    private void close() throws IOException {
+      if (this.channel != null) {
+        this.channel.close();
+      }
+    }
+  }
+
+  /**
+   * Represents an asynchronous advance which awaits the completion of its commit.
+   */
+  private static final class Commit extends CompletableFuture<Boolean> {
+
+    private final long sequence;
+
+    private Commit(long sequence) {
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Provides a counter state which is backed by the journal.
+   */
+  private static final class JournalCounterState implements CounterState {
+
+    private final CounterJournal journal;
+    private final long accountId;
+
+    private JournalCounterState(@NonNull CounterJournal journal, long accountId) {
+      this.journal = journal;
+      this.accountId = accountId;
+    }
+
+    @Override
+    public boolean compareAndSet(long expectedValue, long newValue) {
+      return this.journal.compareAndSet(this.accountId, expectedValue, newValue);
+    }
+
+    @Override
+    public long get() {
+      return this.journal.get(this.accountId);
+    }
+  }
+
+  /**
+   * Provides a factory for journal instances.
+   */
+  public static final class Builder {
+
+    private final Path directory;
+    private int segmentCapacity = 1 << 20;
+    private Duration commitDelay = Duration.ZERO;
+    private int compactionThreshold = 4;
+
+    private Builder(@NonNull Path directory) {
+      this.directory = directory;
+    }
+
+    /**
+     * Retrieves the configured amount of time the commit thread waits for further records before
+     * it writes pending records to the storage device (defaults to zero).
+     *
+     * @return a delay.
+     */
+    @NonNull
+    public Duration commitDelay() {
+      return this.commitDelay;
+    }
+
+    /**
+     * Sets the amount of time the commit thread waits for further records before it writes
+     * pending records to the storage device.
+     *
+     * Even without a delay, records which are appended while a write is in progress are combined
+     * into the subsequent write. Small delays may further reduce the amount of writes at the
+     * expense of latency when devices with expensive flushes are used.
+     *
+     * @param commitDelay a delay.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when a negative delay is supplied.
+     */
+    @NonNull
+    public Builder commitDelay(@NonNull Duration commitDelay) {
+      if (commitDelay.isNegative()) {
+        throw new IllegalArgumentException("Delay cannot be negative");
+      }
+
+      this.commitDelay = commitDelay;
+      return this;
+    }
+
+    /**
+     * Retrieves the configured amount of sealed segments which triggers a compaction (defaults to
+     * 4).
+     *
+     * @return an amount of segments.
+     */
+    public int compactionThreshold() {
+      return this.compactionThreshold;
+    }
+
+    /**
+     * Sets the amount of sealed segments which triggers a compaction.
+     *
+     * @param compactionThreshold an amount of segments.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the threshold is smaller than one.
+     */
+    @NonNull
+    public Builder compactionThreshold(int compactionThreshold) {
+      if (compactionThreshold < 1) {
+        throw new IllegalArgumentException("Threshold must be at least 1");
+      }
+
+      this.compactionThreshold = compactionThreshold;
+      return this;
+    }
+
+    /**
+     * Retrieves the configured amount of records per segment (defaults to 1,048,576 which equals
+     * 24 MiB per segment).
+     *
+     * @return an amount of records.
+     */
+    public int segmentCapacity() {
+      return this.segmentCapacity;
+    }
+
+    /**
+     * Sets the amount of records per segment.
+     *
+     * @param segmentCapacity an amount of records.
+     * @return a reference to this builder.
+     * @throws IllegalArgumentException when the capacity is smaller than one or the resulting
+     * segment exceeds 2 GiB.
+     */
+    @NonNull
+    public Builder segmentCapacity(int segmentCapacity) {
+      if (segmentCapacity < 1 || segmentCapacity > Integer.MAX_VALUE / RECORD_SIZE) {
+        throw new IllegalArgumentException(
+            "Capacity must be between 1 and " + Integer.MAX_VALUE / RECORD_SIZE + " records");
+      }
+
+      this.segmentCapacity = segmentCapacity;
+      return this;
+    }
+
+    /**
+     * Opens or creates the journal and restores its counters.
+     *
+     * @return a journal.
+     * @throws IOException when recovering or creating the journal fails.
+     */
+    @NonNull
+    public CounterJournal open() throws IOException {
+      return new CounterJournal(this);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Represents the server side counter of a single HOTP account.
+ *
+ * Implementations are expected to provide atomic compare-and-set semantics (for instance by
+ * delegating to an atomic variable or a conditional update within a database) in order to
+ * guarantee that concurrent submissions of the same code cannot both succeed.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public interface CounterState {
+
+  /**
+   * Creates a new in-memory counter state.
+   *
+   * @param initialValue an initial counter value.
+   * @return a counter state.
+   */
+  @NonNull
+  static CounterState of(long initialValue) {
+    return new AtomicCounterState(initialValue);
+  }
+
+  /**
+   * Atomically replaces the current counter value if it matches an expected value.
+   *
+   * @param expectedValue an expected counter value.
+   * @param newValue a new counter value.
+   * @return true if the value has been replaced, false otherwise.
+   */
+  boolean compareAndSet(long expectedValue, long newValue);
+
+  /**
+   * Retrieves the current counter value (e.g. the next value which is expected from the client).
+   *
+   * @return a counter value.
+   */
+  long get();
+}
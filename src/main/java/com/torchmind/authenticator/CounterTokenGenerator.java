@@ -17,11 +17,8 @@
 package com.torchmind.authenticator;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
 import javax.crypto.SecretKey;
 
 /**
@@ -31,8 +28,14 @@ import javax.crypto.SecretKey;
  */
 public class CounterTokenGenerator extends AbstractTokenGenerator {
 
-  CounterTokenGenerator(@NonNull Algorithm algorithm, int digits, @NonNull String issuer) {
-    super(algorithm, digits, issuer);
+  private final UriWriter uriWriter;
+
+  CounterTokenGenerator(@NonNull Algorithm algorithm, @NonNull Engine engine, int digits,
+      @NonNull String issuer, @NonNull MetricsListener listener) {
+    super(algorithm, engine, digits, issuer, listener);
+
+    this.uriWriter = new UriWriter("hotp", issuer,
+        "&counter=1&algorithm=" + algorithm.name() + "&digits=" + digits);
   }
 
   /**
@@ -54,21 +57,32 @@ public class CounterTokenGenerator extends AbstractTokenGenerator {
    */
   @NonNull
   public URI buildUri(@NonNull SecretKey secretKey, @NonNull String accountName, int counter) {
-    try {
-      accountName = URLEncoder.encode(accountName, "UTF-8");
-      String issuer = URLEncoder.encode(this.getIssuer(), "UTF-8");
-      String secret = URLEncoder.encode(this.buildHandshakeCode(secretKey, false), "UTF-8");
-
-      return new URI("otpauth", "hotp", "/" + issuer + ":" + accountName,
-          "secret=" + secret + "&issuer=" + issuer + "&counter=" + counter + "&algorithm=" + this
-              .getAlgorithm().name() + "&digits=" + this.getDigits(), null);
-    } catch (UnsupportedEncodingException ex) {
-      throw new UnsupportedOperationException(
-          "The specified encoding is not supported by this Java VM: " + ex.getMessage(), ex);
-    } catch (URISyntaxException ex) {
-      throw new IllegalArgumentException(
-          "One or more invalid parameters were passed: " + ex.getMessage(), ex);
+    return this.createUriWriter(counter).toUri(secretKey, accountName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public UriWriter createUriWriter() {
+    return this.uriWriter;
+  }
+
+  /**
+   * Creates a writer which streams handshake URIs with a specific initial counter value.
+   *
+   * @param counter an initial counter value.
+   * @return a writer.
+   */
+  @NonNull
+  public UriWriter createUriWriter(long counter) {
+    if (counter == 1) {
+      return this.uriWriter;
     }
+
+    return new UriWriter("hotp", this.getIssuer(), "&counter=" + counter + "&algorithm=" + this
+        .getAlgorithm().name() + "&digits=" + this.getDigits());
   }
 
   /**
@@ -84,6 +98,291 @@ public class CounterTokenGenerator extends AbstractTokenGenerator {
    */
   @NonNull
   public String generateCode(@NonNull SecretKey secretKey, long counter) {
-    return this.generateCode(secretKey, ByteBuffer.allocate(8).putLong(counter).array());
+    return this.formatCode(this.generateCodeInt(secretKey, counter));
+  }
+
+  /**
+   * Generates the numeric representation of a code using the specified secret key and counter
+   * value.
+   *
+   * @param secretKey a secret key.
+   * @param counter a counter.
+   * @return a code.
+   * @throws IllegalArgumentException when the supplied shared secret is incompatible with the
+   * chosen algorithm.
+   * @throws UnsupportedOperationException when the Java VM does not support the chosen hashing
+   * algorithm.
+   * @see #formatCode(int, char[], int) for a method which converts the result into its textual
+   * representation without allocating.
+   */
+  public int generateCodeInt(@NonNull SecretKey secretKey, long counter) {
+    return this.generateTrackedCodeValue(secretKey, counter);
+  }
+
+  /**
+   * Generates the numeric representation of a code using the secret of an account within a
+   * secret table.
+   *
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param counter a counter.
+   * @return a code.
+   * @throws IllegalArgumentException when no secret has been stored for the account.
+   */
+  public int generateCodeInt(@NonNull SecretTable table, long accountId, long counter) {
+    return this.generateTrackedCodeValue(table, accountId, counter);
+  }
+
+  /**
+   * Generates the numeric representation of a code using the secret within a table slot.
+   *
+   * @param table a secret table.
+   * @param slot a slot.
+   * @param counter a counter.
+   * @return a code.
+   * @throws IllegalArgumentException when the slot is not in use.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  public int generateCodeIntAt(@NonNull SecretTable table, int slot, long counter) {
+    return this.generateTrackedCodeValue(table, slot, counter);
+  }
+
+  /**
+   * Generates the numeric representations of the codes for a run of consecutive counter values.
+   *
+   * The key is prepared once for the entire run and no objects are allocated per code. This
+   * method is thus suited for the generation of code sheets or the import of hardware tokens.
+   *
+   * @param secretKey a secret key.
+   * @param fromCounter the first counter value.
+   * @param count an amount of codes.
+   * @param destination an array which receives the codes (starting at index zero).
+   * @throws IllegalArgumentException when a negative count is supplied or the shared secret is
+   * incompatible with the chosen algorithm.
+   * @throws IndexOutOfBoundsException when the array is smaller than the amount of codes.
+   * @throws UnsupportedOperationException when the Java VM does not support the chosen hashing
+   * algorithm.
+   */
+  public void generateCodes(@NonNull SecretKey secretKey, long fromCounter, int count,
+      @NonNull int[] destination) {
+    this.generateTrackedCodeValues(secretKey, fromCounter, destination, 0, count);
+  }
+
+  /**
+   * Creates a stream of the numeric representations of the codes for a run of consecutive counter
+   * values.
+   *
+   * @param secretKey a secret key.
+   * @param fromCounter the first counter value.
+   * @param count an amount of codes.
+   * @return a lazily evaluated stream of codes.
+   * @throws IllegalArgumentException when a negative count is supplied.
+   * @see #generateCodes(SecretKey, long, int, int[]) for a version of this method which writes
+   * into an existing array.
+   */
+  @NonNull
+  public IntStream generateCodes(@NonNull SecretKey secretKey, long fromCounter, long count) {
+    return this.streamTrackedCodeValues(secretKey, fromCounter, count);
+  }
+
+  /**
+   * Resynchronizes a counter using two consecutive codes as described in RFC 4226 section 7.4.
+   *
+   * Both codes are required to appear in direct succession within the look-ahead window. Each
+   * counter value within the window is hashed exactly once, candidates are compared in constant
+   * time and the search is reported to the registered listener as a single validation.
+   *
+   * @param firstCode a code.
+   * @param secondCode the code which directly follows the first code.
+   * @param secretKey a secret key.
+   * @param counter an expected counter value.
+   * @param lookAhead an amount of counter values following the expected value to search.
+   * @return the new counter value or -1 if the codes could not be located.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public long resynchronize(@NonNull CharSequence firstCode, @NonNull CharSequence secondCode,
+      @NonNull SecretKey secretKey, long counter, int lookAhead) {
+    if (lookAhead < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    int first = this.parseCodeValue(firstCode);
+    int second = this.parseCodeValue(secondCode);
+
+    if (first == -1 || second == -1) {
+      return -1;
+    }
+
+    int offset = this.findCodePairOffset(secretKey, first, second, counter, lookAhead);
+    return offset == ValidationResult.NO_MATCH ? -1 : counter + offset + 2;
+  }
+
+  /**
+   * Resynchronizes a counter using two consecutive codes as described in RFC 4226 section 7.4 and
+   * atomically advances its state upon success.
+   *
+   * @param firstCode a code.
+   * @param secondCode the code which directly follows the first code.
+   * @param secretKey a secret key.
+   * @param state a counter state.
+   * @param lookAhead an amount of counter values following the expected value to search.
+   * @return true if the counter has been resynchronized, false otherwise.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public boolean resynchronize(@NonNull CharSequence firstCode, @NonNull CharSequence secondCode,
+      @NonNull SecretKey secretKey, @NonNull CounterState state, int lookAhead) {
+    while (true) {
+      long counter = state.get();
+      long next = this.resynchronize(firstCode, secondCode, secretKey, counter, lookAhead);
+
+      if (next == -1) {
+        return false;
+      }
+
+      if (state.compareAndSet(counter, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Validates a code against a look-ahead window of counter values as described in RFC 4226
+   * section 7.4.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param counter an expected counter value.
+   * @param lookAhead an amount of counter values following the expected value to accept.
+   * @return the new counter value (e.g. the value following the matching counter) or -1 if the
+   * code has been rejected.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public long validateCode(@NonNull CharSequence code, @NonNull SecretKey secretKey, long counter,
+      int lookAhead) {
+    int value = this.parseCodeValue(code);
+
+    if (value == -1) {
+      return -1;
+    }
+
+    return this.validateCode(value, secretKey, counter, lookAhead);
+  }
+
+  /**
+   * Validates a numeric code against a look-ahead window of counter values as described in RFC
+   * 4226 section 7.4.
+   *
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param counter an expected counter value.
+   * @param lookAhead an amount of counter values following the expected value to accept.
+   * @return the new counter value (e.g. the value following the matching counter) or -1 if the
+   * code has been rejected.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public long validateCode(int code, @NonNull SecretKey secretKey, long counter, int lookAhead) {
+    int offset = this.findCodeOffset(secretKey, code, counter, 0, lookAhead);
+
+    if (offset == ValidationResult.NO_MATCH) {
+      return -1;
+    }
+
+    return counter + offset + 1;
+  }
+
+  /**
+   * Validates a numeric code against the secret of an account within a secret table using a
+   * look-ahead window of counter values.
+   *
+   * @param code a numeric code.
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param counter an expected counter value.
+   * @param lookAhead an amount of counter values following the expected value to accept.
+   * @return the new counter value (e.g. the value following the matching counter) or -1 if the
+   * code has been rejected or no secret has been stored for the account.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public long validateCode(int code, @NonNull SecretTable table, long accountId, long counter,
+      int lookAhead) {
+    int offset = this.findCodeOffset(table, accountId, code, counter, 0, lookAhead);
+
+    if (offset == ValidationResult.NO_MATCH) {
+      return -1;
+    }
+
+    return counter + offset + 1;
+  }
+
+  /**
+   * Validates a numeric code against the secret within a table slot using a look-ahead window of
+   * counter values.
+   *
+   * @param code a numeric code.
+   * @param table a secret table.
+   * @param slot a slot.
+   * @param counter an expected counter value.
+   * @param lookAhead an amount of counter values following the expected value to accept.
+   * @return the new counter value (e.g. the value following the matching counter) or -1 if the
+   * code has been rejected or the slot is not in use.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  public long validateCodeAt(int code, @NonNull SecretTable table, int slot, long counter,
+      int lookAhead) {
+    int offset = this.findCodeOffset(table, slot, code, counter, 0, lookAhead);
+
+    if (offset == ValidationResult.NO_MATCH) {
+      return -1;
+    }
+
+    return counter + offset + 1;
+  }
+
+  /**
+   * Validates a code against a look-ahead window of counter values and atomically advances the
+   * counter state upon success.
+   *
+   * When the state is modified concurrently, validation is repeated against the updated counter
+   * value. As a result, each code is accepted at most once.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param state a counter state.
+   * @param lookAhead an amount of counter values following the expected value to accept.
+   * @return true if the code is valid, false otherwise.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public boolean validateCode(@NonNull CharSequence code, @NonNull SecretKey secretKey,
+      @NonNull CounterState state, int lookAhead) {
+    int value = this.parseCodeValue(code);
+    return value != -1 && this.validateCode(value, secretKey, state, lookAhead);
+  }
+
+  /**
+   * Validates a numeric code against a look-ahead window of counter values and atomically
+   * advances the counter state upon success.
+   *
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param state a counter state.
+   * @param lookAhead an amount of counter values following the expected value to accept.
+   * @return true if the code is valid, false otherwise.
+   * @throws IllegalArgumentException when a negative look-ahead window is passed.
+   */
+  public boolean validateCode(int code, @NonNull SecretKey secretKey, @NonNull CounterState state,
+      int lookAhead) {
+    while (true) {
+      long counter = state.get();
+      long next = this.validateCode(code, secretKey, counter, lookAhead);
+
+      if (next == -1) {
+        return false;
+      }
+
+      if (state.compareAndSet(counter, next)) {
+        return true;
+      }
+    }
   }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.Instant;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a validation layer on top of a time based token generator which tracks the clock drift
+ * of each account.
+ *
+ * As suggested by RFC 6238 section 6, the tracker records the offset at which the last code of an
+ * account matched. Subsequent validations visit a narrow window around the recorded offset first
+ * and fall back to a slightly larger window ({@value #FALLBACK_MARGIN} further periods in both
+ * directions) when no match is found within it. Each consecutive miss widens the fallback window
+ * by the same margin until it reaches the wide window and thus a mistyped code costs only a few
+ * HMAC computations while devices whose drift changed considerably are recovered after a few
+ * attempts. The entire wide window is searched only for accounts whose drift is unknown. Since
+ * the clock drift of most devices changes slowly, the majority of validations thus require a
+ * single HMAC computation while devices which drift further remain supported.
+ *
+ * Each account occupies a single primitive map entry which encodes the time step of its last
+ * accepted code along with the offset at which it was found and the amount of subsequent misses.
+ * Entries are not discarded automatically since the drift of a device remains relevant for as
+ * long as the device is in use. {@link #expire(Instant)} should thus be invoked periodically (for
+ * instance from a scheduled task) in order to bound the memory consumption.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe. Account identifiers may be any
+ * value except for {@link Long#MIN_VALUE}. This type does not prevent the reuse of codes and should
+ * thus be combined with a {@link ReplayGuard} where required.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class DriftTracker {
+
+  /**
+   * Defines the largest supported wide window (in periods per direction).
+   */
+  public static final int MAXIMUM_RANGE = Byte.MAX_VALUE;
+
+  /**
+   * Defines the amount of periods by which the window is widened for each consecutive miss.
+   */
+  public static final int FALLBACK_MARGIN = 2;
+
+  private static final int MAXIMUM_MISSES = 0xFF;
+
+  private static final long UNKNOWN = Long.MIN_VALUE;
+
+  private final PeriodTokenGenerator generator;
+  private final int narrowRange;
+  private final int wideRange;
+
+  private final StripedLongMap drifts = new StripedLongMap();
+
+  DriftTracker(@NonNull PeriodTokenGenerator generator, int narrowRange, int wideRange) {
+    if (narrowRange < 0 || wideRange < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+    if (narrowRange > wideRange) {
+      throw new IllegalArgumentException("Narrow window cannot exceed the wide window");
+    }
+    if (wideRange > MAXIMUM_RANGE) {
+      throw new IllegalArgumentException("Window size cannot exceed " + MAXIMUM_RANGE);
+    }
+
+    this.generator = generator;
+    this.narrowRange = narrowRange;
+    this.wideRange = wideRange;
+  }
+
+  /**
+   * Encodes a time step, offset and amount of misses into a single map value.
+   *
+   * @param step a time step.
+   * @param offset an offset.
+   * @param misses an amount of consecutive misses.
+   * @return an encoded value.
+   */
+  private static long pack(long step, int offset, int misses) {
+    return (step << 16) | ((long) misses << 8) | (offset & 0xFF);
+  }
+
+  /**
+   * Extracts the amount of consecutive misses from an encoded map value.
+   *
+   * @param value an encoded value.
+   * @return an amount of misses.
+   */
+  private static int unpackMisses(long value) {
+    return (int) (value >>> 8) & 0xFF;
+  }
+
+  /**
+   * Extracts the offset from an encoded map value.
+   *
+   * @param value an encoded value.
+   * @return an offset.
+   */
+  private static int unpackOffset(long value) {
+    return (byte) value;
+  }
+
+  /**
+   * Extracts the time step from an encoded map value.
+   *
+   * @param value an encoded value.
+   * @return a time step.
+   */
+  private static long unpackStep(long value) {
+    return value >> 16;
+  }
+
+  /**
+   * Discards the drift of all accounts which have not successfully authenticated since the
+   * specified timestamp.
+   *
+   * This method is never invoked by the tracker itself and visits all tracked accounts.
+   *
+   * @param timestamp a timestamp.
+   * @return the amount of discarded accounts.
+   */
+  public int expire(@NonNull Instant timestamp) {
+    long threshold = this.generator.getTimeStep(timestamp);
+    return this.drifts.removeIf((value) -> unpackStep(value) < threshold);
+  }
+
+  /**
+   * Retrieves the offset at which the last code of an account has been accepted.
+   *
+   * @param accountId an account identifier.
+   * @return an offset (in periods) or zero when the drift of the account is unknown.
+   */
+  public int getDrift(long accountId) {
+    long value = this.drifts.get(accountId, UNKNOWN);
+    return value == UNKNOWN ? 0 : unpackOffset(value);
+  }
+
+  /**
+   * Retrieves the amount of accounts which are currently tracked.
+   *
+   * @return an amount of accounts.
+   */
+  public int size() {
+    return this.drifts.size();
+  }
+
+  /**
+   * Validates a code for the current timestamp and records the offset at which it was found.
+   *
+   * @param accountId an account identifier.
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @return a validation result.
+   */
+  @NonNull
+  public ValidationResult validateCode(long accountId, @NonNull CharSequence code,
+      @NonNull SecretKey secretKey) {
+    int value = this.generator.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
+    }
+
+    return this.validateCode(accountId, value, secretKey, this.generator.getCurrentTimeStep());
+  }
+
+  /**
+   * Validates a code for a specific timestamp and records the offset at which it was found.
+   *
+   * @param accountId an account identifier.
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @return a validation result.
+   */
+  @NonNull
+  public ValidationResult validateCode(long accountId, @NonNull CharSequence code,
+      @NonNull SecretKey secretKey, @NonNull Instant timestamp) {
+    int value = this.generator.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
+    }
+
+    return this.validateCode(accountId, value, secretKey, timestamp);
+  }
+
+  /**
+   * Validates a numeric code for a specific timestamp and records the offset at which it was
+   * found.
+   *
+   * The returned offset is relative to the time step of the passed timestamp (rather than the
+   * recorded drift of the account) and never exceeds the wide window.
+   *
+   * @param accountId an account identifier.
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @return a validation result.
+   */
+  @NonNull
+  public ValidationResult validateCode(long accountId, int code, @NonNull SecretKey secretKey,
+      @NonNull Instant timestamp) {
+    return this.validateCode(accountId, code, secretKey, this.generator.getTimeStep(timestamp));
+  }
+
+  /**
+   * Validates a numeric code for a specific time step and records the offset at which it was
+   * found.
+   *
+   * @param accountId an account identifier.
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param step a time step.
+   * @return a validation result.
+   */
+  @NonNull
+  private ValidationResult validateCode(long accountId, int code, @NonNull SecretKey secretKey,
+      long step) {
+    long previous = this.drifts.get(accountId, UNKNOWN);
+
+    if (previous == UNKNOWN) {
+      int offset = this.generator
+          .findCodeOffset(secretKey, code, step, this.wideRange, this.wideRange);
+
+      if (offset == ValidationResult.NO_MATCH) {
+        return ValidationResult.invalid();
+      }
+
+      this.drifts.put(accountId, pack(step, offset, 0));
+      return ValidationResult.of(offset);
+    }
+
+    // the window is centered around the recorded drift (and clipped to the wide window) so that
+    // candidates are visited in order of increasing distance from the drift
+    int drift = unpackOffset(previous);
+    int misses = unpackMisses(previous);
+    int range = (int) Math
+        .min(this.wideRange, this.narrowRange + (long) FALLBACK_MARGIN * (misses + 1));
+    int from = Math.max(-this.wideRange, drift - range);
+    int to = Math.min(this.wideRange, drift + range);
+
+    int offset = this.generator
+        .findCodeOffset(secretKey, code, step + drift, drift - from, to - drift);
+
+    if (offset == ValidationResult.NO_MATCH) {
+      this.drifts.compareAndSet(accountId, previous,
+          pack(unpackStep(previous), drift, Math.min(MAXIMUM_MISSES, misses + 1)), UNKNOWN);
+      return ValidationResult.invalid();
+    }
+
+    this.drifts.put(accountId, pack(step, drift + offset, 0));
+    return ValidationResult.of(drift + offset);
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Provides a pipeline which parses large files of handshake URIs (such as exports of other
+ * authenticator implementations or the output of a {@link SecretProvisioner}).
+ *
+ * Files are divided into fixed size chunks which are claimed by a set of worker threads. Each
+ * worker maps its chunk into memory and parses the URIs directly from the mapping without decoding
+ * lines into strings first. A chunk owns all lines which start within its bounds and thus lines
+ * which cross a chunk boundary are parsed by the worker which claimed the preceding chunk.
+ *
+ * Each line is expected to contain a single URI in US-ASCII encoding (non-ASCII characters must be
+ * percent encoded). When a line consists of multiple tab separated fields, its last field is
+ * parsed. Blank lines are skipped while lines which cannot be parsed (or which exceed 64 KiB) are
+ * counted as rejected.
+ *
+ * <strong>Note:</strong> Configuration methods are not thread safe. The consumer is invoked
+ * concurrently by all workers and records are passed in an unspecified order.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class HandshakeImporter {
+
+  private static final int MAXIMUM_LINE_LENGTH = 64 * 1024;
+  private static final int MAXIMUM_CHUNK_SIZE = Integer.MAX_VALUE - MAXIMUM_LINE_LENGTH - 1;
+
+  private int chunkSize = 8 << 20;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  HandshakeImporter() {
+  }
+
+  /**
+   * Retrieves the size of the chunks which are claimed by workers (defaults to 8 MiB).
+   *
+   * @return a size in bytes.
+   */
+  public int chunkSize() {
+    return this.chunkSize;
+  }
+
+  /**
+   * Sets the size of the chunks which are claimed by workers.
+   *
+   * Since each chunk is mapped along with the byte preceding it and up to 64 KiB of its last
+   * line, chunks may span at most {@code Integer.MAX_VALUE - 65537} bytes.
+   *
+   * @param chunkSize a size in bytes.
+   * @return a reference to this importer.
+   * @throws IllegalArgumentException when the size is not positive or exceeds the upper bound.
+   */
+  @NonNull
+  public HandshakeImporter chunkSize(int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive");
+    }
+    if (chunkSize > MAXIMUM_CHUNK_SIZE) {
+      throw new IllegalArgumentException("Chunk size cannot exceed " + MAXIMUM_CHUNK_SIZE);
+    }
+
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Retrieves the amount of worker threads (defaults to the amount of available processors).
+   *
+   * @return an amount of threads.
+   */
+  public int parallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Sets the amount of worker threads.
+   *
+   * @param parallelism an amount of threads.
+   * @return a reference to this importer.
+   * @throws IllegalArgumentException when the amount is not positive.
+   */
+  @NonNull
+  public HandshakeImporter parallelism(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive");
+    }
+
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Parses all handshake URIs within a file and passes them to a consumer.
+   *
+   * @param path a file path.
+   * @param consumer a consumer which is invoked concurrently for each parsed URI.
+   * @return a report.
+   * @throws IOException when reading from the file fails.
+   */
+  @NonNull
+  public ImportReport importFile(@NonNull Path path,
+      @NonNull Consumer<? super HandshakeUri> consumer) throws IOException {
+    long started = System.nanoTime();
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int workerCount = (int) Math
+          .max(1, Math.min(this.parallelism, (size + this.chunkSize - 1) / this.chunkSize));
+      Batch batch = new Batch(channel, size, this.chunkSize, consumer);
+
+      ExecutorService executor = Executors.newFixedThreadPool(workerCount, (r) -> {
+        Thread thread = new Thread(r, "authenticator-importer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      try {
+        List<Future<?>> futures = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; ++i) {
+          futures.add(executor.submit(new Worker(batch)));
+        }
+
+        for (Future<?> future : futures) {
+          await(future, batch);
+        }
+
+        return new ImportReport(batch.imported.get(), batch.rejected.get(), size,
+            Duration.ofNanos(System.nanoTime() - started));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Waits for a worker to complete and propagates its failure (if any).
+   *
+   * @param future a worker future.
+   * @param batch a batch.
+   * @throws IOException when the worker failed to read from the file.
+   */
+  private static void await(@NonNull Future<?> future, @NonNull Batch batch)
+      throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException ex) {
+      batch.aborted.set(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while awaiting import workers");
+    } catch (ExecutionException ex) {
+      batch.aborted.set(true);
+      Throwable cause = ex.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw new IllegalStateException("Import worker failed", cause);
+    }
+  }
+
+  /**
+   * Represents the shared state of a single import run.
+   */
+  private static final class Batch {
+
+    private final FileChannel channel;
+    private final long size;
+    private final int chunkSize;
+    private final Consumer<? super HandshakeUri> consumer;
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    private Batch(@NonNull FileChannel channel, long size, int chunkSize,
+        @NonNull Consumer<? super HandshakeUri> consumer) {
+      this.channel = channel;
+      this.size = size;
+      this.chunkSize = chunkSize;
+      this.consumer = consumer;
+    }
+  }
+
+  /**
+   * Exposes a region of a byte buffer as a sequence of US-ASCII characters.
+   */
+  private static final class AsciiSequence implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char charAt(int index) {
+      return (char) this.buffer.get(this.offset + index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int length() {
+      return this.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return this.toString().substring(start, end);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public String toString() {
+      char[] characters = new char[this.length];
+
+      for (int i = 0; i < characters.length; ++i) {
+        characters[i] = this.charAt(i);
+      }
+
+      return new String(characters);
+    }
+  }
+
+  /**
+   * Parses chunks until all chunks of a batch have been claimed.
+   */
+  private static final class Worker implements Callable<Void> {
+
+    private final Batch batch;
+    private final AsciiSequence sequence = new AsciiSequence();
+
+    private long imported;
+    private long rejected;
+
+    private Worker(@NonNull Batch batch) {
+      this.batch = batch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Void call() throws IOException {
+      Batch batch = this.batch;
+      long start;
+
+      try {
+        while (!batch.aborted.get()
+            && (start = batch.next.getAndAdd(batch.chunkSize)) < batch.size) {
+          this.parseChunk(start, Math.min(batch.size, start + batch.chunkSize));
+        }
+      } finally {
+        batch.imported.addAndGet(this.imported);
+        batch.rejected.addAndGet(this.rejected);
+      }
+
+      return null;
+    }
+
+    /**
+     * Parses all lines which start within a chunk.
+     *
+     * The mapping begins one byte before the chunk in order to identify whether the chunk begins
+     * with a new line and extends past the chunk in order to complete its last line.
+     *
+     * @param start the offset of the first byte of the chunk.
+     * @param end the offset following the last byte of the chunk.
+     * @throws IOException when mapping the file fails.
+     */
+    private void parseChunk(long start, long end) throws IOException {
+      long mappingStart = Math.max(0, start - 1);
+      long mappingEnd = Math.min(this.batch.size, end + MAXIMUM_LINE_LENGTH);
+      ByteBuffer mapping = this.batch.channel
+          .map(FileChannel.MapMode.READ_ONLY, mappingStart, mappingEnd - mappingStart);
+
+      int chunkEnd = (int) (end - mappingStart);
+      int position = (int) (start - mappingStart);
+
+      while (position != 0 && position < chunkEnd && mapping.get(position - 1) != '\n') {
+        ++position;
+      }
+
+      while (position < chunkEnd) {
+        int fieldStart = position;
+        boolean ascii = true;
+        byte b = 0;
+
+        while (position < mapping.limit() && (b = mapping.get(position)) != '\n') {
+          if (b == '\t') {
+            fieldStart = position + 1;
+          } else if (b < 0) {
+            ascii = false;
+          }
+
+          ++position;
+        }
+
+        if (b != '\n' && mappingEnd != this.batch.size) {
+          ++this.rejected;
+
+          long next = this.skipLine(mappingEnd);
+          if (next < end) {
+            this.parseChunk(next, end);
+          }
+          return;
+        }
+
+        int lineEnd = position;
+        if (lineEnd > fieldStart && mapping.get(lineEnd - 1) == '\r') {
+          --lineEnd;
+        }
+
+        this.parseLine(mapping, fieldStart, lineEnd, ascii);
+        ++position;
+      }
+    }
+
+    /**
+     * Locates the start of the line which follows an excessively long line.
+     *
+     * @param offset an offset within the long line.
+     * @return the offset of the following line or the size of the file.
+     * @throws IOException when mapping the file fails.
+     */
+    private long skipLine(long offset) throws IOException {
+      while (offset < this.batch.size) {
+        long length = Math.min(this.batch.size - offset, MAXIMUM_LINE_LENGTH);
+        ByteBuffer mapping = this.batch.channel
+            .map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+        for (int i = 0; i < length; ++i) {
+          if (mapping.get(i) == '\n') {
+            return offset + i + 1;
+          }
+        }
+
+        offset += length;
+      }
+
+      return offset;
+    }
+
+    /**
+     * Parses a single line and passes the resulting URI to the consumer.
+     */
+    private void parseLine(@NonNull ByteBuffer mapping, int start, int end, boolean ascii) {
+      while (start < end && mapping.get(start) == ' ') {
+        ++start;
+      }
+      while (end > start && mapping.get(end - 1) == ' ') {
+        --end;
+      }
+
+      if (start == end) {
+        return;
+      }
+      if (!ascii) {
+        ++this.rejected;
+        return;
+      }
+
+      AsciiSequence sequence = this.sequence;
+      sequence.buffer = mapping;
+      sequence.offset = start;
+      sequence.length = end - start;
+
+      HandshakeUri uri;
+      try {
+        uri = HandshakeUri.parse(sequence);
+      } catch (IllegalArgumentException ex) {
+        ++this.rejected;
+        return;
+      }
+
+      this.batch.consumer.accept(uri);
+      ++this.imported;
+    }
+  }
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Represents the configuration of an account which has been parsed from a handshake URI (e.g. an
+ * {@code otpauth://} URI as produced by {@link TokenGenerator#buildUri(SecretKey, String)}).
+ *
+ * URIs are parsed directly from their character representation without creating intermediary
+ * {@link java.net.URI} instances or query substrings. Both the double encoded components which are
+ * produced by this library and the singly encoded components which are produced by most other
+ * implementations are accepted (as a consequence, a literal {@code %25} which is followed by two
+ * hexadecimal digits within a singly encoded component is misinterpreted). Unknown parameters are
+ * ignored while omitted parameters assume the defaults of the Key URI format (SHA-1, 6 digits and
+ * a period of 30 seconds). The issuer parameter takes precedence over the issuer prefix of the
+ * label.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ * @see HandshakeImporter for a parser of large exports.
+ */
+public final class HandshakeUri {
+
+  private static final String SCHEME = "otpauth://";
+  private static final Duration DEFAULT_PERIOD = Duration.ofSeconds(30);
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private final Type type;
+  private final String issuer;
+  private final String accountName;
+  private final SecretKey secretKey;
+  private final TokenGenerator.Algorithm algorithm;
+  private final int digits;
+  private final Duration period;
+  private final long counter;
+
+  private HandshakeUri(@NonNull Type type, @Nullable String issuer, @NonNull String accountName,
+      @NonNull SecretKey secretKey, @NonNull TokenGenerator.Algorithm algorithm, int digits,
+      @NonNull Duration period, long counter) {
+    this.type = type;
+    this.issuer = issuer;
+    this.accountName = accountName;
+    this.secretKey = secretKey;
+    this.algorithm = algorithm;
+    this.digits = digits;
+    this.period = period;
+    this.counter = counter;
+  }
+
+  /**
+   * Creates a new importer which parses large files of handshake URIs in parallel.
+   *
+   * @return an importer.
+   */
+  @NonNull
+  public static HandshakeImporter createImporter() {
+    return new HandshakeImporter();
+  }
+
+  /**
+   * Parses a handshake URI.
+   *
+   * @param uri a URI.
+   * @return a parsed configuration.
+   * @throws IllegalArgumentException when the URI is malformed or uses unsupported parameters.
+   */
+  @NonNull
+  public static HandshakeUri parse(@NonNull CharSequence uri) {
+    return parse(uri, 0, uri.length());
+  }
+
+  /**
+   * Parses a handshake URI which is located within a region of a character sequence (such as a
+   * line within a {@link java.nio.CharBuffer}).
+   *
+   * @param uri a sequence containing the URI.
+   * @param start the index of the first character of the URI.
+   * @param end the index following the last character of the URI.
+   * @return a parsed configuration.
+   * @throws IllegalArgumentException when the URI is malformed or uses unsupported parameters.
+   * @throws IndexOutOfBoundsException when the region exceeds the bounds of the sequence.
+   */
+  @NonNull
+  public static HandshakeUri parse(@NonNull CharSequence uri, int start, int end) {
+    if (start < 0 || end > uri.length() || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Region " + start + "-" + end + " exceeds sequence of length " + uri.length());
+    }
+
+    Scratch scratch = SCRATCH.get();
+
+    if (!regionMatches(uri, start, end, SCHEME)) {
+      throw malformed("Unsupported scheme");
+    }
+
+    int position = start + SCHEME.length();
+    Type type;
+
+    if (regionMatches(uri, position, end, "totp/")) {
+      type = Type.TOTP;
+    } else if (regionMatches(uri, position, end, "hotp/")) {
+      type = Type.HOTP;
+    } else {
+      throw malformed("Unsupported type");
+    }
+
+    position += 5;
+    int labelEnd = indexOf(uri, '?', position, end);
+    if (labelEnd == -1) {
+      throw malformed("Missing parameters");
+    }
+
+    String issuer = null;
+    int accountStart = position;
+    int separator = indexOf(uri, ':', position, labelEnd);
+
+    if (separator != -1) {
+      accountStart = separator + 1;
+    } else if ((separator = indexOfEncodedColon(uri, position, labelEnd)) != -1) {
+      accountStart = separator + 3;
+    }
+
+    if (separator != -1) {
+      issuer = scratch.decodeIssuer(uri, position, separator);
+    }
+
+    String accountName = scratch.decode(uri, accountStart, labelEnd, true);
+    if (accountName.isEmpty()) {
+      throw malformed("Missing account name");
+    }
+
+    int secretStart = -1;
+    int secretEnd = -1;
+    TokenGenerator.Algorithm algorithm = TokenGenerator.Algorithm.SHA1;
+    int digits = 6;
+    Duration period = DEFAULT_PERIOD;
+    long counter = -1;
+
+    position = labelEnd + 1;
+    while (position < end) {
+      int parameterEnd = indexOf(uri, '&', position, end);
+      if (parameterEnd == -1) {
+        parameterEnd = end;
+      }
+
+      int valueStart = indexOf(uri, '=', position, parameterEnd) + 1;
+      if (valueStart != 0) {
+        int nameEnd = valueStart - 1;
+
+        if (isParameter(uri, position, nameEnd, "secret")) {
+          secretStart = valueStart;
+          secretEnd = parameterEnd;
+        } else if (isParameter(uri, position, nameEnd, "issuer")) {
+          issuer = scratch.decodeIssuer(uri, valueStart, parameterEnd);
+        } else if (isParameter(uri, position, nameEnd, "algorithm")) {
+          algorithm = parseAlgorithm(uri, valueStart, parameterEnd);
+        } else if (isParameter(uri, position, nameEnd, "digits")) {
+          long value = parseNumber(uri, valueStart, parameterEnd, "digits");
+
+          if (value != 6 && value != 8) {
+            throw malformed("Unsupported amount of digits: " + value);
+          }
+
+          digits = (int) value;
+        } else if (isParameter(uri, position, nameEnd, "period")) {
+          long value = parseNumber(uri, valueStart, parameterEnd, "period");
+
+          if (value == 0) {
+            throw malformed("Period must be positive");
+          }
+
+          period = value == 30 ? DEFAULT_PERIOD : Duration.ofSeconds(value);
+        } else if (isParameter(uri, position, nameEnd, "counter")) {
+          counter = parseNumber(uri, valueStart, parameterEnd, "counter");
+        }
+      }
+
+      position = parameterEnd + 1;
+    }
+
+    if (secretStart == -1) {
+      throw malformed("Missing secret");
+    }
+    if (type == Type.HOTP && counter == -1) {
+      throw malformed("Missing counter");
+    }
+
+    return new HandshakeUri(type, issuer, accountName,
+        decodeSecret(uri, secretStart, secretEnd, algorithm), algorithm, digits, period,
+        type == Type.HOTP ? counter : 0);
+  }
+
+  @NonNull
+  private static IllegalArgumentException malformed(@NonNull String message) {
+    return new IllegalArgumentException("Malformed handshake URI: " + message);
+  }
+
+  /**
+   * Evaluates whether a region starts with an expected lower case ASCII string while ignoring the
+   * case of the region.
+   */
+  private static boolean regionMatches(@NonNull CharSequence sequence, int start, int end,
+      @NonNull String expected) {
+    if (end - start < expected.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < expected.length(); ++i) {
+      char c = sequence.charAt(start + i);
+
+      if (c != expected.charAt(i) && (c | 0x20) != expected.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isParameter(@NonNull CharSequence sequence, int start, int end,
+      @NonNull String name) {
+    return end - start == name.length() && regionMatches(sequence, start, end, name);
+  }
+
+  private static int indexOf(@NonNull CharSequence sequence, char c, int start, int end) {
+    for (int i = start; i < end; ++i) {
+      if (sequence.charAt(i) == c) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static int indexOfEncodedColon(@NonNull CharSequence sequence, int start, int end) {
+    for (int i = start; i + 2 < end; ++i) {
+      if (sequence.charAt(i) == '%' && sequence.charAt(i + 1) == '3'
+          && (sequence.charAt(i + 2) | 0x20) == 'a') {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static int hexValue(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+
+    c |= 0x20;
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Decodes a percent encoded octet.
+   *
+   * @return the octet or -1 if the region does not contain two hexadecimal digits.
+   */
+  private static int octetAt(@NonNull CharSequence sequence, int index, int end) {
+    if (index + 2 > end) {
+      return -1;
+    }
+
+    int high = hexValue(sequence.charAt(index));
+    int low = hexValue(sequence.charAt(index + 1));
+
+    return high == -1 || low == -1 ? -1 : (high << 4) | low;
+  }
+
+  @NonNull
+  private static TokenGenerator.Algorithm parseAlgorithm(@NonNull CharSequence sequence,
+      int start, int end) {
+    for (TokenGenerator.Algorithm algorithm : TokenGenerator.Algorithm.values()) {
+      String name = algorithm.name();
+
+      if (end - start == name.length()) {
+        boolean matches = true;
+
+        for (int i = 0; i < name.length() && matches; ++i) {
+          matches = Character.toUpperCase(sequence.charAt(start + i)) == name.charAt(i);
+        }
+
+        if (matches) {
+          return algorithm;
+        }
+      }
+    }
+
+    throw malformed("Unsupported algorithm: " + sequence.subSequence(start, end));
+  }
+
+  private static long parseNumber(@NonNull CharSequence sequence, int start, int end,
+      @NonNull String name) {
+    if (start == end || end - start > 18) {
+      throw malformed("Invalid parameter: " + name);
+    }
+
+    long value = 0;
+    for (int i = start; i < end; ++i) {
+      char c = sequence.charAt(i);
+
+      if (c < '0' || c > '9') {
+        throw malformed("Invalid parameter: " + name);
+      }
+
+      value = value * 10 + (c - '0');
+    }
+
+    return value;
+  }
+
+  /**
+   * Decodes the Base32 encoded secret of a URI while discarding its trailing padding (which may be
+   * encoded once, twice or not at all).
+   *
+   * @throws IllegalArgumentException when any other character follows the padding or an escape
+   * sequence is embedded within the secret.
+   */
+  @NonNull
+  private static SecretKey decodeSecret(@NonNull CharSequence sequence, int start, int end,
+      @NonNull TokenGenerator.Algorithm algorithm) {
+    int padding = end;
+    for (int i = start; i < end; ++i) {
+      char c = sequence.charAt(i);
+
+      if (c == '%' || c == '=') {
+        padding = i;
+        break;
+      }
+    }
+
+    for (int i = padding; i < end; ) {
+      if (sequence.charAt(i) == '=') {
+        ++i;
+      } else if (regionMatches(sequence, i, end, "%3d")) {
+        i += 3;
+      } else if (regionMatches(sequence, i, end, "%253d")) {
+        i += 5;
+      } else {
+        throw malformed("Invalid secret");
+      }
+    }
+    end = padding;
+
+    byte[] key = new byte[Base32Codec.decodedLength(end - start)];
+    int length;
+
+    try {
+      length = Base32Codec.decode(sequence, start, end, key, 0);
+    } catch (IllegalArgumentException ex) {
+      throw malformed("Invalid secret (" + ex.getMessage() + ")");
+    }
+
+    if (length == 0) {
+      throw malformed("Missing secret");
+    }
+
+    return new SecretKeySpec(length == key.length ? key : Arrays.copyOf(key, length),
+        "Hmac" + algorithm.name());
+  }
+
+  /**
+   * Creates a token generator which matches the configuration of this account.
+   *
+   * When many accounts share the same configuration, callers should retain a single generator per
+   * configuration rather than creating a generator per account.
+   *
+   * @return a {@link PeriodTokenGenerator} for time based accounts or a {@link
+   * CounterTokenGenerator} for counter based accounts (using an empty issuer name when the URI
+   * does not specify an issuer).
+   */
+  @NonNull
+  public TokenGenerator createGenerator() {
+    TokenGenerator.Builder builder = this.toBuilder();
+    String issuer = this.issuer == null ? "" : this.issuer;
+
+    if (this.type == Type.HOTP) {
+      return builder.createCounterGenerator(issuer);
+    }
+
+    return builder.createPeriodGenerator(issuer);
+  }
+
+  /**
+   * Retrieves the account name (without the issuer prefix).
+   *
+   * @return an account name.
+   */
+  @NonNull
+  public String getAccountName() {
+    return this.accountName;
+  }
+
+  /**
+   * Retrieves the hashing algorithm.
+   *
+   * @return an algorithm.
+   */
+  @NonNull
+  public TokenGenerator.Algorithm getAlgorithm() {
+    return this.algorithm;
+  }
+
+  /**
+   * Retrieves the initial counter value of a counter based account.
+   *
+   * @return a counter value (or zero for time based accounts).
+   */
+  public long getCounter() {
+    return this.counter;
+  }
+
+  /**
+   * Retrieves the amount of digits per code.
+   *
+   * @return an amount of digits (either 6 or 8).
+   */
+  public int getDigits() {
+    return this.digits;
+  }
+
+  /**
+   * Retrieves the issuer.
+   *
+   * @return an issuer or null if neither the label nor the parameters specify an issuer.
+   */
+  @Nullable
+  public String getIssuer() {
+    return this.issuer;
+  }
+
+  /**
+   * Retrieves the period of time a code is valid for.
+   *
+   * @return a period (which is ignored for counter based accounts).
+   */
+  @NonNull
+  public Duration getPeriod() {
+    return this.period;
+  }
+
+  /**
+   * Retrieves the shared secret.
+   *
+   * @return a secret key.
+   */
+  @NonNull
+  public SecretKey getSecretKey() {
+    return this.secretKey;
+  }
+
+  /**
+   * Retrieves the type of account.
+   *
+   * @return a type.
+   */
+  @NonNull
+  public Type getType() {
+    return this.type;
+  }
+
+  /**
+   * Creates a token generator builder which is configured to match this account.
+   *
+   * @return a builder.
+   */
+  @NonNull
+  public TokenGenerator.Builder toBuilder() {
+    return TokenGenerator.builder()
+        .algorithm(this.algorithm)
+        .digits(this.digits)
+        .period(this.period);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "HandshakeUri{type=" + this.type + ", issuer=" + this.issuer + ", accountName="
+        + this.accountName + ", algorithm=" + this.algorithm + ", digits=" + this.digits + ", "
+        + (this.type == Type.HOTP ? "counter=" + this.counter : "period=" + this.period) + "}";
+  }
+
+  /**
+   * Provides a list of account types.
+   */
+  public enum Type {
+
+    /**
+     * Identifies counter based accounts (using the HOTP specification).
+     */
+    HOTP,
+
+    /**
+     * Identifies time based accounts (using the TOTP specification).
+     */
+    TOTP
+  }
+
+  /**
+   * Provides the working buffers of a single parsing thread.
+   *
+   * Since exports typically share a single issuer among all of their accounts, the most recently
+   * decoded issuer is retained and returned again as long as its encoded form matches.
+   */
+  private static final class Scratch {
+
+    private byte[] octets = new byte[256];
+    private int length;
+
+    private byte[] issuerOctets = new byte[0];
+    private int issuerLength = -1;
+    private String issuer;
+
+    @NonNull
+    private String decodeIssuer(@NonNull CharSequence sequence, int start, int end) {
+      this.decodeOctets(sequence, start, end);
+
+      if (HmacEngine.isCached(this.issuerOctets, this.issuerLength, this.octets, 0, this.length)) {
+        return this.issuer;
+      }
+
+      if (this.issuerOctets.length < this.length) {
+        this.issuerOctets = new byte[this.octets.length];
+      }
+
+      System.arraycopy(this.octets, 0, this.issuerOctets, 0, this.length);
+      this.issuerLength = this.length;
+      this.issuer = new String(this.octets, 0, this.length, StandardCharsets.UTF_8);
+
+      return this.issuer;
+    }
+
+    @NonNull
+    private String decode(@NonNull CharSequence sequence, int start, int end,
+        boolean trimLeading) {
+      this.decodeOctets(sequence, start, end);
+
+      int offset = 0;
+      while (trimLeading && offset < this.length && this.octets[offset] == ' ') {
+        ++offset;
+      }
+
+      return new String(this.octets, offset, this.length - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the octets of a form and/or percent encoded component into the scratch buffer.
+     */
+    private void decodeOctets(@NonNull CharSequence sequence, int start, int end) {
+      this.length = 0;
+
+      for (int i = start; i < end; ++i) {
+        char c = sequence.charAt(i);
+
+        if (c == '+') {
+          this.append(' ');
+        } else if (c == '%') {
+          int octet = octetAt(sequence, i + 1, end);
+
+          if (octet == -1) {
+            throw malformed("Invalid escape sequence at index " + i);
+          }
+
+          i += 2;
+          if (octet == '%') {
+            int escaped = octetAt(sequence, i + 1, end);
+
+            if (escaped != -1) {
+              octet = escaped;
+              i += 2;
+            }
+          }
+
+          this.append(octet);
+        } else if (c < 0x80) {
+          this.append(c);
+        } else if (c < 0x800) {
+          this.append(0xC0 | (c >>> 6));
+          this.append(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < end && Character
+            .isLowSurrogate(sequence.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, sequence.charAt(++i));
+
+          this.append(0xF0 | (codePoint >>> 18));
+          this.append(0x80 | ((codePoint >>> 12) & 0x3F));
+          this.append(0x80 | ((codePoint >>> 6) & 0x3F));
+          this.append(0x80 | (codePoint & 0x3F));
+        } else {
+          this.append(0xE0 | (c >>> 12));
+          this.append(0x80 | ((c >>> 6) & 0x3F));
+          this.append(0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    private void append(int octet) {
+      if (this.length == this.octets.length) {
+        this.octets = Arrays.copyOf(this.octets, this.octets.length * 2);
+      }
+
+      this.octets[this.length++] = (byte) octet;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a base for the HMAC implementations which back the token generators.
+ *
+ * Engines compute the HMAC of 8 byte challenges (e.g. HOTP counters or TOTP time steps) and apply
+ * the dynamic truncation specified in RFC 4226 section 5.3. Implementations are required to be
+ * thread safe and are expected to retain all of their working state per thread.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+abstract class HmacEngine {
+
+  /**
+   * Creates an engine for the specified implementation and hashing algorithm.
+   *
+   * @param engine an engine implementation.
+   * @param algorithm an algorithm.
+   * @return an engine.
+   */
+  @NonNull
+  static HmacEngine create(@NonNull TokenGenerator.Engine engine,
+      @NonNull TokenGenerator.Algorithm algorithm) {
+    if (engine == TokenGenerator.Engine.BUILTIN) {
+      switch (algorithm) {
+        case SHA1:
+          return new Sha1HmacEngine();
+        case SHA256:
+          return new Sha256HmacEngine();
+        case SHA512:
+          return new Sha512HmacEngine();
+        default:
+          throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+      }
+    }
+
+    return new JcaHmacEngine("Hmac" + algorithm.name());
+  }
+
+  /**
+   * Applies the dynamic truncation specified in RFC 4226 section 5.3 to a hash.
+   *
+   * @param hash a hash.
+   * @return a 31 bit truncated hash value.
+   */
+  static int truncate(@NonNull byte[] hash) {
+    int offset = hash[hash.length - 1] & 0x0F;
+    return ((hash[offset] & 0x7F) << 24)
+        | ((hash[offset + 1] & 0xFF) << 16)
+        | ((hash[offset + 2] & 0xFF) << 8)
+        | (hash[offset + 3] & 0xFF);
+  }
+
+  /**
+   * Computes the HMAC of an 8 byte challenge and applies the dynamic truncation specified in RFC
+   * 4226 section 5.3.
+   *
+   * @param secretKey a secret key.
+   * @param challenge a challenge (encoded in big endian byte order).
+   * @return a 31 bit truncated hash value.
+   * @throws NoSuchAlgorithmException when the algorithm is not supported by the Java VM.
+   * @throws InvalidKeyException when the key is incompatible with the algorithm.
+   */
+  abstract int truncate(@NonNull SecretKey secretKey, long challenge)
+      throws NoSuchAlgorithmException, InvalidKeyException;
+
+  /**
+   * Computes the truncated HMAC values of a run of consecutive challenges.
+   *
+   * Implementations prepare the keyed state once and subsequently merely update the challenge for
+   * each value of the run.
+   *
+   * @param secretKey a secret key.
+   * @param challenge the first challenge.
+   * @param destination an array which receives the 31 bit truncated hash values.
+   * @param offset the index of the first value within the array.
+   * @param count an amount of consecutive challenges.
+   * @throws NoSuchAlgorithmException when the algorithm is not supported by the Java VM.
+   * @throws InvalidKeyException when the key is incompatible with the algorithm.
+   */
+  void truncate(@NonNull SecretKey secretKey, long challenge, @NonNull int[] destination,
+      int offset, int count) throws NoSuchAlgorithmException, InvalidKeyException {
+    for (int i = 0; i < count; ++i) {
+      destination[offset + i] = this.truncate(secretKey, challenge + i);
+    }
+  }
+
+  /**
+   * Computes the HMAC of an 8 byte challenge using a raw key and applies the dynamic truncation
+   * specified in RFC 4226 section 5.3.
+   *
+   * Since raw keys lack an identity, keyed state is retained for as long as the same key contents
+   * are passed.
+   *
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @param challenge a challenge (encoded in big endian byte order).
+   * @return a 31 bit truncated hash value.
+   * @throws NoSuchAlgorithmException when the algorithm is not supported by the Java VM.
+   * @throws InvalidKeyException when the key is incompatible with the algorithm.
+   */
+  abstract int truncate(@NonNull byte[] key, int offset, int length, long challenge)
+      throws NoSuchAlgorithmException, InvalidKeyException;
+
+  /**
+   * Eagerly resolves all resources which are otherwise acquired upon the first computation and
+   * prepares the working state of the calling thread.
+   *
+   * @throws NoSuchAlgorithmException when the algorithm is not supported by the Java VM.
+   */
+  abstract void prepare() throws NoSuchAlgorithmException;
+
+  /**
+   * Evaluates whether a cached copy of a key matches a region of an array.
+   *
+   * @param cached a cached copy.
+   * @param cachedLength the length of the cached copy or -1 if no copy is present.
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @return true if equal, false otherwise.
+   */
+  static boolean isCached(@NonNull byte[] cached, int cachedLength, @NonNull byte[] key,
+      int offset, int length) {
+    if (cachedLength != length) {
+      return false;
+    }
+
+    for (int i = 0; i < length; ++i) {
+      if (cached[i] != key[offset + i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
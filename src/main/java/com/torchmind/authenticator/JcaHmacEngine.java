@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Provides an HMAC engine which delegates to the Java Cryptography Architecture while retaining a
+ * per-thread cache of initialized {@link Mac} instances.
+ *
+ * Each thread retains a single instance along with the key it was last initialized with. As long
+ * as a thread keeps passing the same key instance, the provider lookup and key schedule are skipped
+ * entirely and the instance is merely reset before it is handed out again. Along with the instance,
+ * each thread retains a challenge and hash buffer which permits the computation of truncated hash
+ * values without allocating on the calling side.
+ *
+ * Once the engine has been prepared, the provider which was selected for the algorithm is pinned
+ * and subsequently requested directly when instances are created for further threads. This
+ * bypasses the traversal of the installed providers (and the delayed provider selection) which is
+ * otherwise performed for every thread.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class JcaHmacEngine extends HmacEngine {
+
+  private static final int MAXIMUM_CACHED_KEY_LENGTH = 128;
+
+  private final String algorithm;
+  private final ThreadLocal<Entry> entries = new ThreadLocal<>();
+  private volatile Provider provider;
+
+  JcaHmacEngine(@NonNull String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  /**
+   * Retrieves the provider which has been pinned when this engine was prepared.
+   *
+   * @return a provider or null if the engine has not been prepared.
+   */
+  Provider getProvider() {
+    return this.provider;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void prepare() throws NoSuchAlgorithmException {
+    Entry entry = this.entries.get();
+
+    if (entry == null) {
+      entry = new Entry(Mac.getInstance(this.algorithm));
+      this.entries.set(entry);
+    }
+
+    // providers are selected lazily based on the key they are initialized with and thus the
+    // selection is completed with a throwaway key before the provider is pinned
+    try {
+      entry.mac.init(new SecretKeySpec(new byte[AbstractTokenGenerator.SECRET_LENGTH],
+          this.algorithm));
+    } catch (InvalidKeyException ex) {
+      throw new NoSuchAlgorithmException("No provider accepts raw keys for " + this.algorithm, ex);
+    }
+
+    entry.key = null;
+    entry.rawLength = -1;
+    this.provider = entry.mac.getProvider();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  int truncate(@NonNull SecretKey secretKey, long challenge)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    return this.truncate(this.acquireEntry(secretKey), challenge);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void truncate(@NonNull SecretKey secretKey, long challenge, @NonNull int[] destination,
+      int offset, int count) throws NoSuchAlgorithmException, InvalidKeyException {
+    Entry entry = this.acquireEntry(secretKey);
+
+    for (int i = 0; i < count; ++i) {
+      destination[offset + i] = this.truncate(entry, challenge + i);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  int truncate(@NonNull byte[] key, int offset, int length, long challenge)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    Entry entry = this.entry();
+
+    if (entry.key != null || !isCached(entry.raw, entry.rawLength, key, offset, length)) {
+      entry.key = null;
+      entry.rawLength = -1;
+
+      if (length == 0) {
+        throw new InvalidKeyException("Empty key");
+      }
+
+      entry.mac.init(new SecretKeySpec(key, offset, length, this.algorithm));
+
+      if (length <= entry.raw.length) {
+        System.arraycopy(key, offset, entry.raw, 0, length);
+        entry.rawLength = length;
+      }
+    } else {
+      entry.mac.reset();
+    }
+
+    return this.truncate(entry, challenge);
+  }
+
+  /**
+   * Computes the truncated HMAC of a challenge using a prepared entry.
+   *
+   * @param entry an entry.
+   * @param challenge a challenge.
+   * @return a 31 bit truncated hash value.
+   */
+  private int truncate(@NonNull Entry entry, long challenge) {
+    byte[] buffer = entry.challenge;
+    byte[] hash = entry.hash;
+
+    for (int i = 7; i >= 0; --i) {
+      buffer[i] = (byte) challenge;
+      challenge >>>= 8;
+    }
+
+    try {
+      entry.mac.update(buffer);
+      entry.mac.doFinal(hash, 0);
+    } catch (ShortBufferException ex) {
+      throw new IllegalStateException("Hash buffer does not match the mac length", ex);
+    }
+
+    return truncate(hash);
+  }
+
+  /**
+   * Retrieves the entry of the calling thread and prepares it for use with the specified key.
+   *
+   * @param secretKey a secret key.
+   * @return an entry.
+   * @throws NoSuchAlgorithmException when the algorithm is not supported by the Java VM.
+   * @throws InvalidKeyException when the key is incompatible with the algorithm.
+   */
+  @NonNull
+  private Entry acquireEntry(@NonNull SecretKey secretKey)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    Entry entry = this.entry();
+
+    if (entry.key != secretKey) {
+      // forget the previous key first so that a failed initialization cannot leave the entry
+      // associated with a key it has not actually been initialized with
+      entry.key = null;
+      entry.rawLength = -1;
+      entry.mac.init(secretKey);
+      entry.key = secretKey;
+    } else {
+      entry.mac.reset();
+    }
+
+    return entry;
+  }
+
+  /**
+   * Retrieves the entry of the calling thread.
+   *
+   * @return an entry.
+   * @throws NoSuchAlgorithmException when the algorithm is not supported by the Java VM.
+   */
+  @NonNull
+  private Entry entry() throws NoSuchAlgorithmException {
+    Entry entry = this.entries.get();
+
+    if (entry == null) {
+      Provider provider = this.provider;
+      entry = new Entry(provider == null ? Mac.getInstance(this.algorithm)
+          : Mac.getInstance(this.algorithm, provider));
+      this.entries.set(entry);
+    }
+
+    return entry;
+  }
+
+  /**
+   * Represents the cached state of a single thread.
+   */
+  private static final class Entry {
+
+    private final Mac mac;
+    private final byte[] challenge = new byte[8];
+    private final byte[] hash;
+    private final byte[] raw = new byte[MAXIMUM_CACHED_KEY_LENGTH];
+    private SecretKey key;
+    private int rawLength = -1;
+
+    private Entry(@NonNull Mac mac) {
+      this.mac = mac;
+      this.hash = new byte[mac.getMacLength()];
+    }
+  }
+}
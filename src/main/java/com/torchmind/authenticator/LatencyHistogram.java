@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provides a concurrent histogram of latencies.
+ *
+ * Values are recorded into log-linear buckets (eight linear sub-buckets per power of two) and
+ * thus all reported percentiles are accurate to within 12.5%. Each bucket is backed by a striped
+ * counter and thus recording a value does not contend with concurrent recordings.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe. Values which are read while
+ * concurrent recordings are in progress reflect an approximate snapshot.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; ++i) {
+      this.buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Calculates the bucket which is responsible for a certain value.
+   *
+   * @param value a non-negative value.
+   * @return a bucket index.
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Calculates the largest value which is attributed to a certain bucket.
+   *
+   * @param bucket a bucket index.
+   * @return a value.
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    long lower = (SUB_BUCKETS + bucket % SUB_BUCKETS) * width;
+
+    return lower + width - 1;
+  }
+
+  /**
+   * Retrieves the total amount of recorded values.
+   *
+   * @return an amount of values.
+   */
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  /**
+   * Retrieves the largest recorded value.
+   *
+   * @return a value (in nanoseconds).
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Calculates the arithmetic mean of all recorded values.
+   *
+   * @return a value (in nanoseconds) or zero when no values have been recorded.
+   */
+  public double getMean() {
+    long count = this.count.sum();
+    return count == 0 ? 0 : (double) this.sum.sum() / count;
+  }
+
+  /**
+   * Estimates the value at a certain percentile.
+   *
+   * @param percentile a percentile (between 0 and 100).
+   * @return a value (in nanoseconds) or zero when no values have been recorded.
+   * @throws IllegalArgumentException when the percentile is out of range.
+   */
+  public long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100");
+    }
+
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+
+    for (int i = 0; i < BUCKETS; ++i) {
+      counts[i] = this.buckets[i].sum();
+      total += counts[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    long threshold = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long cumulative = 0;
+
+    for (int i = 0; i < BUCKETS; ++i) {
+      cumulative += counts[i];
+
+      if (cumulative >= threshold) {
+        return Math.min(upperBoundOf(i), this.max.get());
+      }
+    }
+
+    return this.max.get();
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value a value (in nanoseconds); negative values are recorded as zero.
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+
+    this.buckets[bucketOf(value)].increment();
+    this.count.increment();
+    this.sum.add(value);
+    this.max.accumulate(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LatencyHistogram{count=" + this.getCount() + ", mean=" + String
+        .format("%.1f", this.getMean()) + ", p50=" + this.getPercentile(50) + ", p99=" + this
+        .getPercentile(99) + ", max=" + this.getMax() + "}";
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a persistent store of shared secrets which is backed by a memory mapped file.
+ *
+ * The file consists of fixed size records which are addressed directly by their account
+ * identifier and thus no index needs to be loaded on startup. Each record consists of a single
+ * length byte (zero indicates an unused record), seven reserved bytes and up to
+ * {@value #MAXIMUM_KEY_LENGTH} bytes of key material. Since secrets are read directly from the
+ * mapping, no {@link SecretKey} instances are retained for stored accounts and the operating
+ * system page cache serves all lookups.
+ *
+ * Validations copy the secret into a thread local buffer which is cleared once the code has been
+ * checked. The HMAC engine of the generator does, however, retain the key of the most recently
+ * validated account (along with its key schedule) per thread in order to skip initialization for
+ * consecutive validations of the same account. With the {@link TokenGenerator.Engine#JCA} engine,
+ * each switch between accounts additionally allocates a short lived key specification for the
+ * provider.
+ *
+ * <strong>Note:</strong> Reads and writes of distinct accounts may be performed concurrently.
+ * Updates to an account should not race with validations of the same account as they may observe
+ * a partially written secret. The mapping is released by the garbage collector once the store has
+ * been closed and is no longer referenced.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ * @see PeriodTokenGenerator#verifyCode(int, MappedSecretStore, long, java.time.Instant, int, int)
+ */
+public final class MappedSecretStore implements AutoCloseable {
+
+  /**
+   * Defines the maximum length of a stored secret in bytes.
+   */
+  public static final int MAXIMUM_KEY_LENGTH = 64;
+
+  static final int RECORD_SIZE = 8 + MAXIMUM_KEY_LENGTH;
+  static final int RECORDS_PER_SEGMENT = 1 << 20;
+
+  private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal
+      .withInitial(() -> new byte[MAXIMUM_KEY_LENGTH]);
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long capacity;
+  private volatile boolean closed;
+
+  private MappedSecretStore(@NonNull FileChannel channel, long capacity) throws IOException {
+    this.channel = channel;
+    this.capacity = capacity;
+
+    int segmentCount = (int) ((capacity + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+    this.segments = new MappedByteBuffer[segmentCount];
+
+    for (int i = 0; i < segmentCount; ++i) {
+      long first = (long) i * RECORDS_PER_SEGMENT;
+      long records = Math.min(RECORDS_PER_SEGMENT, capacity - first);
+
+      this.segments[i] = channel
+          .map(FileChannel.MapMode.READ_WRITE, first * RECORD_SIZE, records * RECORD_SIZE);
+    }
+  }
+
+  /**
+   * Opens an existing store.
+   *
+   * The capacity of the store is derived from the size of the file.
+   *
+   * @param path a file path.
+   * @return a store.
+   * @throws IOException when opening or mapping the file fails.
+   */
+  @NonNull
+  public static MappedSecretStore open(@NonNull Path path) throws IOException {
+    return open(path, 0);
+  }
+
+  /**
+   * Opens or creates a store which is capable of storing at least the specified amount of
+   * accounts.
+   *
+   * When the file is smaller than required, it is extended accordingly. Existing files are never
+   * truncated and thus the resulting capacity may exceed the requested capacity.
+   *
+   * @param path a file path.
+   * @param capacity a minimum amount of accounts.
+   * @return a store.
+   * @throws IOException when opening or mapping the file fails.
+   * @throws IllegalArgumentException when a negative capacity is supplied.
+   */
+  @NonNull
+  public static MappedSecretStore open(@NonNull Path path, long capacity) throws IOException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Capacity cannot be negative");
+    }
+
+    FileChannel channel = FileChannel
+        .open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    try {
+      long existing = channel.size() / RECORD_SIZE;
+
+      if (existing < capacity) {
+        // extend the file by writing its final byte in order to permit sparse allocation
+        channel.write(ByteBuffer.allocate(1), capacity * RECORD_SIZE - 1);
+      }
+
+      return new MappedSecretStore(channel, Math.max(existing, capacity));
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Retrieves a thread local buffer which is large enough to hold any stored secret.
+   *
+   * @return a buffer.
+   */
+  @NonNull
+  static byte[] scratch() {
+    return SCRATCH.get();
+  }
+
+  /**
+   * Retrieves the maximum amount of accounts within this store.
+   *
+   * Valid account identifiers range from zero (inclusive) to the capacity (exclusive).
+   *
+   * @return an amount of accounts.
+   */
+  public long capacity() {
+    return this.capacity;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.force();
+    this.channel.close();
+  }
+
+  /**
+   * Evaluates whether a secret has been stored for the specified account.
+   *
+   * @param accountId an account identifier.
+   * @return true if present, false otherwise.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of this store.
+   */
+  public boolean contains(long accountId) {
+    return this.segment(accountId).get(offset(accountId)) != 0;
+  }
+
+  /**
+   * Writes all pending changes to the underlying storage device.
+   */
+  public void force() {
+    for (MappedByteBuffer segment : this.segments) {
+      segment.force();
+    }
+  }
+
+  /**
+   * Stores the secret of an account.
+   *
+   * @param accountId an account identifier.
+   * @param secretKey a secret key.
+   * @throws IllegalArgumentException when the key is empty, exceeds {@link #MAXIMUM_KEY_LENGTH} or
+   * does not provide an encoded form.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of this store.
+   */
+  public void put(long accountId, @NonNull SecretKey secretKey) {
+    byte[] key = secretKey.getEncoded();
+
+    if (key == null) {
+      throw new IllegalArgumentException("Key does not provide an encoded form");
+    }
+
+    this.put(accountId, key);
+  }
+
+  /**
+   * Stores the secret of an account.
+   *
+   * @param accountId an account identifier.
+   * @param key an encoded secret.
+   * @throws IllegalArgumentException when the key is empty or exceeds {@link
+   * #MAXIMUM_KEY_LENGTH}.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of this store.
+   */
+  public void put(long accountId, @NonNull byte[] key) {
+    if (key.length == 0 || key.length > MAXIMUM_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          "Key length must be between 1 and " + MAXIMUM_KEY_LENGTH + " bytes");
+    }
+
+    MappedByteBuffer segment = this.segment(accountId);
+    int offset = offset(accountId);
+
+    // invalidate the record first in order to prevent readers from combining the previous length
+    // with the new key material
+    segment.put(offset, (byte) 0);
+    for (int i = 0; i < key.length; ++i) {
+      segment.put(offset + 8 + i, key[i]);
+    }
+    for (int i = key.length; i < MAXIMUM_KEY_LENGTH; ++i) {
+      segment.put(offset + 8 + i, (byte) 0);
+    }
+    segment.put(offset, (byte) key.length);
+  }
+
+  /**
+   * Copies the secret of an account into an array.
+   *
+   * @param accountId an account identifier.
+   * @param destination an array of at least {@link #MAXIMUM_KEY_LENGTH} bytes.
+   * @return the length of the secret or zero if no secret has been stored.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of this store.
+   */
+  public int read(long accountId, @NonNull byte[] destination) {
+    MappedByteBuffer segment = this.segment(accountId);
+    int offset = offset(accountId);
+    int length = segment.get(offset) & 0xFF;
+
+    if (length > MAXIMUM_KEY_LENGTH) {
+      throw new IllegalStateException("Corrupted record for account " + accountId);
+    }
+
+    for (int i = 0; i < length; ++i) {
+      destination[i] = segment.get(offset + 8 + i);
+    }
+
+    return length;
+  }
+
+  /**
+   * Removes the secret of an account.
+   *
+   * @param accountId an account identifier.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of this store.
+   */
+  public void remove(long accountId) {
+    MappedByteBuffer segment = this.segment(accountId);
+    int offset = offset(accountId);
+
+    segment.put(offset, (byte) 0);
+    for (int i = 0; i < MAXIMUM_KEY_LENGTH; ++i) {
+      segment.put(offset + 8 + i, (byte) 0);
+    }
+  }
+
+  /**
+   * Calculates the offset of a record within its segment.
+   *
+   * @param accountId an account identifier.
+   * @return an offset.
+   */
+  private static int offset(long accountId) {
+    return (int) (accountId % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+  }
+
+  /**
+   * Selects the segment which contains the record of an account.
+   *
+   * @param accountId an account identifier.
+   * @return a segment.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of this store.
+   * @throws IllegalStateException when the store has been closed.
+   */
+  @NonNull
+  private MappedByteBuffer segment(long accountId) {
+    if (this.closed) {
+      throw new IllegalStateException("Store has been closed");
+    }
+    if (accountId < 0 || accountId >= this.capacity) {
+      throw new IndexOutOfBoundsException(
+          "Account " + accountId + " exceeds capacity of " + this.capacity);
+    }
+
+    return this.segments[(int) (accountId / RECORDS_PER_SEGMENT)];
+  }
+}
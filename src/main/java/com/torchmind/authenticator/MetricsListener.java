@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Objects;
+
+/**
+ * Receives notifications about the operations performed by a token generator.
+ *
+ * Listeners are invoked synchronously on the thread which performed the operation and should thus
+ * return as quickly as possible. When no listener has been registered with the generator builder,
+ * generators skip all measurements entirely.
+ *
+ * <strong>Note:</strong> Implementations of this type are required to be thread safe.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ * @see TokenGenerator.Builder#listener(MetricsListener)
+ * @see TokenMetrics for an implementation which aggregates counters and latency histograms.
+ */
+public interface MetricsListener {
+
+  /**
+   * Retrieves a listener which discards all notifications.
+   *
+   * @return a listener.
+   */
+  @NonNull
+  static MetricsListener noop() {
+    return NoopMetricsListener.INSTANCE;
+  }
+
+  /**
+   * Creates a listener which forwards all notifications to this listener and subsequently to the
+   * specified listener.
+   *
+   * @param listener a listener.
+   * @return a composite listener.
+   */
+  @NonNull
+  default MetricsListener andThen(@NonNull MetricsListener listener) {
+    Objects.requireNonNull(listener, "listener");
+    MetricsListener self = this;
+
+    return new MetricsListener() {
+      @Override
+      public void onCodeGenerated(@NonNull TokenGenerator.Algorithm algorithm, long latency) {
+        self.onCodeGenerated(algorithm, latency);
+        listener.onCodeGenerated(algorithm, latency);
+      }
+
+      @Override
+      public void onCodeValidated(@NonNull TokenGenerator.Algorithm algorithm, int offset,
+          long latency) {
+        self.onCodeValidated(algorithm, offset, latency);
+        listener.onCodeValidated(algorithm, offset, latency);
+      }
+
+      @Override
+      public void onInvalidKey(@NonNull TokenGenerator.Algorithm algorithm) {
+        self.onInvalidKey(algorithm);
+        listener.onInvalidKey(algorithm);
+      }
+    };
+  }
+
+  /**
+   * Handles the generation of a code.
+   *
+   * @param algorithm the algorithm of the generator.
+   * @param latency the time spent generating the code (in nanoseconds).
+   */
+  default void onCodeGenerated(@NonNull TokenGenerator.Algorithm algorithm, long latency) {
+  }
+
+  /**
+   * Handles the validation of a code.
+   *
+   * The offset identifies the period (or counter value) relative to the expected value at which
+   * the code has been found and is thus a good approximation of the clock drift of the client.
+   *
+   * @param algorithm the algorithm of the generator.
+   * @param offset the matching offset or {@link ValidationResult#NO_MATCH} when the code has been
+   * rejected.
+   * @param latency the time spent searching the validation window (in nanoseconds).
+   */
+  default void onCodeValidated(@NonNull TokenGenerator.Algorithm algorithm, int offset,
+      long latency) {
+  }
+
+  /**
+   * Handles the rejection of a secret key by the underlying HMAC implementation.
+   *
+   * This notification is issued immediately before the resulting {@link
+   * IllegalArgumentException} is thrown.
+   *
+   * @param algorithm the algorithm of the generator.
+   */
+  default void onInvalidKey(@NonNull TokenGenerator.Algorithm algorithm) {
+  }
+}
@@ -17,15 +17,14 @@
 package com.torchmind.authenticator;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.nio.ByteBuffer;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 import javax.crypto.SecretKey;
 
 /**
@@ -36,12 +35,18 @@ import javax.crypto.SecretKey;
 public class PeriodTokenGenerator extends AbstractTokenGenerator {
 
   private final Duration period;
+  private final TimeStepSource timeSteps;
+  private final UriWriter uriWriter;
 
-  PeriodTokenGenerator(@NonNull Algorithm algorithm, int digits, @NonNull String issuer,
-      @NonNull Duration period) {
-    super(algorithm, digits, issuer);
+  PeriodTokenGenerator(@NonNull Algorithm algorithm, @NonNull Engine engine, int digits,
+      @NonNull String issuer, @NonNull Duration period, @NonNull Clock clock,
+      @NonNull MetricsListener listener) {
+    super(algorithm, engine, digits, issuer, listener);
 
     this.period = period;
+    this.timeSteps = new TimeStepSource(clock, period.getSeconds());
+    this.uriWriter = new UriWriter("totp", issuer,
+        "&period=" + period.getSeconds() + "&algorithm=" + algorithm.name() + "&digits=" + digits);
   }
 
   /**
@@ -50,21 +55,60 @@ public class PeriodTokenGenerator extends AbstractTokenGenerator {
   @NonNull
   @Override
   public URI buildUri(@NonNull SecretKey secretKey, @NonNull String accountName) {
-    try {
-      accountName = URLEncoder.encode(accountName, "UTF-8");
-      String issuer = URLEncoder.encode(this.getIssuer(), "UTF-8");
-      String secret = URLEncoder.encode(this.buildHandshakeCode(secretKey, false), "UTF-8");
-
-      return new URI("otpauth", "totp", "/" + issuer + ":" + accountName,
-          "secret=" + secret + "&issuer=" + issuer + "&period=" + this.period.getSeconds()
-              + "&algorithm=" + this.getAlgorithm().name() + "&digits=" + this.getDigits(), null);
-    } catch (UnsupportedEncodingException ex) {
-      throw new UnsupportedOperationException(
-          "The specified encoding is not supported by this Java VM: " + ex.getMessage(), ex);
-    } catch (URISyntaxException ex) {
-      throw new IllegalArgumentException(
-          "One or more invalid parameters were passed: " + ex.getMessage(), ex);
-    }
+    return this.uriWriter.toUri(secretKey, accountName);
+  }
+
+  /**
+   * Creates an index which maps codes back to the accounts they belong to.
+   *
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a code index.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public CodeIndex createCodeIndex(int pastSteps, int futureSteps) {
+    return new CodeIndex(this, pastSteps, futureSteps);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public UriWriter createUriWriter() {
+    return this.uriWriter;
+  }
+
+  /**
+   * Creates a tracker which records the clock drift of each account and narrows the validation
+   * window accordingly.
+   *
+   * @param narrowRange an amount of periods to check in both directions around the recorded
+   * drift of an account.
+   * @param wideRange an amount of periods to check in both directions when the drift of an account
+   * is unknown or no match is found within the narrow window.
+   * @return a drift tracker.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied, the narrow
+   * window exceeds the wide window or the wide window exceeds {@link DriftTracker#MAXIMUM_RANGE}.
+   */
+  @NonNull
+  public DriftTracker createDriftTracker(int narrowRange, int wideRange) {
+    return new DriftTracker(this, narrowRange, wideRange);
+  }
+
+  /**
+   * Creates a guard which rejects codes that have already been accepted once (as required by RFC
+   * 6238 section 5.2).
+   *
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a replay guard.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public ReplayGuard createReplayGuard(int pastSteps, int futureSteps) {
+    return new ReplayGuard(this, pastSteps, futureSteps);
   }
 
   /**
@@ -75,7 +119,7 @@ public class PeriodTokenGenerator extends AbstractTokenGenerator {
    */
   @NonNull
   public String generateCode(@NonNull SecretKey secretKey) {
-    return this.generateCode(secretKey, Instant.now(Clock.systemUTC()));
+    return this.formatCode(this.generateCodeInt(secretKey));
   }
 
   /**
@@ -87,9 +131,134 @@ public class PeriodTokenGenerator extends AbstractTokenGenerator {
    */
   @NonNull
   public String generateCode(@NonNull SecretKey secretKey, @NonNull Instant timestamp) {
-    return this.generateCode(secretKey,
-        ByteBuffer.allocate(8).putLong(timestamp.getEpochSecond() / this.period.getSeconds())
-            .array());
+    return this.formatCode(this.generateCodeInt(secretKey, timestamp));
+  }
+
+  /**
+   * Generates the numeric representation of a code for the current timestamp.
+   *
+   * @param secretKey a secret key.
+   * @return a code.
+   */
+  public int generateCodeInt(@NonNull SecretKey secretKey) {
+    return this.generateTrackedCodeValue(secretKey, this.getCurrentTimeStep());
+  }
+
+  /**
+   * Generates the numeric representation of a code for a specific timestamp.
+   *
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @return a code.
+   * @see #formatCode(int, char[], int) for a method which converts the result into its textual
+   * representation without allocating.
+   */
+  public int generateCodeInt(@NonNull SecretKey secretKey, @NonNull Instant timestamp) {
+    return this.generateTrackedCodeValue(secretKey, this.getTimeStep(timestamp));
+  }
+
+  /**
+   * Generates the numeric representation of a code for a specific timestamp using a raw key.
+   *
+   * The key is used in place and thus this method is suited for keys which reside within
+   * external buffers (such as network or storage buffers).
+   *
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return a code.
+   * @throws IllegalArgumentException when the key is rejected by the HMAC implementation.
+   * @throws IndexOutOfBoundsException when the key exceeds the bounds of the array.
+   */
+  public int generateCodeInt(@NonNull byte[] key, int offset, int length, long epochSecond) {
+    checkKeyBounds(key, offset, length);
+    return this.generateTrackedCodeValue(key, offset, length, this.getTimeStep(epochSecond));
+  }
+
+  /**
+   * Generates the numeric representation of a code for a specific timestamp using the secret of
+   * an account within a secret table.
+   *
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return a code.
+   * @throws IllegalArgumentException when no secret has been stored for the account.
+   */
+  public int generateCodeInt(@NonNull SecretTable table, long accountId, long epochSecond) {
+    return this.generateTrackedCodeValue(table, accountId, this.getTimeStep(epochSecond));
+  }
+
+  /**
+   * Generates the numeric representation of a code for a specific timestamp using the secret
+   * within a table slot.
+   *
+   * @param table a secret table.
+   * @param slot a slot.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return a code.
+   * @throws IllegalArgumentException when the slot is not in use.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  public int generateCodeIntAt(@NonNull SecretTable table, int slot, long epochSecond) {
+    return this.generateTrackedCodeValue(table, slot, this.getTimeStep(epochSecond));
+  }
+
+  /**
+   * Generates the numeric representations of the codes for a run of consecutive periods.
+   *
+   * The key is prepared once for the entire run and no objects are allocated per code. This
+   * method is thus suited for the generation of offline code sheets.
+   *
+   * @param secretKey a secret key.
+   * @param from a timestamp within the first period.
+   * @param count an amount of codes.
+   * @param destination an array which receives the codes (starting at index zero).
+   * @throws IllegalArgumentException when a negative count is supplied or the key is rejected by
+   * the HMAC implementation.
+   * @throws IndexOutOfBoundsException when the array is smaller than the amount of codes.
+   */
+  public void generateCodes(@NonNull SecretKey secretKey, @NonNull Instant from, int count,
+      @NonNull int[] destination) {
+    this.generateTrackedCodeValues(secretKey, this.getTimeStep(from), destination, 0, count);
+  }
+
+  /**
+   * Creates a stream of the numeric representations of the codes for a run of consecutive
+   * periods.
+   *
+   * @param secretKey a secret key.
+   * @param from a timestamp within the first period.
+   * @param count an amount of codes.
+   * @return a lazily evaluated stream of codes.
+   * @throws IllegalArgumentException when a negative count is supplied.
+   * @see #generateCodes(SecretKey, Instant, int, int[]) for a version of this method which writes
+   * into an existing array.
+   */
+  @NonNull
+  public IntStream generateCodes(@NonNull SecretKey secretKey, @NonNull Instant from, long count) {
+    return this.streamTrackedCodeValues(secretKey, this.getTimeStep(from), count);
+  }
+
+  /**
+   * Retrieves the clock which provides the current time to this generator.
+   *
+   * @return a clock.
+   */
+  @NonNull
+  public Clock getClock() {
+    return this.timeSteps.getClock();
+  }
+
+  /**
+   * Retrieves the period of time a code is considered valid for.
+   *
+   * @return a period.
+   */
+  @NonNull
+  public Duration getPeriod() {
+    return this.period;
   }
 
   /**
@@ -101,7 +270,7 @@ public class PeriodTokenGenerator extends AbstractTokenGenerator {
    * @return true if the code is valid, false otherwise.
    */
   public boolean validateCode(@NonNull String code, @NonNull SecretKey secretKey, int range) {
-    return this.validateCode(code, secretKey, Instant.now(), range);
+    return this.validateCode((CharSequence) code, secretKey, range);
   }
 
   /**
@@ -115,22 +284,495 @@ public class PeriodTokenGenerator extends AbstractTokenGenerator {
    */
   public boolean validateCode(@NonNull String code, @NonNull SecretKey secretKey,
       @NonNull Instant timestamp, int range) {
-    if (code.equals(this.generateCode(secretKey, timestamp))) {
-      return true;
+    return this.validateCode((CharSequence) code, secretKey, timestamp, range);
+  }
+
+  /**
+   * Validates the specified code against a set of codes within a certain range of periods.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if the code is valid, false otherwise.
+   */
+  public boolean validateCode(@NonNull CharSequence code, @NonNull SecretKey secretKey,
+      int range) {
+    int value = this.parseCodeValue(code);
+    return value != -1 && this.validateCode(value, secretKey, range);
+  }
+
+  /**
+   * Validates the specified code against a set of codes within a certain range of periods.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if the code is valid, false otherwise.
+   */
+  public boolean validateCode(@NonNull CharSequence code, @NonNull SecretKey secretKey,
+      @NonNull Instant timestamp, int range) {
+    int value = this.parseCodeValue(code);
+    return value != -1 && this.validateCode(value, secretKey, timestamp, range);
+  }
+
+  /**
+   * Validates the specified numeric code against a set of codes within a certain range of
+   * periods.
+   *
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if the code is valid, false otherwise.
+   */
+  public boolean validateCode(int code, @NonNull SecretKey secretKey, int range) {
+    range = Math.max(0, range);
+    return this.findCodeOffset(secretKey, code, this.getCurrentTimeStep(), range, range)
+        != ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Validates the specified numeric code against a set of codes within a certain range of
+   * periods.
+   *
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if the code is valid, false otherwise.
+   */
+  public boolean validateCode(int code, @NonNull SecretKey secretKey, @NonNull Instant timestamp,
+      int range) {
+    range = Math.max(0, range);
+    return this.verifyCode(code, secretKey, timestamp, range, range).isValid();
+  }
+
+  /**
+   * Validates a code against the secret of an account within a secret store for the current
+   * timestamp.
+   *
+   * @param code a code.
+   * @param store a secret store.
+   * @param accountId an account identifier.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if valid, false otherwise.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of the store.
+   */
+  public boolean validateCode(@NonNull CharSequence code, @NonNull MappedSecretStore store,
+      long accountId, int range) {
+    int value = this.parseCodeValue(code);
+    range = Math.max(0, range);
+    return value != -1 && this.findCodeOffset(value, store, accountId, this.getCurrentTimeStep(),
+        range, range) != ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Validates a code against the secret of an account within a secret store for a specific
+   * timestamp.
+   *
+   * @param code a code.
+   * @param store a secret store.
+   * @param accountId an account identifier.
+   * @param timestamp a timestamp.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if valid, false otherwise.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of the store.
+   */
+  public boolean validateCode(@NonNull CharSequence code, @NonNull MappedSecretStore store,
+      long accountId, @NonNull Instant timestamp, int range) {
+    range = Math.max(0, range);
+    return this.verifyCode(code, store, accountId, timestamp, range, range).isValid();
+  }
+
+  /**
+   * Validates a code against the secret of an account within a secret table for the current
+   * timestamp.
+   *
+   * @param code a code.
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param range a range (amount of periods) to check in both directions.
+   * @return true if valid, false otherwise.
+   */
+  public boolean validateCode(@NonNull CharSequence code, @NonNull SecretTable table,
+      long accountId, int range) {
+    int value = this.parseCodeValue(code);
+    range = Math.max(0, range);
+    return value != -1 && this.findCodeOffset(table, accountId, value,
+        this.getCurrentTimeStep(), range, range) != ValidationResult.NO_MATCH;
+  }
+
+  /**
+   * Validates a batch of numeric codes in parallel using the common fork join pool.
+   *
+   * @param secretKeys an array of secret keys.
+   * @param codes an array of numeric codes.
+   * @param timestamps an array of timestamps (in seconds since the unix epoch).
+   * @param range a range (amount of periods) to check in both directions.
+   * @param results an array to which the validation results are written.
+   * @throws IllegalArgumentException when the arrays differ in length.
+   */
+  public void validateCodes(@NonNull SecretKey[] secretKeys, @NonNull int[] codes,
+      @NonNull long[] timestamps, int range, @NonNull boolean[] results) {
+    range = Math.max(0, range);
+    new BatchValidation(this, secretKeys, codes, timestamps, range, range, null, results)
+        .execute(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Validates the specified code against an asymmetric window of periods and reports the offset
+   * at which the code has been found.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public ValidationResult verifyCode(@NonNull CharSequence code, @NonNull SecretKey secretKey,
+      int pastSteps, int futureSteps) {
+    int value = this.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
     }
 
-    for (int i = 1; i <= range; ++i) {
-      if (code.equals(this.generateCode(secretKey,
-          timestamp.minus(this.period.getSeconds() * i, ChronoUnit.SECONDS)))) {
-        return true;
-      }
+    return ValidationResult.of(this.findCodeOffset(secretKey, value, this.getCurrentTimeStep(),
+        pastSteps, futureSteps));
+  }
+
+  /**
+   * Validates the specified code against an asymmetric window of periods once the attempt has been
+   * permitted by a throttle.
+   *
+   * Attempts which exceed the limit of the account are rejected before any HMAC is computed.
+   * Failed attempts are reported to the throttle while a successful attempt clears the state of
+   * the account.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param accountId an account identifier.
+   * @param throttle a throttle.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public ValidationResult verifyCode(@NonNull CharSequence code, @NonNull SecretKey secretKey,
+      long accountId, @NonNull AttemptThrottle throttle, int pastSteps, int futureSteps) {
+    if (!throttle.tryAcquire(accountId)) {
+      return ValidationResult.invalid();
+    }
+
+    ValidationResult result = this.verifyCode(code, secretKey, pastSteps, futureSteps);
+
+    if (result.isValid()) {
+      throttle.reset(accountId);
+    } else {
+      throttle.recordFailure(accountId);
+    }
+
+    return result;
+  }
+
+  /**
+   * Validates the specified code against an asymmetric window of periods and reports the offset
+   * at which the code has been found.
+   *
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public ValidationResult verifyCode(@NonNull CharSequence code, @NonNull SecretKey secretKey,
+      @NonNull Instant timestamp, int pastSteps, int futureSteps) {
+    int value = this.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
+    }
+
+    return this.verifyCode(value, secretKey, timestamp, pastSteps, futureSteps);
+  }
+
+  /**
+   * Validates the specified numeric code against an asymmetric window of periods and reports the
+   * offset at which the code has been found.
+   *
+   * The time step is computed only once while the surrounding periods are visited in order of
+   * increasing distance (e.g. 0, -1, +1, -2, +2, ...) until a match is found.
+   *
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public ValidationResult verifyCode(int code, @NonNull SecretKey secretKey,
+      @NonNull Instant timestamp, int pastSteps, int futureSteps) {
+    return ValidationResult.of(this.findCodeOffset(secretKey, code, this.getTimeStep(timestamp),
+        pastSteps, futureSteps));
+  }
+
+  /**
+   * Validates the specified numeric code against an asymmetric window of periods using a raw key
+   * and reports the offset at which the code has been found.
+   *
+   * The key is used in place and thus this method is suited for keys which reside within
+   * external buffers (such as network or storage buffers).
+   *
+   * @param code a numeric code.
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied or the key is
+   * rejected by the HMAC implementation.
+   * @throws IndexOutOfBoundsException when the key exceeds the bounds of the array.
+   */
+  @NonNull
+  public ValidationResult verifyCode(int code, @NonNull byte[] key, int offset, int length,
+      long epochSecond, int pastSteps, int futureSteps) {
+    checkKeyBounds(key, offset, length);
+    return ValidationResult.of(this.findCodeOffset(key, offset, length, code,
+        this.getTimeStep(epochSecond), pastSteps, futureSteps));
+  }
+
+  /**
+   * Validates the specified code against the secret of an account within a secret store and
+   * reports the offset at which the code has been found.
+   *
+   * @param code a code.
+   * @param store a secret store.
+   * @param accountId an account identifier.
+   * @param timestamp a timestamp.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of the store.
+   */
+  @NonNull
+  public ValidationResult verifyCode(@NonNull CharSequence code, @NonNull MappedSecretStore store,
+      long accountId, @NonNull Instant timestamp, int pastSteps, int futureSteps) {
+    int value = this.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
+    }
 
-      if (code.equals(this.generateCode(secretKey,
-          timestamp.plus(this.period.getSeconds() * i, ChronoUnit.SECONDS)))) {
-        return true;
+    return this.verifyCode(value, store, accountId, timestamp, pastSteps, futureSteps);
+  }
+
+  /**
+   * Validates the specified numeric code against the secret of an account within a secret store
+   * and reports the offset at which the code has been found.
+   *
+   * The secret is read directly from the store into a thread local buffer which is cleared once
+   * the code has been checked. When the generator uses the {@link TokenGenerator.Engine#BUILTIN}
+   * engine, no {@link SecretKey} instance is created while the JCA engine allocates a key
+   * specification whenever the calling thread switches between accounts. Accounts without a
+   * stored secret are rejected.
+   *
+   * @param code a numeric code.
+   * @param store a secret store.
+   * @param accountId an account identifier.
+   * @param timestamp a timestamp.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   * @throws IndexOutOfBoundsException when the identifier exceeds the capacity of the store.
+   */
+  @NonNull
+  public ValidationResult verifyCode(int code, @NonNull MappedSecretStore store, long accountId,
+      @NonNull Instant timestamp, int pastSteps, int futureSteps) {
+    return ValidationResult.of(this.findCodeOffset(code, store, accountId,
+        this.getTimeStep(timestamp), pastSteps, futureSteps));
+  }
+
+  /**
+   * Locates the offset at which a numeric code matches the secret of an account within a secret
+   * store.
+   *
+   * @param code a numeric code.
+   * @param store a secret store.
+   * @param accountId an account identifier.
+   * @param step a time step.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return an offset or {@link ValidationResult#NO_MATCH}.
+   */
+  private int findCodeOffset(int code, @NonNull MappedSecretStore store, long accountId,
+      long step, int pastSteps, int futureSteps) {
+    byte[] key = MappedSecretStore.scratch();
+
+    try {
+      int length = store.read(accountId, key);
+
+      if (length == 0) {
+        return ValidationResult.NO_MATCH;
       }
+
+      return this.findCodeOffset(key, 0, length, code, step, pastSteps, futureSteps);
+    } finally {
+      Arrays.fill(key, (byte) 0);
     }
+  }
 
-    return false;
+  /**
+   * Validates the specified numeric code against the secret of an account within a secret table
+   * and reports the offset at which the code has been found.
+   *
+   * The secret is used in place and thus no {@link SecretKey} instance is created when the
+   * generator uses the {@link TokenGenerator.Engine#BUILTIN} engine (the JCA engine allocates a key
+   * specification whenever the calling thread switches between accounts). Accounts without a
+   * stored secret are rejected.
+   *
+   * @param code a numeric code.
+   * @param table a secret table.
+   * @param accountId an account identifier.
+   * @param timestamp a timestamp.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   */
+  @NonNull
+  public ValidationResult verifyCode(int code, @NonNull SecretTable table, long accountId,
+      @NonNull Instant timestamp, int pastSteps, int futureSteps) {
+    return ValidationResult.of(this.findCodeOffset(table, accountId, code,
+        this.getTimeStep(timestamp), pastSteps, futureSteps));
+  }
+
+  /**
+   * Validates the specified numeric code against the secret within a table slot and reports the
+   * offset at which the code has been found.
+   *
+   * Slots which are not in use are rejected.
+   *
+   * @param code a numeric code.
+   * @param table a secret table.
+   * @param slot a slot.
+   * @param timestamp a timestamp.
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @return a validation result.
+   * @throws IllegalArgumentException when a negative amount of periods is supplied.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  @NonNull
+  public ValidationResult verifyCodeAt(int code, @NonNull SecretTable table, int slot,
+      @NonNull Instant timestamp, int pastSteps, int futureSteps) {
+    return ValidationResult.of(this.findCodeOffset(table, slot, code,
+        this.getTimeStep(timestamp), pastSteps, futureSteps));
+  }
+
+  /**
+   * Validates a batch of numeric codes in parallel using the common fork join pool and reports the
+   * offset at which each code has been found.
+   *
+   * @param secretKeys an array of secret keys.
+   * @param codes an array of numeric codes.
+   * @param timestamps an array of timestamps (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @param offsets an array to which the matching offsets (or {@link ValidationResult#NO_MATCH})
+   * are written.
+   * @throws IllegalArgumentException when the arrays differ in length or a negative amount of
+   * periods is supplied.
+   */
+  public void verifyCodes(@NonNull SecretKey[] secretKeys, @NonNull int[] codes,
+      @NonNull long[] timestamps, int pastSteps, int futureSteps, @NonNull int[] offsets) {
+    this.verifyCodes(secretKeys, codes, timestamps, pastSteps, futureSteps, offsets,
+        ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Validates a batch of numeric codes in parallel using the specified executor and reports the
+   * offset at which each code has been found.
+   *
+   * This method blocks until the entire batch has been processed.
+   *
+   * @param secretKeys an array of secret keys.
+   * @param codes an array of numeric codes.
+   * @param timestamps an array of timestamps (in seconds since the unix epoch).
+   * @param pastSteps an amount of past periods to accept.
+   * @param futureSteps an amount of future periods to accept.
+   * @param offsets an array to which the matching offsets (or {@link ValidationResult#NO_MATCH})
+   * are written.
+   * @param executor an executor.
+   * @throws IllegalArgumentException when the arrays differ in length or a negative amount of
+   * periods is supplied.
+   * @throws IllegalStateException when the calling thread is interrupted while awaiting the
+   * results.
+   */
+  public void verifyCodes(@NonNull SecretKey[] secretKeys, @NonNull int[] codes,
+      @NonNull long[] timestamps, int pastSteps, int futureSteps, @NonNull int[] offsets,
+      @NonNull Executor executor) {
+    new BatchValidation(this, secretKeys, codes, timestamps, pastSteps, futureSteps, offsets, null)
+        .execute(executor);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Additionally, the clock is consulted once in order to populate the cached time step.
+   */
+  @Override
+  void warmUp(int iterations) {
+    super.warmUp(iterations);
+    this.timeSteps.getCurrentStep();
+  }
+
+  /**
+   * Retrieves the time step (e.g. the TOTP counter value) for the current time.
+   *
+   * @return a time step.
+   */
+  long getCurrentTimeStep() {
+    return this.timeSteps.getCurrentStep();
+  }
+
+  /**
+   * Retrieves the current time of the clock which backs this generator.
+   *
+   * @return a timestamp (in milliseconds since the unix epoch).
+   */
+  long currentTimeMillis() {
+    return this.timeSteps.millis();
+  }
+
+  /**
+   * Calculates the time step (e.g. the TOTP counter value) for a specific timestamp.
+   *
+   * @param timestamp a timestamp.
+   * @return a time step.
+   */
+  long getTimeStep(@NonNull Instant timestamp) {
+    return this.getTimeStep(timestamp.getEpochSecond());
+  }
+
+  /**
+   * Calculates the time step (e.g. the TOTP counter value) for a specific timestamp.
+   *
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return a time step.
+   */
+  long getTimeStep(long epochSecond) {
+    return this.timeSteps.getStep(epochSecond);
   }
 }
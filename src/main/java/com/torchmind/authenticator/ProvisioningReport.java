@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.Duration;
+
+/**
+ * Summarizes the outcome of a provisioning run.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ * @see SecretProvisioner
+ */
+public final class ProvisioningReport {
+
+  private final long records;
+  private final long bytes;
+  private final Duration elapsed;
+
+  ProvisioningReport(long records, long bytes, @NonNull Duration elapsed) {
+    this.records = records;
+    this.bytes = bytes;
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Retrieves the amount of bytes which have been written.
+   *
+   * @return an amount of bytes.
+   */
+  public long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Retrieves the total duration of the run.
+   *
+   * @return a duration.
+   */
+  @NonNull
+  public Duration getElapsed() {
+    return this.elapsed;
+  }
+
+  /**
+   * Retrieves the amount of records which have been written.
+   *
+   * @return an amount of records.
+   */
+  public long getRecords() {
+    return this.records;
+  }
+
+  /**
+   * Calculates the average throughput of the run.
+   *
+   * @return an amount of records per second.
+   */
+  public double getRecordsPerSecond() {
+    long nanos = this.elapsed.toNanos();
+
+    if (nanos == 0) {
+      return 0;
+    }
+
+    return this.records * 1_000_000_000.0 / nanos;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ProvisioningReport{records=" + this.records + ", bytes=" + this.bytes + ", elapsed="
+        + this.elapsed + ", recordsPerSecond=" + String.format("%.0f", this.getRecordsPerSecond())
+        + "}";
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a replay protection layer on top of a time based token generator.
+ *
+ * As required by RFC 6238 section 5.2, each code is accepted at most once. The guard records the
+ * last accepted time step of every account and rejects all codes which belong to the same or an
+ * earlier time step. Records are discarded automatically once their time step has left the
+ * validation window of the most recent time step which has been passed to the guard and thus
+ * memory consumption is bounded by the amount of accounts which have successfully authenticated
+ * within the window. Since discarded records can no longer prevent a replay, codes which belong to
+ * a time step before this window are rejected as well (even when they are validated for an
+ * explicit timestamp which permits them).
+ *
+ * Records are discarded incrementally: Once a new time step is observed, every validation sweeps
+ * a single stripe of the underlying map until all stripes have been swept and thus no single
+ * request bears the cost of a full sweep.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe. Account identifiers may be any
+ * value except for {@link Long#MIN_VALUE}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ReplayGuard {
+
+  private final PeriodTokenGenerator generator;
+  private final int pastSteps;
+  private final int futureSteps;
+
+  private final StripedLongMap acceptedSteps = new StripedLongMap();
+  private final AtomicLong threshold = new AtomicLong(Long.MIN_VALUE);
+  private final AtomicInteger sweepCursor = new AtomicInteger(Integer.MAX_VALUE);
+
+  ReplayGuard(@NonNull PeriodTokenGenerator generator, int pastSteps, int futureSteps) {
+    if (pastSteps < 0 || futureSteps < 0) {
+      throw new IllegalArgumentException("Window size cannot be negative");
+    }
+
+    this.generator = generator;
+    this.pastSteps = pastSteps;
+    this.futureSteps = futureSteps;
+  }
+
+  /**
+   * Retrieves the amount of accounts which are currently tracked by this guard.
+   *
+   * @return an amount of accounts.
+   */
+  public int size() {
+    return this.acceptedSteps.size();
+  }
+
+  /**
+   * Validates a code for the current timestamp and records its time step upon success.
+   *
+   * @param accountId an account identifier.
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @return a validation result.
+   */
+  @NonNull
+  public ValidationResult validateCode(long accountId, @NonNull CharSequence code,
+      @NonNull SecretKey secretKey) {
+    int value = this.generator.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
+    }
+
+    return this.validateCode(accountId, value, secretKey, this.generator.getCurrentTimeStep());
+  }
+
+  /**
+   * Validates a code for a specific timestamp and records its time step upon success.
+   *
+   * @param accountId an account identifier.
+   * @param code a code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @return a validation result.
+   */
+  @NonNull
+  public ValidationResult validateCode(long accountId, @NonNull CharSequence code,
+      @NonNull SecretKey secretKey, @NonNull Instant timestamp) {
+    int value = this.generator.parseCodeValue(code);
+
+    if (value == -1) {
+      return ValidationResult.invalid();
+    }
+
+    return this.validateCode(accountId, value, secretKey, timestamp);
+  }
+
+  /**
+   * Validates a numeric code for a specific timestamp and records its time step upon success.
+   *
+   * @param accountId an account identifier.
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param timestamp a timestamp.
+   * @return a validation result.
+   */
+  @NonNull
+  public ValidationResult validateCode(long accountId, int code, @NonNull SecretKey secretKey,
+      @NonNull Instant timestamp) {
+    return this.validateCode(accountId, code, secretKey, this.generator.getTimeStep(timestamp));
+  }
+
+  /**
+   * Validates a numeric code for a specific time step and records its time step upon success.
+   *
+   * @param accountId an account identifier.
+   * @param code a numeric code.
+   * @param secretKey a secret key.
+   * @param step a time step.
+   * @return a validation result.
+   */
+  @NonNull
+  private ValidationResult validateCode(long accountId, int code, @NonNull SecretKey secretKey,
+      long step) {
+    this.expire(step);
+
+    int offset = this.generator
+        .findCodeOffset(secretKey, code, step, this.pastSteps, this.futureSteps);
+
+    if (offset == ValidationResult.NO_MATCH || step + offset < this.threshold.get()) {
+      return ValidationResult.invalid();
+    }
+
+    // the threshold is raised before records are discarded and thus a record which has been
+    // discarded concurrently is guaranteed to be observed by the second check
+    boolean accepted = this.acceptedSteps.advance(accountId, step + offset)
+        && step + offset >= this.threshold.get();
+
+    return accepted ? ValidationResult.of(offset) : ValidationResult.invalid();
+  }
+
+  /**
+   * Raises the expiry threshold when a new time step is observed and discards the expired records
+   * of a single stripe.
+   *
+   * @param step a current time step.
+   */
+  private void expire(long step) {
+    long threshold = this.threshold.get();
+    long candidate = step - this.pastSteps;
+
+    if (candidate > threshold && this.threshold.compareAndSet(threshold, candidate)) {
+      this.sweepCursor.set(0);
+    }
+
+    if (this.sweepCursor.get() >= this.acceptedSteps.stripeCount()) {
+      return;
+    }
+
+    int stripe = this.sweepCursor.getAndIncrement();
+    if (stripe < this.acceptedSteps.stripeCount()) {
+      long current = this.threshold.get();
+      this.acceptedSteps.removeIf(stripe, (s) -> s < current);
+    }
+  }
+}
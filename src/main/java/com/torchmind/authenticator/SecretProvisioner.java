@@ -0,0 +1,368 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Provides a pipeline which generates shared secrets for large amounts of accounts and streams the
+ * resulting enrollment records into a channel.
+ *
+ * Accounts are distributed among a set of worker threads in batches. Each worker retains its own
+ * random source and direct buffer and only synchronizes with other workers when a full buffer is
+ * flushed to the channel. As a result, memory consumption is bounded by the amount of workers
+ * multiplied by the buffer size regardless of the amount of generated records.
+ *
+ * Each record is terminated by a line feed and consists of the following tab separated fields:
+ * <ol>
+ * <li>The account identifier (in decimal notation)</li>
+ * <li>The raw secret (in hexadecimal notation)</li>
+ * <li>The canonical Base32 representation of the secret (as returned by {@link
+ * TokenGenerator#buildHandshakeCode(javax.crypto.SecretKey, boolean)})</li>
+ * <li>The handshake URI (as returned by {@link TokenGenerator#buildUri(javax.crypto.SecretKey,
+ * String)})</li>
+ * </ol>
+ *
+ * <strong>Note:</strong> Records are written in batches as soon as they become available and thus
+ * their order within the output is unspecified. Configuration methods are not thread safe while
+ * the provisioning methods may be invoked concurrently.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class SecretProvisioner {
+
+  private static final int BATCH_SIZE = 1024;
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private final UriWriter uriWriter;
+  private int bufferSize = 1 << 20;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  SecretProvisioner(@NonNull UriWriter uriWriter) {
+    this.uriWriter = uriWriter;
+  }
+
+  /**
+   * Retrieves the size of the buffer which is allocated by each worker (defaults to 1 MiB).
+   *
+   * @return a size in bytes.
+   */
+  public int bufferSize() {
+    return this.bufferSize;
+  }
+
+  /**
+   * Sets the size of the buffer which is allocated by each worker.
+   *
+   * @param bufferSize a size in bytes.
+   * @return a reference to this provisioner.
+   * @throws IllegalArgumentException when the size is not positive.
+   */
+  @NonNull
+  public SecretProvisioner bufferSize(int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive");
+    }
+
+    this.bufferSize = bufferSize;
+    return this;
+  }
+
+  /**
+   * Retrieves the amount of worker threads (defaults to the amount of available processors).
+   *
+   * @return an amount of threads.
+   */
+  public int parallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Sets the amount of worker threads.
+   *
+   * @param parallelism an amount of threads.
+   * @return a reference to this provisioner.
+   * @throws IllegalArgumentException when the amount is not positive.
+   */
+  @NonNull
+  public SecretProvisioner parallelism(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive");
+    }
+
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Generates secrets for a range of accounts and writes their enrollment records into a file.
+   *
+   * The file is created if necessary and truncated otherwise.
+   *
+   * @param path a file path.
+   * @param firstAccountId the identifier of the first account.
+   * @param count an amount of accounts.
+   * @param accountNames a function which maps account identifiers to account names.
+   * @return a report.
+   * @throws IOException when writing to the file fails.
+   */
+  @NonNull
+  public ProvisioningReport provision(@NonNull Path path, long firstAccountId, long count,
+      @NonNull LongFunction<? extends CharSequence> accountNames) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      return this.provision(channel, firstAccountId, count, accountNames);
+    }
+  }
+
+  /**
+   * Generates secrets for a range of accounts and writes their enrollment records into a channel.
+   *
+   * @param channel a channel.
+   * @param firstAccountId the identifier of the first account.
+   * @param count an amount of accounts.
+   * @param accountNames a function which maps account identifiers to account names.
+   * @return a report.
+   * @throws IOException when writing to the channel fails.
+   * @throws IllegalArgumentException when the amount of accounts is negative or a single record
+   * exceeds the configured buffer size.
+   */
+  @NonNull
+  public ProvisioningReport provision(@NonNull WritableByteChannel channel, long firstAccountId,
+      long count, @NonNull LongFunction<? extends CharSequence> accountNames) throws IOException {
+    if (count < 0) {
+      throw new IllegalArgumentException("Amount of accounts cannot be negative");
+    }
+
+    long started = System.nanoTime();
+    int workerCount = (int) Math
+        .max(1, Math.min(this.parallelism, (count + BATCH_SIZE - 1) / BATCH_SIZE));
+    Batch batch = new Batch(channel, firstAccountId, count, accountNames, this.bufferSize);
+
+    ExecutorService executor = Executors.newFixedThreadPool(workerCount, (r) -> {
+      Thread thread = new Thread(r, "authenticator-provisioner");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      List<Future<Long>> futures = new ArrayList<>(workerCount);
+      for (int i = 0; i < workerCount; ++i) {
+        futures.add(executor.submit(new Worker(batch)));
+      }
+
+      long bytes = 0;
+      for (Future<Long> future : futures) {
+        bytes += await(future, batch);
+      }
+
+      return new ProvisioningReport(count, bytes, Duration.ofNanos(System.nanoTime() - started));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for a worker to complete and propagates its failure (if any).
+   *
+   * @param future a worker future.
+   * @param batch a batch.
+   * @return the amount of bytes written by the worker.
+   * @throws IOException when the worker failed to write to the channel.
+   */
+  private static long await(@NonNull Future<Long> future, @NonNull Batch batch)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      batch.aborted.set(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while awaiting provisioning workers");
+    } catch (ExecutionException ex) {
+      batch.aborted.set(true);
+      Throwable cause = ex.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw new IllegalStateException("Provisioning worker failed", cause);
+    }
+  }
+
+  /**
+   * Represents the shared state of a single provisioning run.
+   */
+  private static final class Batch {
+
+    private final WritableByteChannel channel;
+    private final long firstAccountId;
+    private final long count;
+    private final LongFunction<? extends CharSequence> accountNames;
+    private final int bufferSize;
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    private Batch(@NonNull WritableByteChannel channel, long firstAccountId, long count,
+        @NonNull LongFunction<? extends CharSequence> accountNames, int bufferSize) {
+      this.channel = channel;
+      this.firstAccountId = firstAccountId;
+      this.count = count;
+      this.accountNames = accountNames;
+      this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Writes the contents of a buffer into the channel and clears it.
+     *
+     * @param buffer a buffer.
+     * @return the amount of bytes written.
+     * @throws IOException when writing to the channel fails.
+     */
+    private long flush(@NonNull ByteBuffer buffer) throws IOException {
+      buffer.flip();
+      int length = buffer.remaining();
+
+      synchronized (this.channel) {
+        while (buffer.hasRemaining()) {
+          this.channel.write(buffer);
+        }
+      }
+
+      buffer.clear();
+      return length;
+    }
+  }
+
+  /**
+   * Generates and encodes records until all accounts of a batch have been claimed.
+   */
+  private final class Worker implements Callable<Long> {
+
+    private final Batch batch;
+    private final ByteBuffer buffer;
+    private final UriWriter.ByteBufferAppendable out;
+    private final byte[] key = new byte[AbstractTokenGenerator.SECRET_LENGTH];
+    private final char[] code = new char[Base32Codec
+        .encodedLength(AbstractTokenGenerator.SECRET_LENGTH, false)];
+
+    private Worker(@NonNull Batch batch) {
+      this.batch = batch;
+      this.buffer = ByteBuffer.allocateDirect(batch.bufferSize);
+      this.out = new UriWriter.ByteBufferAppendable(this.buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long call() throws IOException {
+      Batch batch = this.batch;
+      SecureRandom random = AbstractTokenGenerator.createRandom();
+      long written = 0;
+      long index;
+
+      while (!batch.aborted.get()
+          && (index = batch.next.getAndAdd(BATCH_SIZE)) < batch.count) {
+        long end = Math.min(batch.count, index + BATCH_SIZE);
+
+        for (long i = index; i < end; ++i) {
+          long accountId = batch.firstAccountId + i;
+          CharSequence accountName = batch.accountNames.apply(accountId);
+          random.nextBytes(this.key);
+
+          while (true) {
+            int position = this.buffer.position();
+
+            try {
+              this.writeRecord(accountId, accountName);
+              break;
+            } catch (BufferOverflowException ex) {
+              this.buffer.position(position);
+
+              if (position == 0) {
+                throw new IllegalArgumentException(
+                    "Record for account " + accountId + " exceeds the buffer size");
+              }
+
+              written += batch.flush(this.buffer);
+            }
+          }
+        }
+      }
+
+      return written + batch.flush(this.buffer);
+    }
+
+    /**
+     * Encodes a single record into the buffer of this worker.
+     *
+     * @param accountId an account identifier.
+     * @param accountName an account name.
+     * @throws IOException when encoding fails.
+     * @throws BufferOverflowException when the buffer has insufficient space remaining.
+     */
+    private void writeRecord(long accountId, @NonNull CharSequence accountName)
+        throws IOException {
+      ByteBuffer buffer = this.buffer;
+
+      this.out.append(Long.toString(accountId)).append('\t');
+
+      for (byte b : this.key) {
+        buffer.put(HEX[(b >>> 4) & 0x0F]).put(HEX[b & 0x0F]);
+      }
+      buffer.put((byte) '\t');
+
+      int length = Base32Codec.encode(this.key, 0, this.key.length, this.code, 0, false);
+      for (int i = 0; i < length; ++i) {
+        buffer.put((byte) this.code[i]);
+      }
+      buffer.put((byte) '\t');
+
+      SecretProvisioner.this.uriWriter.write(this.out, this.key, accountName);
+      buffer.put((byte) '\n');
+    }
+  }
+}
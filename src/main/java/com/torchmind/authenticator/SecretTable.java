@@ -0,0 +1,582 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a compact in-heap table of shared secrets.
+ *
+ * Secrets are packed into large contiguous slabs rather than being retained as individual {@link
+ * SecretKey} instances. Each record consists of a single length byte followed by the key material
+ * and is padded to a multiple of four bytes (e.g. a record occupies 12 bytes for an 80 bit secret
+ * and 24 bytes for a 160 bit secret). Records are addressed by slots which remain stable for the
+ * lifetime of a record and are passed directly to the token generators which compute codes from
+ * the slab in place. As a result, neither lookups nor the computation of codes (using the {@link
+ * TokenGenerator.Engine#BUILTIN builtin engine}) allocate objects.
+ *
+ * Records may either be managed by the caller (see {@link #add(byte[])} and {@link #free(int)})
+ * or associated with an account identifier (see {@link #put(long, byte[])}) in which case an open
+ * addressing index is maintained in addition. The index occupies 12 bytes per table entry and
+ * doubles in size once three quarters of its entries are in use, which amounts to 16 to 32 bytes
+ * per account on top of its record (as long as no accounts are removed). Callers which already
+ * maintain their own account records may thus store the slot alongside them in order to avoid the
+ * index altogether.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe. Modifications are serialized
+ * while lookups (including the resolution of account identifiers) proceed without locking.
+ * Freed slots are reused by subsequently added records and must thus no longer be passed to
+ * generators once they have been freed. Account identifiers may be any value except for {@link
+ * Long#MIN_VALUE}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ * @see PeriodTokenGenerator#verifyCode(int, SecretTable, long, java.time.Instant, int, int)
+ * @see CounterTokenGenerator#validateCode(int, SecretTable, long, long, int)
+ */
+public final class SecretTable {
+
+  /**
+   * Defines the maximum length of a stored secret in bytes.
+   */
+  public static final int MAXIMUM_KEY_LENGTH = 64;
+
+  /**
+   * Identifies the absence of a slot.
+   */
+  public static final int NO_SLOT = -1;
+
+  static final int SLAB_SHIFT = 20;
+  static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+
+  private static final int ALIGNMENT_SHIFT = 2;
+  private static final int ALIGNMENT = 1 << ALIGNMENT_SHIFT;
+  private static final int MAXIMUM_SLABS = (int) ((1L << (31 + ALIGNMENT_SHIFT)) >>> SLAB_SHIFT);
+  private static final int SIZE_CLASSES = stride(MAXIMUM_KEY_LENGTH) >>> ALIGNMENT_SHIFT;
+
+  private final SlotIndex index = new SlotIndex();
+  private final int[][] freeSlots = new int[SIZE_CLASSES][];
+  private final int[] freeCounts = new int[SIZE_CLASSES];
+
+  private volatile byte[][] slabs = new byte[0][];
+  private volatile int size;
+  private int tail = SLAB_SIZE;
+
+  public SecretTable() {
+    Arrays.fill(this.freeSlots, new int[0]);
+  }
+
+  /**
+   * Calculates the amount of bytes which are occupied by the record of a key.
+   *
+   * @param length a key length.
+   * @return a record size.
+   */
+  private static int stride(int length) {
+    return (1 + length + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+
+  /**
+   * Calculates the position of a record within its slab.
+   *
+   * @param slot a slot.
+   * @return a position.
+   */
+  static int position(int slot) {
+    return (int) (((long) slot << ALIGNMENT_SHIFT) & (SLAB_SIZE - 1));
+  }
+
+  /**
+   * Retrieves the slab which contains the record of a slot.
+   *
+   * The record consists of a length byte at {@link #position(int)} (which is zero for unused
+   * slots) which is directly followed by the key material.
+   *
+   * @param slot a slot.
+   * @return a slab.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  @NonNull
+  byte[] slab(int slot) {
+    byte[][] slabs = this.slabs;
+    int slab = (int) (((long) slot << ALIGNMENT_SHIFT) >>> SLAB_SHIFT);
+
+    if (slot < 0 || slab >= slabs.length) {
+      throw new IndexOutOfBoundsException("Slot " + slot + " has not been allocated");
+    }
+
+    return slabs[slab];
+  }
+
+  /**
+   * Stores a secret which is managed by the caller.
+   *
+   * @param secretKey a secret key.
+   * @return the slot of the secret.
+   * @throws IllegalArgumentException when the key is empty, exceeds {@link #MAXIMUM_KEY_LENGTH} or
+   * does not provide an encoded form.
+   * @throws IllegalStateException when the table has reached its maximum size.
+   */
+  public int add(@NonNull SecretKey secretKey) {
+    return this.add(encoded(secretKey));
+  }
+
+  /**
+   * Stores a secret which is managed by the caller.
+   *
+   * @param key an encoded secret.
+   * @return the slot of the secret.
+   * @throws IllegalArgumentException when the key is empty or exceeds {@link
+   * #MAXIMUM_KEY_LENGTH}.
+   * @throws IllegalStateException when the table has reached its maximum size.
+   */
+  public int add(@NonNull byte[] key) {
+    return this.add(key, 0, key.length);
+  }
+
+  /**
+   * Stores a secret which is managed by the caller.
+   *
+   * @param key an array containing the key.
+   * @param offset the offset of the key within the array.
+   * @param length the length of the key.
+   * @return the slot of the secret.
+   * @throws IllegalArgumentException when the key is empty or exceeds {@link
+   * #MAXIMUM_KEY_LENGTH}.
+   * @throws IllegalStateException when the table has reached its maximum size.
+   * @throws IndexOutOfBoundsException when the key exceeds the bounds of the array.
+   */
+  public int add(@NonNull byte[] key, int offset, int length) {
+    AbstractTokenGenerator.checkKeyBounds(key, offset, length);
+    checkKeyLength(length);
+
+    synchronized (this) {
+      return this.store(key, offset, length);
+    }
+  }
+
+  /**
+   * Evaluates whether a secret has been stored for the specified account.
+   *
+   * @param accountId an account identifier.
+   * @return true if present, false otherwise.
+   */
+  public boolean contains(long accountId) {
+    return this.slot(accountId) != NO_SLOT;
+  }
+
+  /**
+   * Releases a slot which has been returned by {@link #add(byte[])} and erases its secret.
+   *
+   * Slots which are associated with an account are released via {@link #remove(long)} instead.
+   *
+   * @param slot a slot.
+   * @throws IllegalArgumentException when the slot is not in use.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  public synchronized void free(int slot) {
+    if (this.slab(slot)[position(slot)] == 0) {
+      throw new IllegalArgumentException("Slot " + slot + " is not in use");
+    }
+
+    this.release(slot);
+  }
+
+  /**
+   * Stores the secret of an account and replaces its previous secret (if any).
+   *
+   * Replaced secrets are erased and their slot is released. The account is assigned a new slot
+   * regardless of whether the previous secret had the same length.
+   *
+   * @param accountId an account identifier.
+   * @param secretKey a secret key.
+   * @return the slot of the secret.
+   * @throws IllegalArgumentException when the key is empty, exceeds {@link #MAXIMUM_KEY_LENGTH} or
+   * does not provide an encoded form or the reserved account identifier is passed.
+   * @throws IllegalStateException when the table has reached its maximum size.
+   */
+  public int put(long accountId, @NonNull SecretKey secretKey) {
+    return this.put(accountId, encoded(secretKey));
+  }
+
+  /**
+   * Stores the secret of an account and replaces its previous secret (if any).
+   *
+   * @param accountId an account identifier.
+   * @param key an encoded secret.
+   * @return the slot of the secret.
+   * @throws IllegalArgumentException when the key is empty or exceeds {@link #MAXIMUM_KEY_LENGTH}
+   * or the reserved account identifier is passed.
+   * @throws IllegalStateException when the table has reached its maximum size.
+   * @see #put(long, SecretKey)
+   */
+  public int put(long accountId, @NonNull byte[] key) {
+    checkKeyLength(key.length);
+    if (accountId == SlotIndex.EMPTY) {
+      throw new IllegalArgumentException("Account identifier " + accountId + " is reserved");
+    }
+
+    synchronized (this) {
+      int slot = this.store(key, 0, key.length);
+      int previous = this.index.put(accountId, slot);
+
+      if (previous != NO_SLOT) {
+        this.release(previous);
+      }
+
+      return slot;
+    }
+  }
+
+  /**
+   * Copies the secret which is stored within a slot into an array.
+   *
+   * @param slot a slot.
+   * @param destination an array of at least {@link #MAXIMUM_KEY_LENGTH} bytes.
+   * @return the length of the secret or zero if the slot is not in use.
+   * @throws IndexOutOfBoundsException when the slot has never been allocated.
+   */
+  public int read(int slot, @NonNull byte[] destination) {
+    byte[] slab = this.slab(slot);
+    int position = position(slot);
+    int length = slab[position] & 0xFF;
+
+    System.arraycopy(slab, position + 1, destination, 0, length);
+    return length;
+  }
+
+  /**
+   * Removes the secret of an account and erases it.
+   *
+   * @param accountId an account identifier.
+   * @return true if a secret has been removed, false otherwise.
+   */
+  public synchronized boolean remove(long accountId) {
+    int slot = this.index.remove(accountId);
+
+    if (slot == NO_SLOT) {
+      return false;
+    }
+
+    this.release(slot);
+    return true;
+  }
+
+  /**
+   * Retrieves the amount of secrets within this table.
+   *
+   * @return an amount of secrets.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Retrieves the slot which holds the secret of an account.
+   *
+   * @param accountId an account identifier.
+   * @return a slot or {@link #NO_SLOT} if no secret has been stored for the account.
+   */
+  public int slot(long accountId) {
+    return this.index.get(accountId);
+  }
+
+  /**
+   * Retrieves the amount of memory which is occupied by the slabs of this table.
+   *
+   * The index which associates accounts with their slots is not included.
+   *
+   * @return an amount of bytes.
+   */
+  public long slabBytes() {
+    return (long) this.slabs.length * SLAB_SIZE;
+  }
+
+  @NonNull
+  private static byte[] encoded(@NonNull SecretKey secretKey) {
+    byte[] key = secretKey.getEncoded();
+
+    if (key == null) {
+      throw new IllegalArgumentException("Key does not provide an encoded form");
+    }
+
+    return key;
+  }
+
+  private static void checkKeyLength(int length) {
+    if (length == 0 || length > MAXIMUM_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          "Key length must be between 1 and " + MAXIMUM_KEY_LENGTH + " bytes");
+    }
+  }
+
+  /**
+   * Writes a key into a newly allocated slot.
+   */
+  private int store(@NonNull byte[] key, int offset, int length) {
+    int slot = this.allocate(stride(length));
+    byte[] slab = this.slab(slot);
+    int position = position(slot);
+
+    System.arraycopy(key, offset, slab, position + 1, length);
+    slab[position] = (byte) length;
+    ++this.size;
+
+    return slot;
+  }
+
+  /**
+   * Allocates a slot of a certain size by reusing a released slot of the same size or appending
+   * it to the current slab.
+   */
+  private int allocate(int stride) {
+    int sizeClass = (stride >>> ALIGNMENT_SHIFT) - 1;
+
+    if (this.freeCounts[sizeClass] != 0) {
+      return this.freeSlots[sizeClass][--this.freeCounts[sizeClass]];
+    }
+
+    byte[][] slabs = this.slabs;
+    if (this.tail + stride > SLAB_SIZE) {
+      if (slabs.length == MAXIMUM_SLABS) {
+        throw new IllegalStateException("Table has reached its maximum size");
+      }
+
+      slabs = Arrays.copyOf(slabs, slabs.length + 1);
+      slabs[slabs.length - 1] = new byte[SLAB_SIZE];
+      this.slabs = slabs;
+      this.tail = 0;
+    }
+
+    long position = ((long) (slabs.length - 1) << SLAB_SHIFT) + this.tail;
+    this.tail += stride;
+
+    return (int) (position >>> ALIGNMENT_SHIFT);
+  }
+
+  /**
+   * Erases the record within a slot and makes it available for reuse.
+   */
+  private void release(int slot) {
+    byte[] slab = this.slab(slot);
+    int position = position(slot);
+    int stride = stride(slab[position] & 0xFF);
+    int sizeClass = (stride >>> ALIGNMENT_SHIFT) - 1;
+
+    Arrays.fill(slab, position, position + stride, (byte) 0);
+    --this.size;
+
+    int[] slots = this.freeSlots[sizeClass];
+    if (this.freeCounts[sizeClass] == slots.length) {
+      slots = this.freeSlots[sizeClass] = Arrays.copyOf(slots, Math.max(16, slots.length * 2));
+    }
+    slots[this.freeCounts[sizeClass]++] = slot;
+  }
+
+  /**
+   * Provides an open addressing (linear probing) index of account identifiers to slots.
+   *
+   * Modifications are performed while holding the lock of the table and are bracketed by
+   * increments of a sequence number which is odd while a modification is in progress. Readers do
+   * not lock but repeat their probe when the sequence number has changed in the meantime (for
+   * instance because an entry has been shifted backwards or the table has been resized). Since
+   * all elements are accessed with volatile semantics, the probe is ordered between both reads of
+   * the sequence number.
+   */
+  private static final class SlotIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private volatile int sequence;
+    private volatile AtomicLongArray keys;
+    private volatile AtomicIntegerArray slots;
+    private int size;
+
+    private SlotIndex() {
+      this.allocate(MINIMUM_CAPACITY);
+    }
+
+    private static int hash(long key) {
+      key ^= key >>> 33;
+      key *= 0xFF51AFD7ED558CCDL;
+      key ^= key >>> 33;
+      key *= 0xC4CEB9FE1A85EC53L;
+      key ^= key >>> 33;
+      return (int) key;
+    }
+
+    private void allocate(int capacity) {
+      AtomicLongArray keys = new AtomicLongArray(capacity);
+
+      for (int i = 0; i < capacity; ++i) {
+        keys.lazySet(i, EMPTY);
+      }
+
+      this.slots = new AtomicIntegerArray(capacity);
+      this.keys = keys;
+    }
+
+    private int get(long key) {
+      while (true) {
+        int sequence = this.sequence;
+
+        if ((sequence & 1) == 0) {
+          AtomicLongArray keys = this.keys;
+          AtomicIntegerArray slots = this.slots;
+          int mask = keys.length() - 1;
+          int result = NO_SLOT;
+
+          // the arrays are replaced while the sequence number is odd and thus a mismatch between
+          // both is caught by the validation below
+          if (slots.length() == keys.length()) {
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+              long current = keys.get(i);
+
+              if (current == key) {
+                result = slots.get(i);
+                break;
+              }
+              if (current == EMPTY) {
+                break;
+              }
+            }
+          }
+
+          if (this.sequence == sequence) {
+            return result;
+          }
+        }
+      }
+    }
+
+    /**
+     * Associates a key with a slot.
+     *
+     * <strong>Note:</strong> The caller is expected to hold the lock of the table.
+     *
+     * @return the previously associated slot or {@link #NO_SLOT}.
+     */
+    private int put(long key, int slot) {
+      ++this.sequence;
+
+      try {
+        AtomicLongArray keys = this.keys;
+        int mask = keys.length() - 1;
+        int i = hash(key) & mask;
+
+        while (keys.get(i) != EMPTY && keys.get(i) != key) {
+          i = (i + 1) & mask;
+        }
+
+        if (keys.get(i) == key) {
+          return this.slots.getAndSet(i, slot);
+        }
+
+        this.slots.set(i, slot);
+        keys.set(i, key);
+
+        if (++this.size > keys.length() / 4 * 3) {
+          this.resize(keys.length() * 2);
+        }
+
+        return NO_SLOT;
+      } finally {
+        ++this.sequence;
+      }
+    }
+
+    /**
+     * Removes the association of a key.
+     *
+     * <strong>Note:</strong> The caller is expected to hold the lock of the table.
+     *
+     * @return the previously associated slot or {@link #NO_SLOT}.
+     */
+    private int remove(long key) {
+      ++this.sequence;
+
+      try {
+        AtomicLongArray keys = this.keys;
+        AtomicIntegerArray slots = this.slots;
+        int mask = keys.length() - 1;
+        int hole = hash(key) & mask;
+
+        while (keys.get(hole) != key) {
+          if (keys.get(hole) == EMPTY) {
+            return NO_SLOT;
+          }
+
+          hole = (hole + 1) & mask;
+        }
+
+        int slot = slots.get(hole);
+        keys.set(hole, EMPTY);
+        --this.size;
+
+        // shift subsequent entries of the same probe sequence backwards in order to close the gap
+        for (int next = (hole + 1) & mask; keys.get(next) != EMPTY; next = (next + 1) & mask) {
+          int home = hash(keys.get(next)) & mask;
+
+          if (((next - home) & mask) >= ((next - hole) & mask)) {
+            keys.set(hole, keys.get(next));
+            slots.set(hole, slots.get(next));
+            keys.set(next, EMPTY);
+            hole = next;
+          }
+        }
+
+        return slot;
+      } finally {
+        ++this.sequence;
+      }
+    }
+
+    private void resize(int capacity) {
+      AtomicLongArray keys = this.keys;
+      AtomicIntegerArray slots = this.slots;
+
+      this.allocate(capacity);
+      this.size = 0;
+
+      for (int i = 0; i < keys.length(); ++i) {
+        long key = keys.get(i);
+
+        if (key != EMPTY) {
+          this.insert(key, slots.get(i));
+        }
+      }
+    }
+
+    private void insert(long key, int slot) {
+      AtomicLongArray keys = this.keys;
+      int mask = keys.length() - 1;
+      int i = hash(key) & mask;
+
+      while (keys.get(i) != EMPTY) {
+        i = (i + 1) & mask;
+      }
+
+      this.slots.set(i, slot);
+      keys.set(i, key);
+      ++this.size;
+    }
+  }
+}
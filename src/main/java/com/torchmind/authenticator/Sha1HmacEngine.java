@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Provides a pure Java HMAC-SHA1 engine which is specialized for 8 byte challenges.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Sha1HmacEngine extends BuiltinHmacEngine {
+
+  private static final int BLOCK_SIZE = 64;
+  private static final int[] INITIAL_STATE = {
+      0x67452301, 0xEFCDAB89, 0x98BADCFE, 0x10325476, 0xC3D2E1F0
+  };
+
+  Sha1HmacEngine() {
+    super(BLOCK_SIZE, "SHA-1");
+  }
+
+  /**
+   * Applies the SHA-1 compression function to a state.
+   *
+   * @param state a state which is updated in place.
+   * @param w a message schedule of which the first 16 words have been populated.
+   */
+  private static void compress(@NonNull int[] state, @NonNull int[] w) {
+    for (int t = 16; t < 80; ++t) {
+      w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+    }
+
+    int a = state[0];
+    int b = state[1];
+    int c = state[2];
+    int d = state[3];
+    int e = state[4];
+
+    for (int t = 0; t < 20; ++t) {
+      int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + 0x5A827999 + w[t];
+      e = d;
+      d = c;
+      c = Integer.rotateLeft(b, 30);
+      b = a;
+      a = temp;
+    }
+
+    for (int t = 20; t < 40; ++t) {
+      int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0x6ED9EBA1 + w[t];
+      e = d;
+      d = c;
+      c = Integer.rotateLeft(b, 30);
+      b = a;
+      a = temp;
+    }
+
+    for (int t = 40; t < 60; ++t) {
+      int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + 0x8F1BBCDC + w[t];
+      e = d;
+      d = c;
+      c = Integer.rotateLeft(b, 30);
+      b = a;
+      a = temp;
+    }
+
+    for (int t = 60; t < 80; ++t) {
+      int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0xCA62C1D6 + w[t];
+      e = d;
+      d = c;
+      c = Integer.rotateLeft(b, 30);
+      b = a;
+      a = temp;
+    }
+
+    state[0] += a;
+    state[1] += b;
+    state[2] += c;
+    state[3] += d;
+    state[4] += e;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  State createState() {
+    return new Sha1State();
+  }
+
+  /**
+   * Represents the SHA-1 specific working state of a single thread.
+   */
+  private static final class Sha1State extends State {
+
+    private final int[] inner = new int[5];
+    private final int[] outer = new int[5];
+    private final int[] hash = new int[5];
+    private final int[] w = new int[80];
+
+    private Sha1State() {
+      super(BLOCK_SIZE);
+    }
+
+    private void absorb(@NonNull int[] state, @NonNull byte[] block) {
+      for (int i = 0; i < 16; ++i) {
+        this.w[i] = ((block[i * 4] & 0xFF) << 24) | ((block[i * 4 + 1] & 0xFF) << 16)
+            | ((block[i * 4 + 2] & 0xFF) << 8) | (block[i * 4 + 3] & 0xFF);
+      }
+
+      System.arraycopy(INITIAL_STATE, 0, state, 0, state.length);
+      compress(state, this.w);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void absorbInner(@NonNull byte[] block) {
+      this.absorb(this.inner, block);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void absorbOuter(@NonNull byte[] block) {
+      this.absorb(this.outer, block);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int truncate(long challenge) {
+      int[] hash = this.hash;
+      int[] w = this.w;
+
+      // inner hash: challenge followed by padding and the total message length in bits
+      System.arraycopy(this.inner, 0, hash, 0, 5);
+      w[0] = (int) (challenge >>> 32);
+      w[1] = (int) challenge;
+      w[2] = 0x80000000;
+      for (int i = 3; i < 15; ++i) {
+        w[i] = 0;
+      }
+      w[15] = (BLOCK_SIZE + 8) * 8;
+      compress(hash, w);
+
+      // outer hash: inner hash followed by padding and the total message length in bits
+      System.arraycopy(hash, 0, w, 0, 5);
+      System.arraycopy(this.outer, 0, hash, 0, 5);
+      w[5] = 0x80000000;
+      for (int i = 6; i < 15; ++i) {
+        w[i] = 0;
+      }
+      w[15] = (BLOCK_SIZE + 20) * 8;
+      compress(hash, w);
+
+      return truncateWords(hash);
+    }
+  }
+
+  /**
+   * Applies the dynamic truncation to a hash which is represented as big endian words.
+   *
+   * @param hash a hash.
+   * @return a 31 bit truncated hash value.
+   */
+  static int truncateWords(@NonNull int[] hash) {
+    int offset = hash[hash.length - 1] & 0x0F;
+    int index = offset >>> 2;
+    int shift = (offset & 3) << 3;
+
+    long combined = ((long) hash[index] << 32) | (hash[index + 1] & 0xFFFFFFFFL);
+    return (int) (combined >>> (32 - shift)) & 0x7FFFFFFF;
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Provides a pure Java HMAC-SHA256 engine which is specialized for 8 byte challenges.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Sha256HmacEngine extends BuiltinHmacEngine {
+
+  private static final int BLOCK_SIZE = 64;
+  private static final int[] INITIAL_STATE = {
+      0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19
+  };
+  private static final int[] K = {
+      0x428A2F98, 0x71374491, 0xB5C0FBCF, 0xE9B5DBA5, 0x3956C25B, 0x59F111F1,
+      0x923F82A4, 0xAB1C5ED5, 0xD807AA98, 0x12835B01, 0x243185BE, 0x550C7DC3,
+      0x72BE5D74, 0x80DEB1FE, 0x9BDC06A7, 0xC19BF174, 0xE49B69C1, 0xEFBE4786,
+      0x0FC19DC6, 0x240CA1CC, 0x2DE92C6F, 0x4A7484AA, 0x5CB0A9DC, 0x76F988DA,
+      0x983E5152, 0xA831C66D, 0xB00327C8, 0xBF597FC7, 0xC6E00BF3, 0xD5A79147,
+      0x06CA6351, 0x14292967, 0x27B70A85, 0x2E1B2138, 0x4D2C6DFC, 0x53380D13,
+      0x650A7354, 0x766A0ABB, 0x81C2C92E, 0x92722C85, 0xA2BFE8A1, 0xA81A664B,
+      0xC24B8B70, 0xC76C51A3, 0xD192E819, 0xD6990624, 0xF40E3585, 0x106AA070,
+      0x19A4C116, 0x1E376C08, 0x2748774C, 0x34B0BCB5, 0x391C0CB3, 0x4ED8AA4A,
+      0x5B9CCA4F, 0x682E6FF3, 0x748F82EE, 0x78A5636F, 0x84C87814, 0x8CC70208,
+      0x90BEFFFA, 0xA4506CEB, 0xBEF9A3F7, 0xC67178F2
+  };
+
+  Sha256HmacEngine() {
+    super(BLOCK_SIZE, "SHA-256");
+  }
+
+  /**
+   * Applies the SHA-256 compression function to a state.
+   *
+   * @param state a state which is updated in place.
+   * @param w a message schedule of which the first 16 words have been populated.
+   */
+  private static void compress(@NonNull int[] state, @NonNull int[] w) {
+    for (int t = 16; t < 64; ++t) {
+      int s0 = Integer.rotateRight(w[t - 15], 7) ^ Integer.rotateRight(w[t - 15], 18)
+          ^ (w[t - 15] >>> 3);
+      int s1 = Integer.rotateRight(w[t - 2], 17) ^ Integer.rotateRight(w[t - 2], 19)
+          ^ (w[t - 2] >>> 10);
+      w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+    }
+
+    int a = state[0];
+    int b = state[1];
+    int c = state[2];
+    int d = state[3];
+    int e = state[4];
+    int f = state[5];
+    int g = state[6];
+    int h = state[7];
+
+    for (int t = 0; t < 64; ++t) {
+      int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+      int ch = (e & f) ^ (~e & g);
+      int temp1 = h + s1 + ch + K[t] + w[t];
+      int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+      int maj = (a & b) ^ (a & c) ^ (b & c);
+      int temp2 = s0 + maj;
+
+      h = g;
+      g = f;
+      f = e;
+      e = d + temp1;
+      d = c;
+      c = b;
+      b = a;
+      a = temp1 + temp2;
+    }
+
+    state[0] += a;
+    state[1] += b;
+    state[2] += c;
+    state[3] += d;
+    state[4] += e;
+    state[5] += f;
+    state[6] += g;
+    state[7] += h;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  State createState() {
+    return new Sha256State();
+  }
+
+  /**
+   * Represents the SHA-256 specific working state of a single thread.
+   */
+  private static final class Sha256State extends State {
+
+    private final int[] inner = new int[8];
+    private final int[] outer = new int[8];
+    private final int[] hash = new int[8];
+    private final int[] w = new int[64];
+
+    private Sha256State() {
+      super(BLOCK_SIZE);
+    }
+
+    private void absorb(@NonNull int[] state, @NonNull byte[] block) {
+      for (int i = 0; i < 16; ++i) {
+        this.w[i] = ((block[i * 4] & 0xFF) << 24) | ((block[i * 4 + 1] & 0xFF) << 16)
+            | ((block[i * 4 + 2] & 0xFF) << 8) | (block[i * 4 + 3] & 0xFF);
+      }
+
+      System.arraycopy(INITIAL_STATE, 0, state, 0, state.length);
+      compress(state, this.w);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void absorbInner(@NonNull byte[] block) {
+      this.absorb(this.inner, block);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void absorbOuter(@NonNull byte[] block) {
+      this.absorb(this.outer, block);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int truncate(long challenge) {
+      int[] hash = this.hash;
+      int[] w = this.w;
+
+      // inner hash: challenge followed by padding and the total message length in bits
+      System.arraycopy(this.inner, 0, hash, 0, 8);
+      w[0] = (int) (challenge >>> 32);
+      w[1] = (int) challenge;
+      w[2] = 0x80000000;
+      for (int i = 3; i < 15; ++i) {
+        w[i] = 0;
+      }
+      w[15] = (BLOCK_SIZE + 8) * 8;
+      compress(hash, w);
+
+      // outer hash: inner hash followed by padding and the total message length in bits
+      System.arraycopy(hash, 0, w, 0, 8);
+      System.arraycopy(this.outer, 0, hash, 0, 8);
+      w[8] = 0x80000000;
+      for (int i = 9; i < 15; ++i) {
+        w[i] = 0;
+      }
+      w[15] = (BLOCK_SIZE + 32) * 8;
+      compress(hash, w);
+
+      return Sha1HmacEngine.truncateWords(hash);
+    }
+  }
+}
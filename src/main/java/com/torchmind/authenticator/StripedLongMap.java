@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Provides a concurrent map of primitive long keys to primitive long values.
+ *
+ * Entries are distributed among a fixed set of independently locked stripes, each of which stores
+ * its entries within an open addressing (linear probing) table. As a result, no objects are
+ * allocated per entry and contention is limited to threads which operate on the same stripe.
+ *
+ * <strong>Note:</strong> {@link Long#MIN_VALUE} is reserved as a marker for unused slots and may
+ * thus not be used as a key.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class StripedLongMap {
+
+  static final long EMPTY = Long.MIN_VALUE;
+
+  private static final int MINIMUM_CAPACITY = 16;
+
+  private final Stripe[] stripes;
+  private final int stripeShift;
+
+  StripedLongMap() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  StripedLongMap(int concurrency) {
+    int count = Integer.highestOneBit(Math.max(1, concurrency - 1) << 1);
+
+    this.stripes = new Stripe[count];
+    this.stripeShift = 64 - Integer.numberOfTrailingZeros(count);
+
+    for (int i = 0; i < count; ++i) {
+      this.stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Mixes the bits of a key in order to distribute sequential keys evenly.
+   *
+   * @param key a key.
+   * @return a hash.
+   */
+  private static long hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xFF51AFD7ED558CCDL;
+    key ^= key >>> 33;
+    key *= 0xC4CEB9FE1A85EC53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  /**
+   * Ensures that a key is permitted within this map.
+   *
+   * @param key a key.
+   * @throws IllegalArgumentException when the reserved key is passed.
+   */
+  private static void verifyKey(long key) {
+    if (key == EMPTY) {
+      throw new IllegalArgumentException("Key " + EMPTY + " is reserved");
+    }
+  }
+
+  /**
+   * Stores the specified value if no value is present or the present value is smaller than the
+   * specified value.
+   *
+   * @param key a key.
+   * @param value a value.
+   * @return true if the value has been stored, false otherwise.
+   */
+  boolean advance(long key, long value) {
+    verifyKey(key);
+    long hash = hash(key);
+    return this.stripe(hash).advance(key, hash, value);
+  }
+
+  /**
+   * Replaces the value associated with the specified key if it matches an expected value.
+   *
+   * @param key a key.
+   * @param expectedValue an expected value.
+   * @param newValue a new value.
+   * @param defaultValue a value which is assumed when no mapping exists.
+   * @return true if the value has been replaced, false otherwise.
+   */
+  boolean compareAndSet(long key, long expectedValue, long newValue, long defaultValue) {
+    verifyKey(key);
+    long hash = hash(key);
+    return this.stripe(hash).compareAndSet(key, hash, expectedValue, newValue, defaultValue);
+  }
+
+  /**
+   * Passes all entries of this map to a consumer.
+   *
+   * The entries of each stripe are copied while its lock is held and are subsequently passed to
+   * the consumer without holding any locks. As a result, the consumer observes a consistent state
+   * per stripe but not necessarily across stripes.
+   *
+   * @param consumer an entry consumer.
+   */
+  void forEach(@NonNull EntryConsumer consumer) {
+    for (Stripe stripe : this.stripes) {
+      long[] entries = stripe.copy();
+
+      for (int i = 0; i < entries.length; i += 2) {
+        consumer.accept(entries[i], entries[i + 1]);
+      }
+    }
+  }
+
+  /**
+   * Retrieves the value associated with the specified key.
+   *
+   * @param key a key.
+   * @param defaultValue a value to return when no mapping exists.
+   * @return a value.
+   */
+  long get(long key, long defaultValue) {
+    verifyKey(key);
+    long hash = hash(key);
+    return this.stripe(hash).get(key, hash, defaultValue);
+  }
+
+  /**
+   * Associates the specified key with a value.
+   *
+   * @param key a key.
+   * @param value a value.
+   */
+  void put(long key, long value) {
+    verifyKey(key);
+    long hash = hash(key);
+    this.stripe(hash).put(key, hash, value);
+  }
+
+  /**
+   * Removes the mapping of the specified key.
+   *
+   * @param key a key.
+   * @param defaultValue a value to return when no mapping exists.
+   * @return the previously associated value.
+   */
+  long remove(long key, long defaultValue) {
+    verifyKey(key);
+    long hash = hash(key);
+    return this.stripe(hash).remove(key, hash, defaultValue);
+  }
+
+  /**
+   * Removes all entries whose value matches the specified predicate.
+   *
+   * Stripes are compacted one after another while the predicate is evaluated and thus the
+   * remaining stripes stay available to other threads.
+   *
+   * @param predicate a value predicate.
+   * @return the amount of removed entries.
+   */
+  int removeIf(@NonNull LongPredicate predicate) {
+    int removed = 0;
+
+    for (Stripe stripe : this.stripes) {
+      removed += stripe.removeIf(predicate);
+    }
+
+    return removed;
+  }
+
+  /**
+   * Removes all entries of a single stripe whose value matches the specified predicate.
+   *
+   * This permits callers to spread the removal of entries across multiple invocations.
+   *
+   * @param stripe the index of a stripe (between zero and {@link #stripeCount()}).
+   * @param predicate a value predicate.
+   * @return the amount of removed entries.
+   */
+  int removeIf(int stripe, @NonNull LongPredicate predicate) {
+    return this.stripes[stripe].removeIf(predicate);
+  }
+
+  /**
+   * Retrieves the amount of independently locked stripes within this map.
+   *
+   * @return an amount of stripes.
+   */
+  int stripeCount() {
+    return this.stripes.length;
+  }
+
+  /**
+   * Retrieves the total amount of entries within this map.
+   *
+   * @return an amount of entries.
+   */
+  int size() {
+    int size = 0;
+
+    for (Stripe stripe : this.stripes) {
+      size += stripe.size();
+    }
+
+    return size;
+  }
+
+  /**
+   * Selects the stripe which is responsible for a certain hash.
+   *
+   * @param hash a hash.
+   * @return a stripe.
+   */
+  @NonNull
+  private Stripe stripe(long hash) {
+    return this.stripes[this.stripeShift == 64 ? 0 : (int) (hash >>> this.stripeShift)];
+  }
+
+  /**
+   * Receives the entries of a map.
+   */
+  @FunctionalInterface
+  interface EntryConsumer {
+
+    void accept(long key, long value);
+  }
+
+  /**
+   * Represents a single independently locked open addressing table.
+   */
+  private static final class Stripe {
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    private Stripe() {
+      this.allocate(MINIMUM_CAPACITY);
+    }
+
+    private synchronized boolean advance(long key, long hash, long value) {
+      int slot = this.find(key, hash);
+
+      if (this.keys[slot] == key) {
+        if (this.values[slot] >= value) {
+          return false;
+        }
+
+        this.values[slot] = value;
+        return true;
+      }
+
+      this.insert(slot, key, hash, value);
+      return true;
+    }
+
+    private synchronized boolean compareAndSet(long key, long hash, long expectedValue,
+        long newValue, long defaultValue) {
+      int slot = this.find(key, hash);
+
+      if (this.keys[slot] == key) {
+        if (this.values[slot] != expectedValue) {
+          return false;
+        }
+
+        this.values[slot] = newValue;
+        return true;
+      }
+
+      if (expectedValue != defaultValue) {
+        return false;
+      }
+
+      this.insert(slot, key, hash, newValue);
+      return true;
+    }
+
+    private synchronized long[] copy() {
+      long[] entries = new long[this.size * 2];
+      int position = 0;
+
+      for (int i = 0; i < this.keys.length; ++i) {
+        if (this.keys[i] != EMPTY) {
+          entries[position++] = this.keys[i];
+          entries[position++] = this.values[i];
+        }
+      }
+
+      return entries;
+    }
+
+    private synchronized long get(long key, long hash, long defaultValue) {
+      int slot = this.find(key, hash);
+      return this.keys[slot] == key ? this.values[slot] : defaultValue;
+    }
+
+    private synchronized void put(long key, long hash, long value) {
+      int slot = this.find(key, hash);
+
+      if (this.keys[slot] == key) {
+        this.values[slot] = value;
+        return;
+      }
+
+      this.insert(slot, key, hash, value);
+    }
+
+    private synchronized long remove(long key, long hash, long defaultValue) {
+      long[] keys = this.keys;
+      long[] values = this.values;
+      int mask = keys.length - 1;
+      int slot = this.find(key, hash);
+
+      if (keys[slot] != key) {
+        return defaultValue;
+      }
+
+      long value = values[slot];
+      keys[slot] = EMPTY;
+      --this.size;
+
+      // shift subsequent entries of the same probe sequence backwards in order to close the gap
+      // as linear probing does not permit tombstone free removal otherwise
+      int next = slot;
+      while (keys[next = (next + 1) & mask] != EMPTY) {
+        int home = (int) StripedLongMap.hash(keys[next]) & mask;
+
+        if (((next - home) & mask) >= ((next - slot) & mask)) {
+          keys[slot] = keys[next];
+          values[slot] = values[next];
+          keys[next] = EMPTY;
+          slot = next;
+        }
+      }
+
+      return value;
+    }
+
+    private synchronized int removeIf(@NonNull LongPredicate predicate) {
+      long[] keys = this.keys;
+      long[] values = this.values;
+      int previousSize = this.size;
+      int retained = 0;
+
+      for (int i = 0; i < keys.length; ++i) {
+        if (keys[i] != EMPTY && !predicate.test(values[i])) {
+          ++retained;
+        }
+      }
+
+      if (retained == previousSize) {
+        return 0;
+      }
+
+      this.allocate(capacityFor(retained));
+      for (int i = 0; i < keys.length; ++i) {
+        if (keys[i] != EMPTY && !predicate.test(values[i])) {
+          this.store(keys[i], values[i]);
+        }
+      }
+
+      return previousSize - retained;
+    }
+
+    private synchronized int size() {
+      return this.size;
+    }
+
+    /**
+     * Calculates the table capacity which is required in order to store a certain amount of
+     * entries without exceeding a load factor of 0.5.
+     *
+     * @param entries an amount of entries.
+     * @return a capacity.
+     */
+    private static int capacityFor(int entries) {
+      return Math.max(MINIMUM_CAPACITY, Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+      this.keys = new long[capacity];
+      this.values = new long[capacity];
+      this.size = 0;
+
+      Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**
+     * Locates the slot which either contains the specified key or is the empty slot at which the
+     * key is to be inserted.
+     */
+    private int find(long key, long hash) {
+      long[] keys = this.keys;
+      int mask = keys.length - 1;
+      int slot = (int) hash & mask;
+
+      while (keys[slot] != EMPTY && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+
+      return slot;
+    }
+
+    private void insert(int slot, long key, long hash, long value) {
+      if ((this.size + 1) * 2 > this.keys.length) {
+        long[] keys = this.keys;
+        long[] values = this.values;
+
+        this.allocate(keys.length * 2);
+        for (int i = 0; i < keys.length; ++i) {
+          if (keys[i] != EMPTY) {
+            this.store(keys[i], values[i]);
+          }
+        }
+
+        slot = this.find(key, hash);
+      }
+
+      this.keys[slot] = key;
+      this.values[slot] = value;
+      ++this.size;
+    }
+
+    private void store(long key, long value) {
+      int slot = this.find(key, StripedLongMap.hash(key));
+
+      this.keys[slot] = key;
+      this.values[slot] = value;
+      ++this.size;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.Clock;
+
+/**
+ * Provides the current time step of a period based generator.
+ *
+ * The most recently observed time step is cached and reused for as long as the clock reports a
+ * time within its period. As a result, the current step is retrieved with a single clock read and
+ * a range check while neither {@link java.time.Instant} instances are allocated nor divisions are
+ * performed outside of period boundaries. Since the range is checked on every access, the cache
+ * remains correct when the clock is adjusted in either direction.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class TimeStepSource {
+
+  private final Clock clock;
+  private final long periodSeconds;
+  private final long periodMillis;
+
+  /**
+   * Stores the most recently observed time step (or -1 when no step has been observed yet).
+   */
+  private volatile long step = -1;
+
+  TimeStepSource(@NonNull Clock clock, long periodSeconds) {
+    if (periodSeconds <= 0) {
+      throw new IllegalArgumentException("Period must be at least one second");
+    }
+
+    this.clock = clock;
+    this.periodSeconds = periodSeconds;
+    this.periodMillis = periodSeconds * 1000;
+  }
+
+  /**
+   * Retrieves the clock which backs this source.
+   *
+   * @return a clock.
+   */
+  @NonNull
+  Clock getClock() {
+    return this.clock;
+  }
+
+  /**
+   * Retrieves the current time step.
+   *
+   * @return a time step.
+   */
+  long getCurrentStep() {
+    long millis = this.clock.millis();
+    long step = this.step;
+    long start = step * this.periodMillis;
+
+    if (step != -1 && millis >= start && millis - start < this.periodMillis) {
+      return step;
+    }
+
+    step = this.getStep(Math.floorDiv(millis, 1000));
+
+    // steps prior to the epoch are truncated towards zero and thus do not cover a contiguous
+    // range of milliseconds which could be checked above
+    if (millis >= 0) {
+      this.step = step;
+    }
+
+    return step;
+  }
+
+  /**
+   * Calculates the time step for a specific timestamp.
+   *
+   * @param epochSecond a timestamp (in seconds since the unix epoch).
+   * @return a time step.
+   */
+  long getStep(long epochSecond) {
+    return epochSecond / this.periodSeconds;
+  }
+
+  /**
+   * Retrieves the current time of the backing clock.
+   *
+   * @return a timestamp (in milliseconds since the unix epoch).
+   */
+  long millis() {
+    return this.clock.millis();
+  }
+}
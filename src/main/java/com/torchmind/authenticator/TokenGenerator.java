@@ -18,6 +18,8 @@ package com.torchmind.authenticator;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.net.URI;
+import java.nio.CharBuffer;
+import java.time.Clock;
 import java.time.Duration;
 import javax.crypto.SecretKey;
 
@@ -84,11 +86,64 @@ public interface TokenGenerator {
   URI buildUri(@NonNull SecretKey secretKey, @NonNull String accountName);
 
   /**
-   * Generates a new shared secret for use with this token generator.
+   * Creates a writer which streams handshake URIs for this generator without creating intermediary
+   * {@link URI} instances.
+   *
+   * The output of the writer is identical to the string representation of the URIs returned by
+   * {@link #buildUri(SecretKey, String)}.
+   *
+   * @return a writer.
+   */
+  @NonNull
+  UriWriter createUriWriter();
+
+  /**
+   * Converts a numeric code into its zero padded textual representation.
+   *
+   * @param code a numeric code.
+   * @return a code.
+   * @throws IllegalArgumentException when the code exceeds the configured amount of digits.
+   */
+  @NonNull
+  String formatCode(int code);
+
+  /**
+   * Writes the zero padded textual representation of a numeric code into a character array.
+   *
+   * Exactly {@link #getDigits()} characters are written starting at the specified offset.
+   *
+   * @param code a numeric code.
+   * @param destination a destination array.
+   * @param offset an offset within the destination array.
+   * @throws IllegalArgumentException when the code exceeds the configured amount of digits.
+   * @throws IndexOutOfBoundsException when the destination array is too small.
+   */
+  void formatCode(int code, @NonNull char[] destination, int offset);
+
+  /**
+   * Writes the zero padded textual representation of a numeric code into a character buffer.
+   *
+   * Exactly {@link #getDigits()} characters are written at the current position of the buffer.
+   *
+   * @param code a numeric code.
+   * @param destination a destination buffer.
+   * @throws IllegalArgumentException when the code exceeds the configured amount of digits.
+   * @throws java.nio.BufferOverflowException when the buffer has insufficient space remaining.
+   */
+  void formatCode(int code, @NonNull CharBuffer destination);
+
+  /**
+   * Creates a pipeline which generates and exports shared secrets for large amounts of accounts.
+   *
+   * @return a provisioner.
+   */
+  @NonNull
+  SecretProvisioner createProvisioner();
+
+  /**
+   * Generates a new 80 bit shared secret for use with this token generator.
    *
    * @return a secret.
-   * @throws UnsupportedOperationException when the current Java VM implementation does not support
-   * the chosen hashing algorithm or HMAC itself.
    */
   @NonNull
   SecretKey generateSecret();
@@ -101,6 +156,14 @@ public interface TokenGenerator {
   @NonNull
   Algorithm getAlgorithm();
 
+  /**
+   * Retrieves the selected HMAC engine.
+   *
+   * @return an engine.
+   */
+  @NonNull
+  Engine getEngine();
+
   /**
    * Returns the amount of digits to generate (may only be 6 or 8).
    *
@@ -121,6 +184,8 @@ public interface TokenGenerator {
    *
    * @param code a code.
    * @return a shared secret.
+   * @throws IllegalArgumentException when the code contains characters outside of the Base32
+   * alphabet.
    */
   @NonNull
   SecretKey parseCode(@NonNull String code);
@@ -134,6 +199,30 @@ public interface TokenGenerator {
     SHA512
   }
 
+  /**
+   * Provides a list of HMAC implementations which may back a generator.
+   */
+  enum Engine {
+
+    /**
+     * Delegates to the {@link javax.crypto.Mac} implementations of the installed security
+     * providers.
+     */
+    JCA,
+
+    /**
+     * Uses a pure Java implementation which caches the inner and outer key states of each secret
+     * and thus computes a code using exactly two invocations of the compression function.
+     *
+     * This engine is typically faster for {@link Algorithm#SHA512} whereas Java VMs which provide
+     * hardware intrinsics for SHA-1 and SHA-256 may outperform it for the remaining algorithms.
+     *
+     * <strong>Note:</strong> This engine bypasses the installed security providers and should not
+     * be used in environments which mandate certified implementations (such as FIPS 140).
+     */
+    BUILTIN
+  }
+
   /**
    * Provides a factory for the creation of token generator instances.
    */
@@ -160,6 +249,28 @@ public interface TokenGenerator {
     @NonNull
     Builder algorithm(@NonNull Algorithm algorithm);
 
+    /**
+     * Retrieves the currently configured clock (defaults to {@link Clock#systemUTC()}).
+     *
+     * @return a clock.
+     */
+    @NonNull
+    Clock clock();
+
+    /**
+     * Sets the clock which provides the current time to period based generators.
+     *
+     * The clock is consulted whenever a method is invoked without an explicit timestamp. Since the
+     * current time step is cached for the duration of a period, the clock should be cheap to read
+     * and must not allocate in order to keep the validation path free of allocations. Fixed or
+     * offset clocks may be passed in order to simulate specific points in time.
+     *
+     * @param clock a clock.
+     * @return a reference to this builder instance.
+     */
+    @NonNull
+    Builder clock(@NonNull Clock clock);
+
     /**
      * Creates a counter based generator (using the HOTP specification).
      *
@@ -185,6 +296,23 @@ public interface TokenGenerator {
      */
     int digits();
 
+    /**
+     * Retrieves the currently configured HMAC engine (defaults to {@link Engine#JCA}).
+     *
+     * @return an engine.
+     */
+    @NonNull
+    Engine engine();
+
+    /**
+     * Sets the HMAC engine which is used to compute codes.
+     *
+     * @param engine an engine.
+     * @return a reference to this builder instance.
+     */
+    @NonNull
+    Builder engine(@NonNull Engine engine);
+
     /**
      * Sets the target digit amount (either 6 or 8).
      *
@@ -199,6 +327,49 @@ public interface TokenGenerator {
     @NonNull
     Builder digits(int digits);
 
+    /**
+     * Evaluates whether generators are initialized eagerly (defaults to false).
+     *
+     * @return true if eager, false otherwise.
+     */
+    boolean eager();
+
+    /**
+     * Selects whether generators are initialized eagerly.
+     *
+     * Eager generators resolve and pin their security provider, initialize the random source and
+     * Base32 tables and prepare the HMAC state of the calling thread when they are created. As a
+     * result, failures due to unsupported algorithms surface immediately and the first request
+     * does not pay for provider discovery or class loading. This is typically desirable in
+     * environments which frequently start new Java VMs (such as serverless platforms).
+     *
+     * @param eager true if eager, false otherwise.
+     * @return a reference to this builder instance.
+     * @see #warmUpIterations(int) to additionally trigger just in time compilation.
+     */
+    @NonNull
+    Builder eager(boolean eager);
+
+    /**
+     * Retrieves the currently configured metrics listener (defaults to {@link
+     * MetricsListener#noop()}).
+     *
+     * @return a listener.
+     */
+    @NonNull
+    MetricsListener listener();
+
+    /**
+     * Sets the listener which is notified about the generation and validation of codes.
+     *
+     * Generators which use the default listener do not measure latencies at all.
+     *
+     * @param listener a listener.
+     * @return a reference to this builder instance.
+     */
+    @NonNull
+    Builder listener(@NonNull MetricsListener listener);
+
     /**
      * Retrieves the currently configured period of time a key is valid for.
      *
@@ -218,5 +389,28 @@ public interface TokenGenerator {
      */
     @NonNull
     Builder period(Duration period);
+
+    /**
+     * Retrieves the currently configured amount of warm-up iterations (defaults to 0).
+     *
+     * @return an amount of iterations.
+     */
+    int warmUpIterations();
+
+    /**
+     * Sets the amount of iterations which newly created generators execute their code generation
+     * and validation paths for before they are returned (implies eager initialization).
+     *
+     * Warm-up takes place on the thread which creates the generator and does not notify the
+     * configured listener. Around 10,000 iterations are typically sufficient for the HotSpot VM to
+     * compile the hot paths with its optimizing compiler while the exact threshold depends on the
+     * VM and its configuration.
+     *
+     * @param iterations an amount of iterations or 0 to disable warm-up.
+     * @return a reference to this builder instance.
+     * @throws IllegalArgumentException when a negative amount of iterations is supplied.
+     */
+    @NonNull
+    Builder warmUpIterations(int iterations);
   }
 }
@@ -17,6 +17,7 @@
 package com.torchmind.authenticator;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.Clock;
 import java.time.Duration;
 
 /**
@@ -25,8 +26,13 @@ import java.time.Duration;
 class TokenGeneratorBuilder implements TokenGenerator.Builder {
 
   private TokenGenerator.Algorithm algorithm = TokenGenerator.Algorithm.SHA1;
+  private Clock clock = Clock.systemUTC();
   private int digits = 6;
+  private boolean eager;
+  private TokenGenerator.Engine engine = TokenGenerator.Engine.JCA;
+  private MetricsListener listener = MetricsListener.noop();
   private Duration period = Duration.ofSeconds(30);
+  private int warmUpIterations;
 
   /**
    * {@inheritDoc}
@@ -47,13 +53,34 @@ class TokenGeneratorBuilder implements TokenGenerator.Builder {
     return this;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Clock clock() {
+    return this.clock;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TokenGenerator.Builder clock(@NonNull Clock clock) {
+    this.clock = clock;
+    return this;
+  }
+
   /**
    * {@inheritDoc}
    */
   @NonNull
   @Override
   public CounterTokenGenerator createCounterGenerator(@NonNull String issuer) {
-    return new CounterTokenGenerator(this.algorithm, this.digits, issuer);
+    return this.initialize(
+        new CounterTokenGenerator(this.algorithm, this.engine, this.digits, issuer,
+            this.listener));
   }
 
   /**
@@ -62,7 +89,25 @@ class TokenGeneratorBuilder implements TokenGenerator.Builder {
   @NonNull
   @Override
   public PeriodTokenGenerator createPeriodGenerator(@NonNull String issuer) {
-    return new PeriodTokenGenerator(this.algorithm, this.digits, issuer, this.period);
+    return this.initialize(
+        new PeriodTokenGenerator(this.algorithm, this.engine, this.digits, issuer, this.period,
+            this.clock, this.listener));
+  }
+
+  /**
+   * Eagerly initializes and warms up a newly created generator if requested.
+   *
+   * @param generator a generator.
+   * @param <G> a generator type.
+   * @return the passed generator.
+   */
+  @NonNull
+  private <G extends AbstractTokenGenerator> G initialize(@NonNull G generator) {
+    if (this.eager || this.warmUpIterations != 0) {
+      generator.warmUp(this.warmUpIterations);
+    }
+
+    return generator;
   }
 
   /**
@@ -87,6 +132,62 @@ class TokenGeneratorBuilder implements TokenGenerator.Builder {
     return this;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean eager() {
+    return this.eager;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TokenGenerator.Builder eager(boolean eager) {
+    this.eager = eager;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TokenGenerator.Engine engine() {
+    return this.engine;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TokenGenerator.Builder engine(@NonNull TokenGenerator.Engine engine) {
+    this.engine = engine;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public MetricsListener listener() {
+    return this.listener;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TokenGenerator.Builder listener(@NonNull MetricsListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -104,4 +205,26 @@ class TokenGeneratorBuilder implements TokenGenerator.Builder {
     this.period = period;
     return this;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int warmUpIterations() {
+    return this.warmUpIterations;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TokenGenerator.Builder warmUpIterations(int iterations) {
+    if (iterations < 0) {
+      throw new IllegalArgumentException("Iterations cannot be negative");
+    }
+
+    this.warmUpIterations = iterations;
+    return this;
+  }
 }
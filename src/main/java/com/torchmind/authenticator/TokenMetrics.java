@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provides a metrics listener which aggregates striped counters and latency histograms for each
+ * hashing algorithm.
+ *
+ * The distribution of matching window offsets is tracked across all algorithms. Offsets beyond
+ * {@value #OFFSET_RANGE} periods (or counter values) in either direction are attributed to the
+ * outermost tracked offset.
+ *
+ * <strong>Note:</strong> Instances of this type are thread safe and may be shared between
+ * multiple generators.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class TokenMetrics implements MetricsListener {
+
+  /**
+   * Defines the largest distinctly tracked window offset.
+   */
+  public static final int OFFSET_RANGE = 16;
+
+  private static final int ALGORITHMS = TokenGenerator.Algorithm.values().length;
+
+  private final LatencyHistogram[] generationLatency = new LatencyHistogram[ALGORITHMS];
+  private final LatencyHistogram[] validationLatency = new LatencyHistogram[ALGORITHMS];
+  private final LongAdder[] validationHits = new LongAdder[ALGORITHMS];
+  private final LongAdder[] validationMisses = new LongAdder[ALGORITHMS];
+  private final LongAdder[] invalidKeys = new LongAdder[ALGORITHMS];
+  private final LongAdder[] offsets = new LongAdder[OFFSET_RANGE * 2 + 1];
+
+  public TokenMetrics() {
+    for (int i = 0; i < ALGORITHMS; ++i) {
+      this.generationLatency[i] = new LatencyHistogram();
+      this.validationLatency[i] = new LatencyHistogram();
+      this.validationHits[i] = new LongAdder();
+      this.validationMisses[i] = new LongAdder();
+      this.invalidKeys[i] = new LongAdder();
+    }
+
+    for (int i = 0; i < this.offsets.length; ++i) {
+      this.offsets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Retrieves the latency distribution of code generation.
+   *
+   * @param algorithm an algorithm.
+   * @return a histogram.
+   */
+  @NonNull
+  public LatencyHistogram getGenerationLatency(@NonNull TokenGenerator.Algorithm algorithm) {
+    return this.generationLatency[algorithm.ordinal()];
+  }
+
+  /**
+   * Retrieves the amount of secret keys which have been rejected by the HMAC implementation.
+   *
+   * @param algorithm an algorithm.
+   * @return an amount of keys.
+   */
+  public long getInvalidKeys(@NonNull TokenGenerator.Algorithm algorithm) {
+    return this.invalidKeys[algorithm.ordinal()].sum();
+  }
+
+  /**
+   * Retrieves the amount of accepted codes which matched at a certain window offset.
+   *
+   * @param offset an offset between -{@value #OFFSET_RANGE} and {@value #OFFSET_RANGE}.
+   * @return an amount of codes.
+   * @throws IllegalArgumentException when the offset is out of range.
+   */
+  public long getOffsetCount(int offset) {
+    if (offset < -OFFSET_RANGE || offset > OFFSET_RANGE) {
+      throw new IllegalArgumentException(
+          "Offset must be between -" + OFFSET_RANGE + " and " + OFFSET_RANGE);
+    }
+
+    return this.offsets[offset + OFFSET_RANGE].sum();
+  }
+
+  /**
+   * Retrieves the amount of accepted codes.
+   *
+   * @param algorithm an algorithm.
+   * @return an amount of codes.
+   */
+  public long getValidationHits(@NonNull TokenGenerator.Algorithm algorithm) {
+    return this.validationHits[algorithm.ordinal()].sum();
+  }
+
+  /**
+   * Retrieves the latency distribution of code validation (including the entire window search).
+   *
+   * @param algorithm an algorithm.
+   * @return a histogram.
+   */
+  @NonNull
+  public LatencyHistogram getValidationLatency(@NonNull TokenGenerator.Algorithm algorithm) {
+    return this.validationLatency[algorithm.ordinal()];
+  }
+
+  /**
+   * Retrieves the amount of rejected codes.
+   *
+   * @param algorithm an algorithm.
+   * @return an amount of codes.
+   */
+  public long getValidationMisses(@NonNull TokenGenerator.Algorithm algorithm) {
+    return this.validationMisses[algorithm.ordinal()].sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onCodeGenerated(@NonNull TokenGenerator.Algorithm algorithm, long latency) {
+    this.generationLatency[algorithm.ordinal()].record(latency);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onCodeValidated(@NonNull TokenGenerator.Algorithm algorithm, int offset,
+      long latency) {
+    int index = algorithm.ordinal();
+    this.validationLatency[index].record(latency);
+
+    if (offset == ValidationResult.NO_MATCH) {
+      this.validationMisses[index].increment();
+      return;
+    }
+
+    this.validationHits[index].increment();
+    this.offsets[Math.max(-OFFSET_RANGE, Math.min(OFFSET_RANGE, offset)) + OFFSET_RANGE]
+        .increment();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onInvalidKey(@NonNull TokenGenerator.Algorithm algorithm) {
+    this.invalidKeys[algorithm.ordinal()].increment();
+  }
+}
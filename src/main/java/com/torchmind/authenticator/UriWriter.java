@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides a writer which streams handshake URIs into arbitrary character or byte sinks.
+ *
+ * All parameters which are shared among the accounts of a generator (such as the issuer, algorithm
+ * and amount of digits) are encoded exactly once when the writer is created. As a result, only the
+ * account name and shared secret are encoded per invocation and neither intermediary strings nor
+ * {@link URI} instances are created. The produced representation is identical to the string
+ * representation of the URIs returned by {@link TokenGenerator#buildUri(SecretKey, String)}.
+ *
+ * <strong>Note:</strong> Instances of this type are immutable and may thus be shared between
+ * threads.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class UriWriter {
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  private final String prefix;
+  private final String suffix;
+
+  UriWriter(@NonNull String type, @NonNull String issuer, @NonNull String parameters) {
+    StringBuilder builder = new StringBuilder();
+
+    try {
+      appendComponent(builder, issuer);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+
+    String encodedIssuer = builder.toString();
+
+    this.prefix = "otpauth://" + type + "/" + encodedIssuer + ":";
+    this.suffix = "&issuer=" + encodedIssuer + parameters;
+  }
+
+  /**
+   * Evaluates whether a character is passed through by {@link java.net.URLEncoder} without being
+   * encoded.
+   *
+   * @param c a character.
+   * @return true if unreserved, false otherwise.
+   */
+  private static boolean isUnreserved(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.'
+        || c == '-' || c == '*' || c == '_';
+  }
+
+  /**
+   * Appends a single encoded octet.
+   *
+   * Since the original representation has been form encoded before it was passed to the multi
+   * argument {@link URI} constructors (which always quote the percent character), each octet is
+   * represented as {@code %25XX}.
+   *
+   * @param out a sink.
+   * @param octet an octet.
+   * @throws IOException when the sink fails.
+   */
+  private static void appendOctet(@NonNull Appendable out, int octet) throws IOException {
+    out.append('%')
+        .append('2')
+        .append('5')
+        .append(HEX[(octet >>> 4) & 0x0F])
+        .append(HEX[octet & 0x0F]);
+  }
+
+  /**
+   * Appends the encoded form of a URI component (e.g. the issuer or account name).
+   *
+   * @param out a sink.
+   * @param value a raw value.
+   * @throws IOException when the sink fails.
+   */
+  private static void appendComponent(@NonNull Appendable out, @NonNull CharSequence value)
+      throws IOException {
+    int length = value.length();
+
+    for (int i = 0; i < length; ++i) {
+      char c = value.charAt(i);
+
+      if (isUnreserved(c)) {
+        out.append(c);
+      } else if (c == ' ') {
+        out.append('+');
+      } else if (c < 0x80) {
+        appendOctet(out, c);
+      } else if (c < 0x800) {
+        appendOctet(out, 0xC0 | (c >>> 6));
+        appendOctet(out, 0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character
+          .isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+
+        appendOctet(out, 0xF0 | (codePoint >>> 18));
+        appendOctet(out, 0x80 | ((codePoint >>> 12) & 0x3F));
+        appendOctet(out, 0x80 | ((codePoint >>> 6) & 0x3F));
+        appendOctet(out, 0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogates are replaced by the encoder
+        appendOctet(out, '?');
+      } else {
+        appendOctet(out, 0xE0 | (c >>> 12));
+        appendOctet(out, 0x80 | ((c >>> 6) & 0x3F));
+        appendOctet(out, 0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  /**
+   * Appends the encoded form of a shared secret.
+   *
+   * @param out a sink.
+   * @param key an encoded secret key.
+   * @throws IOException when the sink fails.
+   */
+  private static void appendSecret(@NonNull Appendable out, @NonNull byte[] key)
+      throws IOException {
+    char[] code = new char[Base32Codec.encodedLength(key.length, false)];
+    Base32Codec.encode(key, 0, key.length, code, 0, false);
+
+    for (char c : code) {
+      if (c == '=') {
+        appendOctet(out, c);
+      } else {
+        out.append(c);
+      }
+    }
+  }
+
+  /**
+   * Writes the handshake URI for an account into an arbitrary sink.
+   *
+   * @param out a sink.
+   * @param secretKey a secret key.
+   * @param accountName an account name.
+   * @throws IOException when the sink fails.
+   */
+  public void write(@NonNull Appendable out, @NonNull SecretKey secretKey,
+      @NonNull CharSequence accountName) throws IOException {
+    this.write(out, secretKey.getEncoded(), accountName);
+  }
+
+  /**
+   * Writes the handshake URI for an account into an arbitrary sink.
+   *
+   * @param out a sink.
+   * @param key an encoded secret key.
+   * @param accountName an account name.
+   * @throws IOException when the sink fails.
+   */
+  void write(@NonNull Appendable out, @NonNull byte[] key, @NonNull CharSequence accountName)
+      throws IOException {
+    out.append(this.prefix);
+    appendComponent(out, accountName);
+    out.append("?secret=");
+    appendSecret(out, key);
+    out.append(this.suffix);
+  }
+
+  /**
+   * Writes the handshake URI for an account into a string builder.
+   *
+   * @param out a string builder.
+   * @param secretKey a secret key.
+   * @param accountName an account name.
+   * @return a reference to the passed string builder.
+   */
+  @NonNull
+  public StringBuilder write(@NonNull StringBuilder out, @NonNull SecretKey secretKey,
+      @NonNull CharSequence accountName) {
+    try {
+      this.write((Appendable) out, secretKey, accountName);
+      return out;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Writes the handshake URI for an account into a character buffer.
+   *
+   * When the buffer has insufficient space remaining, its position is restored before the
+   * exception is propagated and thus the caller may flush the buffer and try again.
+   *
+   * @param out a character buffer.
+   * @param secretKey a secret key.
+   * @param accountName an account name.
+   * @throws BufferOverflowException when the buffer has insufficient space remaining.
+   */
+  public void write(@NonNull CharBuffer out, @NonNull SecretKey secretKey,
+      @NonNull CharSequence accountName) {
+    int position = out.position();
+
+    try {
+      this.write((Appendable) out, secretKey, accountName);
+    } catch (BufferOverflowException ex) {
+      out.position(position);
+      throw ex;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Writes the US-ASCII encoded handshake URI for an account into a byte buffer.
+   *
+   * When the buffer has insufficient space remaining, its position is restored before the
+   * exception is propagated and thus the caller may flush the buffer and try again.
+   *
+   * @param out a byte buffer.
+   * @param secretKey a secret key.
+   * @param accountName an account name.
+   * @throws BufferOverflowException when the buffer has insufficient space remaining.
+   */
+  public void write(@NonNull ByteBuffer out, @NonNull SecretKey secretKey,
+      @NonNull CharSequence accountName) {
+    int position = out.position();
+
+    try {
+      this.write(new ByteBufferAppendable(out), secretKey, accountName);
+    } catch (BufferOverflowException ex) {
+      out.position(position);
+      throw ex;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Builds the handshake URI for an account.
+   *
+   * @param secretKey a secret key.
+   * @param accountName an account name.
+   * @return a URI.
+   */
+  @NonNull
+  public URI toUri(@NonNull SecretKey secretKey, @NonNull CharSequence accountName) {
+    return URI.create(this.write(new StringBuilder(), secretKey, accountName).toString());
+  }
+
+  /**
+   * Adapts a byte buffer to the {@link Appendable} interface.
+   *
+   * Since all characters written by this writer are within the US-ASCII range, each character is
+   * represented by exactly one byte.
+   */
+  static final class ByteBufferAppendable implements Appendable {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferAppendable(@NonNull ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) {
+      return this.append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+      for (int i = start; i < end; ++i) {
+        this.buffer.put((byte) csq.charAt(i));
+      }
+
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) {
+      this.buffer.put((byte) c);
+      return this;
+    }
+  }
+}
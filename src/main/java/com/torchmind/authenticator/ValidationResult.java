@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Represents the outcome of a code validation.
+ *
+ * When a code was accepted, the result additionally exposes the offset (in periods or counter
+ * values) relative to the expected value at which the code was found. For time based codes, this
+ * offset is a good approximation of the clock drift of the client device.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ValidationResult {
+
+  /**
+   * Identifies an offset which indicates that no match has been found.
+   */
+  public static final int NO_MATCH = Integer.MIN_VALUE;
+
+  private static final int CACHE_RANGE = 16;
+  private static final ValidationResult INVALID = new ValidationResult(NO_MATCH);
+  private static final ValidationResult[] CACHE = new ValidationResult[CACHE_RANGE * 2 + 1];
+
+  static {
+    for (int i = 0; i < CACHE.length; ++i) {
+      CACHE[i] = new ValidationResult(i - CACHE_RANGE);
+    }
+  }
+
+  private final int offset;
+
+  private ValidationResult(int offset) {
+    this.offset = offset;
+  }
+
+  /**
+   * Retrieves a result for the specified offset.
+   *
+   * @param offset an offset or {@link #NO_MATCH}.
+   * @return a result.
+   */
+  @NonNull
+  static ValidationResult of(int offset) {
+    if (offset == NO_MATCH) {
+      return INVALID;
+    }
+
+    if (offset >= -CACHE_RANGE && offset <= CACHE_RANGE) {
+      return CACHE[offset + CACHE_RANGE];
+    }
+
+    return new ValidationResult(offset);
+  }
+
+  /**
+   * Retrieves a result which indicates that a code has been rejected.
+   *
+   * @return a result.
+   */
+  @NonNull
+  static ValidationResult invalid() {
+    return INVALID;
+  }
+
+  /**
+   * Retrieves the offset at which the code has been found.
+   *
+   * Negative values indicate that the code belonged to a past period (or counter value) while
+   * positive values indicate a future period.
+   *
+   * @return an offset.
+   * @throws IllegalStateException when the code has been rejected.
+   */
+  public int getOffset() {
+    if (this.offset == NO_MATCH) {
+      throw new IllegalStateException("Code has been rejected");
+    }
+
+    return this.offset;
+  }
+
+  /**
+   * Evaluates whether the code has been accepted.
+   *
+   * @return true if valid, false otherwise.
+   */
+  public boolean isValid() {
+    return this.offset != NO_MATCH;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    return this.offset == ((ValidationResult) o).offset;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return this.offset;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    if (this.offset == NO_MATCH) {
+      return "ValidationResult{valid=false}";
+    }
+
+    return "ValidationResult{valid=true, offset=" + this.offset + "}";
+  }
+}
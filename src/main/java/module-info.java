@@ -8,5 +8,4 @@ module com.torchmind.authenticator {
   exports com.torchmind.authenticator;
 
   requires static com.github.spotbugs.annotations;
-  requires org.apache.commons.codec;
 }
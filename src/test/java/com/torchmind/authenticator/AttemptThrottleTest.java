@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class AttemptThrottleTest {
+
+    @Test
+    public void burst() throws Exception {
+        MutableClock clock = new MutableClock(1_000_000);
+        AttemptThrottle throttle = AttemptThrottle.builder()
+                .burst(3)
+                .interval(Duration.ofSeconds(10))
+                .clock(clock)
+                .build();
+
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertFalse(throttle.tryAcquire(1));
+        Assert.assertTrue(throttle.tryAcquire(2));
+
+        clock.advance(9_999);
+        Assert.assertFalse(throttle.tryAcquire(1));
+
+        clock.advance(1);
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertFalse(throttle.tryAcquire(1));
+
+        clock.advance(30_000);
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertFalse(throttle.tryAcquire(1));
+
+        Assert.assertEquals(8, throttle.getPermittedAttempts());
+        Assert.assertEquals(4, throttle.getRejectedAttempts());
+    }
+
+    @Test
+    public void penalty() throws Exception {
+        MutableClock clock = new MutableClock(1_000_000);
+        AttemptThrottle throttle = AttemptThrottle.builder()
+                .burst(2)
+                .interval(Duration.ofSeconds(10))
+                .penalty(Duration.ofSeconds(20))
+                .clock(clock)
+                .build();
+
+        Assert.assertTrue(throttle.tryAcquire(1));
+        throttle.recordFailure(1);
+        Assert.assertFalse(throttle.tryAcquire(1));
+
+        clock.advance(20_000);
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertFalse(throttle.tryAcquire(1));
+
+        throttle.reset(1);
+        Assert.assertTrue(throttle.tryAcquire(1));
+        Assert.assertTrue(throttle.tryAcquire(1));
+    }
+
+    @Test
+    public void eviction() throws Exception {
+        MutableClock clock = new MutableClock(1_000_000);
+        AttemptThrottle throttle = AttemptThrottle.builder()
+                .burst(1)
+                .capacity(8)
+                .clock(clock)
+                .build();
+
+        for (long i = 0; i < 64; ++i) {
+            Assert.assertTrue(throttle.tryAcquire(i));
+        }
+
+        Assert.assertEquals(56, throttle.getEvictions());
+        Assert.assertFalse(throttle.tryAcquire(63));
+
+        // expired slots are reused without evicting
+        clock.advance(Duration.ofMinutes(1).toMillis());
+        for (long i = 64; i < 72; ++i) {
+            Assert.assertTrue(throttle.tryAcquire(i));
+        }
+
+        Assert.assertEquals(56, throttle.getEvictions());
+    }
+
+    @Test
+    public void verifyCode() throws Exception {
+        MutableClock clock = new MutableClock(60_000);
+        PeriodTokenGenerator generator = TokenGenerator.builder().clock(clock).createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        AttemptThrottle throttle = AttemptThrottle.builder()
+                .burst(2)
+                .clock(clock)
+                .build();
+
+        Assert.assertFalse(generator.verifyCode("000000", key, 1, throttle, 1, 1).isValid());
+        Assert.assertFalse(generator.verifyCode("000000", key, 1, throttle, 1, 1).isValid());
+        Assert.assertFalse(generator.verifyCode("981077", key, 1, throttle, 1, 1).isValid());
+        Assert.assertEquals(1, throttle.getRejectedAttempts());
+
+        Assert.assertEquals(ValidationResult.of(0), generator.verifyCode("981077", key, 2, throttle, 1, 1));
+        Assert.assertFalse(generator.verifyCode("000000", key, 2, throttle, 1, 1).isValid());
+        Assert.assertEquals(ValidationResult.of(0), generator.verifyCode("981077", key, 2, throttle, 1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBurst() throws Exception {
+        AttemptThrottle.builder().burst(0);
+    }
+}
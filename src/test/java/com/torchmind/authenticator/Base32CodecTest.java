@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class Base32CodecTest {
+
+    private static final String[][] VECTORS = {
+            {"", ""},
+            {"f", "MY======"},
+            {"fo", "MZXQ===="},
+            {"foo", "MZXW6==="},
+            {"foob", "MZXW6YQ="},
+            {"fooba", "MZXW6YTB"},
+            {"foobar", "MZXW6YTBOI======"}
+    };
+
+    @Test
+    public void encode() throws Exception {
+        for (String[] vector : VECTORS) {
+            Assert.assertEquals(vector[1], Base32Codec.encode(vector[0].getBytes(StandardCharsets.US_ASCII), false));
+        }
+
+        Assert.assertEquals("mzxw 6ytb oi== ====", Base32Codec.encode("foobar".getBytes(StandardCharsets.US_ASCII), true));
+        Assert.assertEquals("klyq v62w lkek rqqm", Base32Codec.encode(Base32Codec.decode("KLYQV62WLKEKRQQM"), true));
+        Assert.assertEquals(19, Base32Codec.encodedLength(10, true));
+        Assert.assertEquals(0, Base32Codec.encodedLength(0, true));
+    }
+
+    @Test
+    public void decode() throws Exception {
+        for (String[] vector : VECTORS) {
+            Assert.assertEquals(vector[0], new String(Base32Codec.decode(vector[1]), StandardCharsets.US_ASCII));
+        }
+
+        Assert.assertEquals("foobar", new String(Base32Codec.decode("mzxw 6ytb oi== ===="), StandardCharsets.US_ASCII));
+        Assert.assertEquals("foobar", new String(Base32Codec.decode("MzXw6yTbOi"), StandardCharsets.US_ASCII));
+
+        char[] code = " MZXW6YTB ".toCharArray();
+        byte[] buffer = new byte[8];
+        Assert.assertEquals(5, Base32Codec.decode(code, 1, 8, buffer, 2));
+        Assert.assertEquals("fooba", new String(buffer, 2, 5, StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeIllegalCharacter() throws Exception {
+        Base32Codec.decode("MZXW1YTB");
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class CodeIndexTest {
+
+    @Test
+    public void lookup() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        CodeIndex index = generator.createCodeIndex(1, 1);
+        index.register(1, generator.parseCode("KLYQV62WLKEKRQQM"));
+        index.register(2, generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ"));
+        index.refresh(Instant.ofEpochSecond(30));
+
+        Assert.assertEquals(1, index.lookup(707879, Instant.ofEpochSecond(30)));
+        Assert.assertEquals(1, index.lookup(565580, Instant.ofEpochSecond(30)));
+        Assert.assertEquals(1, index.lookup(981077, Instant.ofEpochSecond(30)));
+        Assert.assertEquals(2, index.lookup(287082, Instant.ofEpochSecond(30)));
+        Assert.assertEquals(CodeIndex.NOT_FOUND, index.lookup(771141, Instant.ofEpochSecond(30)));
+
+        // steps outside of the computed tables are not computed on demand
+        Assert.assertEquals(CodeIndex.NOT_FOUND, index.lookup(771141, Instant.ofEpochSecond(60)));
+        index.refresh(Instant.ofEpochSecond(60));
+        Assert.assertEquals(1, index.lookup(771141, Instant.ofEpochSecond(60)));
+        Assert.assertEquals(1, index.lookup(565580, Instant.ofEpochSecond(30)));
+    }
+
+    @Test
+    public void modify() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        CodeIndex index = generator.createCodeIndex(1, 1);
+        index.register(1, generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ"));
+        index.refresh(Instant.ofEpochSecond(30));
+
+        index.register(2, generator.parseCode("KLYQV62WLKEKRQQM"));
+        Assert.assertEquals(2, index.lookup(707879, Instant.ofEpochSecond(30)));
+        Assert.assertEquals(1, index.lookup(287082, Instant.ofEpochSecond(30)));
+
+        index.replace(2, generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ"));
+        Assert.assertEquals(CodeIndex.NOT_FOUND, index.lookup(707879, Instant.ofEpochSecond(30)));
+        Assert.assertEquals(CodeIndex.AMBIGUOUS, index.lookup(287082, Instant.ofEpochSecond(30)));
+
+        Assert.assertTrue(index.unregister(1));
+        Assert.assertFalse(index.unregister(1));
+        Assert.assertEquals(2, index.lookup(287082, Instant.ofEpochSecond(30)));
+
+        index.refresh(Instant.ofEpochSecond(30));
+        Assert.assertEquals(2, index.lookup(287082, Instant.ofEpochSecond(30)));
+    }
+
+    @Test
+    public void modifyMany() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        CodeIndex index = generator.createCodeIndex(0, 0);
+        SecretKey[] keys = new SecretKey[1000];
+        index.refresh(Instant.ofEpochSecond(30));
+
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = generator.generateSecret();
+            index.register(i, keys[i]);
+        }
+        for (int i = 0; i < keys.length; i += 2) {
+            Assert.assertTrue(index.unregister(i));
+        }
+
+        long[] accounts = new long[4];
+        for (int i = 0; i < keys.length; ++i) {
+            int count = index.lookupAll(generator.generateCodeValue(keys[i], 1), Instant.ofEpochSecond(30), accounts);
+            boolean found = false;
+            for (int j = 0; j < Math.min(count, accounts.length); ++j) {
+                found |= accounts[j] == i;
+            }
+
+            Assert.assertEquals(i % 2 == 1, found);
+        }
+    }
+
+    @Test
+    public void lookupAmbiguous() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        CodeIndex index = generator.createCodeIndex(0, 0);
+        index.register(1, generator.parseCode("KLYQV62WLKEKRQQM"));
+        index.register(2, generator.parseCode("KLYQV62WLKEKRQQM"));
+        index.refresh(Instant.ofEpochSecond(30));
+
+        Assert.assertEquals(CodeIndex.AMBIGUOUS, index.lookup(707879, Instant.ofEpochSecond(30)));
+
+        long[] accounts = new long[4];
+        Assert.assertEquals(2, index.lookupAll(707879, Instant.ofEpochSecond(30), accounts));
+        Assert.assertEquals(3, accounts[0] + accounts[1]);
+    }
+
+    @Test
+    public void start() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.generateSecret();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try (CodeIndex index = generator.createCodeIndex(1, 1)) {
+            index.register(42, key);
+            index.start(scheduler);
+
+            Assert.assertEquals(42, index.lookup(generator.generateCode(key)));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
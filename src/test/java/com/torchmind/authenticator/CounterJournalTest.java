@@ -0,0 +1,254 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class CounterJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Path> list(Path directory, String glob) throws Exception {
+        List<Path> paths = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(paths::add);
+        }
+
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Test
+    public void persist() throws Exception {
+        Path directory = this.folder.getRoot().toPath();
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(0, journal.get(1));
+            Assert.assertTrue(journal.compareAndSet(1, 0, 5));
+            Assert.assertFalse(journal.compareAndSet(1, 0, 6));
+            Assert.assertTrue(journal.advance(2, 42));
+            Assert.assertFalse(journal.advance(2, 41));
+            Assert.assertFalse(journal.advance(3, 0));
+            Assert.assertEquals(2, journal.size());
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(5, journal.get(1));
+            Assert.assertEquals(42, journal.get(2));
+            Assert.assertEquals(0, journal.get(3));
+        }
+    }
+
+    @Test
+    public void validateCode() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        Path directory = this.folder.getRoot().toPath();
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            CounterState state = journal.state(7);
+
+            Assert.assertTrue(generator.validateCode("707879", key, state, 2));
+            Assert.assertFalse(generator.validateCode("707879", key, state, 2));
+            Assert.assertEquals(2, state.get());
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertFalse(generator.validateCode("565580", key, journal.state(7), 2));
+            Assert.assertTrue(generator.validateCode("981077", key, journal.state(7), 2));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void backwards() throws Exception {
+        try (CounterJournal journal = CounterJournal.open(this.folder.getRoot().toPath())) {
+            journal.compareAndSet(1, 5, 4);
+        }
+    }
+
+    @Test
+    public void compact() throws Exception {
+        Path directory = this.folder.getRoot().toPath();
+
+        try (CounterJournal journal = CounterJournal.builder(directory)
+                .segmentCapacity(16)
+                .compactionThreshold(1000)
+                .open()) {
+            for (int i = 1; i <= 200; ++i) {
+                Assert.assertTrue(journal.advance(i % 10, i));
+            }
+
+            Assert.assertEquals(13, list(directory, "*.log").size());
+            journal.compact();
+
+            Assert.assertEquals(1, list(directory, "*.log").size());
+            Assert.assertEquals(1, list(directory, "*.snapshot").size());
+            Assert.assertEquals(10 * CounterJournal.RECORD_SIZE, Files.size(list(directory, "*.snapshot").get(0)));
+
+            Assert.assertTrue(journal.advance(3, 1000));
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(10, journal.size());
+            Assert.assertEquals(1000, journal.get(3));
+            Assert.assertEquals(200, journal.get(0));
+            Assert.assertEquals(199, journal.get(9));
+        }
+    }
+
+    @Test
+    public void backgroundCompaction() throws Exception {
+        Path directory = this.folder.getRoot().toPath();
+
+        try (CounterJournal journal = CounterJournal.builder(directory)
+                .segmentCapacity(16)
+                .compactionThreshold(2)
+                .open()) {
+            for (int i = 1; i <= 1000; ++i) {
+                journal.advance(i % 10, i);
+            }
+        }
+
+        Assert.assertTrue(list(directory, "*.log").size() < 62);
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            for (int i = 0; i < 10; ++i) {
+                Assert.assertEquals(990 + (i == 0 ? 10 : i), journal.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void tornWrite() throws Exception {
+        Path directory = this.folder.getRoot().toPath();
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            for (int i = 1; i <= 5; ++i) {
+                journal.advance(1, i);
+            }
+        }
+
+        // corrupt the fourth record in order to simulate a partially written page
+        try (FileChannel channel = FileChannel.open(list(directory, "*.log").get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, 42), 3 * CounterJournal.RECORD_SIZE + 8);
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(3, journal.get(1));
+            Assert.assertTrue(journal.advance(1, 4));
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(4, journal.get(1));
+        }
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        Path directory = this.folder.getRoot().toPath();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try (CounterJournal journal = CounterJournal.builder(directory)
+                .segmentCapacity(1024)
+                .compactionThreshold(4)
+                .open()) {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int t = 0; t < 8; ++t) {
+                long accountId = t;
+                futures.add(executor.submit(() -> {
+                    for (long i = 0; i < 2000; ++i) {
+                        Assert.assertTrue(journal.compareAndSet(accountId, i, i + 1));
+                        Assert.assertTrue(journal.advance(accountId + 100, i + 1));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(16, journal.size());
+
+            for (long t = 0; t < 8; ++t) {
+                Assert.assertEquals(2000, journal.get(t));
+                Assert.assertEquals(2000, journal.get(t + 100));
+            }
+        }
+    }
+
+    @Test
+    public void async() throws Exception {
+        Path directory = this.folder.getRoot().toPath();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+
+        try (CounterJournal journal = CounterJournal.builder(directory).segmentCapacity(64).open()) {
+            for (long i = 0; i < 1000; ++i) {
+                futures.add(journal.compareAndSetAsync(i % 10, i / 10, i / 10 + 1));
+            }
+
+            Assert.assertFalse(journal.compareAndSetAsync(0, 0, 1).get());
+            Assert.assertFalse(journal.advanceAsync(0, 100).get());
+            Assert.assertTrue(journal.advanceAsync(0, 101).get());
+        }
+
+        for (CompletableFuture<Boolean> future : futures) {
+            Assert.assertTrue(future.isDone());
+            Assert.assertTrue(future.get());
+        }
+
+        try (CounterJournal journal = CounterJournal.open(directory)) {
+            Assert.assertEquals(101, journal.get(0));
+            Assert.assertEquals(100, journal.get(9));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() throws Exception {
+        CounterJournal journal = CounterJournal.open(this.folder.getRoot().toPath());
+        journal.close();
+        journal.advance(1, 1);
+    }
+}
@@ -50,4 +50,104 @@ public class CounterTokenGeneratorTest {
         Assert.assertEquals("771141", generator.generateCode(key, 3));
         Assert.assertEquals("729385", generator.generateCode(key, 4));
     }
+
+    @Test
+    public void generateCodes() throws Exception {
+        for (TokenGenerator.Engine engine : TokenGenerator.Engine.values()) {
+            CounterTokenGenerator generator = TokenGenerator.builder().engine(engine).createCounterGenerator("Issuer");
+            SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+            int[] codes = new int[6];
+
+            generator.generateCodes(key, 0, 5, codes);
+            Assert.assertArrayEquals(new int[]{565580, 707879, 981077, 771141, 729385, 0}, codes);
+
+            generator.generateCodes(key, 2, 2, codes);
+            Assert.assertArrayEquals(new int[]{981077, 771141, 981077, 771141, 729385, 0}, codes);
+
+            int[] expected = new int[5000];
+            for (int i = 0; i < expected.length; ++i) {
+                expected[i] = generator.generateCodeInt(key, 1000 + i);
+            }
+
+            Assert.assertArrayEquals(expected, generator.generateCodes(key, 1000, expected.length).toArray());
+            Assert.assertArrayEquals(expected, generator.generateCodes(key, 1000, expected.length).parallel().toArray());
+            Assert.assertEquals(0, generator.generateCodes(key, 0, 0).count());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void generateCodesOutOfBounds() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        generator.generateCodes(generator.parseCode("KLYQV62WLKEKRQQM"), 0, 5, new int[4]);
+    }
+
+    @Test
+    public void generateCodeAlternatingKeys() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        SecretKey otherKey = generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ");
+
+        Assert.assertEquals("565580", generator.generateCode(key, 0));
+        Assert.assertEquals("755224", generator.generateCode(otherKey, 0));
+        Assert.assertEquals("707879", generator.generateCode(key, 1));
+        Assert.assertEquals("287082", generator.generateCode(otherKey, 1));
+    }
+
+    @Test
+    public void validateCode() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ");
+
+        Assert.assertEquals(1, generator.validateCode("755224", key, 0, 0));
+        Assert.assertEquals(4, generator.validateCode("969429", key, 0, 3));
+        Assert.assertEquals(-1, generator.validateCode("969429", key, 0, 2));
+        Assert.assertEquals(-1, generator.validateCode("755224", key, 1, 5));
+        Assert.assertEquals(-1, generator.validateCode("75522", key, 0, 5));
+    }
+
+    @Test
+    public void validateCodeState() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ");
+        CounterState state = CounterState.of(0);
+
+        Assert.assertTrue(generator.validateCode("359152", key, state, 5));
+        Assert.assertEquals(3, state.get());
+        Assert.assertFalse(generator.validateCode("359152", key, state, 5));
+        Assert.assertFalse(generator.validateCode("287082", key, state, 5));
+        Assert.assertTrue(generator.validateCode("969429", key, state, 0));
+        Assert.assertEquals(4, state.get());
+    }
+
+    @Test
+    public void resynchronize() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ");
+
+        Assert.assertEquals(10, generator.resynchronize("399871", "520489", key, 0, 100));
+        Assert.assertEquals(-1, generator.resynchronize("399871", "520489", key, 0, 8));
+        Assert.assertEquals(-1, generator.resynchronize("287922", "520489", key, 0, 100));
+
+        CounterState state = CounterState.of(1);
+        Assert.assertTrue(generator.resynchronize("254676", "287922", key, state, 100));
+        Assert.assertEquals(7, state.get());
+    }
+
+    @Test
+    public void resynchronizeMetrics() throws Exception {
+        TokenMetrics metrics = new TokenMetrics();
+        CounterTokenGenerator generator = TokenGenerator.builder()
+                .listener(metrics)
+                .createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ");
+
+        Assert.assertEquals(10, generator.resynchronize("399871", "520489", key, 0, 100));
+        Assert.assertEquals(-1, generator.resynchronize("399871", "520489", key, 0, 8));
+
+        Assert.assertEquals(2, metrics.getValidationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+        Assert.assertEquals(1, metrics.getValidationHits(TokenGenerator.Algorithm.SHA1));
+        Assert.assertEquals(1, metrics.getValidationMisses(TokenGenerator.Algorithm.SHA1));
+        Assert.assertEquals(1, metrics.getOffsetCount(8));
+        Assert.assertEquals(0, metrics.getGenerationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+    }
 }
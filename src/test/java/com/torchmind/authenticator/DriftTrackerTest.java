@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class DriftTrackerTest {
+
+    @Test
+    public void validateCode() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        DriftTracker tracker = generator.createDriftTracker(1, 5);
+
+        Assert.assertEquals(0, tracker.getDrift(1));
+        Assert.assertEquals(ValidationResult.of(-3), tracker.validateCode(1, "565580", key, Instant.ofEpochSecond(90)));
+        Assert.assertEquals(-3, tracker.getDrift(1));
+        Assert.assertEquals(1, tracker.size());
+
+        Assert.assertEquals(ValidationResult.of(-3), tracker.validateCode(1, "707879", key, Instant.ofEpochSecond(120)));
+        Assert.assertEquals(ValidationResult.of(-2), tracker.validateCode(1, "981077", key, Instant.ofEpochSecond(120)));
+        Assert.assertEquals(-2, tracker.getDrift(1));
+
+        // the fallback window widens with each consecutive miss
+        Assert.assertEquals(ValidationResult.of(-1), tracker.validateCode(1, "707879", key, Instant.ofEpochSecond(60)));
+        Assert.assertFalse(tracker.validateCode(1, "729385", key, Instant.ofEpochSecond(0)).isValid());
+        Assert.assertEquals(ValidationResult.of(4), tracker.validateCode(1, "729385", key, Instant.ofEpochSecond(0)));
+        Assert.assertEquals(4, tracker.getDrift(1));
+        Assert.assertEquals(ValidationResult.of(2), tracker.validateCode(1, "729385", key, Instant.ofEpochSecond(60)));
+        Assert.assertEquals(2, tracker.getDrift(1));
+
+        Assert.assertFalse(tracker.validateCode(1, "565580", key, Instant.ofEpochSecond(180)).isValid());
+        Assert.assertFalse(tracker.validateCode(1, "000000", key, Instant.ofEpochSecond(60)).isValid());
+        Assert.assertEquals(2, tracker.getDrift(1));
+    }
+
+    @Test
+    public void expire() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        DriftTracker tracker = generator.createDriftTracker(0, 2);
+
+        Assert.assertTrue(tracker.validateCode(1, "565580", key, Instant.ofEpochSecond(0)).isValid());
+        Assert.assertTrue(tracker.validateCode(2, "981077", key, Instant.ofEpochSecond(90)).isValid());
+        Assert.assertEquals(2, tracker.size());
+
+        Assert.assertEquals(1, tracker.expire(Instant.ofEpochSecond(60)));
+        Assert.assertEquals(0, tracker.getDrift(1));
+        Assert.assertEquals(-1, tracker.getDrift(2));
+    }
+
+    @Test
+    public void computations() throws Exception {
+        CountingGenerator generator = new CountingGenerator();
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        DriftTracker tracker = generator.createDriftTracker(1, 10);
+
+        // accounts of unknown drift are searched across the wide window
+        Assert.assertFalse(tracker.validateCode(1, "000000", key, Instant.ofEpochSecond(300)).isValid());
+        Assert.assertEquals(21, generator.reset());
+
+        Assert.assertTrue(tracker.validateCode(1, "565580", key, Instant.ofEpochSecond(60)).isValid());
+        Assert.assertEquals(-2, tracker.getDrift(1));
+        generator.reset();
+
+        // misses of known accounts are limited to the fallback window which widens per miss
+        Assert.assertFalse(tracker.validateCode(1, "000000", key, Instant.ofEpochSecond(300)).isValid());
+        Assert.assertEquals(7, generator.reset());
+        Assert.assertFalse(tracker.validateCode(1, "000000", key, Instant.ofEpochSecond(300)).isValid());
+        Assert.assertEquals(11, generator.reset());
+        Assert.assertFalse(tracker.validateCode(1, "000000", key, Instant.ofEpochSecond(300)).isValid());
+        Assert.assertEquals(15, generator.reset());
+
+        // matches within the narrow window reset the fallback window
+        Assert.assertEquals(ValidationResult.of(-2), tracker.validateCode(1, "981077", key, Instant.ofEpochSecond(120)));
+        Assert.assertEquals(1, generator.reset());
+        Assert.assertFalse(tracker.validateCode(1, "000000", key, Instant.ofEpochSecond(300)).isValid());
+        Assert.assertEquals(7, generator.reset());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindow() throws Exception {
+        TokenGenerator.builder().createPeriodGenerator("Issuer").createDriftTracker(3, 2);
+    }
+
+    /**
+     * Counts the codes which are computed for a secret key.
+     */
+    private static final class CountingGenerator extends PeriodTokenGenerator {
+
+        private int computations;
+
+        private CountingGenerator() {
+            super(TokenGenerator.Algorithm.SHA1, TokenGenerator.Engine.BUILTIN, 6, "Issuer", Duration.ofSeconds(30), Clock.systemUTC(), MetricsListener.noop());
+        }
+
+        private int reset() {
+            int computations = this.computations;
+            this.computations = 0;
+            return computations;
+        }
+
+        @Override
+        protected int generateCodeValue(SecretKey secretKey, long challenge) {
+            ++this.computations;
+            return super.generateCodeValue(secretKey, challenge);
+        }
+    }
+}
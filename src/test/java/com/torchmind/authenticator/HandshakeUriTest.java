@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class HandshakeUriTest {
+
+    @Test
+    public void parseGenerated() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("My Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        HandshakeUri uri = HandshakeUri.parse(generator.buildUri(key, "Jöhn Doe@example.com").toString());
+        Assert.assertEquals(HandshakeUri.Type.TOTP, uri.getType());
+        Assert.assertEquals("My Issuer", uri.getIssuer());
+        Assert.assertEquals("Jöhn Doe@example.com", uri.getAccountName());
+        Assert.assertArrayEquals(key.getEncoded(), uri.getSecretKey().getEncoded());
+        Assert.assertEquals(TokenGenerator.Algorithm.SHA1, uri.getAlgorithm());
+        Assert.assertEquals(6, uri.getDigits());
+        Assert.assertEquals(Duration.ofSeconds(30), uri.getPeriod());
+
+        PeriodTokenGenerator parsed = (PeriodTokenGenerator) uri.createGenerator();
+        Assert.assertEquals("My Issuer", parsed.getIssuer());
+        Assert.assertEquals("565580", parsed.generateCode(uri.getSecretKey(), Instant.ofEpochSecond(0)));
+    }
+
+    @Test
+    public void parseGeneratedCounter() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder()
+                .algorithm(TokenGenerator.Algorithm.SHA256)
+                .digits(8)
+                .createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("MZXW6===");
+
+        HandshakeUri uri = HandshakeUri.parse(generator.buildUri(key, "AccountName", 42).toString());
+        Assert.assertEquals(HandshakeUri.Type.HOTP, uri.getType());
+        Assert.assertEquals("Issuer", uri.getIssuer());
+        Assert.assertEquals("AccountName", uri.getAccountName());
+        Assert.assertArrayEquals(key.getEncoded(), uri.getSecretKey().getEncoded());
+        Assert.assertEquals("HmacSHA256", uri.getSecretKey().getAlgorithm());
+        Assert.assertEquals(TokenGenerator.Algorithm.SHA256, uri.getAlgorithm());
+        Assert.assertEquals(8, uri.getDigits());
+        Assert.assertEquals(42, uri.getCounter());
+        Assert.assertTrue(uri.createGenerator() instanceof CounterTokenGenerator);
+    }
+
+    @Test
+    public void parseForeign() throws Exception {
+        HandshakeUri uri = HandshakeUri.parse("otpauth://totp/ACME%20Co:john.doe@email.com?secret=HXDMVJECJJWSRB3HWIZR4IFUGFTMXBOZ&issuer=ACME%20Co&algorithm=sha256&digits=8&period=60");
+        Assert.assertEquals("ACME Co", uri.getIssuer());
+        Assert.assertEquals("john.doe@email.com", uri.getAccountName());
+        Assert.assertEquals(20, uri.getSecretKey().getEncoded().length);
+        Assert.assertEquals(TokenGenerator.Algorithm.SHA256, uri.getAlgorithm());
+        Assert.assertEquals(8, uri.getDigits());
+        Assert.assertEquals(Duration.ofSeconds(60), uri.getPeriod());
+
+        uri = HandshakeUri.parse("OTPAUTH://TOTP/Example%3A%20alice@google.com?secret=JBSWY3DPEHPK3PXP&unknown=value");
+        Assert.assertEquals("Example", uri.getIssuer());
+        Assert.assertEquals("alice@google.com", uri.getAccountName());
+        Assert.assertArrayEquals(new byte[]{'H', 'e', 'l', 'l', 'o', '!', (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF}, uri.getSecretKey().getEncoded());
+
+        uri = HandshakeUri.parse("otpauth://totp/alice@google.com?secret=JBSWY3DPEHPK3PXP&issuer=Example");
+        Assert.assertEquals("Example", uri.getIssuer());
+        Assert.assertEquals("alice@google.com", uri.getAccountName());
+
+        uri = HandshakeUri.parse("otpauth://totp/alice@google.com?secret=jbswy3dpehpk3pxp");
+        Assert.assertNull(uri.getIssuer());
+        Assert.assertEquals("", uri.createGenerator().getIssuer());
+        Assert.assertFalse(uri.toString().contains("JBSWY3DPEHPK3PXP"));
+    }
+
+    @Test
+    public void parsePadding() throws Exception {
+        String[] secrets = {"MZXW6", "MZXW6===", "MZXW6%3D%3d%3D", "MZXW6%253D%253D%253D", "MZXW6=%3D%253D"};
+
+        for (String secret : secrets) {
+            HandshakeUri uri = HandshakeUri.parse("otpauth://totp/Issuer:Account?secret=" + secret + "&issuer=Issuer");
+            Assert.assertEquals("foo", new String(uri.getSecretKey().getEncoded(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void parseRegion() throws Exception {
+        String line = "1\tprefix otpauth://hotp/Issuer:AccountName?secret=KLYQV62WLKEKRQQM&counter=7 suffix";
+        int start = line.indexOf("otpauth");
+        int end = line.indexOf(" suffix");
+
+        HandshakeUri uri = HandshakeUri.parse(line, start, end);
+        Assert.assertEquals(7, uri.getCounter());
+        Assert.assertEquals("AccountName", uri.getAccountName());
+    }
+
+    @Test
+    public void parseMalformed() throws Exception {
+        String[] uris = {
+                "",
+                "https://totp/Issuer:Account?secret=KLYQV62WLKEKRQQM",
+                "otpauth://motp/Issuer:Account?secret=KLYQV62WLKEKRQQM",
+                "otpauth://totp/Issuer:Account",
+                "otpauth://totp/Issuer:?secret=KLYQV62WLKEKRQQM",
+                "otpauth://totp/Issuer:Account?issuer=Issuer",
+                "otpauth://totp/Issuer:Account?secret=",
+                "otpauth://totp/Issuer:Account?secret=KLYQV62WLKEKRQQ1",
+                "otpauth://totp/Issuer:Account?secret=JBSW%20Y3DP",
+                "otpauth://totp/Issuer:Account?secret=ABCD%41EF",
+                "otpauth://totp/Issuer:Account?secret=MZXW6===Y",
+                "otpauth://totp/Issuer:Account?secret=MZXW6%3D%3DA",
+                "otpauth://totp/Issuer:Account?secret=KLYQV62WLKEKRQQM&digits=7",
+                "otpauth://totp/Issuer:Account?secret=KLYQV62WLKEKRQQM&digits=six",
+                "otpauth://totp/Issuer:Account?secret=KLYQV62WLKEKRQQM&period=0",
+                "otpauth://totp/Issuer:Account?secret=KLYQV62WLKEKRQQM&algorithm=MD5",
+                "otpauth://totp/Iss%ZZuer:Account?secret=KLYQV62WLKEKRQQM",
+                "otpauth://hotp/Issuer:Account?secret=KLYQV62WLKEKRQQM"
+        };
+
+        for (String uri : uris) {
+            try {
+                HandshakeUri.parse(uri);
+                Assert.fail("Accepted malformed URI " + uri);
+            } catch (IllegalArgumentException ignore) {
+            }
+        }
+    }
+
+    @Test
+    public void importFile() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        Path path = Files.createTempFile("importer", ".tsv");
+
+        try {
+            generator.createProvisioner()
+                    .parallelism(2)
+                    .bufferSize(4096)
+                    .provision(path, 0, 5000, (id) -> "account-" + id);
+            Files.write(path, "\r\n\nnot a uri\r\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+            Set<String> accounts = ConcurrentHashMap.newKeySet();
+            ImportReport report = HandshakeUri.createImporter()
+                    .parallelism(4)
+                    .chunkSize(1000)
+                    .importFile(path, (uri) -> {
+                        Assert.assertEquals("Issuer", uri.getIssuer());
+                        Assert.assertEquals(10, uri.getSecretKey().getEncoded().length);
+                        Assert.assertTrue(accounts.add(uri.getAccountName()));
+                    });
+
+            Assert.assertEquals(5000, report.getImported());
+            Assert.assertEquals(1, report.getRejected());
+            Assert.assertEquals(Files.size(path), report.getBytes());
+            Assert.assertEquals(5000, accounts.size());
+            Assert.assertTrue(accounts.contains("account-0"));
+            Assert.assertTrue(accounts.contains("account-4999"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void importChunkSize() throws Exception {
+        HandshakeImporter importer = HandshakeUri.createImporter();
+        Assert.assertEquals(Integer.MAX_VALUE - 65537, importer.chunkSize(Integer.MAX_VALUE - 65537).chunkSize());
+
+        for (int chunkSize : new int[]{0, Integer.MAX_VALUE - 65536, Integer.MAX_VALUE}) {
+            try {
+                importer.chunkSize(chunkSize);
+                Assert.fail("Accepted chunk size " + chunkSize);
+            } catch (IllegalArgumentException ignore) {
+            }
+        }
+    }
+
+    @Test
+    public void importLongLine() throws Exception {
+        Path path = Files.createTempFile("importer", ".txt");
+
+        try {
+            StringBuilder content = new StringBuilder();
+            content.append("otpauth://totp/A?secret=KLYQV62WLKEKRQQM\n");
+            for (int i = 0; i < 100_000; ++i) {
+                content.append('x');
+            }
+            content.append("\notpauth://totp/B?secret=KLYQV62WLKEKRQQM\n");
+            content.append("otpauth://totp/C?secret=KLYQV62WLKEKRQQM");
+            Files.write(path, content.toString().getBytes(StandardCharsets.US_ASCII));
+
+            Set<String> accounts = ConcurrentHashMap.newKeySet();
+            ImportReport report = HandshakeUri.createImporter()
+                    .parallelism(1)
+                    .chunkSize(10)
+                    .importFile(path, (uri) -> accounts.add(uri.getAccountName()));
+
+            Assert.assertEquals(3, report.getImported());
+            Assert.assertEquals(1, report.getRejected());
+            Assert.assertTrue(accounts.contains("A") && accounts.contains("B") && accounts.contains("C"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class HmacEngineTest {
+
+    private static final long[] TIMESTAMPS = {59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L};
+
+    private static void verify(TokenGenerator.Algorithm algorithm, String seed, String... codes) {
+        SecretKey key = new SecretKeySpec(seed.getBytes(StandardCharsets.US_ASCII), "Hmac" + algorithm.name());
+
+        for (TokenGenerator.Engine engine : TokenGenerator.Engine.values()) {
+            PeriodTokenGenerator generator = TokenGenerator.builder()
+                    .algorithm(algorithm)
+                    .engine(engine)
+                    .digits(8)
+                    .createPeriodGenerator("Issuer");
+
+            for (int i = 0; i < TIMESTAMPS.length; ++i) {
+                Assert.assertEquals(engine + "/" + algorithm, codes[i], generator.generateCode(key, Instant.ofEpochSecond(TIMESTAMPS[i])));
+            }
+        }
+    }
+
+    @Test
+    public void rfc6238() throws Exception {
+        verify(TokenGenerator.Algorithm.SHA1, "12345678901234567890",
+                "94287082", "07081804", "14050471", "89005924", "69279037", "65353130");
+        verify(TokenGenerator.Algorithm.SHA256, "12345678901234567890123456789012",
+                "46119246", "68084774", "67062674", "91819424", "90698825", "77737706");
+        verify(TokenGenerator.Algorithm.SHA512, "1234567890123456789012345678901234567890123456789012345678901234",
+                "90693936", "25091201", "99943326", "93441116", "38618901", "47863826");
+    }
+
+    @Test
+    public void matchesJca() throws Exception {
+        Random random = new Random(42);
+
+        for (TokenGenerator.Algorithm algorithm : TokenGenerator.Algorithm.values()) {
+            HmacEngine jca = HmacEngine.create(TokenGenerator.Engine.JCA, algorithm);
+            HmacEngine builtin = HmacEngine.create(TokenGenerator.Engine.BUILTIN, algorithm);
+
+            for (int length : new int[]{1, 10, 64, 65, 128, 129, 200}) {
+                byte[] encoded = new byte[length];
+                random.nextBytes(encoded);
+                SecretKey key = new SecretKeySpec(encoded, "Hmac" + algorithm.name());
+
+                for (int i = 0; i < 16; ++i) {
+                    long challenge = random.nextLong();
+                    int expected = jca.truncate(key, challenge);
+                    Assert.assertEquals(algorithm + "/" + length, expected, builtin.truncate(key, challenge));
+                    Assert.assertEquals(algorithm + "/" + length, expected, jca.truncate(encoded, 0, length, challenge));
+                    Assert.assertEquals(algorithm + "/" + length, expected, builtin.truncate(encoded, 0, length, challenge));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prepare() throws Exception {
+        for (TokenGenerator.Algorithm algorithm : TokenGenerator.Algorithm.values()) {
+            JcaHmacEngine engine = (JcaHmacEngine) HmacEngine.create(TokenGenerator.Engine.JCA, algorithm);
+            Assert.assertNull(engine.getProvider());
+
+            engine.prepare();
+            Assert.assertEquals(Mac.getInstance("Hmac" + algorithm.name()).getProvider(), engine.getProvider());
+
+            byte[] key = new byte[20];
+            int[] result = new int[1];
+            Thread thread = new Thread(() -> {
+                try {
+                    result[0] = engine.truncate(key, 0, key.length, 42);
+                } catch (Exception ex) {
+                    throw new AssertionError(ex);
+                }
+            });
+            thread.start();
+            thread.join();
+
+            Assert.assertEquals(HmacEngine.create(TokenGenerator.Engine.BUILTIN, algorithm).truncate(key, 0, key.length, 42), result[0]);
+            Assert.assertEquals(result[0], engine.truncate(key, 0, key.length, 42));
+        }
+    }
+}
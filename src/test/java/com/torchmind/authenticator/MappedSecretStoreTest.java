@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class MappedSecretStoreTest {
+
+    @Test
+    public void persist() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        long accountId = MappedSecretStore.RECORDS_PER_SEGMENT + 5;
+        Path path = Files.createTempFile("secrets", ".dat");
+
+        try {
+            try (MappedSecretStore store = MappedSecretStore.open(path, accountId + 1)) {
+                Assert.assertFalse(store.contains(accountId));
+                store.put(accountId, key);
+                store.put(1, generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ"));
+            }
+
+            try (MappedSecretStore store = MappedSecretStore.open(path)) {
+                Assert.assertEquals(accountId + 1, store.capacity());
+                Assert.assertTrue(store.contains(accountId));
+
+                byte[] buffer = new byte[MappedSecretStore.MAXIMUM_KEY_LENGTH];
+                Assert.assertEquals(10, store.read(accountId, buffer));
+                Assert.assertEquals(20, store.read(1, buffer));
+
+                store.remove(accountId);
+                Assert.assertFalse(store.contains(accountId));
+                Assert.assertEquals(0, store.read(accountId, buffer));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void verifyCode() throws Exception {
+        Path path = Files.createTempFile("secrets", ".dat");
+
+        try (MappedSecretStore store = MappedSecretStore.open(path, 16)) {
+            for (TokenGenerator.Engine engine : TokenGenerator.Engine.values()) {
+                PeriodTokenGenerator generator = TokenGenerator.builder().engine(engine).createPeriodGenerator("Issuer");
+                store.put(3, generator.parseCode("KLYQV62WLKEKRQQM"));
+                store.put(4, generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ"));
+
+                Assert.assertTrue(generator.validateCode("707879", store, 3, Instant.ofEpochSecond(30), 0));
+                Assert.assertFalse(generator.validateCode("707879", store, 4, Instant.ofEpochSecond(30), 0));
+                Assert.assertEquals(ValidationResult.of(-1), generator.verifyCode(565580, store, 3, Instant.ofEpochSecond(30), 1, 1));
+                Assert.assertEquals(ValidationResult.of(1), generator.verifyCode(981077, store, 3, Instant.ofEpochSecond(30), 1, 1));
+                Assert.assertFalse(generator.validateCode("707879", store, 5, Instant.ofEpochSecond(30), 1));
+                Assert.assertArrayEquals(new byte[MappedSecretStore.MAXIMUM_KEY_LENGTH], MappedSecretStore.scratch());
+
+                store.put(3, generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ"));
+                Assert.assertFalse(generator.validateCode("707879", store, 3, Instant.ofEpochSecond(30), 0));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void capacity() throws Exception {
+        Path path = Files.createTempFile("secrets", ".dat");
+
+        try (MappedSecretStore store = MappedSecretStore.open(path, 16)) {
+            store.contains(16);
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
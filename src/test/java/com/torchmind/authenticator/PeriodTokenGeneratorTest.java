@@ -19,7 +19,10 @@ package com.torchmind.authenticator;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.CharBuffer;
 import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.crypto.SecretKey;
 
@@ -56,4 +59,161 @@ public class PeriodTokenGeneratorTest {
         Assert.assertEquals("981077", generator.generateCode(key, Instant.ofEpochSecond(80)));
         Assert.assertEquals("981077", generator.generateCode(key, Instant.ofEpochSecond(89)));
     }
+
+    @Test
+    public void generateCodeInt() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        Assert.assertEquals(565580, generator.generateCodeInt(key, Instant.ofEpochSecond(1)));
+        Assert.assertEquals(707879, generator.generateCodeInt(key, Instant.ofEpochSecond(30)));
+
+        char[] buffer = new char[8];
+        generator.formatCode(generator.generateCodeInt(key, Instant.ofEpochSecond(60)), buffer, 1);
+        Assert.assertEquals("981077", new String(buffer, 1, 6));
+
+        CharBuffer charBuffer = CharBuffer.allocate(6);
+        generator.formatCode(42, charBuffer);
+        charBuffer.flip();
+        Assert.assertEquals("000042", charBuffer.toString());
+        Assert.assertEquals("000042", generator.formatCode(42));
+    }
+
+    @Test
+    public void validateCode() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        Assert.assertTrue(generator.validateCode("707879", key, Instant.ofEpochSecond(30), 0));
+        Assert.assertTrue(generator.validateCode("565580", key, Instant.ofEpochSecond(30), 1));
+        Assert.assertTrue(generator.validateCode("981077", key, Instant.ofEpochSecond(30), 1));
+        Assert.assertFalse(generator.validateCode("981077", key, Instant.ofEpochSecond(30), 0));
+        Assert.assertFalse(generator.validateCode("98107", key, Instant.ofEpochSecond(30), 1));
+        Assert.assertFalse(generator.validateCode("98107a", key, Instant.ofEpochSecond(30), 1));
+
+        Assert.assertTrue(generator.validateCode(new StringBuilder("707879"), key, Instant.ofEpochSecond(30), 0));
+        Assert.assertTrue(generator.validateCode(707879, key, Instant.ofEpochSecond(30), 0));
+        Assert.assertFalse(generator.validateCode(707878, key, Instant.ofEpochSecond(30), 1));
+    }
+
+    @Test
+    public void verifyCode() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        Assert.assertEquals(0, generator.verifyCode("707879", key, Instant.ofEpochSecond(30), 1, 1).getOffset());
+        Assert.assertEquals(-1, generator.verifyCode("565580", key, Instant.ofEpochSecond(30), 1, 1).getOffset());
+        Assert.assertEquals(1, generator.verifyCode("981077", key, Instant.ofEpochSecond(30), 1, 1).getOffset());
+        Assert.assertEquals(2, generator.verifyCode("771141", key, Instant.ofEpochSecond(30), 0, 2).getOffset());
+
+        Assert.assertFalse(generator.verifyCode("565580", key, Instant.ofEpochSecond(30), 0, 2).isValid());
+        Assert.assertFalse(generator.verifyCode("771141", key, Instant.ofEpochSecond(30), 2, 1).isValid());
+        Assert.assertFalse(generator.verifyCode("77114", key, Instant.ofEpochSecond(30), 2, 2).isValid());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void verifyCodeNegativeWindow() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        generator.verifyCode("707879", key, Instant.ofEpochSecond(30), -1, 1);
+    }
+
+    @Test
+    public void verifyCodes() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        int[] expected = {565580, 707879, 981077, 771141};
+
+        SecretKey[] keys = new SecretKey[2000];
+        int[] codes = new int[keys.length];
+        long[] timestamps = new long[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = i % 2 == 0 ? key : generator.parseCode("KLYQV62WLKEKRQQM");
+            codes[i] = expected[i % expected.length];
+            timestamps[i] = 30;
+        }
+
+        int[] offsets = new int[keys.length];
+        generator.verifyCodes(keys, codes, timestamps, 1, 1, offsets);
+        boolean[] results = new boolean[keys.length];
+        generator.validateCodes(keys, codes, timestamps, 1, results);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        int[] executorOffsets = new int[keys.length];
+        try {
+            generator.verifyCodes(keys, codes, timestamps, 1, 1, executorOffsets, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < keys.length; ++i) {
+            int expectedOffset = i % expected.length == 3 ? ValidationResult.NO_MATCH : i % expected.length - 1;
+
+            Assert.assertEquals(expectedOffset, offsets[i]);
+            Assert.assertEquals(expectedOffset, executorOffsets[i]);
+            Assert.assertEquals(expectedOffset != ValidationResult.NO_MATCH, results[i]);
+        }
+    }
+
+    @Test
+    public void generateCodes() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        int[] codes = new int[4];
+
+        generator.generateCodes(key, Instant.ofEpochSecond(59), 4, codes);
+        Assert.assertArrayEquals(new int[]{707879, 981077, 771141, 729385}, codes);
+        Assert.assertArrayEquals(codes, generator.generateCodes(key, Instant.ofEpochSecond(30), 4).toArray());
+    }
+
+    @Test
+    public void rawKey() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        byte[] key = generator.parseCode("KLYQV62WLKEKRQQM").getEncoded();
+        byte[] buffer = new byte[key.length + 4];
+        System.arraycopy(key, 0, buffer, 2, key.length);
+
+        Assert.assertEquals(771141, generator.generateCodeInt(buffer, 2, key.length, 90));
+        Assert.assertEquals(ValidationResult.of(-2), generator.verifyCode(707879, buffer, 2, key.length, 90, 2, 0));
+        Assert.assertFalse(generator.verifyCode(707879, buffer, 2, key.length, 90, 1, 1).isValid());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rawKeyOutOfBounds() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        generator.verifyCode(0, new byte[10], 4, 10, 0, 1, 1);
+    }
+
+    @Test
+    public void warmUp() throws Exception {
+        for (TokenGenerator.Engine engine : TokenGenerator.Engine.values()) {
+            TokenMetrics metrics = new TokenMetrics();
+            PeriodTokenGenerator generator = TokenGenerator.builder()
+                    .engine(engine)
+                    .listener(metrics)
+                    .clock(new MutableClock(90_000))
+                    .warmUpIterations(1000)
+                    .createPeriodGenerator("Issuer");
+
+            Assert.assertEquals(0, metrics.getGenerationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+            Assert.assertEquals(0, metrics.getValidationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+            Assert.assertEquals("771141", generator.generateCode(generator.parseCode("KLYQV62WLKEKRQQM")));
+            Assert.assertEquals(1, metrics.getGenerationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+        }
+    }
+
+    @Test
+    public void eager() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder()
+                .eager(true)
+                .createCounterGenerator("Issuer");
+
+        Assert.assertEquals("565580", generator.generateCode(generator.parseCode("KLYQV62WLKEKRQQM"), 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void warmUpNegativeIterations() throws Exception {
+        TokenGenerator.builder().warmUpIterations(-1);
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ReplayGuardTest {
+
+    @Test
+    public void validateCode() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        ReplayGuard guard = generator.createReplayGuard(1, 1);
+
+        Assert.assertEquals(0, guard.validateCode(1, "707879", key, Instant.ofEpochSecond(30)).getOffset());
+        Assert.assertFalse(guard.validateCode(1, "707879", key, Instant.ofEpochSecond(31)).isValid());
+        Assert.assertFalse(guard.validateCode(1, "565580", key, Instant.ofEpochSecond(32)).isValid());
+        Assert.assertEquals(0, guard.validateCode(2, "707879", key, Instant.ofEpochSecond(33)).getOffset());
+        Assert.assertEquals(1, guard.validateCode(1, "981077", key, Instant.ofEpochSecond(34)).getOffset());
+        Assert.assertFalse(guard.validateCode(1, "981077", key, Instant.ofEpochSecond(60)).isValid());
+    }
+
+    @Test
+    public void expire() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        ReplayGuard guard = generator.createReplayGuard(1, 0);
+
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(guard.validateCode(i, "707879", key, Instant.ofEpochSecond(30)).isValid());
+        }
+        Assert.assertEquals(100, guard.size());
+
+        Assert.assertTrue(guard.validateCode(100, "771141", key, Instant.ofEpochSecond(90)).isValid());
+
+        // expired records are discarded incrementally by subsequent validations
+        for (int i = 0; i < 1024 && guard.size() > 1; ++i) {
+            Assert.assertFalse(guard.validateCode(100, "000000", key, Instant.ofEpochSecond(90)).isValid());
+        }
+        Assert.assertEquals(1, guard.size());
+    }
+
+    @Test
+    public void expiredReplay() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        ReplayGuard guard = generator.createReplayGuard(1, 0);
+
+        Assert.assertTrue(guard.validateCode(1, "707879", key, Instant.ofEpochSecond(30)).isValid());
+        Assert.assertTrue(guard.validateCode(2, "729385", key, Instant.ofEpochSecond(120)).isValid());
+        for (int i = 0; i < 1024 && guard.size() > 1; ++i) {
+            guard.validateCode(2, "000000", key, Instant.ofEpochSecond(120));
+        }
+
+        // the record of the first account has been discarded and thus its code is rejected
+        Assert.assertFalse(guard.validateCode(1, "707879", key, Instant.ofEpochSecond(30)).isValid());
+        Assert.assertTrue(guard.validateCode(1, "771141", key, Instant.ofEpochSecond(120)).isValid());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class SecretProvisionerTest {
+
+    @Test
+    public void provision() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        Path path = Files.createTempFile("provisioner", ".tsv");
+
+        try {
+            ProvisioningReport report = generator.createProvisioner()
+                    .parallelism(4)
+                    .bufferSize(4096)
+                    .provision(path, 1000, 10000, (id) -> "account-" + id);
+
+            List<String> lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+            Assert.assertEquals(10000, report.getRecords());
+            Assert.assertEquals(Files.size(path), report.getBytes());
+            Assert.assertEquals(10000, lines.size());
+
+            Set<Long> accounts = new HashSet<>();
+            Set<String> secrets = new HashSet<>();
+
+            for (String line : lines) {
+                String[] fields = line.split("\t");
+                Assert.assertEquals(4, fields.length);
+
+                long accountId = Long.parseLong(fields[0]);
+                Assert.assertTrue(accountId >= 1000 && accountId < 11000);
+                Assert.assertTrue(accounts.add(accountId));
+                Assert.assertTrue(secrets.add(fields[1]));
+
+                SecretKey key = generator.parseCode(fields[2]);
+                StringBuilder hex = new StringBuilder();
+                for (byte b : key.getEncoded()) {
+                    hex.append(String.format("%02x", b));
+                }
+
+                Assert.assertEquals(fields[1], hex.toString());
+                Assert.assertEquals(generator.buildUri(key, "account-" + accountId).toString(), fields[3]);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void provisionOversizedRecord() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        Path path = Files.createTempFile("provisioner", ".tsv");
+
+        try {
+            generator.createProvisioner()
+                    .bufferSize(64)
+                    .provision(path, 0, 1, (id) -> "account-" + id);
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class SecretTableTest {
+
+    @Test
+    public void putAndVerify() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        SecretTable table = new SecretTable();
+
+        int slot = table.put(42, key);
+        Assert.assertEquals(slot, table.slot(42));
+        Assert.assertTrue(table.contains(42));
+        Assert.assertFalse(table.contains(43));
+        Assert.assertEquals(1, table.size());
+
+        Assert.assertEquals(565580, generator.generateCodeInt(table, 42, 0));
+        Assert.assertEquals(707879, generator.generateCodeIntAt(table, slot, 30));
+
+        Assert.assertEquals(0, generator.verifyCode(565580, table, 42, Instant.ofEpochSecond(0), 1, 1).getOffset());
+        Assert.assertEquals(1, generator.verifyCodeAt(707879, table, slot, Instant.ofEpochSecond(0), 1, 1).getOffset());
+        Assert.assertFalse(generator.verifyCode(565580, table, 43, Instant.ofEpochSecond(0), 1, 1).isValid());
+        Assert.assertFalse(generator.verifyCode(123456, table, 42, Instant.ofEpochSecond(0), 1, 1).isValid());
+
+        Assert.assertTrue(generator.validateCode(generator.generateCode(key), table, 42, 1));
+        Assert.assertFalse(generator.validateCode("abcdef", table, 42, 1));
+    }
+
+    @Test
+    public void counter() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder()
+                .engine(TokenGenerator.Engine.BUILTIN)
+                .createCounterGenerator("Issuer");
+        SecretTable table = new SecretTable();
+        int slot = table.add(generator.parseCode("KLYQV62WLKEKRQQM"));
+        table.put(7, generator.parseCode("KLYQV62WLKEKRQQM"));
+
+        Assert.assertEquals(981077, generator.generateCodeInt(table, 7, 2));
+        Assert.assertEquals(771141, generator.generateCodeIntAt(table, slot, 3));
+        Assert.assertEquals(4, generator.validateCode(771141, table, 7, 1, 2));
+        Assert.assertEquals(-1, generator.validateCode(771141, table, 7, 0, 2));
+        Assert.assertEquals(5, generator.validateCodeAt(729385, table, slot, 4, 0));
+        Assert.assertEquals(-1, generator.validateCode(729385, table, 8, 4, 0));
+    }
+
+    @Test
+    public void replaceAndRemove() throws Exception {
+        SecretTable table = new SecretTable();
+        byte[] destination = new byte[SecretTable.MAXIMUM_KEY_LENGTH];
+
+        int first = table.put(1, new byte[]{1, 2, 3});
+        int second = table.put(1, new byte[]{4, 5, 6, 7});
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(second, table.slot(1));
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals(0, table.read(first, destination));
+        Assert.assertEquals(4, table.read(second, destination));
+        Assert.assertEquals(7, destination[3]);
+
+        // released slots are reused for keys of the same size
+        Assert.assertEquals(first, table.put(2, new byte[]{8, 9}));
+
+        Assert.assertTrue(table.remove(1));
+        Assert.assertFalse(table.remove(1));
+        Assert.assertEquals(SecretTable.NO_SLOT, table.slot(1));
+        Assert.assertEquals(0, table.read(second, destination));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void addAndFree() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretTable table = new SecretTable();
+        int slot = table.add(generator.parseCode("KLYQV62WLKEKRQQM"));
+
+        table.free(slot);
+        Assert.assertEquals(0, table.size());
+        Assert.assertFalse(generator.verifyCodeAt(565580, table, slot, Instant.ofEpochSecond(0), 0, 0).isValid());
+
+        try {
+            table.free(slot);
+            Assert.fail("Released slot twice");
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        try {
+            generator.generateCodeIntAt(table, slot, 0);
+            Assert.fail("Generated code for unused slot");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void slabs() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretTable table = new SecretTable();
+        byte[] key = new byte[20];
+
+        for (int i = 0; i < 100_000; ++i) {
+            key[0] = (byte) i;
+            key[1] = (byte) (i >>> 8);
+            key[2] = (byte) (i >>> 16);
+            table.put(i, key);
+        }
+
+        // 20 byte keys occupy 24 bytes each and thus 100,000 keys require three slabs
+        Assert.assertEquals(100_000, table.size());
+        Assert.assertEquals(3L * SecretTable.SLAB_SIZE, table.slabBytes());
+
+        byte[] destination = new byte[SecretTable.MAXIMUM_KEY_LENGTH];
+        for (int i = 0; i < 100_000; i += 997) {
+            Assert.assertEquals(20, table.read(table.slot(i), destination));
+            Assert.assertEquals((byte) (i >>> 16), destination[2]);
+
+            key[0] = (byte) i;
+            key[1] = (byte) (i >>> 8);
+            key[2] = (byte) (i >>> 16);
+            Assert.assertEquals(generator.generateCodeInt(key, 0, key.length, 0), generator.generateCodeInt(table, i, 0));
+        }
+    }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        SecretTable table = new SecretTable();
+        int slot = table.put(-1, new byte[10]);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger failures = new AtomicInteger();
+
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                if (table.slot(-1) != slot) {
+                    failures.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        try {
+            for (int i = 0; i < 100_000; ++i) {
+                table.put(i, new byte[10]);
+
+                if (i % 3 == 0) {
+                    table.remove(i / 2);
+                }
+            }
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(slot, table.slot(-1));
+        Assert.assertEquals(SecretTable.NO_SLOT, table.slot(0));
+        Assert.assertTrue(table.contains(99_999));
+    }
+
+    @Test
+    public void invalidKeys() throws Exception {
+        SecretTable table = new SecretTable();
+
+        try {
+            table.add(new byte[0]);
+            Assert.fail("Accepted empty key");
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        try {
+            table.put(1, new byte[SecretTable.MAXIMUM_KEY_LENGTH + 1]);
+            Assert.fail("Accepted oversized key");
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        try {
+            table.put(Long.MIN_VALUE, new byte[10]);
+            Assert.fail("Accepted reserved account");
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(0, table.slabBytes());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void unallocatedSlot() throws Exception {
+        new SecretTable().read(0, new byte[SecretTable.MAXIMUM_KEY_LENGTH]);
+    }
+}
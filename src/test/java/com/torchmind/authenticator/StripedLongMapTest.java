@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class StripedLongMapTest {
+
+    @Test
+    public void putAndGet() throws Exception {
+        StripedLongMap map = new StripedLongMap(4);
+
+        for (long i = -5000; i < 5000; ++i) {
+            map.put(i, i * 2);
+        }
+
+        Assert.assertEquals(10000, map.size());
+        for (long i = -5000; i < 5000; ++i) {
+            Assert.assertEquals(i * 2, map.get(i, -1));
+        }
+        Assert.assertEquals(-1, map.get(5000, -1));
+    }
+
+    @Test
+    public void advance() throws Exception {
+        StripedLongMap map = new StripedLongMap(1);
+
+        Assert.assertTrue(map.advance(42, 5));
+        Assert.assertFalse(map.advance(42, 5));
+        Assert.assertFalse(map.advance(42, 4));
+        Assert.assertTrue(map.advance(42, 6));
+        Assert.assertEquals(6, map.get(42, -1));
+    }
+
+    @Test
+    public void compareAndSet() throws Exception {
+        StripedLongMap map = new StripedLongMap(1);
+
+        Assert.assertFalse(map.compareAndSet(42, 1, 2, 0));
+        Assert.assertTrue(map.compareAndSet(42, 0, 2, 0));
+        Assert.assertFalse(map.compareAndSet(42, 0, 3, 0));
+        Assert.assertTrue(map.compareAndSet(42, 2, 3, 0));
+        Assert.assertEquals(3, map.get(42, -1));
+    }
+
+    @Test
+    public void forEach() throws Exception {
+        StripedLongMap map = new StripedLongMap(8);
+
+        for (long i = 0; i < 1000; ++i) {
+            map.put(i, i * 2);
+        }
+
+        long[] sum = new long[2];
+        map.forEach((k, v) -> {
+            Assert.assertEquals(k * 2, v);
+            sum[0] += k;
+            ++sum[1];
+        });
+
+        Assert.assertEquals(499500, sum[0]);
+        Assert.assertEquals(1000, sum[1]);
+    }
+
+    @Test
+    public void remove() throws Exception {
+        StripedLongMap map = new StripedLongMap(1);
+
+        for (long i = 0; i < 1000; ++i) {
+            map.put(i, i * 2);
+        }
+
+        for (long i = 0; i < 1000; i += 3) {
+            Assert.assertEquals(i * 2, map.remove(i, -1));
+        }
+
+        Assert.assertEquals(-1, map.remove(0, -1));
+        Assert.assertEquals(666, map.size());
+
+        for (long i = 0; i < 1000; ++i) {
+            Assert.assertEquals(i % 3 == 0 ? -1 : i * 2, map.get(i, -1));
+        }
+    }
+
+    @Test
+    public void removeIf() throws Exception {
+        StripedLongMap map = new StripedLongMap(8);
+
+        for (long i = 0; i < 1000; ++i) {
+            map.put(i, i);
+        }
+
+        Assert.assertEquals(900, map.removeIf((v) -> v >= 100));
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals(99, map.get(99, -1));
+        Assert.assertEquals(-1, map.get(100, -1));
+    }
+
+    @Test
+    public void removeIfStripe() throws Exception {
+        StripedLongMap map = new StripedLongMap(8);
+
+        for (long i = 0; i < 1000; ++i) {
+            map.put(i, i);
+        }
+
+        int removed = 0;
+        for (int i = 0; i < map.stripeCount(); ++i) {
+            removed += map.removeIf(i, (v) -> v >= 100);
+            Assert.assertEquals(1000 - removed, map.size());
+        }
+
+        Assert.assertEquals(8, map.stripeCount());
+        Assert.assertEquals(900, removed);
+        Assert.assertEquals(-1, map.get(100, -1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reservedKey() throws Exception {
+        new StripedLongMap().put(Long.MIN_VALUE, 1);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TimeStepSourceTest {
+
+    @Test
+    public void getCurrentStep() throws Exception {
+        MutableClock clock = new MutableClock(0);
+        TimeStepSource source = new TimeStepSource(clock, 30);
+
+        Assert.assertEquals(0, source.getCurrentStep());
+
+        clock.setMillis(29_999);
+        Assert.assertEquals(0, source.getCurrentStep());
+
+        clock.setMillis(30_000);
+        Assert.assertEquals(1, source.getCurrentStep());
+
+        clock.setMillis(3_600_000);
+        Assert.assertEquals(120, source.getCurrentStep());
+
+        // backwards adjustments
+        clock.setMillis(59_999);
+        Assert.assertEquals(1, source.getCurrentStep());
+
+        clock.setMillis(-1);
+        Assert.assertEquals(Instant.ofEpochMilli(-1).getEpochSecond() / 30, source.getCurrentStep());
+
+        clock.setMillis(1);
+        Assert.assertEquals(0, source.getCurrentStep());
+    }
+
+    @Test
+    public void getCurrentStepMatchesTimestamps() throws Exception {
+        MutableClock clock = new MutableClock(0);
+        TimeStepSource source = new TimeStepSource(clock, 45);
+
+        for (long millis = 0; millis < 1_000_000; millis += 997) {
+            clock.setMillis(millis);
+            Assert.assertEquals(source.getStep(Instant.ofEpochMilli(millis).getEpochSecond()), source.getCurrentStep());
+        }
+    }
+
+    @Test
+    public void generator() throws Exception {
+        MutableClock clock = new MutableClock(90_000);
+        PeriodTokenGenerator generator = TokenGenerator.builder().clock(clock).createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        Assert.assertSame(clock, generator.getClock());
+        Assert.assertEquals("771141", generator.generateCode(key));
+        Assert.assertEquals(771141, generator.generateCodeInt(key));
+        Assert.assertTrue(generator.validateCode("981077", key, 1));
+        Assert.assertFalse(generator.validateCode("565580", key, 1));
+        Assert.assertEquals(ValidationResult.of(-3), generator.verifyCode("565580", key, 3, 0));
+
+        ReplayGuard guard = generator.createReplayGuard(1, 1);
+        Assert.assertTrue(guard.validateCode(1, "729385", key).isValid());
+        Assert.assertFalse(guard.validateCode(1, "729385", key).isValid());
+
+        DriftTracker tracker = generator.createDriftTracker(1, 3);
+        Assert.assertEquals(ValidationResult.of(-2), tracker.validateCode(1, "707879", key));
+
+        clock.setMillis(120_000);
+        Assert.assertEquals("729385", generator.generateCode(key));
+    }
+
+    @Test
+    public void fixedClock() throws Exception {
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(59), ZoneOffset.UTC);
+        PeriodTokenGenerator generator = TokenGenerator.builder().clock(clock).createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ");
+
+        Assert.assertEquals("287082", generator.generateCode(key));
+        Assert.assertEquals(generator.generateCode(key, Instant.ofEpochSecond(59)), generator.generateCode(key));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPeriod() throws Exception {
+        TokenGenerator.builder().period(Duration.ofMillis(500)).createPeriodGenerator("Issuer");
+    }
+}
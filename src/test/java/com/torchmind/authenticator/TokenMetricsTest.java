@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TokenMetricsTest {
+
+    @Test
+    public void record() throws Exception {
+        TokenMetrics metrics = new TokenMetrics();
+        PeriodTokenGenerator generator = TokenGenerator.builder()
+                .listener(metrics)
+                .createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        generator.generateCode(key, Instant.ofEpochSecond(30));
+        Assert.assertTrue(generator.validateCode("707879", key, Instant.ofEpochSecond(30), 1));
+        Assert.assertTrue(generator.validateCode("565580", key, Instant.ofEpochSecond(30), 1));
+        Assert.assertFalse(generator.validateCode("000000", key, Instant.ofEpochSecond(30), 1));
+
+        Assert.assertEquals(1, metrics.getGenerationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+        Assert.assertEquals(3, metrics.getValidationLatency(TokenGenerator.Algorithm.SHA1).getCount());
+        Assert.assertEquals(2, metrics.getValidationHits(TokenGenerator.Algorithm.SHA1));
+        Assert.assertEquals(1, metrics.getValidationMisses(TokenGenerator.Algorithm.SHA1));
+        Assert.assertEquals(1, metrics.getOffsetCount(0));
+        Assert.assertEquals(1, metrics.getOffsetCount(-1));
+        Assert.assertEquals(0, metrics.getValidationHits(TokenGenerator.Algorithm.SHA256));
+
+        SecretKey invalidKey = new SecretKey() {
+            @Override
+            public String getAlgorithm() {
+                return "HmacSHA1";
+            }
+
+            @Override
+            public String getFormat() {
+                return "RAW";
+            }
+
+            @Override
+            public byte[] getEncoded() {
+                return null;
+            }
+        };
+
+        try {
+            generator.generateCode(invalidKey);
+            Assert.fail("Expected invalid key to be rejected");
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        Assert.assertEquals(1, metrics.getInvalidKeys(TokenGenerator.Algorithm.SHA1));
+    }
+
+    @Test
+    public void histogram() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 1; value <= 1000; ++value) {
+            histogram.record(value * 1000);
+        }
+
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000000, histogram.getMax());
+        Assert.assertEquals(500500.0, histogram.getMean(), 0.001);
+        Assert.assertEquals(500000, histogram.getPercentile(50), 500000 * 0.125);
+        Assert.assertEquals(990000, histogram.getPercentile(99), 990000 * 0.125);
+        Assert.assertEquals(1000000, histogram.getPercentile(100));
+
+        for (long value : new long[]{0, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            Assert.assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            Assert.assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+}
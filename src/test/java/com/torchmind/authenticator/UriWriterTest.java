@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.authenticator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.SecretKey;
+
+/**
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class UriWriterTest {
+
+    @Test
+    public void write() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("My Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+        UriWriter writer = generator.createUriWriter();
+
+        String expected = "otpauth://totp/My+Issuer:J%25C3%25B6hn+Doe%2540example.com?secret=KLYQV62WLKEKRQQM&issuer=My+Issuer&period=30&algorithm=SHA1&digits=6";
+        Assert.assertEquals(expected, writer.write(new StringBuilder(), key, "Jöhn Doe@example.com").toString());
+        Assert.assertEquals(expected, generator.buildUri(key, "Jöhn Doe@example.com").toString());
+
+        CharBuffer charBuffer = CharBuffer.allocate(256);
+        writer.write(charBuffer, key, "Jöhn Doe@example.com");
+        charBuffer.flip();
+        Assert.assertEquals(expected, charBuffer.toString());
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(256);
+        writer.write(byteBuffer, key, "Jöhn Doe@example.com");
+        byteBuffer.flip();
+        Assert.assertEquals(expected, StandardCharsets.US_ASCII.decode(byteBuffer).toString());
+    }
+
+    @Test
+    public void writeCounter() throws Exception {
+        CounterTokenGenerator generator = TokenGenerator.builder().createCounterGenerator("Issuer");
+        SecretKey key = generator.parseCode("MZXW6===");
+
+        Assert.assertEquals("otpauth://hotp/Issuer:AccountName?secret=MZXW6%253D%253D%253D&issuer=Issuer&counter=1&algorithm=SHA1&digits=6", generator.createUriWriter().toUri(key, "AccountName").toString());
+        Assert.assertEquals("otpauth://hotp/Issuer:AccountName?secret=MZXW6%253D%253D%253D&issuer=Issuer&counter=42&algorithm=SHA1&digits=6", generator.buildUri(key, "AccountName", 42).toString());
+    }
+
+    @Test
+    public void writeOverflow() throws Exception {
+        PeriodTokenGenerator generator = TokenGenerator.builder().createPeriodGenerator("Issuer");
+        SecretKey key = generator.parseCode("KLYQV62WLKEKRQQM");
+
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.put((byte) 1);
+
+        try {
+            generator.createUriWriter().write(buffer, key, "AccountName");
+            Assert.fail("Expected overflow");
+        } catch (BufferOverflowException ex) {
+            Assert.assertEquals(1, buffer.position());
+        }
+    }
+}